@@ -0,0 +1,315 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.api.dataset.lib;
+
+import co.cask.cdap.api.annotation.Beta;
+import co.cask.cdap.api.common.Bytes;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Defines a secondary index of an {@link IndexedTable} over one or more columns. Index entries are ordered by the
+ * values of the indexed columns, in the order the columns are added to the index, and each value is encoded
+ * according to its {@link ValueType}, so that numeric values are ordered numerically. A row is indexed only if it
+ * has a value for every indexed column.
+ *
+ * <p>An index can also cover additional columns. The values of the indexed and covered columns are stored in the
+ * index entries, so that reading them by index does not require a lookup of the rows in the data table.
+ * </p>
+ *
+ * @see IndexedTableProperties.Builder#addCompositeIndex(CompositeIndex)
+ */
+@Beta
+public final class CompositeIndex {
+
+  /**
+   * The type of the values of an indexed column. Values are read from and written to the data table
+   * in the same format as {@link Bytes#toBytes(String)}, {@link Bytes#toBytes(long)} and
+   * {@link Bytes#toBytes(double)} produce.
+   */
+  public enum ValueType {
+    /**
+     * Arbitrary bytes, ordered lexicographically.
+     */
+    BYTES,
+
+    /**
+     * UTF-8 encoded strings, ordered by code point.
+     */
+    STRING,
+
+    /**
+     * 8-byte signed longs, ordered numerically.
+     */
+    LONG,
+
+    /**
+     * 8-byte doubles, ordered numerically.
+     */
+    DOUBLE
+  }
+
+  private static final byte DELIMITER_BYTE = 0;
+  private static final byte ESCAPE_BYTE = (byte) 0xff;
+  private static final byte TERMINATOR_BYTE = 1;
+  // Prefix of the column names used in index entries for the values of the indexed and covered columns
+  private static final byte[] VALUE_COLUMN_PREFIX = { 'v' };
+
+  private final String name;
+  private final List<String> columns;
+  private final List<ValueType> types;
+  private final List<String> coveredColumns;
+
+  private CompositeIndex(String name, List<String> columns, List<ValueType> types, List<String> coveredColumns) {
+    this.name = name;
+    this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+    this.types = Collections.unmodifiableList(new ArrayList<>(types));
+    this.coveredColumns = Collections.unmodifiableList(new ArrayList<>(coveredColumns));
+  }
+
+  /**
+   * Creates a {@link Builder} for an index with the given name.
+   */
+  public static Builder builder(String name) {
+    return new Builder(name);
+  }
+
+  /**
+   * @return the name of the index
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the indexed columns, in the order of the index
+   */
+  public List<String> getColumns() {
+    return columns;
+  }
+
+  /**
+   * @return the types of the values of the indexed columns
+   */
+  public List<ValueType> getTypes() {
+    return types;
+  }
+
+  /**
+   * @return the columns covered by the index
+   */
+  public List<String> getCoveredColumns() {
+    return coveredColumns;
+  }
+
+  /**
+   * @return the indexed and covered columns
+   */
+  Set<String> getAllColumns() {
+    Set<String> allColumns = new LinkedHashSet<>(columns);
+    allColumns.addAll(coveredColumns);
+    return allColumns;
+  }
+
+  /**
+   * Creates the prefix of the keys of the index entries whose indexed columns start with the given values.
+   */
+  byte[] createKeyPrefix(byte[][] values) {
+    if (values.length > columns.size()) {
+      throw new IllegalArgumentException(String.format("Index '%s' has %d columns, but %d values were given",
+                                                       name, columns.size(), values.length));
+    }
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    os.write(DELIMITER_BYTE);
+    write(os, Bytes.toBytes(name));
+    os.write(DELIMITER_BYTE);
+    for (int i = 0; i < values.length; i++) {
+      write(os, encode(i, values[i]));
+    }
+    return os.toByteArray();
+  }
+
+  /**
+   * Creates the key of the index entry for a row, or {@code null} if the row doesn't have a value for every indexed
+   * column.
+   *
+   * @param row the key of the data row
+   * @param values the values of the row, which must contain the indexed columns if the row has them
+   */
+  @Nullable
+  byte[] createKey(byte[] row, Map<byte[], byte[]> values) {
+    byte[][] indexedValues = new byte[columns.size()][];
+    for (int i = 0; i < indexedValues.length; i++) {
+      indexedValues[i] = values.get(Bytes.toBytes(columns.get(i)));
+      if (indexedValues[i] == null) {
+        return null;
+      }
+    }
+    return Bytes.add(createKeyPrefix(indexedValues), row);
+  }
+
+  /**
+   * Encodes the value of an indexed column, such that the byte order of encoded values is the order of the values,
+   * and no encoded value is a prefix of another.
+   */
+  byte[] encode(int columnIndex, byte[] value) {
+    ValueType type = types.get(columnIndex);
+    switch (type) {
+      case LONG:
+        return Bytes.toBytes(toLong(columnIndex, value) ^ Long.MIN_VALUE);
+      case DOUBLE:
+        long bits = toLong(columnIndex, value);
+        // Flip all bits of negative numbers and only the sign bit of positive numbers
+        return Bytes.toBytes(bits < 0 ? ~bits : bits ^ Long.MIN_VALUE);
+      default:
+        // Escape the delimiter byte and terminate the value, to order shorter values before longer ones
+        ByteArrayOutputStream os = new ByteArrayOutputStream(value.length + 2);
+        for (byte b : value) {
+          os.write(b);
+          if (b == DELIMITER_BYTE) {
+            os.write(ESCAPE_BYTE);
+          }
+        }
+        os.write(DELIMITER_BYTE);
+        os.write(TERMINATOR_BYTE);
+        return os.toByteArray();
+    }
+  }
+
+  /**
+   * Returns the column name used in index entries for the value of the given column.
+   */
+  static byte[] getValueColumn(byte[] column) {
+    return Bytes.add(VALUE_COLUMN_PREFIX, column);
+  }
+
+  /**
+   * Returns the column of the data table for a column of an index entry, or {@code null} if the column of the index
+   * entry doesn't hold a value of a data column.
+   */
+  @Nullable
+  static byte[] getDataColumn(byte[] valueColumn) {
+    if (!Bytes.startsWith(valueColumn, VALUE_COLUMN_PREFIX)) {
+      return null;
+    }
+    return Bytes.tail(valueColumn, valueColumn.length - VALUE_COLUMN_PREFIX.length);
+  }
+
+  private long toLong(int columnIndex, byte[] value) {
+    if (value.length != Bytes.SIZEOF_LONG) {
+      throw new IllegalArgumentException(String.format("Value of column '%s' in index '%s' must be %d bytes long",
+                                                       columns.get(columnIndex), name, Bytes.SIZEOF_LONG));
+    }
+    return Bytes.toLong(value);
+  }
+
+  private void write(ByteArrayOutputStream os, byte[] bytes) {
+    os.write(bytes, 0, bytes.length);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    CompositeIndex that = (CompositeIndex) o;
+    return Objects.equals(name, that.name) &&
+      Objects.equals(columns, that.columns) &&
+      Objects.equals(types, that.types) &&
+      Objects.equals(coveredColumns, that.coveredColumns);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(name, columns, types, coveredColumns);
+  }
+
+  @Override
+  public String toString() {
+    return "CompositeIndex{" +
+      "name='" + name + '\'' +
+      ", columns=" + columns +
+      ", types=" + types +
+      ", coveredColumns=" + coveredColumns +
+      '}';
+  }
+
+  /**
+   * A builder for {@link CompositeIndex}.
+   */
+  public static final class Builder {
+
+    private final String name;
+    private final List<String> columns;
+    private final List<ValueType> types;
+    private final List<String> coveredColumns;
+
+    private Builder(String name) {
+      if (name == null || name.isEmpty() || name.indexOf(DELIMITER_BYTE) >= 0) {
+        throw new IllegalArgumentException("Index name must be non-empty and must not contain the null character");
+      }
+      this.name = name;
+      this.columns = new ArrayList<>();
+      this.types = new ArrayList<>();
+      this.coveredColumns = new ArrayList<>();
+    }
+
+    /**
+     * Adds an indexed column. Index entries are ordered by the values of the indexed columns,
+     * in the order the columns are added.
+     */
+    public Builder addColumn(String column, ValueType type) {
+      checkNewColumn(column);
+      columns.add(column);
+      types.add(type);
+      return this;
+    }
+
+    /**
+     * Adds a column covered by the index, whose value is stored in the index entries, but is not indexed.
+     */
+    public Builder addCoveredColumn(String column) {
+      checkNewColumn(column);
+      coveredColumns.add(column);
+      return this;
+    }
+
+    public CompositeIndex build() {
+      if (columns.isEmpty()) {
+        throw new IllegalArgumentException("Index '" + name + "' must have at least one column");
+      }
+      return new CompositeIndex(name, columns, types, coveredColumns);
+    }
+
+    private void checkNewColumn(String column) {
+      if (columns.contains(column) || coveredColumns.contains(column)) {
+        throw new IllegalArgumentException("Column '" + column + "' is already part of index '" + name + "'");
+      }
+    }
+  }
+}
@@ -38,8 +38,11 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
@@ -94,7 +97,23 @@ import javax.annotation.Nullable;
  * as it would break parsing of the configuration property.
  * </p>
  *
+ * <p>Values of single column indexes are ordered as raw bytes. To index multiple columns together, or to order
+ * numeric values numerically, {@link CompositeIndex}es can be configured with {@link IndexedTableProperties}.
+ * Composite index entries can also cover columns, which can then be read from the index only, without reading the
+ * data table:
+ *
+ * <p>
+ * <pre><code>createDataset("indexedData", IndexedTable.class, IndexedTableProperties.builder()
+ *   .addCompositeIndex(CompositeIndex.builder("byPrice")
+ *                        .addColumn("category", CompositeIndex.ValueType.STRING)
+ *                        .addColumn("price", CompositeIndex.ValueType.DOUBLE)
+ *                        .addCoveredColumn("name")
+ *                        .build())
+ *   .build());</code></pre>
+ * </p>
+ *
  * @see #INDEX_COLUMNS_CONF_KEY
+ * @see IndexedTableProperties
  */
 public class IndexedTable extends AbstractDataset implements Table {
   private static final Logger LOG = LoggerFactory.getLogger(IndexedTable.class);
@@ -117,6 +136,10 @@ public class IndexedTable extends AbstractDataset implements Table {
   private Table table, index;
   // the secondary index column
   private SortedSet<byte[]> indexedColumns;
+  // the composite indexes, with their indexed and covered columns
+  private final Map<CompositeIndex, SortedSet<byte[]>> compositeIndexes;
+  // the indexed and covered columns of all composite indexes
+  private final SortedSet<byte[]> compositeIndexColumns;
 
   /**
    * Configuration time constructor.
@@ -127,11 +150,35 @@ public class IndexedTable extends AbstractDataset implements Table {
    * @param columnsToIndex the names of the data columns to index
    */
   public IndexedTable(String name, Table table, Table index, SortedSet<byte[]> columnsToIndex) {
+    this(name, table, index, columnsToIndex, Collections.<CompositeIndex>emptyList());
+  }
+
+  /**
+   * Configuration time constructor.
+   *
+   * @param name the name of the table
+   * @param table table to use as the table
+   * @param index table to use as the index
+   * @param columnsToIndex the names of the data columns to index individually
+   * @param compositeIndexes the composite indexes
+   */
+  public IndexedTable(String name, Table table, Table index, SortedSet<byte[]> columnsToIndex,
+                      List<CompositeIndex> compositeIndexes) {
     super(name, table, index);
     this.table = table;
     this.index = index;
     this.indexedColumns = columnsToIndex;
     this.hasColumnWithDelimiter = hasDelimiterByte(columnsToIndex);
+    this.compositeIndexes = new LinkedHashMap<>();
+    this.compositeIndexColumns = new TreeSet<>(Bytes.BYTES_COMPARATOR);
+    for (CompositeIndex compositeIndex : compositeIndexes) {
+      SortedSet<byte[]> columns = new TreeSet<>(Bytes.BYTES_COMPARATOR);
+      for (String column : compositeIndex.getAllColumns()) {
+        columns.add(Bytes.toBytes(column));
+      }
+      this.compositeIndexes.put(compositeIndex, columns);
+      this.compositeIndexColumns.addAll(columns);
+    }
   }
 
   /**
@@ -216,7 +263,24 @@ public class IndexedTable extends AbstractDataset implements Table {
     byte[] rowKeyPrefix = Bytes.concat(column, KEY_DELIMITER, value, KEY_DELIMITER);
     byte[] stopRow = Bytes.stopKeyForPrefix(rowKeyPrefix);
     Scanner indexScan = index.scan(rowKeyPrefix, stopRow);
-    return new IndexScanner(indexScan, column, value);
+    return new IndexScanner(indexScan, column, value, false);
+  }
+
+  /**
+   * Reads the keys of the table rows indexed by the given secondary index key, without reading the rows from the
+   * data table. Rows are returned in the order of their row keys, and each row only contains the given column with
+   * the indexed value.
+   *
+   * @return a Scanner returning the keys of the rows whose stored value for the given column matches the given value
+   * @throws java.lang.IllegalArgumentException if the given column is not configured for indexing.
+   */
+  @ReadOnly
+  public Scanner readRowKeysByIndex(byte[] column, byte[] value) {
+    assertIndexedColumn(column);
+    byte[] rowKeyPrefix = Bytes.concat(column, KEY_DELIMITER, value, KEY_DELIMITER);
+    byte[] stopRow = Bytes.stopKeyForPrefix(rowKeyPrefix);
+    Scanner indexScan = index.scan(rowKeyPrefix, stopRow);
+    return new IndexScanner(indexScan, column, value, true);
   }
 
   /**
@@ -234,6 +298,29 @@ public class IndexedTable extends AbstractDataset implements Table {
    */
   @ReadOnly
   public Scanner scanByIndex(byte[] column, @Nullable byte[] startValue, @Nullable byte[] endValue) {
+    return scanByIndex(column, startValue, endValue, false);
+  }
+
+  /**
+   * Reads the keys of the table rows within the given secondary index key range, without reading the rows from the
+   * data table. Each row only contains the given column with the indexed value.
+   *
+   * @param column the column to use for the index lookup
+   * @param startValue the inclusive start of the range for which rows must fall within to be returned in the scan.
+   *                   {@code null} means start from first row of the table
+   * @param endValue the exclusive end of the range for which rows must fall within to be returned in the scan
+   *                 {@code null} means end with the last row of the table
+   * @return a Scanner returning the keys of the rows whose stored value for the given column is within the given
+   *         range.
+   * @throws java.lang.IllegalArgumentException if the given column is not configured for indexing.
+   */
+  @ReadOnly
+  public Scanner scanRowKeysByIndex(byte[] column, @Nullable byte[] startValue, @Nullable byte[] endValue) {
+    return scanByIndex(column, startValue, endValue, true);
+  }
+
+  private Scanner scanByIndex(byte[] column, @Nullable byte[] startValue, @Nullable byte[] endValue,
+                              boolean keysOnly) {
     assertIndexedColumn(column);
     // KEY_DELIMITER is not used at the end of the rowKeys, because they are used for a range scan,
     // instead of a fixed-match lookup
@@ -242,7 +329,7 @@ public class IndexedTable extends AbstractDataset implements Table {
     byte[] stopRow = endValue == null ? Bytes.stopKeyForPrefix(Bytes.concat(column, KEY_DELIMITER)) :
       Bytes.concat(column, KEY_DELIMITER, endValue);
     Scanner indexScan = index.scan(startRow, stopRow);
-    return new IndexRangeScanner(indexScan, column, startValue, endValue);
+    return new IndexRangeScanner(indexScan, column, startValue, endValue, keysOnly);
   }
 
   private void assertIndexedColumn(byte[] column) {
@@ -251,6 +338,176 @@ public class IndexedTable extends AbstractDataset implements Table {
     }
   }
 
+  /**
+   * Reads table rows by the values of the given composite index. The values are given in the format they are
+   * stored in the data table, and may only be given for the first columns of the index, in which case all rows
+   * whose values for these columns match are returned. Rows are returned in the order of the index.
+   *
+   * @param indexName the name of the composite index
+   * @param values the values of the first columns of the index
+   * @return a Scanner returning rows from the data table, whose values match the given values
+   * @throws java.lang.IllegalArgumentException if the composite index does not exist, or more values are given than
+   *         the index has columns
+   */
+  @ReadOnly
+  public Scanner readByIndex(String indexName, byte[][] values) {
+    return scanByIndex(indexName, values, null, null, false);
+  }
+
+  /**
+   * Reads table rows within the given range of values of a composite index. The rows must match the given values for
+   * the first columns of the index, and the value of the next column must be within the given range, according to the
+   * order of the {@link CompositeIndex.ValueType} of the column. Rows are returned in the order of the index.
+   *
+   * @param indexName the name of the composite index
+   * @param prefixValues the values of the first columns of the index
+   * @param startValue the inclusive start of the range of the column following the prefix columns.
+   *                   {@code null} means no lower bound
+   * @param endValue the exclusive end of the range of the column following the prefix columns.
+   *                 {@code null} means no upper bound
+   * @return a Scanner returning rows from the data table, whose values are within the given range
+   * @throws java.lang.IllegalArgumentException if the composite index does not exist, or the index does not have a
+   *         column following the prefix columns
+   */
+  @ReadOnly
+  public Scanner scanByIndex(String indexName, byte[][] prefixValues,
+                             @Nullable byte[] startValue, @Nullable byte[] endValue) {
+    return scanByIndex(indexName, prefixValues, startValue, endValue, false);
+  }
+
+  /**
+   * Same as {@link #readByIndex(String, byte[][])}, except that the rows are read from the index only, without
+   * reading the data table. Each row only contains the indexed and covered columns of the index.
+   */
+  @ReadOnly
+  public Scanner readFromIndex(String indexName, byte[][] values) {
+    return scanByIndex(indexName, values, null, null, true);
+  }
+
+  /**
+   * Same as {@link #scanByIndex(String, byte[][], byte[], byte[])}, except that the rows are read from the index
+   * only, without reading the data table. Each row only contains the indexed and covered columns of the index.
+   */
+  @ReadOnly
+  public Scanner scanFromIndex(String indexName, byte[][] prefixValues,
+                               @Nullable byte[] startValue, @Nullable byte[] endValue) {
+    return scanByIndex(indexName, prefixValues, startValue, endValue, true);
+  }
+
+  private Scanner scanByIndex(String indexName, byte[][] prefixValues, @Nullable byte[] startValue,
+                              @Nullable byte[] endValue, boolean fromIndex) {
+    CompositeIndex compositeIndex = getCompositeIndex(indexName);
+    byte[] prefix = compositeIndex.createKeyPrefix(prefixValues);
+    byte[] startRow = prefix;
+    byte[] stopRow = Bytes.stopKeyForPrefix(prefix);
+    if (startValue != null || endValue != null) {
+      if (prefixValues.length >= compositeIndex.getColumns().size()) {
+        throw new IllegalArgumentException("Index '" + indexName + "' has no column following the prefix values");
+      }
+      // Encoded values are ordered and prefix-free, hence the range can be scanned without filtering
+      if (startValue != null) {
+        startRow = Bytes.add(prefix, compositeIndex.encode(prefixValues.length, startValue));
+      }
+      if (endValue != null) {
+        stopRow = Bytes.add(prefix, compositeIndex.encode(prefixValues.length, endValue));
+      }
+    }
+    return new CompositeIndexScanner(index.scan(startRow, stopRow), fromIndex);
+  }
+
+  private CompositeIndex getCompositeIndex(String indexName) {
+    for (CompositeIndex compositeIndex : compositeIndexes.keySet()) {
+      if (compositeIndex.getName().equals(indexName)) {
+        return compositeIndex;
+      }
+    }
+    throw new IllegalArgumentException("Composite index '" + indexName + "' is not configured");
+  }
+
+  /**
+   * Returns whether a column is indexed, either individually or as part of a composite index.
+   */
+  private boolean isIndexed(byte[] column) {
+    return indexedColumns.contains(column) || compositeIndexColumns.contains(column);
+  }
+
+  /**
+   * Returns the indexed and covered columns of the composite indexes which contain any of the given columns.
+   */
+  private SortedSet<byte[]> getCompositeIndexColumns(Collection<byte[]> columns) {
+    SortedSet<byte[]> result = new TreeSet<>(Bytes.BYTES_COMPARATOR);
+    for (SortedSet<byte[]> indexColumns : compositeIndexes.values()) {
+      if (containsAny(indexColumns, columns)) {
+        result.addAll(indexColumns);
+      }
+    }
+    return result;
+  }
+
+  private boolean containsAny(Set<byte[]> set, Collection<byte[]> values) {
+    for (byte[] value : values) {
+      if (set.contains(value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Updates the entries of the composite indexes which contain any of the changed columns of a row.
+   *
+   * @param row the key of the data row
+   * @param existingValues the existing values of the row, which must contain the values of all columns returned by
+   *                       {@link #getCompositeIndexColumns(Collection)} for the changed columns
+   * @param changedValues the new values of the changed columns, with {@code null} values for deleted columns
+   */
+  private void updateCompositeIndexes(byte[] row, Map<byte[], byte[]> existingValues,
+                                      Map<byte[], byte[]> changedValues) {
+    if (compositeIndexes.isEmpty()) {
+      return;
+    }
+    Map<byte[], byte[]> oldValues = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    oldValues.putAll(existingValues);
+    Map<byte[], byte[]> newValues = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    newValues.putAll(existingValues);
+    for (Map.Entry<byte[], byte[]> entry : changedValues.entrySet()) {
+      if (entry.getValue() == null) {
+        newValues.remove(entry.getKey());
+      } else {
+        newValues.put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    for (Map.Entry<CompositeIndex, SortedSet<byte[]>> entry : compositeIndexes.entrySet()) {
+      if (!containsAny(entry.getValue(), changedValues.keySet())) {
+        continue;
+      }
+      byte[] oldKey = entry.getKey().createKey(row, oldValues);
+      byte[] newKey = entry.getKey().createKey(row, newValues);
+      boolean sameKey = oldKey != null && newKey != null && Bytes.equals(oldKey, newKey);
+      if (oldKey != null && !sameKey) {
+        index.delete(oldKey);
+      }
+      if (newKey == null) {
+        continue;
+      }
+      Put put = new Put(newKey, IDX_COL, row);
+      List<byte[]> deletedColumns = new ArrayList<>();
+      for (byte[] column : entry.getValue()) {
+        byte[] value = newValues.get(column);
+        if (value != null) {
+          put.add(CompositeIndex.getValueColumn(column), value);
+        } else if (sameKey) {
+          deletedColumns.add(CompositeIndex.getValueColumn(column));
+        }
+      }
+      if (!deletedColumns.isEmpty()) {
+        index.delete(newKey, deletedColumns.toArray(new byte[deletedColumns.size()][]));
+      }
+      index.put(put);
+    }
+  }
+
   /**
    * Writes a put to the data table. If any of the columns in the {@link Put} are configured to be indexed, the
    * appropriate indexes will be updated with the indexed values referencing the data table row.
@@ -271,11 +528,17 @@ public class IndexedTable extends AbstractDataset implements Table {
         colsToIndex.add(putEntry.getKey());
       }
     }
+    Set<byte[]> colsToRead = getCompositeIndexColumns(putColumns.keySet());
+    colsToRead.addAll(colsToIndex);
 
-    if (!colsToIndex.isEmpty()) {
+    if (!colsToRead.isEmpty()) {
       // first read the existing indexed values to find which have changed and need to be updated
-      Row existingRow = table.get(dataRow, colsToIndex.toArray(new byte[colsToIndex.size()][]));
+      Row existingRow = table.get(dataRow, colsToRead.toArray(new byte[colsToRead.size()][]));
       for (Map.Entry<byte[], byte[]> entry : existingRow.getColumns().entrySet()) {
+        if (!indexedColumns.contains(entry.getKey()) || !putColumns.containsKey(entry.getKey())) {
+          // read for the composite indexes only
+          continue;
+        }
         if (!Arrays.equals(entry.getValue(), putColumns.get(entry.getKey()))) {
           index.delete(createIndexKey(dataRow, entry.getKey(), entry.getValue()), IDX_COL);
         } else {
@@ -288,6 +551,7 @@ public class IndexedTable extends AbstractDataset implements Table {
       for (byte[] col : colsToIndex) {
         index.put(createIndexKey(dataRow, col, putColumns.get(col)), IDX_COL, dataRow);
       }
+      updateCompositeIndexes(dataRow, existingRow.getColumns(), putColumns);
     }
 
     // store the data row
@@ -342,7 +606,7 @@ public class IndexedTable extends AbstractDataset implements Table {
     }
 
     // delete all index entries
-    deleteIndexEntries(existingRow);
+    deleteIndexEntries(existingRow, existingRow.getColumns().keySet());
 
     // delete the row
     table.delete(row);
@@ -357,26 +621,34 @@ public class IndexedTable extends AbstractDataset implements Table {
   @WriteOnly
   @Override
   public void delete(byte[] row, byte[][] columns) {
-    Row existingRow = table.get(row, columns);
+    // the other columns of the composite indexes are needed to update their entries
+    List<byte[]> deletedColumns = Arrays.asList(columns);
+    SortedSet<byte[]> colsToRead = getCompositeIndexColumns(deletedColumns);
+    Collections.addAll(colsToRead, columns);
+    Row existingRow = table.get(row, colsToRead.toArray(new byte[colsToRead.size()][]));
     if (existingRow.isEmpty()) {
       // no row to delete
       return;
     }
 
     // delete all index entries
-    deleteIndexEntries(existingRow);
+    deleteIndexEntries(existingRow, deletedColumns);
 
     // delete the row's columns
     table.delete(row, columns);
   }
 
-  private void deleteIndexEntries(Row existingRow) {
+  private void deleteIndexEntries(Row existingRow, Collection<byte[]> deletedColumns) {
     byte[] row = existingRow.getRow();
-    for (Map.Entry<byte[], byte[]> entry : existingRow.getColumns().entrySet()) {
-      if (indexedColumns.contains(entry.getKey())) {
-        index.delete(createIndexKey(row, entry.getKey(), entry.getValue()), IDX_COL);
+    Map<byte[], byte[]> deletedValues = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    for (byte[] column : deletedColumns) {
+      deletedValues.put(column, null);
+      byte[] value = existingRow.get(column);
+      if (value != null && indexedColumns.contains(column)) {
+        index.delete(createIndexKey(row, column, value), IDX_COL);
       }
     }
+    updateCompositeIndexes(row, existingRow.getColumns(), deletedValues);
   }
 
   /**
@@ -393,7 +665,7 @@ public class IndexedTable extends AbstractDataset implements Table {
     // the index is not affected - just execute the swap.
     // also, if the swap is on the index column, but the old value
     // is the same as the new value, then the index is not affected either.
-    if (!indexedColumns.contains(column) ||
+    if (!isIndexed(column) ||
         Arrays.equals(expected, newValue)) {
       return table.compareAndSwap(row, column, expected, newValue);
     }
@@ -402,17 +674,29 @@ public class IndexedTable extends AbstractDataset implements Table {
     // value matches the expected value of the swap. if that value is not null,
     // then we must remove the row key from the index for that value.
     Delete idxDelete = null;
-    if (expected != null) {
+    if (expected != null && indexedColumns.contains(column)) {
       idxDelete = new Delete(createIndexKey(row, column, expected), IDX_COL);
     }
 
     // if the new value is not null, then we must add the rowkey to the index
     // for that value.
     Put idxPut = null;
-    if (newValue != null) {
+    if (newValue != null && indexedColumns.contains(column)) {
       idxPut = new Put(createIndexKey(row, column, newValue), IDX_COL, row);
     }
 
+    // the other columns of the composite indexes are needed to update their entries
+    Map<byte[], byte[]> existingValues = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    Set<byte[]> compositeColumns = getCompositeIndexColumns(Collections.singleton(column));
+    compositeColumns.remove(column);
+    if (!compositeColumns.isEmpty()) {
+      existingValues.putAll(table.get(row, compositeColumns.toArray(new byte[compositeColumns.size()][]))
+                              .getColumns());
+    }
+    if (expected != null) {
+      existingValues.put(column, expected);
+    }
+
     // apply all operations to both tables
     boolean success = table.compareAndSwap(row, column, expected, newValue);
     if (!success) {
@@ -425,6 +709,9 @@ public class IndexedTable extends AbstractDataset implements Table {
     if (idxPut != null) {
       index.put(idxPut);
     }
+    if (compositeIndexColumns.contains(column)) {
+      updateCompositeIndexes(row, existingValues, Collections.singletonMap(column, newValue));
+    }
 
     return true;
   }
@@ -459,7 +746,10 @@ public class IndexedTable extends AbstractDataset implements Table {
       throw new IllegalArgumentException("Size of columns and amounts arguments must match");
     }
 
-    Row existingRow = table.get(row, columns);
+    // the other columns of the composite indexes are needed to update their entries
+    SortedSet<byte[]> colsToRead = getCompositeIndexColumns(Arrays.asList(columns));
+    Collections.addAll(colsToRead, columns);
+    Row existingRow = table.get(row, colsToRead.toArray(new byte[colsToRead.size()][]));
     byte[][] updatedValues = new byte[columns.length][];
     NavigableMap<byte[], byte[]> result = new TreeMap<>(Bytes.BYTES_COMPARATOR);
 
@@ -484,6 +774,7 @@ public class IndexedTable extends AbstractDataset implements Table {
       }
     }
 
+    updateCompositeIndexes(row, existingRow.getColumns(), result);
     table.put(row, columns, updatedValues);
     return new Result(row, result);
   }
@@ -522,7 +813,7 @@ public class IndexedTable extends AbstractDataset implements Table {
   @Override
   public void increment(byte[] row, byte[] column, long amount) {
     // read-less increments should not be used on indexed columns
-    if (indexedColumns.contains(column)) {
+    if (isIndexed(column)) {
       throw new IllegalArgumentException("Read-less increment is not supported on indexed column '"
                                            + Bytes.toStringBinary(column) + "'");
     }
@@ -540,7 +831,7 @@ public class IndexedTable extends AbstractDataset implements Table {
   public void increment(byte[] row, byte[][] columns, long[] amounts) {
     // read-less increments should not be used on indexed columns
     for (byte[] col : columns) {
-      if (indexedColumns.contains(col)) {
+      if (isIndexed(col)) {
         throw new IllegalArgumentException("Read-less increment is not supported on indexed column '"
                                              + Bytes.toStringBinary(col) + "'");
       }
@@ -558,7 +849,7 @@ public class IndexedTable extends AbstractDataset implements Table {
   @Override
   public void increment(Increment increment) {
     for (byte[] col : increment.getValues().keySet()) {
-      if (indexedColumns.contains(col)) {
+      if (isIndexed(col)) {
         throw new IllegalArgumentException("Read-less increment is not supported on indexed column '"
                                              + Bytes.toStringBinary(col) + "'");
       }
@@ -625,10 +916,13 @@ public class IndexedTable extends AbstractDataset implements Table {
     // scanner over index table
     private final Scanner baseScanner;
     private final byte[] column;
+    // whether to return only the row key and the indexed column, without reading the data row
+    private final boolean keysOnly;
 
-    AbstractIndexScanner(Scanner baseScanner, byte[] column) {
+    AbstractIndexScanner(Scanner baseScanner, byte[] column, boolean keysOnly) {
       this.baseScanner = baseScanner;
       this.column = column;
+      this.keysOnly = keysOnly;
     }
 
     /**
@@ -656,6 +950,9 @@ public class IndexedTable extends AbstractDataset implements Table {
         // Verify that datarow matches the expected row key to avoid issues with column name or value
         // containing the delimiter used. This is a sufficient check, as long as columns don't contain the null byte.
         if (matches(columnValue)) {
+          if (keysOnly && !hasColumnWithDelimiter) {
+            return createKeyRow(rowkey, columnValue);
+          }
           Row row = table.get(rowkey);
           // If a column has null byte (the key delimiter) in it, then we need to check against the data row's column
           // to be sure this row isn't a false positive in the scan.
@@ -663,8 +960,61 @@ public class IndexedTable extends AbstractDataset implements Table {
           if (hasColumnWithDelimiter && !Bytes.equals(row.get(column), columnValue)) {
             continue;
           }
-          return row;
+          return keysOnly ? createKeyRow(rowkey, columnValue) : row;
+        }
+      }
+      // end of index
+      return null;
+    }
+
+    private Row createKeyRow(byte[] rowkey, byte[] columnValue) {
+      Map<byte[], byte[]> columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+      columns.put(column, columnValue);
+      return new Result(rowkey, columns);
+    }
+
+    @Override
+    public void close() {
+      baseScanner.close();
+    }
+  }
+
+  // scanner over the entries of a composite index
+  private class CompositeIndexScanner implements Scanner {
+    // scanner over index table
+    private final Scanner baseScanner;
+    // whether to return the indexed and covered columns from the index entries, without reading the data row
+    private final boolean fromIndex;
+
+    CompositeIndexScanner(Scanner baseScanner, boolean fromIndex) {
+      this.baseScanner = baseScanner;
+      this.fromIndex = fromIndex;
+    }
+
+    @Nullable
+    @Override
+    public Row next() {
+      for (Row indexRow = baseScanner.next(); indexRow != null; indexRow = baseScanner.next()) {
+        byte[] rowkey = indexRow.get(IDX_COL);
+        if (rowkey == null) {
+          LOG.warn("Row of Indexed table '{}' is missing index column. Row key: {}", getName(), indexRow.getRow());
+          continue;
+        }
+        if (!fromIndex) {
+          Row row = table.get(rowkey);
+          if (!row.isEmpty()) {
+            return row;
+          }
+          continue;
+        }
+        Map<byte[], byte[]> columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        for (Map.Entry<byte[], byte[]> entry : indexRow.getColumns().entrySet()) {
+          byte[] column = CompositeIndex.getDataColumn(entry.getKey());
+          if (column != null) {
+            columns.put(column, entry.getValue());
+          }
         }
+        return new Result(rowkey, columns);
       }
       // end of index
       return null;
@@ -680,8 +1030,8 @@ public class IndexedTable extends AbstractDataset implements Table {
   private class IndexScanner extends AbstractIndexScanner {
     private final byte[] value;
 
-    IndexScanner(Scanner baseScanner, byte[] column, byte[] value) {
-      super(baseScanner, column);
+    IndexScanner(Scanner baseScanner, byte[] column, byte[] value, boolean keysOnly) {
+      super(baseScanner, column, keysOnly);
       this.value = value;
     }
 
@@ -696,8 +1046,9 @@ public class IndexedTable extends AbstractDataset implements Table {
     private final byte[] start;
     private final byte[] end;
 
-    IndexRangeScanner(Scanner baseScanner, byte[] column, @Nullable byte[] start, @Nullable byte[] end) {
-      super(baseScanner, column);
+    IndexRangeScanner(Scanner baseScanner, byte[] column, @Nullable byte[] start, @Nullable byte[] end,
+                      boolean keysOnly) {
+      super(baseScanner, column, keysOnly);
       this.start = start;
       this.end = end;
     }
@@ -26,10 +26,13 @@ import co.cask.cdap.api.dataset.IncompatibleUpdateException;
 import co.cask.cdap.api.dataset.table.Table;
 
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import javax.annotation.Nullable;
 
 /**
  * DatasetDefinition for {@link IndexedTable}.
@@ -49,9 +52,11 @@ public class IndexedTableDefinition
   @Override
   public DatasetSpecification configure(String instanceName, DatasetProperties properties) {
     String columnNamesToIndex = properties.getProperties().get(IndexedTable.INDEX_COLUMNS_CONF_KEY);
-    if (columnNamesToIndex == null) {
-      throw new IllegalArgumentException("columnsToIndex must be specified");
+    List<CompositeIndex> compositeIndexes = IndexedTableProperties.getCompositeIndexes(properties.getProperties());
+    if (columnNamesToIndex == null && compositeIndexes.isEmpty()) {
+      throw new IllegalArgumentException("columnsToIndex or compositeIndexes must be specified");
     }
+    validateCompositeIndexes(columnNamesToIndex, compositeIndexes);
     return super.configure(instanceName, properties);
   }
 
@@ -60,13 +65,14 @@ public class IndexedTableDefinition
                                           DatasetProperties newProperties,
                                           DatasetSpecification currentSpec) throws IncompatibleUpdateException {
 
-    // validate that the columns to index property is not null and the same as before
+    // validate that the columns to index property is specified and the same as before
     String columnNamesToIndex = newProperties.getProperties().get(IndexedTable.INDEX_COLUMNS_CONF_KEY);
-    if (columnNamesToIndex == null) {
-      throw new IllegalArgumentException("columnsToIndex must be specified");
+    List<CompositeIndex> compositeIndexes = IndexedTableProperties.getCompositeIndexes(newProperties.getProperties());
+    if (columnNamesToIndex == null && compositeIndexes.isEmpty()) {
+      throw new IllegalArgumentException("columnsToIndex or compositeIndexes must be specified");
     }
     String oldColumnsToIndex = currentSpec.getProperty(IndexedTable.INDEX_COLUMNS_CONF_KEY);
-    if (!columnNamesToIndex.equals(oldColumnsToIndex)) {
+    if (columnNamesToIndex == null ? oldColumnsToIndex != null : !columnNamesToIndex.equals(oldColumnsToIndex)) {
       Set<byte[]> newColumns = parseColumns(columnNamesToIndex);
       Set<byte[]> oldColumns = parseColumns(oldColumnsToIndex);
       if (!newColumns.equals(oldColumns)) {
@@ -74,6 +80,12 @@ public class IndexedTableDefinition
                                                             oldColumnsToIndex, columnNamesToIndex));
       }
     }
+    // existing index entries are not rebuilt, hence the composite indexes cannot change either
+    List<CompositeIndex> oldCompositeIndexes = IndexedTableProperties.getCompositeIndexes(currentSpec.getProperties());
+    if (!compositeIndexes.equals(oldCompositeIndexes)) {
+      throw new IncompatibleUpdateException(String.format("Attempt to change composite indexes from %s to %s",
+                                                          oldCompositeIndexes, compositeIndexes));
+    }
     return super.reconfigure(instanceName, newProperties, currentSpec);
   }
 
@@ -82,19 +94,46 @@ public class IndexedTableDefinition
                                  Map<String, String> arguments, ClassLoader classLoader) throws IOException {
 
     SortedSet<byte[]> columnsToIndex = parseColumns(spec.getProperty(IndexedTable.INDEX_COLUMNS_CONF_KEY));
+    List<CompositeIndex> compositeIndexes = IndexedTableProperties.getCompositeIndexes(spec.getProperties());
 
     Table table = getDataset(datasetContext, "d", spec, arguments, classLoader);
     Table index = getDataset(datasetContext, "i", spec, arguments, classLoader);
 
-    return new IndexedTable(spec.getName(), table, index, columnsToIndex);
+    return new IndexedTable(spec.getName(), table, index, columnsToIndex, compositeIndexes);
+  }
+
+  /**
+   * Validates that the composite index names are unique, and that their entries cannot be confused with the entries
+   * of the single column indexes. Composite index entries start with a null byte, hence the single indexed columns
+   * must not be empty or start with the null byte.
+   */
+  private void validateCompositeIndexes(@Nullable String columnNamesToIndex, List<CompositeIndex> compositeIndexes) {
+    if (compositeIndexes.isEmpty()) {
+      return;
+    }
+    Set<String> names = new HashSet<>();
+    for (CompositeIndex compositeIndex : compositeIndexes) {
+      if (!names.add(compositeIndex.getName())) {
+        throw new IllegalArgumentException("Composite index '" + compositeIndex.getName() + "' is defined twice");
+      }
+    }
+    for (byte[] column : parseColumns(columnNamesToIndex)) {
+      if (column.length == 0 || column[0] == 0) {
+        throw new IllegalArgumentException("Indexed column names must not be empty or start with the null byte " +
+                                             "when composite indexes are defined");
+      }
+    }
   }
 
   /**
    * Helper method to parse a list of column names, comma-separated.
    */
-  private SortedSet<byte[]> parseColumns(String value) {
+  private SortedSet<byte[]> parseColumns(@Nullable String value) {
     // TODO: add support for setting index key delimiter
     SortedSet<byte[]> columnsToIndex = new TreeSet<>(Bytes.BYTES_COMPARATOR);
+    if (value == null) {
+      return columnsToIndex;
+    }
     for (String column : value.split(",")) {
       columnsToIndex.add(Bytes.toBytes(column));
     }
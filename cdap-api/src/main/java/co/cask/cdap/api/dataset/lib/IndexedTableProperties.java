@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.api.dataset.lib;
+
+import co.cask.cdap.api.annotation.Beta;
+import co.cask.cdap.api.dataset.DatasetProperties;
+import co.cask.cdap.api.dataset.table.TableProperties;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Helper to build properties for an {@link IndexedTable}.
+ */
+@Beta
+public class IndexedTableProperties {
+
+  private static final Gson GSON = new Gson();
+  private static final Type LIST_COMPOSITE_INDEX_TYPE = new TypeToken<List<CompositeIndex>>() { }.getType();
+
+  /**
+   * The composite indexes of the table, as a JSON list of {@link CompositeIndex}.
+   */
+  public static final String COMPOSITE_INDEXES = "compositeIndexes";
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * @return the composite indexes defined in the given properties, or an empty list if there are none
+   * @throws IllegalArgumentException if the composite indexes cannot be parsed
+   */
+  public static List<CompositeIndex> getCompositeIndexes(Map<String, String> properties) {
+    String value = properties.get(COMPOSITE_INDEXES);
+    if (value == null) {
+      return Collections.emptyList();
+    }
+    try {
+      List<CompositeIndex> indexes = GSON.fromJson(value, LIST_COMPOSITE_INDEX_TYPE);
+      return indexes == null ? Collections.<CompositeIndex>emptyList() : indexes;
+    } catch (JsonParseException e) {
+      throw new IllegalArgumentException("Invalid value for property " + COMPOSITE_INDEXES + ": " + value, e);
+    }
+  }
+
+  /**
+   * A Builder to construct properties for {@link IndexedTable} datasets.
+   */
+  public static class Builder extends TableProperties.AbstractBuilder<Builder> {
+
+    private final List<CompositeIndex> compositeIndexes = new ArrayList<>();
+
+    /**
+     * Package visible default constructor, to allow sub-classing by other datasets in this package.
+     */
+    Builder() {
+    }
+
+    /**
+     * Sets the columns that are indexed individually.
+     */
+    public Builder setColumnsToIndex(String... columns) {
+      StringBuilder value = new StringBuilder();
+      for (String column : columns) {
+        if (value.length() > 0) {
+          value.append(',');
+        }
+        value.append(column);
+      }
+      add(IndexedTable.INDEX_COLUMNS_CONF_KEY, value.toString());
+      return this;
+    }
+
+    /**
+     * Adds a composite index. The names of the composite indexes of a table must be unique.
+     */
+    public Builder addCompositeIndex(CompositeIndex index) {
+      for (CompositeIndex existing : compositeIndexes) {
+        if (existing.getName().equals(index.getName())) {
+          throw new IllegalArgumentException("Composite index '" + index.getName() + "' is already defined");
+        }
+      }
+      compositeIndexes.add(index);
+      add(COMPOSITE_INDEXES, GSON.toJson(compositeIndexes, LIST_COMPOSITE_INDEX_TYPE));
+      return this;
+    }
+
+    /**
+     * Create a DatasetProperties from this builder.
+     */
+    public DatasetProperties build() {
+      return super.build();
+    }
+  }
+}
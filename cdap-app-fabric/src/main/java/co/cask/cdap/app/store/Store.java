@@ -127,6 +127,13 @@ public interface Store extends RuntimeStore {
   Map<ProgramRunId, RunRecordMeta> getRuns(ProgramRunStatus status, Predicate<RunRecordMeta> filter);
 
 
+  /**
+   * Fetches the run records of the running programs for the given twill run ids.
+   * @param twillRunIds  twill run ids of the programs
+   * @return        map of logged runs
+   */
+  Map<ProgramRunId, RunRecordMeta> getRunsByTwillRunIds(Set<String> twillRunIds);
+
   /**
    * Fetches the run records for given ProgramRunIds.
    * @param programRunIds  list of program RunIds to match against
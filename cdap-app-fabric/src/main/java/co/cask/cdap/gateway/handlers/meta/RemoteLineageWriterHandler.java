@@ -16,6 +16,7 @@
 
 package co.cask.cdap.gateway.handlers.meta;
 
+import co.cask.cdap.common.BadRequestException;
 import co.cask.cdap.common.internal.remote.MethodArgument;
 import co.cask.cdap.data2.metadata.lineage.AccessType;
 import co.cask.cdap.data2.metadata.writer.LineageWriter;
@@ -72,4 +73,29 @@ public class RemoteLineageWriterHandler extends AbstractRemoteSystemOpsHandler {
 
     responder.sendStatus(HttpResponseStatus.OK);
   }
+
+  /**
+   * Adds a batch of dataset and stream accesses. The arguments are the arguments of each access in sequence.
+   */
+  @POST
+  @Path("/addAccesses")
+  public void addAccesses(HttpRequest request, HttpResponder responder) throws Exception {
+    Iterator<MethodArgument> arguments = parseArguments(request);
+
+    while (arguments.hasNext()) {
+      ProgramRunId run = deserializeNext(arguments);
+      NamespacedEntityId data = deserializeNext(arguments);
+      AccessType accessType = deserializeNext(arguments);
+      NamespacedEntityId component = deserializeNext(arguments);
+      if (data instanceof DatasetId) {
+        lineageWriter.addAccess(run, (DatasetId) data, accessType, component);
+      } else if (data instanceof StreamId) {
+        lineageWriter.addAccess(run, (StreamId) data, accessType, component);
+      } else {
+        throw new BadRequestException("Invalid data entity " + data);
+      }
+    }
+
+    responder.sendStatus(HttpResponseStatus.OK);
+  }
 }
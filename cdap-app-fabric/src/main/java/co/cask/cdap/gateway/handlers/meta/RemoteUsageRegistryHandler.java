@@ -16,9 +16,11 @@
 
 package co.cask.cdap.gateway.handlers.meta;
 
+import co.cask.cdap.common.BadRequestException;
 import co.cask.cdap.common.internal.remote.MethodArgument;
 import co.cask.cdap.data2.registry.UsageRegistry;
 import co.cask.cdap.proto.id.DatasetId;
+import co.cask.cdap.proto.id.EntityId;
 import co.cask.cdap.proto.id.ProgramId;
 import co.cask.cdap.proto.id.StreamId;
 import co.cask.http.HttpResponder;
@@ -66,4 +68,27 @@ public class RemoteUsageRegistryHandler extends AbstractRemoteSystemOpsHandler {
 
     responder.sendStatus(HttpResponseStatus.OK);
   }
+
+  /**
+   * Registers a batch of dataset and stream usages. The arguments are the arguments of each usage in sequence.
+   */
+  @POST
+  @Path("/registerUsages")
+  public void registerUsages(HttpRequest request, HttpResponder responder) throws Exception {
+    Iterator<MethodArgument> arguments = parseArguments(request);
+
+    while (arguments.hasNext()) {
+      ProgramId programId = deserializeNext(arguments);
+      EntityId entityId = deserializeNext(arguments);
+      if (entityId instanceof DatasetId) {
+        usageRegistry.register(programId, (DatasetId) entityId);
+      } else if (entityId instanceof StreamId) {
+        usageRegistry.register(programId, (StreamId) entityId);
+      } else {
+        throw new BadRequestException("Invalid usage entity " + entityId);
+      }
+    }
+
+    responder.sendStatus(HttpResponseStatus.OK);
+  }
 }
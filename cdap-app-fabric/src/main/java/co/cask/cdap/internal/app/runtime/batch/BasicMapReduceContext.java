@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -33,6 +33,7 @@ import co.cask.cdap.app.program.Program;
 import co.cask.cdap.app.runtime.ProgramOptions;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.logging.LoggingContext;
+import co.cask.cdap.data.stream.StreamEventReadFilters;
 import co.cask.cdap.data2.dataset2.DatasetFramework;
 import co.cask.cdap.data2.metadata.lineage.AccessType;
 import co.cask.cdap.data2.transaction.stream.StreamAdmin;
@@ -208,7 +209,9 @@ final class BasicMapReduceContext extends AbstractContext implements MapReduceCo
         namespace = getProgram().getNamespaceId();
       }
       addInput(input.getAlias(),
-               new StreamInputFormatProvider(new NamespaceId(namespace), streamInput, streamAdmin),
+               new StreamInputFormatProvider(new NamespaceId(namespace), streamInput, streamAdmin,
+                                             StreamEventReadFilters.getArguments(streamInput.getName(),
+                                                                                 getRuntimeArguments())),
                mapperCls);
     } else if (input instanceof Input.InputFormatProviderInput) {
       addInput(input.getAlias(), ((Input.InputFormatProviderInput) input).getInputFormatProvider(), mapperCls);
@@ -20,6 +20,8 @@ import co.cask.cdap.api.metrics.MetricsCollectionService;
 import co.cask.cdap.app.guice.DistributedProgramRunnableModule;
 import co.cask.cdap.app.runtime.ProgramOptions;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.data2.metadata.writer.LineageWriter;
+import co.cask.cdap.data2.registry.RuntimeUsageRegistry;
 import co.cask.cdap.internal.app.runtime.ProgramOptionConstants;
 import co.cask.cdap.internal.app.runtime.SystemArguments;
 import co.cask.cdap.internal.app.runtime.batch.MapReduceClassLoader;
@@ -35,7 +37,11 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.twill.internal.Services;
 import org.apache.twill.kafka.client.KafkaClientService;
 import org.apache.twill.zookeeper.ZKClientService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.Flushable;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -45,12 +51,15 @@ import java.util.List;
  */
 public final class DistributedMapReduceTaskContextProvider extends MapReduceTaskContextProvider {
 
+  private static final Logger LOG = LoggerFactory.getLogger(DistributedMapReduceTaskContextProvider.class);
+
   private final ZKClientService zkClientService;
   private final KafkaClientService kafkaClientService;
   private final MetricsCollectionService metricsCollectionService;
   private final AuthorizationEnforcementService authorizationEnforcementService;
   private final MapReduceContextConfig mapReduceContextConfig;
   private final LogAppenderInitializer logAppenderInitializer;
+  private final List<Object> bufferedWriters;
 
   public DistributedMapReduceTaskContextProvider(CConfiguration cConf, Configuration hConf) {
     super(createInjector(cConf, hConf));
@@ -63,6 +72,8 @@ public final class DistributedMapReduceTaskContextProvider extends MapReduceTask
     this.logAppenderInitializer = injector.getInstance(LogAppenderInitializer.class);
     this.authorizationEnforcementService = injector.getInstance(AuthorizationEnforcementService.class);
     this.mapReduceContextConfig = new MapReduceContextConfig(hConf);
+    this.bufferedWriters = Arrays.<Object>asList(injector.getInstance(LineageWriter.class),
+                                                 injector.getInstance(RuntimeUsageRegistry.class));
   }
 
   @Override
@@ -97,6 +108,17 @@ public final class DistributedMapReduceTaskContextProvider extends MapReduceTask
   protected void shutDown() throws Exception {
     super.shutDown();
     Exception failure = null;
+    // Lineage and usage records can be buffered, and need to be flushed before the services are stopped
+    for (Object writer : bufferedWriters) {
+      if (writer instanceof Flushable) {
+        try {
+          ((Flushable) writer).flush();
+        } catch (Exception e) {
+          // Failure to write lineage shouldn't fail the task
+          LOG.warn("Failed to flush {}", writer, e);
+        }
+      }
+    }
     try {
       logAppenderInitializer.close();
     } catch (Exception e) {
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -23,6 +23,7 @@ import co.cask.cdap.api.stream.StreamEventData;
 import co.cask.cdap.api.stream.StreamEventDecoder;
 import co.cask.cdap.common.conf.ConfigurationUtil;
 import co.cask.cdap.data.stream.AbstractStreamInputFormat;
+import co.cask.cdap.data.stream.StreamEventReadFilters;
 import co.cask.cdap.data.stream.StreamUtils;
 import co.cask.cdap.data2.transaction.stream.StreamAdmin;
 import co.cask.cdap.data2.transaction.stream.StreamConfig;
@@ -35,6 +36,7 @@ import org.apache.twill.filesystem.Location;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -45,12 +47,24 @@ public class StreamInputFormatProvider implements InputFormatProvider {
   private final Input.StreamInput streamInput;
   private final StreamId streamId;
   private final StreamAdmin streamAdmin;
+  private final Map<String, String> filterArguments;
 
   public StreamInputFormatProvider(NamespaceId namespaceId,
                                    Input.StreamInput streamInput, StreamAdmin streamAdmin) {
+    this(namespaceId, streamInput, streamAdmin, Collections.<String, String>emptyMap());
+  }
+
+  /**
+   * Creates an instance that filters the stream events while reading.
+   *
+   * @param filterArguments arguments for filtering the stream events, as described in {@link StreamEventReadFilters}
+   */
+  public StreamInputFormatProvider(NamespaceId namespaceId, Input.StreamInput streamInput,
+                                   StreamAdmin streamAdmin, Map<String, String> filterArguments) {
     this.streamId = namespaceId.stream(streamInput.getName());
     this.streamInput = streamInput;
     this.streamAdmin = streamAdmin;
+    this.filterArguments = filterArguments;
   }
 
   public StreamId getStreamId() {
@@ -104,6 +118,9 @@ public class StreamInputFormatProvider implements InputFormatProvider {
           AbstractStreamInputFormat.setDecoderClassName(hConf, decoderType);
         }
       }
+      if (!filterArguments.isEmpty()) {
+        AbstractStreamInputFormat.setReadFilterArguments(hConf, filterArguments);
+      }
 
       return ConfigurationUtil.toMap(hConf);
     } catch (IOException e) {
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -30,6 +30,9 @@ import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.common.lang.jar.BundleJarUtil;
 import co.cask.cdap.data.stream.StreamCoordinatorClient;
+import co.cask.cdap.data2.audit.AuditPublisher;
+import co.cask.cdap.data2.metadata.writer.LineageWriter;
+import co.cask.cdap.data2.registry.RuntimeUsageRegistry;
 import co.cask.cdap.internal.app.ApplicationSpecificationAdapter;
 import co.cask.cdap.internal.app.runtime.AbstractListener;
 import co.cask.cdap.internal.app.runtime.BasicArguments;
@@ -80,6 +83,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.File;
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.Reader;
 import java.lang.reflect.ParameterizedType;
@@ -115,6 +119,7 @@ public abstract class AbstractProgramTwillRunnable<T extends ProgramRunner> impl
   private Configuration hConf;
   private CConfiguration cConf;
   private List<Service> coreServices;
+  private List<Flushable> bufferedWriters;
   private LogAppenderInitializer logAppenderInitializer;
   private CountDownLatch runLatch;
 
@@ -149,6 +154,7 @@ public abstract class AbstractProgramTwillRunnable<T extends ProgramRunner> impl
 
     runLatch = new CountDownLatch(1);
     coreServices = new ArrayList<>();
+    bufferedWriters = new ArrayList<>();
     name = context.getSpecification().getName();
     LOG.info("Initializing runnable: " + name);
     try {
@@ -180,6 +186,16 @@ public abstract class AbstractProgramTwillRunnable<T extends ProgramRunner> impl
       coreServices.add(injector.getInstance(StreamCoordinatorClient.class));
       coreServices.add(injector.getInstance(AuthorizationEnforcementService.class));
 
+      // Lineage and usage records can be buffered, and need to be flushed before the core services are stopped
+      // The audit publisher goes last, as flushing the other writers may publish audit messages
+      for (Object writer : Arrays.asList(injector.getInstance(LineageWriter.class),
+                                         injector.getInstance(RuntimeUsageRegistry.class),
+                                         injector.getInstance(AuditPublisher.class))) {
+        if (writer instanceof Flushable) {
+          bufferedWriters.add((Flushable) writer);
+        }
+      }
+
       // Initialize log appender
       logAppenderInitializer = injector.getInstance(LogAppenderInitializer.class);
       logAppenderInitializer.initialize();
@@ -344,6 +360,13 @@ public abstract class AbstractProgramTwillRunnable<T extends ProgramRunner> impl
       if (program != null) {
         Closeables.closeQuietly(program);
       }
+      for (Flushable writer : bufferedWriters) {
+        try {
+          writer.flush();
+        } catch (Exception e) {
+          LOG.warn("Failed to flush {}", writer, e);
+        }
+      }
       List<Service> services = Lists.reverse(coreServices);
 
       Futures.getUnchecked(
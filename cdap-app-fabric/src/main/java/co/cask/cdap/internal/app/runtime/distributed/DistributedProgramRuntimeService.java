@@ -40,12 +40,10 @@ import co.cask.cdap.proto.Containers;
 import co.cask.cdap.proto.DistributedProgramLiveInfo;
 import co.cask.cdap.proto.NotRunningProgramLiveInfo;
 import co.cask.cdap.proto.ProgramLiveInfo;
-import co.cask.cdap.proto.ProgramRunStatus;
 import co.cask.cdap.proto.ProgramType;
 import co.cask.cdap.proto.id.ArtifactId;
 import co.cask.cdap.proto.id.ProgramId;
 import co.cask.cdap.security.impersonation.Impersonator;
-import com.google.common.base.Predicate;
 import com.google.common.base.Throwables;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableMap;
@@ -69,6 +67,7 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -225,15 +224,11 @@ public final class DistributedProgramRuntimeService extends AbstractProgramRunti
       return ImmutableMap.copyOf(result);
     }
 
-    final Set<RunId> twillRunIds = twillProgramInfo.columnKeySet();
-    Collection<RunRecordMeta> activeRunRecords = store.getRuns(ProgramRunStatus.RUNNING,
-                                                               new Predicate<RunRecordMeta>() {
-      @Override
-      public boolean apply(RunRecordMeta record) {
-        return record.getTwillRunId() != null
-          && twillRunIds.contains(org.apache.twill.internal.RunIds.fromString(record.getTwillRunId()));
-      }
-    }).values();
+    Set<String> twillRunIds = new HashSet<>();
+    for (RunId twillRunId : twillProgramInfo.columnKeySet()) {
+      twillRunIds.add(twillRunId.getId());
+    }
+    Collection<RunRecordMeta> activeRunRecords = store.getRunsByTwillRunIds(twillRunIds).values();
 
     for (RunRecordMeta record : activeRunRecords) {
       String twillRunId = record.getTwillRunId();
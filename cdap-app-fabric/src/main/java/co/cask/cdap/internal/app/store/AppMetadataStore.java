@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -87,17 +87,20 @@ public class AppMetadataStore extends MetadataStoreDataset {
   private static final String TYPE_WORKFLOW_NODE_STATE = "wns";
   private static final String TYPE_WORKFLOW_TOKEN = "wft";
   private static final String TYPE_NAMESPACE = "namespace";
+  // Secondary indexes of run records. Index rows only hold the run id, the run record is looked up
+  // from the primary row that can be derived from the index key.
+  // Completed run records by program, status and start time
+  private static final String TYPE_RUN_RECORD_STATUS_IDX = "runRecordStatusIdx";
+  // Completed run records by stop time and start time, for finding the programs running in a time range
+  private static final String TYPE_RUN_RECORD_STOPPED_IDX = "runRecordStoppedIdx";
+  // Active run records by twill run id
+  private static final String TYPE_RUN_RECORD_TWILL_IDX = "runRecordTwillIdx";
+  // Stop time in seconds from which all completed runs are in the status and stopped indexes. Runs completed
+  // before the indexes existed are only in the indexes after the upgrade, which sets it to 0.
+  private static final String TYPE_RUN_RECORD_INDEXED_SINCE = "runRecordIndexedSince";
 
   private final CConfiguration cConf;
 
-  private static final Function<RunRecordMeta, RunId> RUN_RECORD_META_TO_RUN_ID_FUNCTION =
-    new Function<RunRecordMeta, RunId>() {
-      @Override
-      public RunId apply(RunRecordMeta runRecordMeta) {
-        return RunIds.fromString(runRecordMeta.getPid());
-      }
-    };
-
   public AppMetadataStore(Table table, CConfiguration cConf) {
     super(table);
     this.cConf = cConf;
@@ -248,6 +251,9 @@ public class AppMetadataStore extends MetadataStoreDataset {
     RunRecordMeta meta =
       new RunRecordMeta(pid, startTs, null, ProgramRunStatus.RUNNING, builder.build(), systemArgs, twillRunId);
     write(key, meta);
+    if (twillRunId != null) {
+      write(getTwillRunIdIndexKey(twillRunId, programId, pid), pid);
+    }
   }
 
   public void recordProgramSuspend(ProgramId program, String pid) {
@@ -315,13 +321,101 @@ public class AppMetadataStore extends MetadataStoreDataset {
       .add(getInvertedTsKeyPart(started.getStartTs()))
       .add(pid).build();
 
-    write(key, new RunRecordMeta(started, stopTs, runStatus));
+    RunRecordMeta completed = new RunRecordMeta(started, stopTs, runStatus);
+    if (getIndexedSince() == null) {
+      // If there are completed runs, they were recorded before the indexes existed
+      boolean hasHistory = !listKV(new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED).build(),
+                                   RunRecordMeta.class, 1).isEmpty();
+      write(getIndexedSinceKey(), hasHistory ? stopTs : 0L);
+    }
+    write(key, completed);
+    if (started.getTwillRunId() != null) {
+      deleteAll(getTwillRunIdIndexKey(started.getTwillRunId(), programId, pid));
+    }
+    writeCompletedRunIndexes(programId, completed);
+  }
+
+  private MDSKey getIndexedSinceKey() {
+    return new MDSKey.Builder().add(TYPE_RUN_RECORD_INDEXED_SINCE).build();
+  }
+
+  /**
+   * Returns the stop time in seconds from which all completed runs are in the status and stopped indexes,
+   * or {@code null} if no run was indexed yet.
+   */
+  @Nullable
+  private Long getIndexedSince() {
+    return get(getIndexedSinceKey(), Long.class);
+  }
+
+  /**
+   * Returns whether all completed runs that stopped at or after the given time are in the status and stopped indexes.
+   */
+  private boolean isIndexed(long stopTimeInSecs) {
+    Long indexedSince = getIndexedSince();
+    return indexedSince != null && stopTimeInSecs >= indexedSince;
+  }
+
+  private void writeCompletedRunIndexes(ProgramId programId, RunRecordMeta completed) {
+    write(getProgramKeyBuilder(TYPE_RUN_RECORD_STATUS_IDX, programId)
+            .add(completed.getStatus().name())
+            .add(getInvertedTsKeyPart(completed.getStartTs()))
+            .add(completed.getPid()).build(), completed.getPid());
+    //noinspection ConstantConditions
+    write(getStoppedIndexKey(completed.getStopTs(), completed.getStartTs(), completed.getPid()), completed.getPid());
+  }
+
+  private MDSKey getStoppedIndexKey(long stopTs, long startTs, String pid) {
+    return new MDSKey.Builder().add(TYPE_RUN_RECORD_STOPPED_IDX).add(stopTs).add(startTs).add(pid).build();
+  }
+
+  private MDSKey getTwillRunIdIndexKey(String twillRunId, ProgramId programId, String pid) {
+    return new MDSKey.Builder().add(TYPE_RUN_RECORD_TWILL_IDX, twillRunId)
+      .add(getProgramKeyBuilder(TYPE_RUN_RECORD_STARTED, programId).add(pid).build().getKey())
+      .build();
   }
 
   public Map<ProgramRunId, RunRecordMeta> getRuns(ProgramRunStatus status, Predicate<RunRecordMeta> filter) {
     return getRuns(null, status, 0L, Long.MAX_VALUE, Integer.MAX_VALUE, filter);
   }
 
+  /**
+   * Returns the run records of the running programs that have any of the given twill run ids.
+   */
+  public Map<ProgramRunId, RunRecordMeta> getRunsByTwillRunIds(Set<String> twillRunIds) {
+    Map<MDSKey, RunRecordMeta> runRecords = new LinkedHashMap<>();
+    final Set<String> notIndexed = new HashSet<>();
+    for (String twillRunId : twillRunIds) {
+      Map<MDSKey, String> indexed =
+        listKV(new MDSKey.Builder().add(TYPE_RUN_RECORD_TWILL_IDX, twillRunId).build(), String.class);
+      if (indexed.isEmpty()) {
+        notIndexed.add(twillRunId);
+      }
+      for (MDSKey indexKey : indexed.keySet()) {
+        // The index key ends with the key of the started run record
+        MDSKey.Splitter splitter = indexKey.split();
+        splitter.skipString();
+        splitter.skipString();
+        MDSKey startedKey = new MDSKey(splitter.getBytes());
+        RunRecordMeta record = get(startedKey, RunRecordMeta.class);
+        if (record != null) {
+          runRecords.put(startedKey, record);
+        }
+      }
+    }
+    if (!notIndexed.isEmpty()) {
+      // Runs started before the index existed
+      runRecords.putAll(listKV(new MDSKey.Builder().add(TYPE_RUN_RECORD_STARTED).build(), null,
+                               RunRecordMeta.class, Integer.MAX_VALUE, new Predicate<RunRecordMeta>() {
+          @Override
+          public boolean apply(RunRecordMeta record) {
+            return record.getTwillRunId() != null && notIndexed.contains(record.getTwillRunId());
+          }
+        }));
+    }
+    return getProgramRunIdMap(runRecords);
+  }
+
   public Map<ProgramRunId, RunRecordMeta> getRuns(Set<ProgramRunId> programRunIds) {
     return getRuns(programRunIds, Integer.MAX_VALUE);
   }
@@ -497,6 +591,12 @@ public class AppMetadataStore extends MetadataStoreDataset {
                   filter == null ? Predicates.<RunRecordMeta>alwaysTrue() : filter);
     }
 
+    // Runs started in the time range stopped after its start. If those are not all indexed, they are only
+    // found by scanning the run records
+    if (programId != null && isIndexed(startTime)) {
+      return getHistoricalRunsByStatus(programId, status, startTime, endTime, limit, filter);
+    }
+
     if (status.equals(ProgramRunStatus.COMPLETED)) {
       return listKV(start, stop, RunRecordMeta.class, limit,
                   andPredicate(getPredicate(ProgramController.State.COMPLETED), filter));
@@ -509,6 +609,44 @@ public class AppMetadataStore extends MetadataStoreDataset {
                 andPredicate(getPredicate(ProgramController.State.ERROR), filter));
   }
 
+  /**
+   * Seeks the status index for the completed runs of a program with the given status, and looks up only
+   * the run records in the given time range.
+   */
+  private Map<MDSKey, RunRecordMeta> getHistoricalRunsByStatus(ProgramId programId, ProgramRunStatus status,
+                                                               long startTime, long endTime, final int limit,
+                                                               @Nullable final Predicate<RunRecordMeta> filter) {
+    final Map<MDSKey, RunRecordMeta> result = new LinkedHashMap<>();
+    if (limit <= 0) {
+      return result;
+    }
+    // Failed runs are recorded with the status of the ERROR state
+    String statusName = status.equals(ProgramRunStatus.COMPLETED) || status.equals(ProgramRunStatus.KILLED)
+      ? status.name() : ProgramController.State.ERROR.getRunStatus().name();
+    MDSKey statusKey = getProgramKeyBuilder(TYPE_RUN_RECORD_STATUS_IDX, programId).add(statusName).build();
+    MDSKey start = new MDSKey.Builder(statusKey).add(getInvertedTsScanKeyPart(endTime)).build();
+    MDSKey stop = new MDSKey.Builder(statusKey).add(getInvertedTsScanKeyPart(startTime)).build();
+    final MDSKey historyKey = getProgramKeyBuilder(TYPE_RUN_RECORD_COMPLETED, programId).build();
+
+    scan(start, stop, String.class, new Function<KeyValue<String>, Boolean>() {
+      @Override
+      public Boolean apply(KeyValue<String> input) {
+        MDSKey.Splitter splitter = input.getKey().split();
+        // skip record type, namespace, app, version, program type, program and status
+        for (int i = 0; i < 7; i++) {
+          splitter.skipString();
+        }
+        MDSKey key = new MDSKey.Builder(historyKey).add(splitter.getLong()).add(input.getValue()).build();
+        RunRecordMeta record = get(key, RunRecordMeta.class);
+        if (record != null && (filter == null || filter.apply(record))) {
+          result.put(key, record);
+        }
+        return result.size() < limit;
+      }
+    });
+    return result;
+  }
+
   private Predicate<RunRecordMeta> getPredicate(final ProgramController.State state) {
     return new Predicate<RunRecordMeta>() {
       @Override
@@ -561,15 +699,34 @@ public class AppMetadataStore extends MetadataStoreDataset {
   }
 
   public void deleteProgramHistory(String namespaceId, String appId) {
-    deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_STARTED, namespaceId, appId).build());
-    deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED, namespaceId, appId).build());
-    deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_SUSPENDED, namespaceId, appId).build());
+    deleteProgramHistory(namespaceId, new String[] { appId });
   }
 
   public void deleteProgramHistory(String namespaceId) {
-    deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_STARTED, namespaceId).build());
-    deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED, namespaceId).build());
-    deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_SUSPENDED, namespaceId).build());
+    deleteProgramHistory(namespaceId, new String[0]);
+  }
+
+  private void deleteProgramHistory(String namespaceId, String[] appId) {
+    // Index rows not prefixed by the program are deleted one by one
+    for (String recordType : new String[] { TYPE_RUN_RECORD_STARTED, TYPE_RUN_RECORD_SUSPENDED }) {
+      MDSKey activeKey = new MDSKey.Builder().add(recordType, namespaceId).add(appId).build();
+      for (Map.Entry<MDSKey, RunRecordMeta> entry : listKV(activeKey, RunRecordMeta.class).entrySet()) {
+        if (entry.getValue().getTwillRunId() != null) {
+          deleteAll(getTwillRunIdIndexKey(entry.getValue().getTwillRunId(), getProgramID(entry.getKey()),
+                                          entry.getValue().getPid()));
+        }
+      }
+      deleteAll(activeKey);
+    }
+    MDSKey completedKey = new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED, namespaceId).add(appId).build();
+    for (Map.Entry<MDSKey, RunRecordMeta> entry : listKV(completedKey, RunRecordMeta.class).entrySet()) {
+      if (entry.getValue().getStopTs() != null) {
+        deleteAll(getStoppedIndexKey(entry.getValue().getStopTs(), entry.getValue().getStartTs(),
+                                     entry.getValue().getPid()));
+      }
+    }
+    deleteAll(completedKey);
+    deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_STATUS_IDX, namespaceId).add(appId).build());
   }
 
   public void createNamespace(NamespaceMeta metadata) {
@@ -630,8 +787,8 @@ public class AppMetadataStore extends MetadataStoreDataset {
     LOG.trace("Scan timeout = {}ms", scanTimeoutMills);
 
     Set<RunId> runIds = new HashSet<>();
-    Iterables.addAll(runIds, getRunningInRangeForStatus(TYPE_RUN_RECORD_COMPLETED, startTimeInSecs, endTimeInSecs,
-                                                        scanTimeoutMills));
+    Iterables.addAll(runIds, Iterables.concat(getCompletedInRange(startTimeInSecs, endTimeInSecs, scanTimeoutMills,
+                                                                  Ticker.systemTicker())));
     Iterables.addAll(runIds, getRunningInRangeForStatus(TYPE_RUN_RECORD_SUSPENDED, startTimeInSecs, endTimeInSecs,
                                                         scanTimeoutMills));
     Iterables.addAll(runIds, getRunningInRangeForStatus(TYPE_RUN_RECORD_STARTED, startTimeInSecs, endTimeInSecs,
@@ -650,7 +807,7 @@ public class AppMetadataStore extends MetadataStoreDataset {
   List<Iterable<RunId>> getRunningInRangeForStatus(String statusKey, final long startTimeInSecs,
                                                    final long endTimeInSecs, long maxScanTimeMillis, Ticker ticker) {
     // Create time filter to get running programs between start and end time
-    Predicate<RunRecordMeta> timeFilter = new Predicate<RunRecordMeta>() {
+    final Predicate<RunRecordMeta> timeFilter = new Predicate<RunRecordMeta>() {
       @Override
       public boolean apply(RunRecordMeta runRecordMeta) {
         // Program is running in range [startTime, endTime) if the program started before endTime
@@ -660,19 +817,57 @@ public class AppMetadataStore extends MetadataStoreDataset {
       }
     };
 
+    MDSKey startKey = new MDSKey.Builder().add(statusKey).build();
+    return scanRunIds(startKey, new MDSKey(Bytes.stopKeyForPrefix(startKey.getKey())), RunRecordMeta.class,
+                      new Function<KeyValue<RunRecordMeta>, RunId>() {
+      @Override
+      public RunId apply(KeyValue<RunRecordMeta> input) {
+        return timeFilter.apply(input.getValue()) ? RunIds.fromString(input.getValue().getPid()) : null;
+      }
+    }, maxScanTimeMillis, ticker);
+  }
+
+  /**
+   * Returns the completed programs that were running between given start and end time, by scanning the runs
+   * stopped after the start time from the stopped index.
+   */
+  @VisibleForTesting
+  List<Iterable<RunId>> getCompletedInRange(long startTimeInSecs, final long endTimeInSecs,
+                                            long maxScanTimeMillis, Ticker ticker) {
+    if (!isIndexed(startTimeInSecs)) {
+      // Runs stopped before the index existed are only found by scanning the run records
+      return getRunningInRangeForStatus(TYPE_RUN_RECORD_COMPLETED, startTimeInSecs, endTimeInSecs,
+                                        maxScanTimeMillis, ticker);
+    }
+    MDSKey indexKey = new MDSKey.Builder().add(TYPE_RUN_RECORD_STOPPED_IDX).build();
+    MDSKey startKey = new MDSKey.Builder(indexKey).add(Math.max(0L, startTimeInSecs)).build();
+    return scanRunIds(startKey, new MDSKey(Bytes.stopKeyForPrefix(indexKey.getKey())), String.class,
+                      new Function<KeyValue<String>, RunId>() {
+      @Override
+      public RunId apply(KeyValue<String> input) {
+        MDSKey.Splitter splitter = input.getKey().split();
+        splitter.skipString();
+        splitter.skipLong();
+        // Program is running in range if it started before endTime, its stop time is at least startTime
+        return splitter.getLong() < endTimeInSecs ? RunIds.fromString(input.getValue()) : null;
+      }
+    }, maxScanTimeMillis, ticker);
+  }
+
+  private <T> List<Iterable<RunId>> scanRunIds(MDSKey startKey, MDSKey endKey, Type typeOfT,
+                                               Function<KeyValue<T>, RunId> runIdFunction,
+                                               long maxScanTimeMillis, Ticker ticker) {
     // Break up scans into smaller batches to prevent transaction timeout
     List<Iterable<RunId>> batches = new ArrayList<>();
-    MDSKey startKey = new MDSKey.Builder().add(statusKey).build();
-    MDSKey endKey = new MDSKey(Bytes.stopKeyForPrefix(startKey.getKey()));
     while (true) {
-      ScanFunction scanFunction = new ScanFunction(timeFilter, ticker, maxScanTimeMillis);
+      ScanFunction<T> scanFunction = new ScanFunction<>(runIdFunction, ticker, maxScanTimeMillis);
       scanFunction.start();
-      scan(startKey, endKey, RunRecordMeta.class, scanFunction);
+      scan(startKey, endKey, typeOfT, scanFunction);
       // stop when scan returns zero elements
       if (scanFunction.getNumProcessed() == 0) {
         break;
       }
-      batches.add(Iterables.transform(scanFunction.getValues(), RUN_RECORD_META_TO_RUN_ID_FUNCTION));
+      batches.add(scanFunction.getValues());
       // key for next scan is the last key + 1 from the previous scan
       startKey = new MDSKey(Bytes.stopKeyForPrefix(scanFunction.getLastKey().getKey()));
     }
@@ -687,6 +882,31 @@ public class AppMetadataStore extends MetadataStoreDataset {
     upgradeVersionKeys(TYPE_RUN_RECORD_COMPLETED, RunRecordMeta.class);
     upgradeVersionKeys(TYPE_WORKFLOW_NODE_STATE, WorkflowNodeStateDetail.class);
     upgradeVersionKeys(TYPE_WORKFLOW_TOKEN, BasicWorkflowToken.class);
+    upgradeRunRecordIndexes();
+  }
+
+  /**
+   * Writes the secondary index rows of the run records that were recorded before the indexes existed.
+   */
+  private void upgradeRunRecordIndexes() {
+    LOG.info("Upgrading run record indexes");
+    for (String recordType : new String[] { TYPE_RUN_RECORD_STARTED, TYPE_RUN_RECORD_SUSPENDED }) {
+      MDSKey activeKey = new MDSKey.Builder().add(recordType).build();
+      for (Map.Entry<MDSKey, RunRecordMeta> entry : listKV(activeKey, RunRecordMeta.class).entrySet()) {
+        RunRecordMeta record = entry.getValue();
+        if (record.getTwillRunId() != null) {
+          write(getTwillRunIdIndexKey(record.getTwillRunId(), getProgramID(entry.getKey()), record.getPid()),
+                record.getPid());
+        }
+      }
+    }
+    MDSKey completedKey = new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED).build();
+    for (Map.Entry<MDSKey, RunRecordMeta> entry : listKV(completedKey, RunRecordMeta.class).entrySet()) {
+      if (entry.getValue().getStopTs() != null) {
+        writeCompletedRunIndexes(getProgramID(entry.getKey()), entry.getValue());
+      }
+    }
+    write(getIndexedSinceKey(), 0L);
   }
 
   /**
@@ -834,16 +1054,18 @@ public class AppMetadataStore extends MetadataStoreDataset {
     }
   }
 
-  private static class ScanFunction implements Function<MetadataStoreDataset.KeyValue<RunRecordMeta>, Boolean> {
-    private final Predicate<RunRecordMeta> filter;
+  private static class ScanFunction<T> implements Function<MetadataStoreDataset.KeyValue<T>, Boolean> {
+    // Returns the RunId of a scanned element, or null if it should be skipped
+    private final Function<MetadataStoreDataset.KeyValue<T>, RunId> runIdFunction;
     private final Stopwatch stopwatch;
     private final long maxScanTimeMillis;
-    private final List<RunRecordMeta> values = new ArrayList<>();
+    private final List<RunId> values = new ArrayList<>();
     private int numProcessed = 0;
     private MDSKey lastKey;
 
-    ScanFunction(Predicate<RunRecordMeta> filter, Ticker ticker, long maxScanTimeMillis) {
-      this.filter = filter;
+    ScanFunction(Function<MetadataStoreDataset.KeyValue<T>, RunId> runIdFunction, Ticker ticker,
+                 long maxScanTimeMillis) {
+      this.runIdFunction = runIdFunction;
       this.maxScanTimeMillis = maxScanTimeMillis;
       this.stopwatch = new Stopwatch(ticker);
     }
@@ -852,7 +1074,7 @@ public class AppMetadataStore extends MetadataStoreDataset {
       stopwatch.start();
     }
 
-    public List<RunRecordMeta> getValues() {
+    public List<RunId> getValues() {
       return Collections.unmodifiableList(values);
     }
 
@@ -865,7 +1087,7 @@ public class AppMetadataStore extends MetadataStoreDataset {
     }
 
     @Override
-    public Boolean apply(MetadataStoreDataset.KeyValue<RunRecordMeta> input) {
+    public Boolean apply(MetadataStoreDataset.KeyValue<T> input) {
       long elapsedMillis = stopwatch.elapsedMillis();
       if (elapsedMillis > maxScanTimeMillis) {
         return false;
@@ -873,8 +1095,9 @@ public class AppMetadataStore extends MetadataStoreDataset {
 
       ++numProcessed;
       lastKey = input.getKey();
-      if (filter.apply(input.getValue())) {
-        values.add(input.getValue());
+      RunId runId = runIdFunction.apply(input);
+      if (runId != null) {
+        values.add(runId);
       }
       return true;
     }
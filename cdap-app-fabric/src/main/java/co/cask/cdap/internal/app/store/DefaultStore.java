@@ -400,6 +400,16 @@ public class DefaultStore implements Store {
     });
   }
 
+  @Override
+  public Map<ProgramRunId, RunRecordMeta> getRunsByTwillRunIds(final Set<String> twillRunIds) {
+    return Transactions.executeUnchecked(transactional, new TxCallable<Map<ProgramRunId, RunRecordMeta>>() {
+      @Override
+      public Map<ProgramRunId, RunRecordMeta> call(DatasetContext context) throws Exception {
+        return getAppMetadataStore(context).getRunsByTwillRunIds(twillRunIds);
+      }
+    });
+  }
+
   @Override
   public Map<ProgramRunId, RunRecordMeta> getRuns(final Set<ProgramRunId> programRunIds) {
     return Transactions.executeUnchecked(transactional, new TxCallable<Map<ProgramRunId, RunRecordMeta>>() {
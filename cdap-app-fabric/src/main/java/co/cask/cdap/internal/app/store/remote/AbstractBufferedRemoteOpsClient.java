@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.store.remote;
+
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.internal.remote.RemoteOpsClient;
+import org.apache.twill.common.Threads;
+import org.apache.twill.discovery.DiscoveryServiceClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link RemoteOpsClient} that buffers calls and executes them asynchronously in batches, so that the calls don't
+ * block the program. All buffered calls are sent in a single request to a batch method of the remote handler, with
+ * the arguments of the calls concatenated. The buffer is bounded; when it is full, the caller flushes it.
+ * Buffered calls are flushed shortly after they are added, on {@link #flush()}, on {@link #close()} and when the JVM
+ * shuts down.
+ */
+abstract class AbstractBufferedRemoteOpsClient extends RemoteOpsClient implements Flushable, Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AbstractBufferedRemoteOpsClient.class);
+
+  private static final int MAX_BUFFERED_CALLS = 1000;
+  private static final long FLUSH_DELAY_MILLIS = 500;
+
+  private final String batchMethodName;
+  private final BlockingQueue<Object[]> calls;
+  private final ScheduledExecutorService executor;
+  private final AtomicBoolean flushScheduled;
+
+  protected AbstractBufferedRemoteOpsClient(DiscoveryServiceClient discoveryClient, String batchMethodName) {
+    super(discoveryClient, Constants.Service.REMOTE_SYSTEM_OPERATION);
+    this.batchMethodName = batchMethodName;
+    this.calls = new LinkedBlockingQueue<>(MAX_BUFFERED_CALLS);
+    this.executor = Executors.newSingleThreadScheduledExecutor(
+      Threads.createDaemonThreadFactory(batchMethodName + "-flusher"));
+    this.flushScheduled = new AtomicBoolean();
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      @Override
+      public void run() {
+        close();
+      }
+    });
+  }
+
+  /**
+   * Adds a call with the given arguments to the buffer.
+   */
+  protected void enqueue(Object... arguments) {
+    while (!calls.offer(arguments)) {
+      // The buffer is full, flush it in the caller thread to bound the memory used
+      flushQuietly();
+    }
+    if (!flushScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      executor.schedule(new Runnable() {
+        @Override
+        public void run() {
+          flushScheduled.set(false);
+          flushQuietly();
+        }
+      }, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // Already closed
+      flushScheduled.set(false);
+      flushQuietly();
+    }
+  }
+
+  /**
+   * Sends all buffered calls to the remote handler.
+   */
+  @Override
+  public synchronized void flush() {
+    List<Object[]> batch = new ArrayList<>(calls.size());
+    calls.drainTo(batch);
+    if (batch.isEmpty()) {
+      return;
+    }
+    List<Object> arguments = new ArrayList<>();
+    for (Object[] call : batch) {
+      Collections.addAll(arguments, call);
+    }
+    executeRequest(batchMethodName, arguments.toArray());
+  }
+
+  @Override
+  public void close() {
+    executor.shutdown();
+    flushQuietly();
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (Throwable t) {
+      // Failure to write these records shouldn't fail the program
+      LOG.warn("Failed to execute {} on the remote system operations service", batchMethodName);
+      // Log the stacktrace as debug to not polluting the log
+      LOG.debug("Cause for {} failure", batchMethodName, t);
+    }
+  }
+}
@@ -16,8 +16,6 @@
 
 package co.cask.cdap.internal.app.store.remote;
 
-import co.cask.cdap.common.conf.Constants;
-import co.cask.cdap.common.internal.remote.RemoteOpsClient;
 import co.cask.cdap.data2.metadata.lineage.AccessType;
 import co.cask.cdap.data2.metadata.writer.BasicLineageWriter;
 import co.cask.cdap.data2.metadata.writer.LineageWriter;
@@ -34,15 +32,15 @@ import javax.annotation.Nullable;
 
 /**
  * Implementation of LineageWriter, which uses an HTTP Client to execute the actual lineage writing in a remote
- * server.
+ * server. Accesses are recorded once per run and are written asynchronously in batches.
  */
-public class RemoteLineageWriter extends RemoteOpsClient implements LineageWriter {
+public class RemoteLineageWriter extends AbstractBufferedRemoteOpsClient implements LineageWriter {
 
   private final ConcurrentMap<BasicLineageWriter.DataAccessKey, Boolean> registered = new ConcurrentHashMap<>();
 
   @Inject
   RemoteLineageWriter(DiscoveryServiceClient discoveryClient) {
-    super(discoveryClient, Constants.Service.REMOTE_SYSTEM_OPERATION);
+    super(discoveryClient, "addAccesses");
   }
 
   @Override
@@ -57,7 +55,7 @@ public class RemoteLineageWriter extends RemoteOpsClient implements LineageWrite
     if (alreadyRegistered(run, datasetInstance, accessType, component)) {
       return;
     }
-    executeRequest("addDatasetAccess", run, datasetInstance, accessType, component);
+    enqueue(run, datasetInstance, accessType, component);
   }
 
   @Override
@@ -72,7 +70,7 @@ public class RemoteLineageWriter extends RemoteOpsClient implements LineageWrite
     if (alreadyRegistered(run, stream, accessType, component)) {
       return;
     }
-    executeRequest("addStreamAccess", run, stream, accessType, component);
+    enqueue(run, stream, accessType, component);
   }
 
   private boolean alreadyRegistered(ProgramRunId run, NamespacedEntityId data, AccessType accessType,
@@ -16,31 +16,30 @@
 
 package co.cask.cdap.internal.app.store.remote;
 
-import co.cask.cdap.common.conf.Constants;
-import co.cask.cdap.common.internal.remote.RemoteOpsClient;
-import co.cask.cdap.data2.registry.DatasetUsageKey;
 import co.cask.cdap.data2.registry.RuntimeUsageRegistry;
 import co.cask.cdap.proto.id.DatasetId;
 import co.cask.cdap.proto.id.EntityId;
 import co.cask.cdap.proto.id.ProgramId;
 import co.cask.cdap.proto.id.StreamId;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import org.apache.twill.discovery.DiscoveryServiceClient;
 
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
  * Implementation of RuntimeUsageRegistry, which uses an HTTP Client to execute the actual usage dataset updates in a
- * remote server.
+ * remote server. Usages are registered once and are written asynchronously in batches.
  */
-public class RemoteRuntimeUsageRegistry extends RemoteOpsClient implements RuntimeUsageRegistry {
+public class RemoteRuntimeUsageRegistry extends AbstractBufferedRemoteOpsClient implements RuntimeUsageRegistry {
 
-  private final ConcurrentMap<DatasetUsageKey, Boolean> registered = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Map.Entry<ProgramId, EntityId>, Boolean> registered = new ConcurrentHashMap<>();
 
   @Inject
   RemoteRuntimeUsageRegistry(DiscoveryServiceClient discoveryClient) {
-    super(discoveryClient, Constants.Service.REMOTE_SYSTEM_OPERATION);
+    super(discoveryClient, "registerUsages");
   }
 
   @Override
@@ -73,18 +72,21 @@ public class RemoteRuntimeUsageRegistry extends RemoteOpsClient implements Runti
 
   @Override
   public void register(ProgramId programId, DatasetId datasetInstanceId) {
-    if (alreadyRegistered(datasetInstanceId, programId)) {
+    if (alreadyRegistered(programId, datasetInstanceId)) {
       return;
     }
-    executeRequest("registerDataset", programId, datasetInstanceId);
+    enqueue(programId, datasetInstanceId);
   }
 
   @Override
   public void register(ProgramId programId, StreamId streamId) {
-    executeRequest("registerStream", programId, streamId);
+    if (alreadyRegistered(programId, streamId)) {
+      return;
+    }
+    enqueue(programId, streamId);
   }
 
-  private boolean alreadyRegistered(DatasetId dataset, ProgramId owner) {
-    return registered.putIfAbsent(new DatasetUsageKey(dataset, owner), true) != null;
+  private boolean alreadyRegistered(ProgramId owner, EntityId entity) {
+    return registered.putIfAbsent(Maps.<ProgramId, EntityId>immutableEntry(owner, entity), true) != null;
   }
 }
@@ -41,6 +41,10 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -95,6 +99,22 @@ public class DefaultMetadataAdmin implements MetadataAdmin {
     metadataStore.addTags(MetadataScope.USER, namespacedEntityId, tags);
   }
 
+  @Override
+  public void addMetadata(Collection<MetadataRecord> records) throws NotFoundException, InvalidMetadataException {
+    List<MetadataRecord> userRecords = new ArrayList<>(records.size());
+    for (MetadataRecord record : records) {
+      NamespacedEntityId namespacedEntityId = record.getEntityId();
+      Map<String, String> properties = record.getProperties() == null ?
+        Collections.<String, String>emptyMap() : record.getProperties();
+      Set<String> tags = record.getTags() == null ? Collections.<String>emptySet() : record.getTags();
+      entityExistenceVerifier.ensureExists(namespacedEntityId);
+      validateProperties(namespacedEntityId, properties);
+      validateTags(namespacedEntityId, tags.toArray(new String[tags.size()]));
+      userRecords.add(new MetadataRecord(namespacedEntityId, MetadataScope.USER, properties, tags));
+    }
+    metadataStore.addMetadata(userRecords);
+  }
+
   @Override
   public Set<MetadataRecord> getMetadata(NamespacedEntityId namespacedEntityId) throws NotFoundException {
     entityExistenceVerifier.ensureExists(namespacedEntityId);
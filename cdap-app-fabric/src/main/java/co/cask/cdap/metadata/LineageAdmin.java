@@ -26,6 +26,7 @@ import co.cask.cdap.data2.metadata.lineage.LineageStore;
 import co.cask.cdap.data2.metadata.lineage.LineageStoreReader;
 import co.cask.cdap.data2.metadata.lineage.Relation;
 import co.cask.cdap.data2.metadata.store.MetadataStore;
+import co.cask.cdap.internal.app.runtime.ProgramOptionConstants;
 import co.cask.cdap.internal.app.store.RunRecordMeta;
 import co.cask.cdap.proto.ProgramRunStatus;
 import co.cask.cdap.proto.id.ApplicationId;
@@ -244,24 +245,6 @@ public class LineageAdmin {
     return relationsNew;
   }
 
-  private Set<String> getWorkflowIds (Multimap<RelationKey, Relation> relations,
-                                      Map<ProgramRunId, RunRecordMeta> runRecordMap) throws NotFoundException {
-
-    final Set<String> workflowIDs = new HashSet<>();
-    for (Relation relation : Iterables.concat(relations.values())) {
-      RunRecordMeta runRecord = runRecordMap.get(
-        new ProgramRunId(relation.getProgram().getNamespace(), relation.getProgram().getApplication(),
-                         relation.getProgram().getType(), relation.getProgram().getProgram(),
-                         relation.getRun().getId()));
-      if (runRecord != null && runRecord.getProperties().containsKey("workflowrunid")) {
-        String workflowRunId = runRecord.getProperties().get("workflowrunid");
-        workflowIDs.add(workflowRunId);
-      }
-    }
-
-    return workflowIDs;
-  }
-
   private Multimap<RelationKey, Relation> doComputeRollupLineage(Multimap<RelationKey,
     Relation> relations) throws NotFoundException {
 
@@ -276,24 +259,40 @@ public class LineageAdmin {
     // Get RunRecordMeta for all these ProgramRunIDs
     final Map<ProgramRunId, RunRecordMeta> runRecordMap = store.getRuns(programRunIdSet);
 
-    // Get workflow Run IDs for all the programs in the relations
-    final Set<String> workflowIDs = getWorkflowIds(relations, runRecordMap);
+    // Create a map from RunId to ProgramId for all workflows. The workflow run of a program is resolved from the
+    // workflow name recorded in the system arguments of the program run, which is in the same application.
+    Map<String, ProgramRunId> workflowIdMap = new HashMap<>();
+    final Set<String> unresolvedWorkflowIds = new HashSet<>();
+    for (Map.Entry<ProgramRunId, RunRecordMeta> entry : runRecordMap.entrySet()) {
+      String workflowRunId = entry.getValue().getProperties().get("workflowrunid");
+      if (workflowRunId == null || workflowIdMap.containsKey(workflowRunId)) {
+        continue;
+      }
+      Map<String, String> systemArgs = entry.getValue().getSystemArgs();
+      String workflowName = systemArgs == null ? null : systemArgs.get(ProgramOptionConstants.WORKFLOW_NAME);
+      if (workflowName == null) {
+        unresolvedWorkflowIds.add(workflowRunId);
+      } else {
+        workflowIdMap.put(workflowRunId, entry.getKey().getParent().getParent().workflow(workflowName)
+          .run(workflowRunId));
+      }
+    }
+    unresolvedWorkflowIds.removeAll(workflowIdMap.keySet());
 
-    // Get Program IDs for workflow Run IDs
+    // Run records without system arguments need a scan to find the workflow.
     // TODO: These scans could be expensive. CDAP-7571.
-    Map<ProgramRunId, RunRecordMeta> workflowRunRecordMap =
-      store.getRuns(ProgramRunStatus.ALL,
-                    new Predicate<RunRecordMeta>() {
-                      @Override
-                      public boolean apply(RunRecordMeta input) {
-                        return workflowIDs.contains(input.getPid());
-                      }
-                    });
-
-    // Create a map from RunId to ProgramId for all workflows
-    Map<String, ProgramRunId> workflowIdMap = new HashMap<>();
-    for (Map.Entry<ProgramRunId, RunRecordMeta> entry : workflowRunRecordMap.entrySet()) {
-      workflowIdMap.put(entry.getValue().getPid(), entry.getKey());
+    if (!unresolvedWorkflowIds.isEmpty()) {
+      Map<ProgramRunId, RunRecordMeta> workflowRunRecordMap =
+        store.getRuns(ProgramRunStatus.ALL,
+                      new Predicate<RunRecordMeta>() {
+                        @Override
+                        public boolean apply(RunRecordMeta input) {
+                          return unresolvedWorkflowIds.contains(input.getPid());
+                        }
+                      });
+      for (Map.Entry<ProgramRunId, RunRecordMeta> entry : workflowRunRecordMap.entrySet()) {
+        workflowIdMap.put(entry.getValue().getPid(), entry.getKey());
+      }
     }
 
     // For all relations, replace ProgramIds with workflow ProgramIds
@@ -321,39 +320,41 @@ public class LineageAdmin {
     Set<ProgramId> visitedPrograms = new HashSet<>();
     Set<ProgramId> toVisitPrograms = new HashSet<>();
 
+    // Each level is fetched with one read of the lineage adjacency index for all entities of the level
     toVisitDatasets.add(sourceData);
     for (int i = 0; i < levels; ++i) {
       LOG.trace("Level {}", i);
       toVisitPrograms.clear();
-      for (NamespacedEntityId d : toVisitDatasets) {
-        if (visitedDatasets.add(d)) {
-          LOG.trace("Visiting dataset {}", d);
-          // Fetch related programs
-          Iterable<Relation> programRelations = getProgramRelations(d, scanRange.getStart(), scanRange.getEnd(),
-                                                                    scanRange.getFilter());
-          LOG.trace("Got program relations {}", programRelations);
-          for (Relation relation : programRelations) {
-            relations.put(new RelationKey(relation), relation);
-          }
-          Iterables.addAll(toVisitPrograms, Iterables.transform(programRelations, RELATION_TO_PROGRAM_FUNCTION));
+      toVisitDatasets.removeAll(visitedDatasets);
+      if (!toVisitDatasets.isEmpty()) {
+        LOG.trace("Visiting datasets {}", toVisitDatasets);
+        visitedDatasets.addAll(toVisitDatasets);
+        // Fetch related programs
+        Iterable<Relation> programRelations = lineageStoreReader.getRelations(toVisitDatasets, scanRange.getStart(),
+                                                                              scanRange.getEnd(),
+                                                                              scanRange.getFilter());
+        LOG.trace("Got program relations {}", programRelations);
+        for (Relation relation : programRelations) {
+          relations.put(new RelationKey(relation), relation);
         }
+        Iterables.addAll(toVisitPrograms, Iterables.transform(programRelations, RELATION_TO_PROGRAM_FUNCTION));
       }
 
       toVisitDatasets.clear();
-      for (ProgramId p : toVisitPrograms) {
-        if (visitedPrograms.add(p)) {
-          LOG.trace("Visiting program {}", p);
-          // Fetch related datasets
-          Iterable<Relation> datasetRelations = lineageStoreReader.getRelations(p, scanRange.getStart(),
-                                                                                scanRange.getEnd(),
-                                                                                scanRange.getFilter());
-          LOG.trace("Got data relations {}", datasetRelations);
-          for (Relation relation : datasetRelations) {
-            relations.put(new RelationKey(relation), relation);
-          }
-          Iterables.addAll(toVisitDatasets,
-                           Iterables.transform(datasetRelations, RELATION_TO_DATA_FUNCTION));
+      toVisitPrograms.removeAll(visitedPrograms);
+      if (!toVisitPrograms.isEmpty()) {
+        LOG.trace("Visiting programs {}", toVisitPrograms);
+        visitedPrograms.addAll(toVisitPrograms);
+        // Fetch related datasets
+        Iterable<Relation> datasetRelations = lineageStoreReader.getRelations(toVisitPrograms, scanRange.getStart(),
+                                                                              scanRange.getEnd(),
+                                                                              scanRange.getFilter());
+        LOG.trace("Got data relations {}", datasetRelations);
+        for (Relation relation : datasetRelations) {
+          relations.put(new RelationKey(relation), relation);
         }
+        Iterables.addAll(toVisitDatasets,
+                         Iterables.transform(datasetRelations, RELATION_TO_DATA_FUNCTION));
       }
     }
 
@@ -367,19 +368,6 @@ public class LineageAdmin {
     return lineage;
   }
 
-  private Iterable<Relation> getProgramRelations(NamespacedEntityId data, long start, long end,
-                                                 Predicate<Relation> filter) {
-    if (data instanceof DatasetId) {
-      return lineageStoreReader.getRelations((DatasetId) data, start, end, filter);
-    }
-
-    if (data instanceof StreamId) {
-      return lineageStoreReader.getRelations((StreamId) data, start, end, filter);
-    }
-
-    throw new IllegalStateException("Unknown data type " + data);
-  }
-
   /**
    * Convert a set of runIds into a scan range based on earliest runtime and latest runtime of runIds.
    * Also, add a scan filter to include only runIds in the given set.
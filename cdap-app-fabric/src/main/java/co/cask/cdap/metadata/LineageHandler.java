@@ -34,10 +34,12 @@ import co.cask.cdap.proto.metadata.lineage.CollapseType;
 import co.cask.cdap.proto.metadata.lineage.LineageRecord;
 import co.cask.http.AbstractHttpHandler;
 import co.cask.http.HttpResponder;
+import com.google.common.collect.ImmutableMultimap;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.inject.Inject;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 
@@ -89,11 +91,7 @@ public class LineageHandler extends AbstractHttpHandler {
     DatasetId datasetInstance = new DatasetId(namespaceId, datasetId);
     Lineage lineage = lineageAdmin.computeLineage(datasetInstance, range.getStart(), range.getEnd(),
                                                   levels, rollup);
-    responder.sendJson(HttpResponseStatus.OK,
-                       LineageSerializer.toLineageRecord(TimeUnit.MILLISECONDS.toSeconds(range.getStart()),
-                                                         TimeUnit.MILLISECONDS.toSeconds(range.getEnd()),
-                                                         lineage, getCollapseTypes(collapse)),
-                       LineageRecord.class, GSON);
+    sendLineage(responder, range, lineage, collapse);
   }
 
   @GET
@@ -112,11 +110,7 @@ public class LineageHandler extends AbstractHttpHandler {
 
     StreamId streamId = new StreamId(namespaceId, stream);
     Lineage lineage = lineageAdmin.computeLineage(streamId, range.getStart(), range.getEnd(), levels, rollup);
-    responder.sendJson(HttpResponseStatus.OK,
-                       LineageSerializer.toLineageRecord(TimeUnit.MILLISECONDS.toSeconds(range.getStart()),
-                                                         TimeUnit.MILLISECONDS.toSeconds(range.getEnd()),
-                                                         lineage, getCollapseTypes(collapse)),
-                       LineageRecord.class, GSON);
+    sendLineage(responder, range, lineage, collapse);
   }
 
   @GET
@@ -132,6 +126,15 @@ public class LineageHandler extends AbstractHttpHandler {
     responder.sendJson(HttpResponseStatus.OK, lineageAdmin.getMetadataForRun(run), SET_METADATA_RECORD_TYPE, GSON);
   }
 
+  private void sendLineage(HttpResponder responder, TimeRange range, Lineage lineage, List<String> collapse) {
+    LineageRecord record = LineageSerializer.toLineageRecord(TimeUnit.MILLISECONDS.toSeconds(range.getStart()),
+                                                             TimeUnit.MILLISECONDS.toSeconds(range.getEnd()),
+                                                             lineage, getCollapseTypes(collapse));
+    // Stream the response, since the lineage of a dataset or stream can be large
+    responder.sendContent(HttpResponseStatus.OK, new LineageRecordBodyProducer(GSON, record),
+                          ImmutableMultimap.of(HttpHeaders.Names.CONTENT_TYPE, "application/json"));
+  }
+
   private void checkLevels(int levels) throws BadRequestException {
     if (levels < 1) {
       throw new BadRequestException(String.format("Invalid levels (%d), should be greater than 0.", levels));
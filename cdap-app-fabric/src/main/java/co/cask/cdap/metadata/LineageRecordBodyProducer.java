@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.metadata;
+
+import co.cask.cdap.common.http.AbstractJsonBodyProducer;
+import co.cask.cdap.proto.metadata.lineage.DataRecord;
+import co.cask.cdap.proto.metadata.lineage.LineageRecord;
+import co.cask.cdap.proto.metadata.lineage.ProgramRecord;
+import co.cask.cdap.proto.metadata.lineage.RelationRecord;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Streams a {@link LineageRecord} as JSON, one relation, program or data record at a time. The JSON produced is
+ * the same as the one produced by serializing the {@link LineageRecord} with the given {@link Gson}.
+ */
+final class LineageRecordBodyProducer extends AbstractJsonBodyProducer {
+
+  private final Gson gson;
+  private final LineageRecord record;
+  private Iterator<RelationRecord> relations;
+  private Iterator<Map.Entry<String, ProgramRecord>> programs;
+  private Iterator<Map.Entry<String, DataRecord>> data;
+
+  LineageRecordBodyProducer(Gson gson, LineageRecord record) {
+    this.gson = gson;
+    this.record = record;
+  }
+
+  @Override
+  protected boolean writeNext(JsonWriter writer) throws IOException {
+    if (relations == null) {
+      writer.beginObject();
+      writer.name("start").value(record.getStart());
+      writer.name("end").value(record.getEnd());
+      writer.name("relations").beginArray();
+      relations = record.getRelations().iterator();
+      return true;
+    }
+    if (relations.hasNext()) {
+      gson.toJson(relations.next(), RelationRecord.class, writer);
+      return true;
+    }
+    if (programs == null) {
+      writer.endArray();
+      writer.name("programs").beginObject();
+      programs = record.getPrograms().entrySet().iterator();
+      return true;
+    }
+    if (programs.hasNext()) {
+      Map.Entry<String, ProgramRecord> entry = programs.next();
+      writer.name(entry.getKey());
+      gson.toJson(entry.getValue(), ProgramRecord.class, writer);
+      return true;
+    }
+    if (data == null) {
+      writer.endObject();
+      writer.name("data").beginObject();
+      data = record.getData().entrySet().iterator();
+      return true;
+    }
+    if (data.hasNext()) {
+      Map.Entry<String, DataRecord> entry = data.next();
+      writer.name(entry.getKey());
+      gson.toJson(entry.getValue(), DataRecord.class, writer);
+      return true;
+    }
+    writer.endObject();
+    writer.endObject();
+    return false;
+  }
+}
@@ -26,6 +26,7 @@ import co.cask.cdap.proto.metadata.MetadataRecord;
 import co.cask.cdap.proto.metadata.MetadataScope;
 import co.cask.cdap.proto.metadata.MetadataSearchResponse;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
@@ -59,6 +60,17 @@ public interface MetadataAdmin {
   void addTags(NamespacedEntityId namespacedEntityId, String... tags)
     throws NotFoundException, InvalidMetadataException;
 
+  /**
+   * Adds the properties and tags of each of the specified {@link MetadataRecord}s to its {@link NamespacedEntityId}.
+   * All the records are validated before any metadata is added. The records are applied in batches rather than
+   * one entity at a time. This API only supports adding metadata in {@link MetadataScope#USER}, the scope of the
+   * records is ignored.
+   *
+   * @throws NotFoundException if any of the specified entities was not found
+   * @throws InvalidMetadataException if some of the properties or tags violate metadata validation rules
+   */
+  void addMetadata(Collection<MetadataRecord> records) throws NotFoundException, InvalidMetadataException;
+
   /**
    * Returns a set of {@link MetadataRecord} representing all metadata (including properties and tags) for the specified
    * {@link NamespacedEntityId} in both {@link MetadataScope#USER} and {@link MetadataScope#SYSTEM}.
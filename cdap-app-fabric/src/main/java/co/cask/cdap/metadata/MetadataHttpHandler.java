@@ -41,14 +41,17 @@ import co.cask.http.HttpResponder;
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 import com.google.inject.Inject;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 
@@ -82,6 +85,7 @@ public class MetadataHttpHandler extends AbstractHttpHandler {
   private static final Type MAP_STRING_STRING_TYPE = new TypeToken<Map<String, String>>() { }.getType();
   private static final Type LIST_STRING_TYPE = new TypeToken<List<String>>() { }.getType();
   private static final Type SET_METADATA_RECORD_TYPE = new TypeToken<Set<MetadataRecord>>() { }.getType();
+  private static final Type LIST_METADATA_RECORD_TYPE = new TypeToken<List<MetadataRecord>>() { }.getType();
 
   private static final Function<String, EntityTypeSimpleName> STRING_TO_TARGET_TYPE =
     new Function<String, EntityTypeSimpleName>() {
@@ -226,6 +230,32 @@ public class MetadataHttpHandler extends AbstractHttpHandler {
     responder.sendJson(HttpResponseStatus.OK, getProperties(view, scope));
   }
 
+  /**
+   * Adds the properties and tags of a batch of entities in the namespace. The request body is a list of metadata
+   * records, each containing the entity, the properties to add/update and the tags to add. The scope of the records
+   * is ignored, metadata is always added in {@link MetadataScope#USER}.
+   */
+  @POST
+  @Path("/namespaces/{namespace-id}/metadata/batch")
+  @AuditPolicy(AuditDetail.REQUEST_BODY)
+  public void addMetadata(HttpRequest request, HttpResponder responder,
+                          @PathParam("namespace-id") String namespaceId)
+    throws BadRequestException, NotFoundException {
+    List<MetadataRecord> records = readRecords(request);
+    for (MetadataRecord record : records) {
+      if (record.getEntityId() == null) {
+        throw new BadRequestException("Entity is missing in a metadata record of the request.");
+      }
+      if (!namespaceId.equals(record.getEntityId().getNamespace())) {
+        throw new BadRequestException(String.format("Entity %s does not belong to namespace %s.",
+                                                    record.getEntityId(), namespaceId));
+      }
+    }
+    metadataAdmin.addMetadata(records);
+    responder.sendString(HttpResponseStatus.OK,
+                         String.format("Metadata added successfully to %d entities", records.size()));
+  }
+
   @POST
   @Path("/namespaces/{namespace-id}/apps/{app-id}/metadata/properties")
   @AuditPolicy(AuditDetail.REQUEST_BODY)
@@ -846,6 +876,25 @@ public class MetadataHttpHandler extends AbstractHttpHandler {
     return toReturn.toArray(new String[toReturn.size()]);
   }
 
+  private List<MetadataRecord> readRecords(HttpRequest request) throws BadRequestException {
+    ChannelBuffer content = request.getContent();
+    if (!content.readable()) {
+      throw new BadRequestException("Unable to read a list of metadata records from the request.");
+    }
+
+    List<MetadataRecord> records;
+    try (Reader reader = new InputStreamReader(new ChannelBufferInputStream(content), Charsets.UTF_8)) {
+      records = GSON.fromJson(reader, LIST_METADATA_RECORD_TYPE);
+    } catch (IOException | JsonParseException e) {
+      throw new BadRequestException("Unable to read a list of metadata records from the request.", e);
+    }
+
+    if (records == null) {
+      throw new BadRequestException("Null metadata records were read from the request.");
+    }
+    return records;
+  }
+
   @GET
   @Path("/namespaces/{namespace-id}/metadata/search")
   public void searchMetadata(HttpRequest request, HttpResponder responder,
@@ -877,7 +926,9 @@ public class MetadataHttpHandler extends AbstractHttpHandler {
       MetadataSearchResponse response =
         metadataAdmin.search(namespaceId, URLDecoder.decode(searchQuery, "UTF-8"), types,
                              sortInfo, offset, limit, numCursors, cursor, showHidden, validateEntityScope(entityScope));
-      responder.sendJson(HttpResponseStatus.OK, response, MetadataSearchResponse.class, GSON);
+      // Stream the response, since a search can match a large number of entities
+      responder.sendContent(HttpResponseStatus.OK, new MetadataSearchResponseBodyProducer(GSON, response),
+                            ImmutableMultimap.of(HttpHeaders.Names.CONTENT_TYPE, "application/json"));
     } catch (Exception e) {
       // if MetadataDataset throws an exception, it gets wrapped
       if (Throwables.getRootCause(e) instanceof BadRequestException) {
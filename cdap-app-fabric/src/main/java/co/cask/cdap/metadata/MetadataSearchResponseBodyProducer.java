@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.metadata;
+
+import co.cask.cdap.common.http.AbstractJsonBodyProducer;
+import co.cask.cdap.proto.EntityScope;
+import co.cask.cdap.proto.metadata.MetadataSearchResponse;
+import co.cask.cdap.proto.metadata.MetadataSearchResultRecord;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Streams a {@link MetadataSearchResponse} as JSON, one search result at a time. The JSON produced is the same
+ * as the one produced by serializing the {@link MetadataSearchResponse} with the given {@link Gson}.
+ */
+final class MetadataSearchResponseBodyProducer extends AbstractJsonBodyProducer {
+
+  private static final Type LIST_STRING_TYPE = new TypeToken<List<String>>() { }.getType();
+  private static final Type SET_ENTITY_SCOPE_TYPE = new TypeToken<Set<EntityScope>>() { }.getType();
+
+  private final Gson gson;
+  private final MetadataSearchResponse response;
+  private Iterator<MetadataSearchResultRecord> results;
+
+  MetadataSearchResponseBodyProducer(Gson gson, MetadataSearchResponse response) {
+    this.gson = gson;
+    this.response = response;
+  }
+
+  @Override
+  protected boolean writeNext(JsonWriter writer) throws IOException {
+    if (results == null) {
+      writer.beginObject();
+      writer.name("sort").value(response.getSort());
+      writer.name("offset").value(response.getOffset());
+      writer.name("limit").value(response.getLimit());
+      writer.name("numCursors").value(response.getNumCursors());
+      writer.name("total").value(response.getTotal());
+      writer.name("results").beginArray();
+      results = response.getResults().iterator();
+      return true;
+    }
+    if (results.hasNext()) {
+      gson.toJson(results.next(), MetadataSearchResultRecord.class, writer);
+      return true;
+    }
+    writer.endArray();
+    writer.name("cursors");
+    gson.toJson(response.getCursors(), LIST_STRING_TYPE, writer);
+    writer.name("showHidden").value(response.isShowHidden());
+    writer.name("entityScope");
+    gson.toJson(response.getEntityScope(), SET_ENTITY_SCOPE_TYPE, writer);
+    writer.endObject();
+    return false;
+  }
+}
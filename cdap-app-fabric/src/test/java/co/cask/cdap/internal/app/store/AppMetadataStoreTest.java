@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -22,6 +22,7 @@ import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.common.app.RunIds;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.data2.dataset2.DatasetFramework;
+import co.cask.cdap.data2.dataset2.lib.table.MDSKey;
 import co.cask.cdap.data2.transaction.TransactionExecutorFactory;
 import co.cask.cdap.internal.AppFabricTestHelper;
 import co.cask.cdap.proto.ProgramRunStatus;
@@ -34,6 +35,7 @@ import co.cask.cdap.proto.id.ProgramRunId;
 import com.google.common.base.Function;
 import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.inject.Injector;
 import org.apache.tephra.TransactionAware;
@@ -238,6 +240,149 @@ public class AppMetadataStoreTest {
     });
   }
 
+  @Test
+  public void testRunRecordIndexes() throws Exception {
+    DatasetId storeTable = NamespaceId.DEFAULT.dataset("testRunRecordIndexes");
+    datasetFramework.addInstance(Table.class.getName(), storeTable, DatasetProperties.EMPTY);
+
+    Table table = datasetFramework.getDataset(storeTable, ImmutableMap.<String, String>of(), null);
+    Assert.assertNotNull(table);
+    final AppMetadataStore metadataStoreDataset = new AppMetadataStore(table, cConf);
+    TransactionExecutor txnl = txExecutorFactory.createExecutor(
+      Collections.singleton((TransactionAware) metadataStoreDataset));
+
+    final ProgramId program = NamespaceId.DEFAULT.app("app").program(ProgramType.MAPREDUCE, "program");
+    final RunId completed = RunIds.generate(10000);
+    final RunId killed = RunIds.generate(20000);
+    final RunId failed = RunIds.generate(30000);
+    final RunId running = RunIds.generate(40000);
+
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        for (RunId runId : new RunId[] { completed, killed, failed, running }) {
+          metadataStoreDataset.recordProgramStart(program, runId.getId(), RunIds.getTime(runId, TimeUnit.SECONDS),
+                                                  "twill-" + runId.getId(), null, null);
+        }
+        metadataStoreDataset.recordProgramStop(program, completed.getId(), 15, ProgramRunStatus.COMPLETED, null);
+        metadataStoreDataset.recordProgramStop(program, killed.getId(), 25, ProgramRunStatus.KILLED, null);
+        metadataStoreDataset.recordProgramStop(program, failed.getId(), 35, ProgramRunStatus.FAILED, null);
+      }
+    });
+
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        // Status index
+        Assert.assertEquals(ImmutableSet.of(killed.getId()),
+                            getPids(metadataStoreDataset.getRuns(program, ProgramRunStatus.KILLED,
+                                                                 0, Long.MAX_VALUE, Integer.MAX_VALUE, null)));
+        Assert.assertEquals(ImmutableSet.of(failed.getId()),
+                            getPids(metadataStoreDataset.getRuns(program, ProgramRunStatus.FAILED,
+                                                                 0, Long.MAX_VALUE, Integer.MAX_VALUE, null)));
+        Assert.assertEquals(ImmutableSet.of(),
+                            getPids(metadataStoreDataset.getRuns(program, ProgramRunStatus.COMPLETED,
+                                                                 11, Long.MAX_VALUE, Integer.MAX_VALUE, null)));
+
+        // Twill run id index only returns running programs
+        Assert.assertEquals(ImmutableSet.of(running.getId()),
+                            getPids(metadataStoreDataset.getRunsByTwillRunIds(
+                              ImmutableSet.of("twill-" + running.getId(), "twill-" + killed.getId()))));
+
+        // Stopped index
+        Assert.assertEquals(ImmutableSet.of(killed, failed),
+                            ImmutableSet.copyOf(Iterables.concat(metadataStoreDataset.getCompletedInRange(
+                              20, 31, Long.MAX_VALUE, Ticker.systemTicker()))));
+
+        metadataStoreDataset.deleteProgramHistory(NamespaceId.DEFAULT.getNamespace(), "app");
+      }
+    });
+
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        Assert.assertTrue(Iterables.isEmpty(Iterables.concat(metadataStoreDataset.getCompletedInRange(
+          0, Long.MAX_VALUE, Long.MAX_VALUE, Ticker.systemTicker()))));
+        Assert.assertTrue(metadataStoreDataset.getRunsByTwillRunIds(
+          ImmutableSet.of("twill-" + running.getId())).isEmpty());
+      }
+    });
+  }
+
+  @Test
+  public void testRunRecordsWithoutIndexes() throws Exception {
+    DatasetId storeTable = NamespaceId.DEFAULT.dataset("testRunRecordsWithoutIndexes");
+    datasetFramework.addInstance(Table.class.getName(), storeTable, DatasetProperties.EMPTY);
+
+    Table table = datasetFramework.getDataset(storeTable, ImmutableMap.<String, String>of(), null);
+    Assert.assertNotNull(table);
+    final AppMetadataStore metadataStoreDataset = new AppMetadataStore(table, cConf);
+    TransactionExecutor txnl = txExecutorFactory.createExecutor(
+      Collections.singleton((TransactionAware) metadataStoreDataset));
+
+    final ProgramId program = NamespaceId.DEFAULT.app("app").program(ProgramType.MAPREDUCE, "program");
+    final RunId completed = RunIds.generate(10000);
+    final RunId killed = RunIds.generate(20000);
+    final RunId failed = RunIds.generate(40000);
+
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        for (RunId runId : new RunId[] { completed, killed }) {
+          metadataStoreDataset.recordProgramStart(program, runId.getId(), RunIds.getTime(runId, TimeUnit.SECONDS),
+                                                  null, null, null);
+        }
+        metadataStoreDataset.recordProgramStop(program, completed.getId(), 15, ProgramRunStatus.COMPLETED, null);
+        metadataStoreDataset.recordProgramStop(program, killed.getId(), 25, ProgramRunStatus.KILLED, null);
+
+        // Remove the index rows, as for run records recorded before the indexes existed
+        for (String recordType : new String[] { "runRecordStatusIdx", "runRecordStoppedIdx",
+                                                "runRecordIndexedSince" }) {
+          metadataStoreDataset.deleteAll(new MDSKey.Builder().add(recordType).build());
+        }
+      }
+    });
+
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        // A run completed after the upgrade is indexed
+        metadataStoreDataset.recordProgramStart(program, failed.getId(), RunIds.getTime(failed, TimeUnit.SECONDS),
+                                                null, null, null);
+        metadataStoreDataset.recordProgramStop(program, failed.getId(), 45, ProgramRunStatus.FAILED, null);
+      }
+    });
+
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        Assert.assertEquals(ImmutableSet.of(completed.getId()),
+                            getPids(metadataStoreDataset.getRuns(program, ProgramRunStatus.COMPLETED,
+                                                                 0, Long.MAX_VALUE, Integer.MAX_VALUE, null)));
+        Assert.assertEquals(ImmutableSet.of(killed.getId()),
+                            getPids(metadataStoreDataset.getRuns(program, ProgramRunStatus.KILLED,
+                                                                 0, Long.MAX_VALUE, Integer.MAX_VALUE, null)));
+        Assert.assertEquals(ImmutableSet.of(failed.getId()),
+                            getPids(metadataStoreDataset.getRuns(program, ProgramRunStatus.FAILED,
+                                                                 0, Long.MAX_VALUE, Integer.MAX_VALUE, null)));
+
+        Assert.assertEquals(ImmutableSet.of(killed, failed),
+                            ImmutableSet.copyOf(Iterables.concat(metadataStoreDataset.getCompletedInRange(
+                              20, 50, Long.MAX_VALUE, Ticker.systemTicker()))));
+        Assert.assertEquals(ImmutableSet.of(killed, failed),
+                            metadataStoreDataset.getRunningInRange(20, 50));
+      }
+    });
+  }
+
+  private Set<String> getPids(Map<ProgramRunId, RunRecordMeta> runs) {
+    Set<String> pids = new HashSet<>();
+    for (RunRecordMeta record : runs.values()) {
+      pids.add(record.getPid());
+    }
+    return pids;
+  }
+
   private static class CountingTicker extends Ticker {
     private final long elementsPerMillis;
     private int numProcessed = 0;
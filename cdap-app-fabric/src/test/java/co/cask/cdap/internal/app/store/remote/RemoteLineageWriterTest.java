@@ -68,6 +68,7 @@ public class RemoteLineageWriterTest extends AppFabricTestBase {
 
     // test null serialization
     remoteLineageWriter.addAccess(runId, datasetId, AccessType.READ, null);
+    remoteLineageWriter.flush();
     expectedRelations.add(new Relation(datasetId, flowId, AccessType.READ, twillRunId));
 
     Assert.assertEquals(ImmutableSet.of(flowId, datasetId), lineageStore.getEntitiesForRun(runId));
@@ -76,13 +77,19 @@ public class RemoteLineageWriterTest extends AppFabricTestBase {
                         lineageStore.getRelations(flowId, now, now + 1, Predicates.<Relation>alwaysTrue()));
 
     remoteLineageWriter.addAccess(runId, streamId, AccessType.READ);
+    remoteLineageWriter.flush();
     expectedRelations.add(new Relation(streamId, flowId, AccessType.READ, twillRunId));
 
     Assert.assertEquals(expectedRelations,
                         lineageStore.getRelations(flowId, now, now + 1, Predicates.<Relation>alwaysTrue()));
 
+    // accesses are written in a batch on flush
     remoteLineageWriter.addAccess(runId, streamId, AccessType.WRITE);
+    remoteLineageWriter.addAccess(runId, datasetId, AccessType.WRITE);
+    remoteLineageWriter.addAccess(runId, datasetId, AccessType.WRITE);
+    remoteLineageWriter.flush();
     expectedRelations.add(new Relation(streamId, flowId, AccessType.WRITE, twillRunId));
+    expectedRelations.add(new Relation(datasetId, flowId, AccessType.WRITE, twillRunId));
 
     Assert.assertEquals(expectedRelations,
                         lineageStore.getRelations(flowId, now, now + 1, Predicates.<Relation>alwaysTrue()));
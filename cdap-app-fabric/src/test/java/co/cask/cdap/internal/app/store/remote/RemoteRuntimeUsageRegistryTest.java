@@ -64,6 +64,7 @@ public class RemoteRuntimeUsageRegistryTest extends AppFabricTestBase {
 
     DatasetId datasetId1 = NamespaceId.DEFAULT.dataset("test_dataset1");
     runtimeUsageRegistry.register(flowId1, datasetId1);
+    runtimeUsageRegistry.flush();
 
     ImmutableSet<DatasetId> datasetsUsedByFlow1 = ImmutableSet.of(datasetId1);
     Assert.assertEquals(datasetsUsedByFlow1, usageRegistry.getDatasets(appId));
@@ -80,6 +81,7 @@ public class RemoteRuntimeUsageRegistryTest extends AppFabricTestBase {
     runtimeUsageRegistry.register(flowId2, datasetId1);
     runtimeUsageRegistry.register(flowId2, datasetId2);
     runtimeUsageRegistry.register(flowId2, streamId);
+    runtimeUsageRegistry.flush();
 
     ImmutableSet<DatasetId> datasetsUsedByFlow2 = ImmutableSet.of(datasetId1, datasetId2);
     ImmutableSet<StreamId> streamsUsedByFlow2 = ImmutableSet.of(streamId);
@@ -29,8 +29,7 @@ import co.cask.cdap.messaging.data.RawMessage;
 import co.cask.cdap.proto.Id;
 import co.cask.cdap.proto.audit.AuditMessage;
 import co.cask.cdap.proto.audit.AuditType;
-import co.cask.cdap.proto.codec.AuditMessageTypeAdapter;
-import co.cask.cdap.proto.codec.EntityIdTypeAdapter;
+import co.cask.cdap.proto.codec.AuditMessagePayloadCodec;
 import co.cask.cdap.proto.element.EntityType;
 import co.cask.cdap.proto.id.ArtifactId;
 import co.cask.cdap.proto.id.EntityId;
@@ -42,8 +41,6 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
 import com.google.common.util.concurrent.Service;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.inject.Injector;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -53,7 +50,6 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -66,11 +62,6 @@ public class AuditPublishTest {
   @ClassRule
   public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
 
-  private static final Gson GSON = new GsonBuilder()
-    .registerTypeAdapter(AuditMessage.class, new AuditMessageTypeAdapter())
-    .registerTypeAdapter(EntityId.class, new EntityIdTypeAdapter())
-    .create();
-
   private static CConfiguration cConf;
   private static MessagingService messagingService;
   private static TopicId auditTopic;
@@ -148,7 +139,7 @@ public class AuditPublishTest {
     try (CloseableIterator<RawMessage> iterator = messagingService.prepareFetch(auditTopic).fetch()) {
       while (iterator.hasNext()) {
         RawMessage message = iterator.next();
-        result.add(GSON.fromJson(new String(message.getPayload(), StandardCharsets.UTF_8), AuditMessage.class));
+        result.addAll(AuditMessagePayloadCodec.decode(message.getPayload()));
       }
     }
     return result;
@@ -390,11 +390,14 @@ public final class Constants {
     public static final String TTL = "stream.event.ttl";
     public static final String PARTITION_DURATION = "stream.partition.duration";
     public static final String INDEX_INTERVAL = "stream.index.interval";
+    public static final String COMPRESSION = "stream.compression";
     public static final String FILE_PREFIX = "stream.file.prefix";
     public static final String INSTANCE_FILE_PREFIX = "stream.instance.file.prefix";
     public static final String CONSUMER_TABLE_PRESPLITS = "stream.consumer.table.presplits";
+    public static final String CONSUMER_READER_CACHE_SIZE = "stream.consumer.reader.cache.size";
     public static final String FILE_CLEANUP_PERIOD = "stream.file.cleanup.period";
     public static final String BATCH_BUFFER_THRESHOLD = "stream.batch.buffer.threshold";
+    public static final String BATCH_INFLIGHT_LIMIT = "stream.batch.inflight.limit";
     public static final String NOTIFICATION_THRESHOLD = "stream.notification.threshold";
 
     // Stream http service configurations.
@@ -404,6 +407,9 @@ public final class Constants {
     public static final String WORKER_THREADS = "stream.worker.threads";
     public static final String ASYNC_WORKER_THREADS = "stream.async.worker.threads";
     public static final String ASYNC_QUEUE_SIZE = "stream.async.queue.size";
+    public static final String WAL_ENABLED = "stream.wal.enabled";
+    public static final String WAL_DIR = "stream.wal.dir";
+    public static final String WAL_MAX_SIZE = "stream.wal.max.size";
 
     // YARN container configurations.
     public static final String CONTAINER_VIRTUAL_CORES = "stream.container.num.cores";
@@ -960,6 +966,7 @@ public final class Constants {
     public static final String DATASET_NAMESPACE = "explore.dataset.namespace";
     public static final String STREAM_NAME = "explore.stream.name";
     public static final String STREAM_NAMESPACE = "explore.stream.namespace";
+    public static final String STREAM_COLUMNAR_ENABLED = "explore.stream.columnar.enabled";
     public static final String PREVIEWS_DIR_NAME = "explore.previews.dir";
     public static final String CREDENTIALS_DIR_NAME = "explore.credentials.dir";
 
@@ -1154,6 +1161,8 @@ public final class Constants {
     public static final String ENABLED = "audit.enabled";
     public static final String TOPIC = "audit.topic";
     public static final String PUBLISH_TIMEOUT_MS = "audit.publish.timeout.ms";
+    public static final String PUBLISH_BATCH_SIZE = "audit.publish.batch.size";
+    public static final String PUBLISH_LINGER_MS = "audit.publish.linger.ms";
   }
 
   /**
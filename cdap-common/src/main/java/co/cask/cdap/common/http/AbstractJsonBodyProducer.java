@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.common.http;
+
+import co.cask.http.BodyProducer;
+import com.google.gson.stream.JsonWriter;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An abstract implementation of {@link BodyProducer} that sends a JSON document as a chunked response. The document
+ * is written incrementally through a {@link JsonWriter}, so that only about one chunk of the serialized JSON is held
+ * in memory at a time, instead of the whole document as a {@link String}.
+ */
+public abstract class AbstractJsonBodyProducer extends BodyProducer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AbstractJsonBodyProducer.class);
+  private static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+  private final int chunkSize;
+  private final ByteArrayOutputStream output;
+  private final JsonWriter jsonWriter;
+  private boolean completed;
+
+  protected AbstractJsonBodyProducer() {
+    this(DEFAULT_CHUNK_SIZE);
+  }
+
+  protected AbstractJsonBodyProducer(int chunkSize) {
+    this.chunkSize = chunkSize;
+    this.output = new ByteArrayOutputStream(chunkSize);
+    this.jsonWriter = new JsonWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+    // Same settings as the ones used by a default Gson instance
+    this.jsonWriter.setSerializeNulls(false);
+    this.jsonWriter.setHtmlSafe(true);
+  }
+
+  /**
+   * Writes the next part of the JSON document. This method is called repeatedly until it returns {@code false}.
+   * Each call should only write a small part of the document, such as a single record.
+   *
+   * @param writer the {@link JsonWriter} to write to
+   * @return {@code true} if there is more to write, {@code false} if the JSON document is complete
+   * @throws IOException if failed to write
+   */
+  protected abstract boolean writeNext(JsonWriter writer) throws IOException;
+
+  @Override
+  public long getContentLength() {
+    return -1L;
+  }
+
+  @Override
+  public ChannelBuffer nextChunk() throws Exception {
+    if (completed) {
+      return ChannelBuffers.EMPTY_BUFFER;
+    }
+    while (!completed && output.size() < chunkSize) {
+      completed = !writeNext(jsonWriter);
+      jsonWriter.flush();
+    }
+    if (completed) {
+      // Fails if the document is incomplete
+      jsonWriter.close();
+    }
+    // netty doesn't copy the buffer, hence wrapping a copy of the bytes
+    ChannelBuffer chunk = ChannelBuffers.wrappedBuffer(output.toByteArray());
+    output.reset();
+    return chunk;
+  }
+
+  @Override
+  public void finished() throws Exception {
+    // no-op
+  }
+
+  @Override
+  public void handleError(Throwable cause) {
+    LOG.warn("Failed to send JSON response", cause);
+  }
+}
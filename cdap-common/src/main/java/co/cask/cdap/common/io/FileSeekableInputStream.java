@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -18,14 +18,24 @@ package co.cask.cdap.common.io;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import javax.annotation.Nullable;
 
 /**
- * Implements {@link SeekableInputStream} with a {@link FileInputStream}.
+ * Implements {@link SeekableInputStream} with a {@link FileInputStream}. The {@link #readBuffer(int)} method
+ * returns slices of a memory mapped region of the file, which is remapped when reading beyond the region.
+ * A region is unmapped when it is garbage collected, once neither this stream nor any returned slice refers to it.
  */
 final class FileSeekableInputStream extends SeekableInputStream {
 
+  // Maximum size of a memory mapped region
+  private static final int MAP_SIZE = 64 * 1024 * 1024;
+
   private final FileChannel fileChannel;
+  private MappedByteBuffer mappedBuffer;
+  private long mappedPosition;
 
   FileSeekableInputStream(FileInputStream in) {
     super(in);
@@ -51,4 +61,33 @@ final class FileSeekableInputStream extends SeekableInputStream {
   public long size() throws IOException {
     return fileChannel.size();
   }
+
+  @Nullable
+  @Override
+  public ByteBuffer readBuffer(int size) throws IOException {
+    long pos = fileChannel.position();
+    long fileSize = fileChannel.size();
+    if (size < 0 || pos + size > fileSize) {
+      return null;
+    }
+
+    if (mappedBuffer == null || pos < mappedPosition || pos + size > mappedPosition + mappedBuffer.capacity()) {
+      // Only map what's in the file now, since the file can still be appended to
+      long mapSize = Math.min(Math.max(size, MAP_SIZE), fileSize - pos);
+      mappedBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, pos, mapSize);
+      mappedPosition = pos;
+    }
+
+    ByteBuffer buffer = mappedBuffer.asReadOnlyBuffer();
+    buffer.position((int) (pos - mappedPosition));
+    buffer.limit(buffer.position() + size);
+    fileChannel.position(pos + size);
+    return buffer.slice();
+  }
+
+  @Override
+  public void close() throws IOException {
+    mappedBuffer = null;
+    super.close();
+  }
 }
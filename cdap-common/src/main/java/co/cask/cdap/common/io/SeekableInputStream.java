@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -20,6 +20,8 @@ import org.apache.hadoop.fs.Seekable;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
 
 /**
  * Abstract base class for {@link InputStream} that implements the {@link Seekable} interface.
@@ -34,6 +36,22 @@ public abstract class SeekableInputStream extends FilterInputStream implements S
    */
   public abstract long size() throws IOException;
 
+  /**
+   * Returns a read-only {@link ByteBuffer} with the given number of bytes starting from the current position,
+   * and advances the position by the same number of bytes. The returned buffer may not have a backing array and
+   * may keep a large region of the underlying file mapped in memory until it is garbage collected, hence callers
+   * should copy what they need to keep instead of retaining it.
+   *
+   * @param size number of bytes to return
+   * @return the {@link ByteBuffer} or {@code null} if this stream doesn't support it, or if there are less than
+   *         {@code size} bytes available. When {@code null} is returned, the position is not changed.
+   * @throws IOException if failed to read from the stream
+   */
+  @Nullable
+  public ByteBuffer readBuffer(int size) throws IOException {
+    return null;
+  }
+
   protected SeekableInputStream(InputStream in) {
     super(in);
   }
@@ -74,7 +74,18 @@ public final class StreamEventDataCodec {
     encoder.writeBytes(data.getBody());
 
     // Writes the headers
-    Map<String, String> headers = data.getHeaders();
+    encodeHeaders(data.getHeaders(), encoder);
+  }
+
+  /**
+   * Encodes the headers of a {@link StreamEventData} using the {@link Encoder}. The encoded headers follow the
+   * encoded body of the event.
+   *
+   * @param headers The headers to encode
+   * @param encoder The encoder
+   * @throws IOException If there is any IO error during encoding.
+   */
+  public static void encodeHeaders(Map<String, String> headers, Encoder encoder) throws IOException {
     encoder.writeInt(headers.size());
     for (Map.Entry<String, String> entry : headers.entrySet()) {
       String value = entry.getValue();
@@ -110,8 +121,21 @@ public final class StreamEventDataCodec {
    */
   public static StreamEventData decode(Decoder decoder, Map<String, String> defaultHeaders) throws IOException {
     // Reads the body
-    ByteBuffer body = decoder.readBytes();
+    return decode(decoder.readBytes(), decoder, defaultHeaders);
+  }
 
+  /**
+   * Decodes from the given {@link Decoder} to reconstruct a {@link StreamEventData}, with the body
+   * already read from the encoded event.
+   *
+   * @param body the body of the event
+   * @param decoder the decoder to read the headers from
+   * @param defaultHeaders A map of headers available by default.
+   * @return A new instance of {@link co.cask.cdap.api.stream.StreamEventData}.
+   * @throws IOException If there is any IO error during decoding.
+   */
+  public static StreamEventData decode(ByteBuffer body, Decoder decoder,
+                                       Map<String, String> defaultHeaders) throws IOException {
     // Reads the headers
     int len = decoder.readInt();
 
@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.common.http;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tests for {@link AbstractJsonBodyProducer}.
+ */
+public class AbstractJsonBodyProducerTest {
+
+  private static final Gson GSON = new Gson();
+
+  @Test
+  public void testChunks() throws Exception {
+    List<String> values = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      values.add("value<" + i + ">");
+    }
+
+    ListBodyProducer producer = new ListBodyProducer(values, 100);
+    StringBuilder json = new StringBuilder();
+    int chunks = 0;
+    ChannelBuffer chunk = producer.nextChunk();
+    while (chunk.readable()) {
+      chunks++;
+      json.append(chunk.toString(StandardCharsets.UTF_8));
+      chunk = producer.nextChunk();
+    }
+
+    Assert.assertTrue(chunks > 1);
+    Assert.assertEquals(GSON.toJson(values), json.toString());
+  }
+
+  @Test
+  public void testEmpty() throws Exception {
+    ListBodyProducer producer = new ListBodyProducer(new ArrayList<String>(), 100);
+    Assert.assertEquals("[]", producer.nextChunk().toString(StandardCharsets.UTF_8));
+    Assert.assertFalse(producer.nextChunk().readable());
+  }
+
+  /**
+   * Produces a JSON array of strings, one element at a time.
+   */
+  private static final class ListBodyProducer extends AbstractJsonBodyProducer {
+
+    private final List<String> values;
+    private Iterator<String> iterator;
+
+    ListBodyProducer(List<String> values, int chunkSize) {
+      super(chunkSize);
+      this.values = values;
+    }
+
+    @Override
+    protected boolean writeNext(JsonWriter writer) throws IOException {
+      if (iterator == null) {
+        writer.beginArray();
+        iterator = values.iterator();
+        return true;
+      }
+      if (iterator.hasNext()) {
+        writer.value(iterator.next());
+        return true;
+      }
+      writer.endArray();
+      return false;
+    }
+  }
+}
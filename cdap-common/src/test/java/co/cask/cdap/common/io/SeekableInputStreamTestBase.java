@@ -27,6 +27,7 @@ import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 /**
@@ -122,6 +123,58 @@ public abstract class SeekableInputStreamTestBase {
     input.close();
   }
 
+  @Test
+  public void testReadBuffer() throws IOException {
+    Location location = getLocationFactory().create("testReadBuffer");
+
+    byte[] bytes = new byte[1024];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (i & 0xff);
+    }
+
+    // Writes 1024 bytes to the output, and keep the output stream open
+    OutputStream output = Locations.newOutputSupplier(location).getOutput();
+    output.write(bytes);
+    sync(output);
+
+    SeekableInputStream input = Locations.newInputSupplier(location).getInput();
+    input.seek(10);
+    ByteBuffer buffer = input.readBuffer(100);
+    if (buffer == null) {
+      // Not supported by the stream
+      Assert.assertEquals(10, input.getPos());
+      output.close();
+      input.close();
+      return;
+    }
+
+    Assert.assertEquals(100, buffer.remaining());
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals((byte) ((i + 10) & 0xff), buffer.get());
+    }
+    Assert.assertEquals(110, input.getPos());
+
+    // Reading beyond the end of the stream returns null without changing the position
+    Assert.assertNull(input.readBuffer(bytes.length));
+    Assert.assertEquals(110, input.getPos());
+
+    // Write another 1024 bytes, which should be readable after the previous end of the stream
+    output.write(bytes);
+    sync(output);
+    buffer = input.readBuffer(bytes.length);
+    Assert.assertNotNull(buffer);
+    for (int i = 0; i < bytes.length; i++) {
+      Assert.assertEquals((byte) ((i + 110) & 0xff), buffer.get());
+    }
+    Assert.assertEquals(110 + bytes.length, input.getPos());
+
+    // The stream can still be read after reading buffers
+    Assert.assertEquals((110 + bytes.length) % 256, input.read());
+
+    output.close();
+    input.close();
+  }
+
   private void sync(OutputStream output) throws IOException {
     if (output instanceof Syncable) {
       ((Syncable) output).hsync();
@@ -18,6 +18,7 @@ package co.cask.cdap.data.stream;
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.data.file.FileWriter;
+import co.cask.cdap.data.file.ReadFilter;
 import co.cask.cdap.data2.transaction.stream.StreamConfig;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.proto.id.StreamId;
@@ -36,9 +37,16 @@ import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -262,6 +270,145 @@ public abstract class MultiLiveStreamFileReaderTestBase {
     reader.close();
   }
 
+  @Test
+  public void testSharedReaders() throws Exception {
+    StreamConfig config = createSinglePartitionStream("sharedReaders");
+    List<StreamFileOffset> sources = writeInterleavedEvents(config);
+
+    // Use a small cache, so that a reader that is behind by more than a few events reads by itself
+    SharedStreamFileReaders sharedReaders = new SharedStreamFileReaders(200);
+    MultiLiveStreamFileReader first = new MultiLiveStreamFileReader(config, sources, sharedReaders);
+    MultiLiveStreamFileReader second = new MultiLiveStreamFileReader(config, sources, sharedReaders);
+
+    // Only accepts events with even timestamp
+    ReadFilter evenFilter = new ReadFilter() {
+      @Override
+      public boolean acceptTimestamp(long timestamp) {
+        return timestamp % 2 == 0;
+      }
+    };
+
+    // Read 250 events from both readers alternately, with the second one reads only the even ones.
+    List<StreamEvent> events = Lists.newArrayList();
+    for (int i = 0; i < 25; i++) {
+      Assert.assertEquals(10, first.read(events, 10, 0, TimeUnit.SECONDS));
+      verifyEvents(events, i * 10, 1);
+      events.clear();
+
+      Assert.assertEquals(5, second.read(events, 5, 0, TimeUnit.SECONDS, evenFilter));
+      verifyEvents(events, i * 10, 2);
+      events.clear();
+    }
+
+    // Read the rest of the events from the first reader, then from the second reader, which is behind
+    // the events cached.
+    Assert.assertEquals(750, first.read(events, 750, 0, TimeUnit.SECONDS));
+    verifyEvents(events, 250, 1);
+    events.clear();
+
+    Assert.assertEquals(375, second.read(events, 375, 0, TimeUnit.SECONDS, evenFilter));
+    verifyEvents(events, 250, 2);
+    events.clear();
+
+    Assert.assertEquals(0, first.read(events, 10, 1, TimeUnit.SECONDS));
+    Assert.assertEquals(0, second.read(events, 10, 1, TimeUnit.SECONDS));
+
+    first.close();
+    second.close();
+  }
+
+  @Test
+  public void testSharedReadersConcurrent() throws Exception {
+    final StreamConfig config = createSinglePartitionStream("sharedReadersConcurrent");
+    final List<StreamFileOffset> sources = writeInterleavedEvents(config);
+    final SharedStreamFileReaders sharedReaders = new SharedStreamFileReaders(Long.MAX_VALUE);
+
+    // Read all events with multiple readers concurrently, each modifies the body of every event it read
+    int readerCount = 4;
+    final CyclicBarrier barrier = new CyclicBarrier(readerCount);
+    ExecutorService executor = Executors.newFixedThreadPool(readerCount);
+    try {
+      List<Future<List<StreamEvent>>> futures = new ArrayList<>();
+      for (int i = 0; i < readerCount; i++) {
+        futures.add(executor.submit(new Callable<List<StreamEvent>>() {
+          @Override
+          public List<StreamEvent> call() throws Exception {
+            List<StreamEvent> events = new ArrayList<>();
+            try (MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(config, sources, sharedReaders)) {
+              barrier.await();
+              while (events.size() < 1000) {
+                int size = events.size();
+                reader.read(events, 7, 1, TimeUnit.SECONDS);
+                for (int i = size; i < events.size(); i++) {
+                  StreamEvent event = events.get(i);
+                  ByteBuffer body = event.getBody();
+                  Assert.assertEquals(i, event.getTimestamp());
+                  Assert.assertEquals("Testing " + i, Charsets.UTF_8.decode(body.duplicate()).toString());
+                  body.put(body.position(), (byte) 't');
+                }
+              }
+            }
+            return events;
+          }
+        }));
+      }
+
+      for (Future<List<StreamEvent>> future : futures) {
+        List<StreamEvent> events = future.get(30, TimeUnit.SECONDS);
+        Assert.assertEquals(1000, events.size());
+        // Each reader should only see its own modification
+        for (StreamEvent event : events) {
+          Assert.assertEquals("testing " + event.getTimestamp(),
+                              Charsets.UTF_8.decode(event.getBody().duplicate()).toString());
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private StreamConfig createSinglePartitionStream(String streamName) throws IOException {
+    StreamId streamId = NamespaceId.DEFAULT.stream(streamName);
+    Location location = getLocationFactory().create(streamName);
+    location.mkdirs();
+
+    // Create a stream with 1 partition.
+    return new StreamConfig(streamId, Long.MAX_VALUE, 10000, Long.MAX_VALUE, location, null, 1000);
+  }
+
+  /**
+   * Writes 200 events to each of 5 files in the stream, with interleaving timestamps from 0 to 999.
+   *
+   * @return the offsets of the beginning of the files
+   */
+  private List<StreamFileOffset> writeInterleavedEvents(StreamConfig config) throws IOException {
+    for (int i = 0; i < 5; i++) {
+      FileWriter<StreamEvent> writer = createWriter(config, "bucket" + i);
+      for (int j = 0; j < 200; j++) {
+        long timestamp = j * 5 + i;
+        writer.append(StreamFileTestUtils.createEvent(timestamp, "Testing " + timestamp));
+      }
+      writer.close();
+    }
+
+    List<StreamFileOffset> sources = Lists.newArrayList();
+    Location partitionLocation = StreamUtils.createPartitionLocation(config.getLocation(), 0, Long.MAX_VALUE);
+    for (int i = 0; i < 5; i++) {
+      Location eventFile = StreamUtils.createStreamLocation(partitionLocation, "bucket" + i, 0, StreamFileType.EVENT);
+      sources.add(new StreamFileOffset(eventFile, 0L, 0));
+    }
+    return sources;
+  }
+
+  private void verifyEvents(List<StreamEvent> events, long startTimestamp, long step) {
+    long expectedTimestamp = startTimestamp;
+    for (StreamEvent event : events) {
+      Assert.assertEquals(expectedTimestamp, event.getTimestamp());
+      Assert.assertEquals("Testing " + expectedTimestamp, Charsets.UTF_8.decode(event.getBody()).toString());
+      expectedTimestamp += step;
+    }
+  }
+
   private FileWriter<StreamEvent> createWriter(StreamConfig config, String prefix) {
     return new TimePartitionedStreamFileWriter(config.getLocation(), config.getPartitionDuration(),
                                                prefix, config.getIndexInterval(), config.getStreamId(),
@@ -183,6 +183,37 @@ public abstract class StreamDataFileTestBase {
     reader.close();
   }
 
+  @Test
+  public void testEventBody() throws Exception {
+    Location dir = StreamFileTestUtils.createTempDir(getLocationFactory());
+    Location eventFile = dir.getTempFile(".dat");
+    Location indexFile = dir.getTempFile(".idx");
+
+    StreamDataFileWriter writer = new StreamDataFileWriter(Locations.newOutputSupplier(eventFile),
+                                                           Locations.newOutputSupplier(indexFile),
+                                                           10000L);
+    for (int i = 0; i < 10; i++) {
+      writer.append(StreamFileTestUtils.createEvent(i, "Body " + i));
+    }
+    writer.close();
+
+    StreamDataFileReader reader = StreamDataFileReader.create(Locations.newInputSupplier(eventFile));
+    List<StreamEvent> events = Lists.newArrayList();
+    Assert.assertEquals(10, reader.read(events, 10, 0, TimeUnit.SECONDS));
+    reader.close();
+
+    // Event bodies are writable heap buffers that stay valid after the reader is closed
+    for (int i = 0; i < 10; i++) {
+      ByteBuffer eventBody = events.get(i).getBody();
+      Assert.assertFalse(eventBody.isReadOnly());
+      Assert.assertTrue(eventBody.hasArray());
+      Assert.assertEquals("Body " + i, new String(eventBody.array(), eventBody.arrayOffset() + eventBody.position(),
+                                                  eventBody.remaining(), Charsets.UTF_8));
+      eventBody.put(eventBody.position(), (byte) 'b');
+      Assert.assertEquals("body " + i, Charsets.UTF_8.decode(eventBody).toString());
+    }
+  }
+
   @Test
   public void testTail() throws Exception {
     Location dir = StreamFileTestUtils.createTempDir(getLocationFactory());
@@ -423,6 +454,122 @@ public abstract class StreamDataFileTestBase {
     }
   }
 
+  @Test
+  public void testCompression() throws Exception {
+    for (StreamFileCompression compression : StreamFileCompression.values()) {
+      if (compression == StreamFileCompression.NONE) {
+        continue;
+      }
+      Location dir = StreamFileTestUtils.createTempDir(getLocationFactory());
+      Location eventFile = dir.getTempFile(".dat");
+      Location indexFile = dir.getTempFile(".idx");
+
+      // Writes 1000 events, with 10 events per timestamp, hence 10 events per data block.
+      StreamDataFileWriter writer = new StreamDataFileWriter(
+        Locations.newOutputSupplier(eventFile), Locations.newOutputSupplier(indexFile), 10L,
+        ImmutableMap.of(StreamDataFileConstants.Property.Key.COMPRESSION, compression.name()));
+      for (int i = 0; i < 1000; i++) {
+        writer.append(StreamFileTestUtils.createEvent(i / 10, String.format("Testing %05d", i)));
+      }
+      writer.close();
+
+      // Reads all events back
+      StreamDataFileReader reader = StreamDataFileReader.create(Locations.newInputSupplier(eventFile));
+      List<PositionStreamEvent> events = Lists.newArrayList();
+      Assert.assertEquals(1000, reader.read(events, 1001, 0, TimeUnit.SECONDS));
+      Assert.assertEquals(-1, reader.read(events, 1, 0, TimeUnit.SECONDS));
+      reader.close();
+
+      long lastPosition = -1L;
+      for (int i = 0; i < 1000; i++) {
+        PositionStreamEvent event = events.get(i);
+        Assert.assertEquals(i / 10, event.getTimestamp());
+        Assert.assertEquals(String.format("Testing %05d", i),
+                            Charsets.UTF_8.decode(event.getBody().duplicate()).toString());
+        Assert.assertTrue(event.getStart() > lastPosition);
+        lastPosition = event.getStart();
+      }
+
+      // Reads the events again by seeking to the event positions, or right before them
+      List<PositionStreamEvent> readEvents = Lists.newArrayList();
+      for (int i = 0; i < 1000; i++) {
+        PositionStreamEvent event = events.get(i);
+        for (long offset : new long[] { event.getStart(), event.getStart() - 1 }) {
+          reader = StreamDataFileReader.createWithOffset(Locations.newInputSupplier(eventFile),
+                                                         Locations.newInputSupplier(indexFile), offset);
+          readEvents.clear();
+          Assert.assertEquals(1, reader.read(readEvents, 1, 0, TimeUnit.SECONDS));
+          reader.close();
+          Assert.assertEquals(event.getStart(), readEvents.get(0).getStart());
+          Assert.assertEquals(String.format("Testing %05d", i),
+                              Charsets.UTF_8.decode(readEvents.get(0).getBody()).toString());
+        }
+      }
+
+      // Reads the events by start time
+      for (int i = 0; i < 100; i++) {
+        reader = StreamDataFileReader.createByStartTime(Locations.newInputSupplier(eventFile),
+                                                        Locations.newInputSupplier(indexFile), i);
+        readEvents.clear();
+        Assert.assertEquals(10, reader.read(readEvents, 10, 0, TimeUnit.SECONDS));
+        reader.close();
+        for (int j = 0; j < 10; j++) {
+          Assert.assertEquals(events.get(i * 10 + j).getStart(), readEvents.get(j).getStart());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSeekToTime() throws Exception {
+    Location dir = StreamFileTestUtils.createTempDir(getLocationFactory());
+    Location eventFile = dir.getTempFile(".dat");
+    Location indexFile = dir.getTempFile(".idx");
+
+    // Writes 1000 events, with 10 events per timestamp
+    StreamDataFileWriter writer = new StreamDataFileWriter(Locations.newOutputSupplier(eventFile),
+                                                           Locations.newOutputSupplier(indexFile), 10L);
+    for (int i = 0; i < 1000; i++) {
+      writer.append(StreamFileTestUtils.createEvent(i / 10, "Testing " + i));
+    }
+    writer.close();
+
+    List<PositionStreamEvent> allEvents = Lists.newArrayList();
+    StreamDataFileReader reader = StreamDataFileReader.create(Locations.newInputSupplier(eventFile));
+    Assert.assertEquals(1000, reader.read(allEvents, 1000, 0, TimeUnit.SECONDS));
+    reader.close();
+
+    // Seeks with the shared index and without index
+    for (int i = 0; i < 2; i++) {
+      reader = i == 0 ? StreamDataFileReader.createWithOffset(eventFile, indexFile, 0L)
+                      : StreamDataFileReader.create(Locations.newInputSupplier(eventFile));
+      List<PositionStreamEvent> events = Lists.newArrayList();
+      Assert.assertEquals(5, reader.read(events, 5, 0, TimeUnit.SECONDS));
+
+      // Seek forward, backward and to a time that no event is at
+      for (long time : new long[] { 50L, 10L, 99L, 0L }) {
+        reader.seekToTime(time);
+        events.clear();
+        Assert.assertEquals(10, reader.read(events, 10, 0, TimeUnit.SECONDS));
+        for (int j = 0; j < 10; j++) {
+          Assert.assertEquals(allEvents.get((int) time * 10 + j).getStart(), events.get(j).getStart());
+          Assert.assertEquals(time, events.get(j).getTimestamp());
+        }
+      }
+
+      // Seek beyond the last event
+      reader.seekToTime(100L);
+      events.clear();
+      Assert.assertEquals(-1, reader.read(events, 10, 0, TimeUnit.SECONDS));
+
+      // Seek back after reaching the end of file
+      reader.seekToTime(98L);
+      Assert.assertEquals(20, reader.read(events, 100, 0, TimeUnit.SECONDS));
+      Assert.assertEquals(allEvents.get(980).getStart(), events.get(0).getStart());
+      reader.close();
+    }
+  }
+
   @Test
   public void testEndOfFile() throws Exception {
     // This test is for opening a reader with start time beyond the last event in the file.
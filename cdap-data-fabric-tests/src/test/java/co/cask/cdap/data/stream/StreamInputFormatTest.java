@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -34,6 +34,7 @@ import co.cask.cdap.security.spi.authentication.AuthenticationContext;
 import co.cask.cdap.security.spi.authorization.AuthorizationEnforcer;
 import co.cask.cdap.security.spi.authorization.NoOpAuthorizer;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -326,8 +327,8 @@ public class StreamInputFormatTest {
 
     // create a record reader for the 2nd split
     StreamRecordReader<LongWritable, StreamEvent> recordReader =
-      new StreamRecordReader<>(new IdentityStreamEventDecoder(), new NoOpAuthorizer(), new AuthenticationTestContext(),
-                               DUMMY_ID);
+      new StreamRecordReader<>(new IdentityStreamEventDecoder(), null, new NoOpAuthorizer(),
+                               new AuthenticationTestContext(), DUMMY_ID);
     recordReader.initialize(splits.get(1), context);
 
     // check that we read the 2nd stream event
@@ -400,6 +401,87 @@ public class StreamInputFormatTest {
     Assert.assertEquals("hello world", eventData.getBody().get("body"));
   }
 
+  @Test
+  public void testReadFilterArguments() throws Exception {
+    File inputDir = tmpFolder.newFolder();
+    File partition = new File(inputDir,  "1.1000");
+    partition.mkdirs();
+    File eventFile = new File(partition, "bucket.1.0." + StreamFileType.EVENT.getSuffix());
+    File indexFile = new File(partition, "bucket.1.0." + StreamFileType.INDEX.getSuffix());
+
+    StreamDataFileWriter writer = new StreamDataFileWriter(Files.newOutputStreamSupplier(eventFile),
+                                                           Files.newOutputStreamSupplier(indexFile),
+                                                           100L);
+    for (int i = 0; i < 100; i++) {
+      writer.append(new StreamEvent(ImmutableMap.of("type", i % 2 == 0 ? "even" : "odd"),
+                                    Charsets.UTF_8.encode("event " + i), 1000 + i));
+    }
+    writer.close();
+
+    // Events with even index and body starting with "event 1"
+    Configuration conf = new Configuration();
+    AbstractStreamInputFormat.setStreamId(conf, DUMMY_ID);
+    AbstractStreamInputFormat.setStreamPath(conf, inputDir.toURI());
+    AbstractStreamInputFormat.setMaxSplitSize(conf, 100L);
+    AbstractStreamInputFormat.inferDecoderClass(conf, String.class);
+    AbstractStreamInputFormat.setReadFilterArguments(conf, ImmutableMap.of("filter.header.type", "even",
+                                                                           "filter.body.prefix", "event 1"));
+    Assert.assertEquals(ImmutableList.of("event 10", "event 12", "event 14", "event 16", "event 18"),
+                        readBodies(conf));
+
+    // Events with body matching a regex and field compare on the formatted body
+    conf = new Configuration();
+    AbstractStreamInputFormat.setStreamId(conf, DUMMY_ID);
+    AbstractStreamInputFormat.setStreamPath(conf, inputDir.toURI());
+    AbstractStreamInputFormat.setMaxSplitSize(conf, 100L);
+    AbstractStreamInputFormat.setBodyFormatSpecification(
+      conf, new FormatSpecification(TextRecordFormat.class.getName(),
+                                    Schema.recordOf("event", Schema.Field.of("body", Schema.of(Schema.Type.STRING))),
+                                    Collections.<String, String>emptyMap()));
+    AbstractStreamInputFormat.setReadFilterArguments(conf, ImmutableMap.of("filter.body.regex", "[0-9]5$",
+                                                                           "filter.body.field.body", ">event 6"));
+    Assert.assertEquals(ImmutableList.of("event 65", "event 75", "event 85", "event 95"), readBodies(conf));
+  }
+
+  /**
+   * Reads all splits with the given configuration and returns the event bodies as strings.
+   */
+  @SuppressWarnings("unchecked")
+  private List<String> readBodies(Configuration conf) throws IOException, InterruptedException {
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+    AbstractStreamInputFormat<LongWritable, Object> format = new AbstractStreamInputFormat<LongWritable, Object>() {
+
+      @Override
+      public AuthorizationEnforcer getAuthorizationEnforcer(TaskAttemptContext context) {
+        return new NoOpAuthorizer();
+      }
+
+      @Override
+      public AuthenticationContext getAuthenticationContext(TaskAttemptContext context) {
+        return new AuthenticationTestContext();
+      }
+    };
+
+    List<InputSplit> splits = format.getSplits(context);
+    Assert.assertTrue(splits.size() > 1);
+    List<String> bodies = Lists.newArrayList();
+    for (InputSplit split : splits) {
+      RecordReader<LongWritable, Object> recordReader = format.createRecordReader(split, context);
+      recordReader.initialize(split, context);
+      while (recordReader.nextKeyValue()) {
+        Object value = recordReader.getCurrentValue();
+        if (value instanceof GenericStreamEventData) {
+          StructuredRecord record = ((GenericStreamEventData<StructuredRecord>) value).getBody();
+          bodies.add((String) record.get("body"));
+        } else {
+          bodies.add((String) value);
+        }
+      }
+      recordReader.close();
+    }
+    return bodies;
+  }
+
   private void generateEvents(File inputDir, int numEvents, long startTime, long timeIncrement,
                               GenerateEvent generator) throws IOException {
     File partition = new File(inputDir, Long.toString(startTime / 1000) + ".1000");
@@ -38,6 +38,7 @@ import com.google.common.primitives.Longs;
 import org.apache.tephra.TransactionAware;
 import org.apache.tephra.TransactionContext;
 import org.apache.tephra.TransactionSystemClient;
+import org.apache.tephra.TxConstants;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -312,6 +313,154 @@ public abstract class StreamConsumerTestBase {
     }
   }
 
+  @Test
+  public void testFIFOBatchClaim() throws Exception {
+    String stream = "testFIFOBatchClaim";
+    StreamId streamId = TEST_NAMESPACE.stream(stream);
+    StreamAdmin streamAdmin = getStreamAdmin();
+    streamAdmin.create(streamId);
+    StreamConfig streamConfig = streamAdmin.getConfig(streamId);
+
+    // Writes 100 events
+    writeEvents(streamConfig, "Testing ", 100);
+
+    streamAdmin.configureInstances(streamId, 0L, 3);
+
+    StreamConsumerFactory consumerFactory = getConsumerFactory();
+    List<StreamConsumer> consumers = Lists.newArrayList();
+    List<TransactionContext> txContexts = Lists.newArrayList();
+    for (int i = 0; i < 3; i++) {
+      StreamConsumer consumer = consumerFactory.create(streamId, "fifo.batch",
+                                                       new ConsumerConfig(0L, i, 3, DequeueStrategy.FIFO, null));
+      consumers.add(consumer);
+      txContexts.add(createTxContext(consumer));
+    }
+
+    // Dequeue in batches from all consumers in turn. Each event should be claimed by exactly one consumer.
+    List<String> messages = Lists.newArrayList();
+    boolean done;
+    do {
+      done = true;
+      for (int i = 0; i < consumers.size(); i++) {
+        txContexts.get(i).start();
+        DequeueResult<StreamEvent> result = consumers.get(i).poll(7, 1, TimeUnit.SECONDS);
+        for (StreamEvent event : result) {
+          messages.add(Charsets.UTF_8.decode(event.getBody()).toString());
+        }
+        txContexts.get(i).finish();
+        done = done && result.isEmpty();
+      }
+    } while (!done);
+
+    Assert.assertEquals(100, messages.size());
+    Set<String> uniqueMessages = Sets.newHashSet(messages);
+    Assert.assertEquals(100, uniqueMessages.size());
+    for (int i = 0; i < 100; i++) {
+      Assert.assertTrue(uniqueMessages.contains("Testing " + i));
+    }
+
+    for (StreamConsumer consumer : consumers) {
+      consumer.close();
+    }
+  }
+
+  @Test
+  public void testFIFOStaggeredStart() throws Exception {
+    String stream = "testFIFOStaggeredStart";
+    StreamId streamId = TEST_NAMESPACE.stream(stream);
+    StreamAdmin streamAdmin = getStreamAdmin();
+    streamAdmin.create(streamId);
+    StreamConfig streamConfig = streamAdmin.getConfig(streamId);
+
+    // Use the same writer for all events so that they are in the same stream file
+    FileWriter<StreamEvent> writer = getFileWriterFactory().create(streamConfig, 0);
+    try {
+      // Consume the first 5 events with a single consumer, which doesn't claim entries in ranges
+      writeEvents(writer, "Testing ", 5, new Clock());
+      writer.flush();
+      streamAdmin.configureInstances(streamId, 0L, 1);
+
+      StreamConsumer consumer = getConsumerFactory().create(streamId, "fifo.staggered",
+                                                            new ConsumerConfig(0L, 0, 1, DequeueStrategy.FIFO, null));
+      TransactionContext txContext = createTxContext(consumer);
+      txContext.start();
+      Assert.assertEquals(5, Iterables.size(consumer.poll(5, 1, TimeUnit.SECONDS)));
+      txContext.finish();
+
+      // Poll again to have the reader position after the first 5 events saved on close
+      txContext.start();
+      Assert.assertTrue(consumer.poll(5, 100, TimeUnit.MILLISECONDS).isEmpty());
+      txContext.finish();
+      consumer.close();
+
+      writeEvents(writer, "More ", 10, new Clock());
+    } finally {
+      writer.close();
+    }
+
+    // Reconfigure to two consumers. Both start reading the file after the claim pointer, since nothing is claimed
+    // in ranges yet. They can only claim the new events after waiting for the transaction timeout.
+    streamAdmin.configureInstances(streamId, 0L, 2);
+    StreamConsumerFactory consumerFactory = getConsumerFactory();
+
+    int txTimeout = cConf.getInt(TxConstants.Manager.CFG_TX_TIMEOUT, TxConstants.Manager.DEFAULT_TX_TIMEOUT);
+    cConf.setInt(TxConstants.Manager.CFG_TX_TIMEOUT, 1);
+    try {
+      List<StreamConsumer> consumers = Lists.newArrayList();
+      List<TransactionContext> txContexts = Lists.newArrayList();
+      for (int i = 0; i < 2; i++) {
+        StreamConsumer consumer = consumerFactory.create(streamId, "fifo.staggered",
+                                                         new ConsumerConfig(0L, i, 2, DequeueStrategy.FIFO, null));
+        consumers.add(consumer);
+        txContexts.add(createTxContext(consumer));
+      }
+
+      // Dequeue from both consumers in turn, restarting the second consumer after some events are consumed.
+      // Each new event should be dequeued exactly once, without losing the events read while waiting.
+      List<String> messages = Lists.newArrayList();
+      boolean restarted = false;
+      long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+      while (messages.size() < 10 && System.currentTimeMillis() < deadline) {
+        for (int i = 0; i < consumers.size(); i++) {
+          txContexts.get(i).start();
+          for (StreamEvent event : consumers.get(i).poll(3, 100, TimeUnit.MILLISECONDS)) {
+            messages.add(Charsets.UTF_8.decode(event.getBody()).toString());
+          }
+          txContexts.get(i).finish();
+        }
+
+        if (!restarted && messages.size() >= 3) {
+          consumers.get(1).close();
+          StreamConsumer consumer = consumerFactory.create(streamId, "fifo.staggered",
+                                                           new ConsumerConfig(0L, 1, 2, DequeueStrategy.FIFO, null));
+          consumers.set(1, consumer);
+          txContexts.set(1, createTxContext(consumer));
+          restarted = true;
+        }
+      }
+
+      // There should be nothing more to dequeue
+      for (int i = 0; i < consumers.size(); i++) {
+        txContexts.get(i).start();
+        Assert.assertTrue(consumers.get(i).poll(10, 100, TimeUnit.MILLISECONDS).isEmpty());
+        txContexts.get(i).finish();
+      }
+
+      Assert.assertEquals(10, messages.size());
+      Set<String> uniqueMessages = Sets.newHashSet(messages);
+      Assert.assertEquals(10, uniqueMessages.size());
+      for (int i = 0; i < 10; i++) {
+        Assert.assertTrue(uniqueMessages.contains("More " + i));
+      }
+
+      for (StreamConsumer consumer : consumers) {
+        consumer.close();
+      }
+    } finally {
+      cConf.setInt(TxConstants.Manager.CFG_TX_TIMEOUT, txTimeout);
+    }
+  }
+
   @Test
   public void testTTL() throws Exception {
     String stream = "testTTL";
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -15,6 +15,9 @@
  */
 package co.cask.cdap.data.file;
 
+import java.nio.ByteBuffer;
+import java.util.Map;
+
 /**
  * Filter for reading from {@link FileReader}.
  *
@@ -29,6 +32,7 @@ package co.cask.cdap.data.file;
  *  acceptTimestamp() - Called when the timestamp of a data block is read
  *  getNextTimestampHint() - Called if acceptTimestamp() return false
  *  acceptOffset() - Called at each stream event begin offset
+ *  acceptEvent() - Called with the headers and body of each stream event accepted by acceptOffset()
  * </pre>
  *
  */
@@ -66,6 +70,18 @@ public abstract class ReadFilter {
     return true;
   }
 
+  /**
+   * Accept or reject based on the event headers and body, before the event is created.
+   *
+   * @param headers The headers of the event.
+   * @param body The body of the event. It is only valid during this call and must not be modified.
+   *             It can be a read-only buffer without backing array.
+   * @return {@code true} to accept, {@code false} to reject.
+   */
+  public boolean acceptEvent(Map<String, String> headers, ByteBuffer body) {
+    return true;
+  }
+
   /**
    * Accept or reject based on event timestamp.
    *
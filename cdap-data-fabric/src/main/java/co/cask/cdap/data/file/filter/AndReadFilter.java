@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -18,7 +18,9 @@ package co.cask.cdap.data.file.filter;
 import co.cask.cdap.data.file.ReadFilter;
 import com.google.common.collect.ImmutableList;
 
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
 
 /**
  * AND multiple @{link ReadFilter}s.
@@ -48,6 +50,16 @@ public final class AndReadFilter extends ReadFilter {
     return true;
   }
 
+  @Override
+  public boolean acceptEvent(Map<String, String> headers, ByteBuffer body) {
+    for (ReadFilter filter : filters) {
+      if (!filter.acceptEvent(headers, body)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public boolean acceptTimestamp(long timestamp) {
     for (ReadFilter filter : filters) {
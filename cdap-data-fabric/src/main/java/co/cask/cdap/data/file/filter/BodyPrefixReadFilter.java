@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.file.filter;
+
+import co.cask.cdap.data.file.ReadFilter;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * {@link ReadFilter} for accepting events with body starting with a given sequence of bytes.
+ */
+public final class BodyPrefixReadFilter extends ReadFilter {
+
+  private final byte[] prefix;
+
+  /**
+   * Creates a filter that accepts events with body starting with the given prefix.
+   *
+   * @param prefix the prefix bytes
+   */
+  public BodyPrefixReadFilter(byte[] prefix) {
+    this.prefix = prefix;
+  }
+
+  @Override
+  public boolean acceptEvent(Map<String, String> headers, ByteBuffer body) {
+    if (body.remaining() < prefix.length) {
+      return false;
+    }
+    int pos = body.position();
+    for (int i = 0; i < prefix.length; i++) {
+      if (body.get(pos + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.file.filter;
+
+import co.cask.cdap.data.file.ReadFilter;
+import com.google.common.base.Charsets;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * {@link ReadFilter} for accepting events with UTF-8 text body containing a match of a regular expression.
+ */
+public final class BodyRegexReadFilter extends ReadFilter {
+
+  private final Pattern pattern;
+
+  /**
+   * Creates a filter that accepts events with body containing a match of the given pattern.
+   *
+   * @param pattern the pattern to find in the body
+   */
+  public BodyRegexReadFilter(Pattern pattern) {
+    this.pattern = pattern;
+  }
+
+  @Override
+  public boolean acceptEvent(Map<String, String> headers, ByteBuffer body) {
+    return pattern.matcher(Charsets.UTF_8.decode(body.duplicate())).find();
+  }
+}
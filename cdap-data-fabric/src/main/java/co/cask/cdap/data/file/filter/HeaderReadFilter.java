@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.file.filter;
+
+import co.cask.cdap.data.file.ReadFilter;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * {@link ReadFilter} for accepting events that have a header with a value matching a regular expression.
+ */
+public final class HeaderReadFilter extends ReadFilter {
+
+  private final String name;
+  private final Pattern pattern;
+
+  /**
+   * Creates a filter that accepts events having the given header with value fully matching the given pattern.
+   *
+   * @param name name of the header
+   * @param pattern pattern for the header value
+   */
+  public HeaderReadFilter(String name, Pattern pattern) {
+    this.name = name;
+    this.pattern = pattern;
+  }
+
+  @Override
+  public boolean acceptEvent(Map<String, String> headers, ByteBuffer body) {
+    String value = headers.get(name);
+    return value != null && pattern.matcher(value).matches();
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -21,6 +21,7 @@ import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.data.schema.UnsupportedTypeException;
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
 import co.cask.cdap.api.stream.StreamEventDecoder;
+import co.cask.cdap.data.file.ReadFilter;
 import co.cask.cdap.data.stream.decoder.BytesStreamEventDecoder;
 import co.cask.cdap.data.stream.decoder.FormatStreamEventDecoder;
 import co.cask.cdap.data.stream.decoder.IdentityStreamEventDecoder;
@@ -36,6 +37,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.BytesWritable;
@@ -50,6 +52,7 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.net.URI;
 import java.util.List;
+import java.util.Map;
 import javax.annotation.Nullable;
 
 /**
@@ -90,6 +93,7 @@ public abstract class AbstractStreamInputFormat<K, V> extends InputFormat<K, V>
   private static final Gson GSON = new GsonBuilder()
     .registerTypeAdapter(Schema.class, new SchemaTypeAdapter())
     .create();
+  private static final Type ARGUMENTS_TYPE = new TypeToken<Map<String, String>>() { }.getType();
   private static final StreamInputSplitFactory<InputSplit> splitFactory = new StreamInputSplitFactory<InputSplit>() {
     @Override
     public InputSplit createSplit(Path eventPath, Path indexPath, long startTime, long endTime,
@@ -108,6 +112,7 @@ public abstract class AbstractStreamInputFormat<K, V> extends InputFormat<K, V>
   private static final String DECODER_TYPE = "input.streaminputformat.decoder.type";
   private static final String BODY_FORMAT = "input.streaminputformat.stream.body.format";
   private static final String STREAM_ID = "input.streaminputformat.stream.id";
+  private static final String READ_FILTER_ARGUMENTS = "input.streaminputformat.read.filter.arguments";
 
   /**
    * Sets the TTL for the stream events.
@@ -207,6 +212,17 @@ public abstract class AbstractStreamInputFormat<K, V> extends InputFormat<K, V>
     setDecoderClassName(conf, FormatStreamEventDecoder.class.getName());
   }
 
+  /**
+   * Sets the arguments for filtering stream events by headers and body while reading. Events rejected by the filter
+   * are skipped without being decoded.
+   *
+   * @param conf The job configuration.
+   * @param arguments The filtering arguments as described in {@link StreamEventReadFilters}.
+   */
+  public static void setReadFilterArguments(Configuration conf, Map<String, String> arguments) {
+    conf.set(READ_FILTER_ARGUMENTS, GSON.toJson(arguments, ARGUMENTS_TYPE));
+  }
+
   /**
    * Tries to set the {@link AbstractStreamInputFormat#DECODER_TYPE} depending upon the supplied value class
    *
@@ -267,6 +283,7 @@ public abstract class AbstractStreamInputFormat<K, V> extends InputFormat<K, V>
   public RecordReader<K, V> createRecordReader(InputSplit split,
                                                TaskAttemptContext context) throws IOException, InterruptedException {
     return new StreamRecordReader<>(createStreamEventDecoder(context.getConfiguration()),
+                                    createReadFilter(context.getConfiguration()),
                                     getAuthorizationEnforcer(context),
                                     getAuthenticationContext(context),
                                     GSON.fromJson(context.getConfiguration().get(STREAM_ID), StreamId.class));
@@ -298,6 +315,30 @@ public abstract class AbstractStreamInputFormat<K, V> extends InputFormat<K, V>
     }
   }
 
+  /**
+   * Creates the {@link ReadFilter} for filtering stream events by headers and body.
+   *
+   * @return the {@link ReadFilter} or {@code null} if there is no filtering
+   */
+  @Nullable
+  private ReadFilter createReadFilter(Configuration conf) {
+    String arguments = conf.get(READ_FILTER_ARGUMENTS);
+    if (arguments == null) {
+      return null;
+    }
+    RecordFormat<StreamEvent, V> format = null;
+    String formatSpecStr = conf.get(BODY_FORMAT);
+    if (formatSpecStr != null && !formatSpecStr.isEmpty()) {
+      try {
+        format = getInitializedFormat(conf);
+      } catch (Exception e) {
+        throw new IllegalArgumentException("Unable to get the stream body format.", e);
+      }
+    }
+    Map<String, String> filterArguments = GSON.fromJson(arguments, ARGUMENTS_TYPE);
+    return StreamEventReadFilters.create(filterArguments, format);
+  }
+
   private RecordFormat<StreamEvent, V> getInitializedFormat(Configuration conf)
     throws UnsupportedTypeException, IllegalAccessException, ClassNotFoundException, InstantiationException {
     String formatSpecStr = conf.get(BODY_FORMAT);
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -41,6 +41,7 @@ public final class LiveStreamFileReader extends LiveFileReader<PositionStreamEve
   private final StreamFileOffset beginOffset;
   private final StreamConfig streamConfig;
   private final long maxFileCheckInterval;
+  private final SharedStreamFileReaders sharedReaders;
   private StreamPositionTransformFileReader reader;
   private int retries;
   private long nextCheckTime = 0;
@@ -67,10 +68,25 @@ public final class LiveStreamFileReader extends LiveFileReader<PositionStreamEve
    * @param maxFileCheckInterval maximum interval in milliseconds for checking for new stream file.
    */
   public LiveStreamFileReader(StreamConfig streamConfig, StreamFileOffset beginOffset, long maxFileCheckInterval) {
+    this(streamConfig, beginOffset, maxFileCheckInterval, null);
+  }
+
+  /**
+   * Creates a new file reader.
+   *
+   * @param streamConfig the stream configuration.
+   * @param beginOffset the offset information to begin with.
+   * @param maxFileCheckInterval maximum interval in milliseconds for checking for new stream file.
+   * @param sharedReaders if not {@code null}, stream files are read through it, sharing the reading and decoding
+   *                      of events with other readers of the same file.
+   */
+  public LiveStreamFileReader(StreamConfig streamConfig, StreamFileOffset beginOffset, long maxFileCheckInterval,
+                              @Nullable SharedStreamFileReaders sharedReaders) {
     this.streamConfig = streamConfig;
     this.beginOffset = beginOffset;
     this.maxFileCheckInterval = (maxFileCheckInterval <= 0) ? Constants.Stream.NEW_FILE_CHECK_INTERVAL
                                                             : maxFileCheckInterval;
+    this.sharedReaders = sharedReaders;
   }
 
   @Nullable
@@ -78,7 +94,7 @@ public final class LiveStreamFileReader extends LiveFileReader<PositionStreamEve
   protected FileReader<PositionStreamEvent, StreamFileOffset> renewReader() throws IOException {
     // If no reader has yet opened, start with the beginning offset.
     if (reader == null) {
-      reader = new StreamPositionTransformFileReader(beginOffset);
+      reader = new StreamPositionTransformFileReader(beginOffset, sharedReaders);
       reader.initialize();
       return reader;
     }
@@ -141,7 +157,7 @@ public final class LiveStreamFileReader extends LiveFileReader<PositionStreamEve
     }
 
     StreamPositionTransformFileReader reader =
-      new StreamPositionTransformFileReader(new StreamFileOffset(eventLocation, 0L, generation));
+      new StreamPositionTransformFileReader(new StreamFileOffset(eventLocation, 0L, generation), sharedReaders);
     reader.initialize();
     return reader;
   }
@@ -154,10 +170,14 @@ public final class LiveStreamFileReader extends LiveFileReader<PositionStreamEve
     private final Location partitionLocation;
     private StreamFileOffset offset;
 
-    private StreamPositionTransformFileReader(StreamFileOffset offset) throws IOException {
-      this.reader = StreamDataFileReader.createWithOffset(Locations.newInputSupplier(offset.getEventLocation()),
-                                                          Locations.newInputSupplier(offset.getIndexLocation()),
-                                                          offset.getOffset());
+    private StreamPositionTransformFileReader(StreamFileOffset offset,
+                                              @Nullable SharedStreamFileReaders sharedReaders) throws IOException {
+      if (sharedReaders == null) {
+        this.reader = StreamDataFileReader.createWithOffset(offset.getEventLocation(), offset.getIndexLocation(),
+                                                            offset.getOffset());
+      } else {
+        this.reader = sharedReaders.create(offset.getEventLocation(), offset.getIndexLocation(), offset.getOffset());
+      }
       this.offset = new StreamFileOffset(offset);
       this.partitionLocation = Locations.getParent(offset.getEventLocation());
 
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -15,6 +15,7 @@
  */
 package co.cask.cdap.data.stream;
 
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.data.file.FileReader;
 import co.cask.cdap.data.file.PositionReporter;
@@ -36,6 +37,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
@@ -50,10 +52,19 @@ public final class MultiLiveStreamFileReader implements FileReader<StreamEventOf
   private final Iterable<StreamFileOffset> offsetsView;
 
   public MultiLiveStreamFileReader(StreamConfig streamConfig, Iterable<? extends StreamFileOffset> offsets) {
+    this(streamConfig, offsets, null);
+  }
+
+  /**
+   * Creates a reader that reads stream files through the given {@link SharedStreamFileReaders}, if it is not
+   * {@code null}, so that events are read and decoded once for all readers of the same stream file.
+   */
+  public MultiLiveStreamFileReader(StreamConfig streamConfig, Iterable<? extends StreamFileOffset> offsets,
+                                   @Nullable SharedStreamFileReaders sharedReaders) {
     this.allSources = Sets.newTreeSet();
 
     for (StreamFileOffset source : offsets) {
-      StreamEventSource eventSource = new StreamEventSource(streamConfig, source);
+      StreamEventSource eventSource = new StreamEventSource(streamConfig, source, sharedReaders);
       allSources.add(eventSource);
     }
 
@@ -165,8 +176,10 @@ public final class MultiLiveStreamFileReader implements FileReader<StreamEventOf
     private StreamFileOffset currentOffset;
     private StreamFileOffset nextOffset;
 
-    private StreamEventSource(StreamConfig streamConfig, StreamFileOffset beginOffset) {
-      this.reader = new LiveStreamFileReader(streamConfig, beginOffset);
+    private StreamEventSource(StreamConfig streamConfig, StreamFileOffset beginOffset,
+                              @Nullable SharedStreamFileReaders sharedReaders) {
+      this.reader = new LiveStreamFileReader(streamConfig, beginOffset, Constants.Stream.NEW_FILE_CHECK_INTERVAL,
+                                             sharedReaders);
       this.events = Lists.newArrayListWithCapacity(1);
       this.currentOffset = new StreamFileOffset(beginOffset);
       this.nextOffset = beginOffset;
@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.stream;
+
+import co.cask.cdap.api.data.format.RecordFormat;
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.format.UnexpectedFormatException;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.flow.flowlet.StreamEvent;
+import co.cask.cdap.common.io.ByteBuffers;
+import co.cask.cdap.data.file.ReadFilter;
+import com.google.common.base.Preconditions;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * A {@link ReadFilter} for accepting events by comparing a field of the record formatted from the event body
+ * with a value. The condition is a comparison operator followed by the value, such as {@code >=100}.
+ * The supported operators are {@code =}, {@code !=}, {@code <}, {@code <=}, {@code >} and {@code >=}.
+ * Events that cannot be formatted are accepted, so that they are handled the same as without the filter.
+ * A floating point field that is NaN only satisfies {@code !=}, while infinite values compare as greater or less
+ * than any number.
+ */
+public final class RecordFieldReadFilter extends ReadFilter {
+
+  private final RecordFormat<StreamEvent, ?> format;
+  private final String field;
+  private final CompareOp op;
+  private final Object value;
+
+  /**
+   * Creates a filter.
+   *
+   * @param format the initialized format for formatting event bodies into {@link StructuredRecord}
+   * @param field name of the field to compare
+   * @param condition the comparison operator followed by the value to compare with
+   * @throws IllegalArgumentException if the condition is invalid or the field is not of a comparable type
+   */
+  public RecordFieldReadFilter(RecordFormat<StreamEvent, ?> format, String field, String condition) {
+    Schema.Field schemaField = format.getSchema().getField(field);
+    Preconditions.checkArgument(schemaField != null, "Field %s does not exist in the stream format schema", field);
+
+    this.format = format;
+    this.field = field;
+    this.op = CompareOp.parse(condition);
+
+    String valueStr = condition.trim().substring(op.symbol.length()).trim();
+    Schema schema = schemaField.getSchema().isNullable()
+      ? schemaField.getSchema().getNonNullable() : schemaField.getSchema();
+    switch (schema.getType()) {
+      case INT:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+        try {
+          this.value = new BigDecimal(valueStr);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Invalid number " + valueStr + " for field " + field, e);
+        }
+        break;
+      case BOOLEAN:
+        Preconditions.checkArgument(op == CompareOp.EQUAL || op == CompareOp.NOT_EQUAL,
+                                    "Only = and != are supported for boolean field %s", field);
+        this.value = Boolean.valueOf(valueStr);
+        break;
+      case STRING:
+      case ENUM:
+        this.value = valueStr;
+        break;
+      default:
+        throw new IllegalArgumentException("Field " + field + " of type " + schema.getType() + " is not supported");
+    }
+  }
+
+  @Override
+  public boolean acceptEvent(Map<String, String> headers, ByteBuffer body) {
+    Object record;
+    try {
+      // Formats may need the backing array of the body
+      record = format.read(new StreamEvent(headers, body.hasArray() ? body.duplicate() : ByteBuffers.copy(body)));
+    } catch (UnexpectedFormatException e) {
+      return true;
+    }
+    if (!(record instanceof StructuredRecord)) {
+      return true;
+    }
+
+    Object fieldValue = ((StructuredRecord) record).get(field);
+    if (fieldValue == null) {
+      return op == CompareOp.NOT_EQUAL;
+    }
+
+    int result;
+    if (value instanceof BigDecimal) {
+      if (fieldValue instanceof Double || fieldValue instanceof Float) {
+        double doubleValue = ((Number) fieldValue).doubleValue();
+        if (Double.isNaN(doubleValue)) {
+          return op == CompareOp.NOT_EQUAL;
+        }
+        if (Double.isInfinite(doubleValue)) {
+          // The value to compare with is always finite
+          return op.accept(doubleValue > 0 ? 1 : -1);
+        }
+      }
+      result = new BigDecimal(fieldValue.toString()).compareTo((BigDecimal) value);
+    } else if (value instanceof Boolean) {
+      result = fieldValue.equals(value) ? 0 : 1;
+    } else {
+      result = fieldValue.toString().compareTo((String) value);
+    }
+    return op.accept(result);
+  }
+
+  /**
+   * Comparison operators, ordered such that an operator appears before the ones that are its prefix.
+   */
+  private enum CompareOp {
+    NOT_EQUAL("!="),
+    EQUAL_OR_LESS("<="),
+    EQUAL_OR_GREATER(">="),
+    EQUAL("="),
+    LESS("<"),
+    GREATER(">");
+
+    private final String symbol;
+
+    CompareOp(String symbol) {
+      this.symbol = symbol;
+    }
+
+    boolean accept(int compareResult) {
+      switch (this) {
+        case NOT_EQUAL:
+          return compareResult != 0;
+        case EQUAL_OR_LESS:
+          return compareResult <= 0;
+        case EQUAL_OR_GREATER:
+          return compareResult >= 0;
+        case EQUAL:
+          return compareResult == 0;
+        case LESS:
+          return compareResult < 0;
+        default:
+          return compareResult > 0;
+      }
+    }
+
+    static CompareOp parse(String condition) {
+      String trimmed = condition.trim();
+      for (CompareOp op : values()) {
+        if (trimmed.startsWith(op.symbol)) {
+          return op;
+        }
+      }
+      throw new IllegalArgumentException("Condition must start with one of =, !=, <, <=, >, >=: " + condition);
+    }
+  }
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.stream;
+
+import co.cask.cdap.api.stream.StreamEventData;
+import co.cask.cdap.common.io.ByteBuffers;
+import co.cask.cdap.data.file.FileReader;
+import co.cask.cdap.data.file.ReadFilter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Shares the reading of stream event files among readers of the same file, such as the consumers of different
+ * consumer groups of the same stream. For each event file opened, there is one {@link StreamDataFileReader} that
+ * reads and decodes events into a bounded cache, from which each reader gets the events after its own position,
+ * with its own {@link ReadFilter} applied. A reader that falls behind the cached events reads the file by itself
+ * until it catches up again.
+ */
+public final class SharedStreamFileReaders {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SharedStreamFileReaders.class);
+
+  // Maximum number of events to read from the file at a time when the cache runs out of events
+  private static final int FILL_SIZE = 100;
+
+  private final long maxCacheBytes;
+
+  @GuardedBy("this")
+  private final Map<URI, SharedReader> sharedReaders;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param maxCacheBytes maximum size in bytes of event bodies cached for each event file
+   */
+  public SharedStreamFileReaders(long maxCacheBytes) {
+    this.maxCacheBytes = maxCacheBytes;
+    this.sharedReaders = Maps.newHashMap();
+  }
+
+  /**
+   * Creates a {@link FileReader} of the given event file, which reads events from the shared reader of the file.
+   * The returned reader behaves the same as the one created by
+   * {@link StreamDataFileReader#createWithOffset(Location, Location, long)}.
+   *
+   * @param eventLocation location of the event file
+   * @param indexLocation location of the index file
+   * @param offset the offset to start reading from
+   */
+  FileReader<PositionStreamEvent, Long> create(Location eventLocation, Location indexLocation, long offset) {
+    return new SubscriberReader(eventLocation, indexLocation, offset);
+  }
+
+  private synchronized SharedReader acquire(Location eventLocation, Location indexLocation, long offset) {
+    URI uri = eventLocation.toURI();
+    SharedReader sharedReader = sharedReaders.get(uri);
+    if (sharedReader == null) {
+      sharedReader = new SharedReader(uri, eventLocation, indexLocation, offset);
+      sharedReaders.put(uri, sharedReader);
+    }
+    sharedReader.refCount++;
+    return sharedReader;
+  }
+
+  private synchronized void release(SharedReader sharedReader) throws IOException {
+    if (--sharedReader.refCount == 0) {
+      sharedReaders.remove(sharedReader.uri);
+      sharedReader.close();
+    }
+  }
+
+  /**
+   * An event decoded by the shared reader, together with the reader position after the event.
+   */
+  private static final class CachedEvent {
+
+    private final PositionStreamEvent event;
+    private final long nextPosition;
+
+    CachedEvent(PositionStreamEvent event, long nextPosition) {
+      this.event = event;
+      this.nextPosition = nextPosition;
+    }
+  }
+
+  /**
+   * Reads an event file and caches the decoded events. All events starting at or after {@code windowStart} that
+   * were read are in the cache. The file is read by one subscriber at a time without holding the lock of this
+   * object, while other subscribers can still get the cached events or wait for the read to complete.
+   */
+  private final class SharedReader {
+
+    private final URI uri;
+    private final StreamDataFileReader reader;
+    // Used by the filling subscriber only
+    private final List<PositionStreamEvent> readEvents;
+    private final List<CachedEvent> events;
+    private int head;
+    private long windowStart;
+    private long cachedBytes;
+    private boolean initialized;
+    private boolean filling;
+    private boolean eof;
+    private int refCount;
+
+    SharedReader(URI uri, Location eventLocation, Location indexLocation, long offset) {
+      this.uri = uri;
+      this.reader = StreamDataFileReader.createWithOffset(eventLocation, indexLocation, offset);
+      this.readEvents = Lists.newArrayList();
+      this.events = Lists.newArrayList();
+      this.windowStart = offset;
+    }
+
+    synchronized void initialize() throws IOException {
+      if (!initialized) {
+        reader.initialize();
+        initialized = true;
+      }
+    }
+
+    /**
+     * Returns {@code true} if the events starting at or after the given position are available from this reader.
+     */
+    synchronized boolean covers(long position) {
+      return position >= windowStart;
+    }
+
+    /**
+     * Adds events after the subscriber position that are accepted by the filter to the given collection, and
+     * advances the subscriber position. Each event added has its own copy of the event body.
+     *
+     * @return number of events added, {@code -1} if reached the end of file, or {@code -2} if the events after the
+     *         subscriber position are no longer cached
+     */
+    int read(SubscriberReader subscriber, Collection<? super PositionStreamEvent> result,
+             int maxEvents, ReadFilter filter) throws IOException, InterruptedException {
+      int count = 0;
+      while (true) {
+        synchronized (this) {
+          if (subscriber.position < windowStart) {
+            return count == 0 ? -2 : count;
+          }
+          int idx = findEvent(subscriber.position);
+          while (count < maxEvents && idx < events.size()) {
+            // Same filtering sequence as StreamDataFileReader
+            CachedEvent cachedEvent = events.get(idx++);
+            PositionStreamEvent event = cachedEvent.event;
+            filter.reset();
+            if (filter.acceptTimestamp(event.getTimestamp()) && filter.acceptOffset(event.getStart())
+              && filter.acceptEvent(event.getHeaders(), event.getBody().duplicate())) {
+              StreamEventData data = new StreamEventData(event.getHeaders(), ByteBuffers.copy(event.getBody()));
+              result.add(new PositionStreamEvent(data, event.getTimestamp(), event.getStart()));
+              count++;
+            }
+            subscriber.position = cachedEvent.nextPosition;
+          }
+          if (count >= maxEvents) {
+            return count;
+          }
+          if (eof) {
+            return count == 0 ? -1 : count;
+          }
+          if (filling) {
+            // Another subscriber is reading from the file, wait for it instead of reading the same events
+            wait();
+            continue;
+          }
+          filling = true;
+          evict(subscriber.position);
+        }
+
+        // Read from the file without holding the lock
+        boolean filled = false;
+        try {
+          filled = fill();
+        } finally {
+          synchronized (this) {
+            filling = false;
+            notifyAll();
+          }
+        }
+        if (!filled) {
+          return count;
+        }
+      }
+    }
+
+    /**
+     * Returns the index of the first cached event that starts at or after the given position.
+     */
+    private int findEvent(long position) {
+      int low = head;
+      int high = events.size();
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (events.get(mid).event.getStart() < position) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * Evicts events before the given position, which the current caller already consumed, if the cache is full.
+     */
+    private void evict(long position) {
+      while (cachedBytes > maxCacheBytes && head < events.size() && events.get(head).event.getStart() < position) {
+        CachedEvent evicted = events.get(head++);
+        cachedBytes -= evicted.event.getBody().remaining();
+        windowStart = evicted.nextPosition;
+      }
+      if (head > 0 && head >= events.size() / 2) {
+        events.subList(0, head).clear();
+        head = 0;
+      }
+    }
+
+    /**
+     * Reads more events from the file into the cache. It must only be called by the subscriber that set the
+     * {@code filling} flag, and without holding the lock of this object while reading.
+     *
+     * @return {@code true} if any event is read or the end of file is reached
+     */
+    private boolean fill() throws IOException, InterruptedException {
+      readEvents.clear();
+      // Never wait since the timeout is zero
+      int count = reader.read(readEvents, FILL_SIZE, 0L, TimeUnit.MILLISECONDS);
+      long position = reader.getPosition();
+
+      synchronized (this) {
+        if (count < 0) {
+          eof = true;
+          return true;
+        }
+        // The reader position is only known after the last event read,
+        // hence use the start of the following event as the position after each of the other events.
+        for (int i = 0; i < readEvents.size(); i++) {
+          PositionStreamEvent event = readEvents.get(i);
+          long nextPosition = (i + 1 < readEvents.size()) ? readEvents.get(i + 1).getStart() : position;
+          events.add(new CachedEvent(event, nextPosition));
+          cachedBytes += event.getBody().remaining();
+        }
+        return count > 0;
+      }
+    }
+
+    synchronized void close() throws IOException {
+      LOG.trace("Closing shared stream reader for {}", uri);
+      events.clear();
+      readEvents.clear();
+      reader.close();
+    }
+  }
+
+  /**
+   * A {@link FileReader} of one event file that reads from the {@link SharedReader} of the file, or from its own
+   * {@link StreamDataFileReader} when it is behind the events cached by the shared reader.
+   */
+  @NotThreadSafe
+  private final class SubscriberReader implements FileReader<PositionStreamEvent, Long> {
+
+    private final Location eventLocation;
+    private final Location indexLocation;
+    private final SharedReader sharedReader;
+    private StreamDataFileReader privateReader;
+    private long position;
+    private boolean closed;
+
+    SubscriberReader(Location eventLocation, Location indexLocation, long offset) {
+      this.eventLocation = eventLocation;
+      this.indexLocation = indexLocation;
+      this.sharedReader = acquire(eventLocation, indexLocation, offset);
+      this.position = offset;
+    }
+
+    @Override
+    public void initialize() throws IOException {
+      sharedReader.initialize();
+      if (!sharedReader.covers(position)) {
+        openPrivateReader();
+      }
+    }
+
+    @Override
+    public int read(Collection<? super PositionStreamEvent> events, int maxEvents,
+                    long timeout, TimeUnit unit) throws IOException, InterruptedException {
+      return read(events, maxEvents, timeout, unit, ReadFilter.ALWAYS_ACCEPT);
+    }
+
+    @Override
+    public int read(Collection<? super PositionStreamEvent> events, int maxEvents,
+                    long timeout, TimeUnit unit, ReadFilter readFilter) throws IOException, InterruptedException {
+      if (closed) {
+        throw new IOException("Reader already closed.");
+      }
+
+      if (privateReader != null) {
+        int eventCount = privateReader.read(events, maxEvents, timeout, unit, readFilter);
+        position = privateReader.getPosition();
+        if (eventCount >= 0 && sharedReader.covers(position)) {
+          LOG.trace("Switching to shared stream reader for {} at {}", eventLocation, position);
+          closePrivateReader();
+        }
+        return eventCount;
+      }
+
+      long timeoutNano = unit.toNanos(timeout);
+      long startTime = System.nanoTime();
+      while (true) {
+        int eventCount = sharedReader.read(this, events, maxEvents, readFilter);
+        if (eventCount == -2) {
+          // Fell behind the shared reader, read by itself until catching up.
+          LOG.trace("Switching to private stream reader for {} at {}", eventLocation, position);
+          openPrivateReader();
+          long remaining = Math.max(0L, timeoutNano - (System.nanoTime() - startTime));
+          return read(events, maxEvents, remaining, TimeUnit.NANOSECONDS, readFilter);
+        }
+        if (eventCount != 0) {
+          return eventCount;
+        }
+        long elapsed = System.nanoTime() - startTime;
+        if (elapsed >= timeoutNano) {
+          return 0;
+        }
+        // Same as StreamDataFileReader, sleep for 1/10 of the timeout before trying again
+        TimeUnit.NANOSECONDS.sleep(Math.min(Math.max(timeoutNano / 10, 1L), timeoutNano - elapsed));
+      }
+    }
+
+    @Override
+    public Long getPosition() {
+      return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        closePrivateReader();
+      } finally {
+        release(sharedReader);
+      }
+    }
+
+    private void openPrivateReader() throws IOException {
+      StreamDataFileReader reader = StreamDataFileReader.createWithOffset(eventLocation, indexLocation, position);
+      reader.initialize();
+      privateReader = reader;
+      position = reader.getPosition();
+    }
+
+    private void closePrivateReader() throws IOException {
+      if (privateReader != null) {
+        try {
+          privateReader.close();
+        } finally {
+          privateReader = null;
+        }
+      }
+    }
+  }
+}
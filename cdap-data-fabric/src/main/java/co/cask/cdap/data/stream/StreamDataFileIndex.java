@@ -73,6 +73,13 @@ final class StreamDataFileIndex {
     this.positions = positions;
   }
 
+  /**
+   * Returns the number of entries in the index.
+   */
+  int size() {
+    return timestamps.size();
+  }
+
   /**
    * Finds the largest event file position recorded in the index that has timestamp smaller than or equal to the given
    * timestamp.
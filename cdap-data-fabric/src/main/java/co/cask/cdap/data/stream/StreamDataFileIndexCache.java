@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.stream;
+
+import co.cask.cdap.common.io.Locations;
+import com.google.common.base.Objects;
+import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * A process wide cache of loaded {@link StreamDataFileIndex}, so that readers opened on the same stream file
+ * don't need to load the index file again. An index is cached by the location and the size of the index file,
+ * so that an index of a stream file that is still being written to is reloaded after new entries are appended.
+ */
+final class StreamDataFileIndexCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StreamDataFileIndexCache.class);
+
+  // Maximum number of index entries cached, which is 16 bytes each.
+  private static final long MAX_ENTRIES = 1024 * 1024;
+
+  private static final Cache<CacheKey, StreamDataFileIndex> CACHE = CacheBuilder.newBuilder()
+    .maximumWeight(MAX_ENTRIES)
+    .weigher(new Weigher<CacheKey, StreamDataFileIndex>() {
+      @Override
+      public int weigh(CacheKey key, StreamDataFileIndex index) {
+        return index.size();
+      }
+    })
+    .build();
+
+  /**
+   * Returns a {@link Supplier} of the {@link StreamDataFileIndex} for the given index file. The supplier returns
+   * the cached index if the index file hasn't changed since it was cached.
+   */
+  static Supplier<StreamDataFileIndex> getIndexSupplier(final Location indexLocation) {
+    return new Supplier<StreamDataFileIndex>() {
+      @Override
+      public StreamDataFileIndex get() {
+        long length;
+        try {
+          length = indexLocation.length();
+        } catch (IOException e) {
+          LOG.debug("Failed to get the size of the stream index file {}", indexLocation, e);
+          length = 0L;
+        }
+
+        // An empty index is not cached, since it is either absent or doesn't have any entry yet.
+        CacheKey key = new CacheKey(indexLocation.toURI(), length);
+        StreamDataFileIndex index = length <= 0 ? null : CACHE.getIfPresent(key);
+        if (index != null) {
+          return index;
+        }
+        index = new StreamDataFileIndex(Locations.newInputSupplier(indexLocation));
+        if (length > 0 && index.size() > 0) {
+          CACHE.put(key, index);
+        }
+        return index;
+      }
+    };
+  }
+
+  private StreamDataFileIndexCache() {
+  }
+
+  /**
+   * Key for the cache, which is the location and the size of the index file.
+   */
+  private static final class CacheKey {
+
+    private final URI uri;
+    private final long length;
+
+    CacheKey(URI uri, long length) {
+      this.uri = uri;
+      this.length = length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      CacheKey other = (CacheKey) o;
+      return length == other.length && uri.equals(other.uri);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(uri, length);
+    }
+  }
+}
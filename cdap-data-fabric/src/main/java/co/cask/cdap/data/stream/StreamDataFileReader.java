@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -21,17 +21,20 @@ import co.cask.cdap.api.flow.flowlet.StreamEvent;
 import co.cask.cdap.common.io.BinaryDecoder;
 import co.cask.cdap.common.io.ByteBuffers;
 import co.cask.cdap.common.io.Decoder;
+import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.common.io.SeekableInputStream;
 import co.cask.cdap.common.stream.StreamEventDataCodec;
 import co.cask.cdap.data.file.FileReader;
 import co.cask.cdap.data.file.ReadFilter;
 import co.cask.cdap.internal.io.SchemaTypeAdapter;
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.InputSupplier;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.stream.JsonReader;
+import org.apache.twill.filesystem.Location;
 
 import java.io.EOFException;
 import java.io.FileNotFoundException;
@@ -54,7 +57,7 @@ import javax.annotation.concurrent.NotThreadSafe;
 public final class StreamDataFileReader implements FileReader<PositionStreamEvent, Long> {
 
   private final InputSupplier<? extends SeekableInputStream> eventInputSupplier;
-  private final InputSupplier<? extends InputStream> indexInputSupplier;
+  private final Supplier<StreamDataFileIndex> indexSupplier;
   private final long startTime;
   private final long offset;
   private final byte[] timestampBuffer;
@@ -62,11 +65,16 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
   private StreamDataFileIndex index;
   private SeekableInputStream eventInput;
   private long position;
+  // Position of the first data block
+  private long dataPosition;
+  // Timestamp to seek to before the next read, or -1 if there is no pending seek
+  private long seekTime = -1L;
   private long timestamp;
   private boolean closed;
   private boolean eof;
   private Decoder decoder;
   private StreamEvent eventTemplate;
+  private StreamFileCompression compression = StreamFileCompression.NONE;
 
   /**
    * Opens a new {@link StreamDataFileReader} with the given inputs.
@@ -78,6 +86,20 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     return new StreamDataFileReader(eventInputSupplier, null, 0L, 0L);
   }
 
+  /**
+   * Opens a new {@link StreamDataFileReader} for the given event file, which uses the index file of the event file
+   * for seeking to an offset or time. The loaded index is shared with other readers opened with this method.
+   *
+   * @param eventLocation Location of the event file
+   * @param indexLocation Location of the index file
+   * @param offset An arbitrary event file offset to start reading from, or {@code 0} to start from the beginning
+   * @return A new instance of {@link StreamDataFileReader}.
+   */
+  static StreamDataFileReader createWithOffset(Location eventLocation, Location indexLocation, long offset) {
+    return new StreamDataFileReader(Locations.newInputSupplier(eventLocation),
+                                    StreamDataFileIndexCache.getIndexSupplier(indexLocation), 0L, offset);
+  }
+
   /**
    * Opens a new {@link StreamDataFileReader} with the given inputs that starts reading events that are
    * written at or after the given timestamp.
@@ -90,7 +112,7 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
   public static StreamDataFileReader createByStartTime(
     InputSupplier<? extends SeekableInputStream> eventInputSupplier,
     @Nullable InputSupplier<? extends InputStream> indexInputSupplier, long startTime) {
-    return new StreamDataFileReader(eventInputSupplier, indexInputSupplier, startTime, 0L);
+    return new StreamDataFileReader(eventInputSupplier, createIndexSupplier(indexInputSupplier), startTime, 0L);
   }
 
   /**
@@ -105,14 +127,28 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
   public static StreamDataFileReader createWithOffset(InputSupplier<? extends SeekableInputStream> eventInputSupplier,
                                                       @Nullable InputSupplier<? extends InputStream> indexInputSupplier,
                                                       long offset) {
-    return new StreamDataFileReader(eventInputSupplier, indexInputSupplier, 0L, offset);
+    return new StreamDataFileReader(eventInputSupplier, createIndexSupplier(indexInputSupplier), 0L, offset);
+  }
+
+  @Nullable
+  private static Supplier<StreamDataFileIndex> createIndexSupplier(
+    @Nullable final InputSupplier<? extends InputStream> indexInputSupplier) {
+    if (indexInputSupplier == null) {
+      return null;
+    }
+    return new Supplier<StreamDataFileIndex>() {
+      @Override
+      public StreamDataFileIndex get() {
+        return new StreamDataFileIndex(indexInputSupplier);
+      }
+    };
   }
 
   private StreamDataFileReader(InputSupplier<? extends SeekableInputStream> eventInputSupplier,
-                               @Nullable InputSupplier<? extends InputStream> indexInputSupplier,
+                               @Nullable Supplier<StreamDataFileIndex> indexSupplier,
                                long startTime, long offset) {
     this.eventInputSupplier = eventInputSupplier;
-    this.indexInputSupplier = indexInputSupplier;
+    this.indexSupplier = indexSupplier;
     this.streamEventBuffer = new StreamEventBuffer();
     this.startTime = startTime;
     this.offset = offset;
@@ -146,12 +182,30 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     }
   }
 
+  /**
+   * Moves this reader to the first event that has timestamp larger than or equal to the given timestamp. The index
+   * is used to skip data blocks, and data blocks are skipped without decoding the events in them. Events that are
+   * already read by this reader can be read again by seeking to an earlier time. The seek happens on the next
+   * call to one of the {@code read} methods.
+   *
+   * @param timestamp timestamp in milliseconds to seek to
+   * @throws IOException if this reader is already closed
+   */
+  public void seekToTime(long timestamp) throws IOException {
+    if (closed) {
+      throw new IOException("Reader already closed.");
+    }
+    seekTime = Math.max(0L, timestamp);
+    eof = false;
+  }
+
   @Override
   public void close() throws IOException {
     if (closed) {
       return;
     }
     try {
+      streamEventBuffer.release();
       if (eventInput != null) {
         eventInput.close();
       }
@@ -185,6 +239,9 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
           if (eventInput == null) {
             doOpen();
           }
+          if (seekTime >= 0) {
+            doSeekToTime(seekTime);
+          }
 
           PositionStreamEvent event = nextStreamEvent(readFilter);
           if (event != null) {
@@ -233,12 +290,25 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
    * Returns the index for the stream data or {@code null} if index is absent.
    */
   private StreamDataFileIndex getIndex() {
-    if (index == null && indexInputSupplier != null) {
-      index = new StreamDataFileIndex(indexInputSupplier);
+    if (index == null && indexSupplier != null) {
+      index = indexSupplier.get();
     }
     return index;
   }
 
+  /**
+   * Seeks to the first event that has timestamp larger than or equal to the given timestamp, starting from the
+   * beginning of the data blocks.
+   */
+  private void doSeekToTime(long timestamp) throws IOException {
+    streamEventBuffer.clear();
+    eof = false;
+    eventInput.seek(dataPosition);
+    position = dataPosition;
+    seekTime = -1L;
+    initByTime(timestamp);
+  }
+
   /**
    * Opens and initialize this reader.
    */
@@ -307,7 +377,13 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
       eventTemplate = new StreamEvent(ImmutableMap.<String, String>of(), ByteBuffers.EMPTY_BUFFER, -1L);
     }
 
+    // Data blocks are compressed since version 3
+    if (fileVersion >= 3) {
+      compression = decodeCompression(properties);
+    }
+
     position = eventInput.getPos();
+    dataPosition = position;
   }
 
   /**
@@ -323,13 +399,33 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     if (Arrays.equals(magic, StreamDataFileConstants.MAGIC_HEADER_V2)) {
       return 2;
     }
+    if (Arrays.equals(magic, StreamDataFileConstants.MAGIC_HEADER_V3)) {
+      return 3;
+    }
     throw new IOException(
-      String.format("Unsupported stream file format. First two bytes must be %s or %s",
+      String.format("Unsupported stream file format. First two bytes must be %s, %s or %s",
                     Bytes.toStringBinary(StreamDataFileConstants.MAGIC_HEADER_V1),
-                    Bytes.toStringBinary(StreamDataFileConstants.MAGIC_HEADER_V2))
+                    Bytes.toStringBinary(StreamDataFileConstants.MAGIC_HEADER_V2),
+                    Bytes.toStringBinary(StreamDataFileConstants.MAGIC_HEADER_V3))
     );
   }
 
+  /**
+   * Decodes the compression of the data blocks from the file properties.
+   */
+  private StreamFileCompression decodeCompression(Map<String, String> properties) throws IOException {
+    String key = StreamDataFileConstants.Property.Key.COMPRESSION;
+    String value = properties.get(key);
+    if (value == null) {
+      throw new IOException("Missing '" + key + "' property.");
+    }
+    try {
+      return StreamFileCompression.fromName(value);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Unsupported compression " + value, e);
+    }
+  }
+
   /**
    * Creates a {@link StreamEvent} that will be used as a template for all events consumable from this reader.
    */
@@ -379,9 +475,10 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
   private void initByTime(final long time) throws IOException {
     // If index is provided, lookup the index find the offset closest to start time.
     // If no offset is found, starts from the beginning of the events
+    // Only seek forward, since this is also called to skip data blocks rejected by a ReadFilter
     StreamDataFileIndex index = getIndex();
     long offset = index == null ? 0 : index.floorPositionByTime(time);
-    if (offset > 0) {
+    if (offset > eventInput.getPos()) {
       eventInput.seek(offset);
     }
 
@@ -485,7 +582,11 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     // Use the template timestamp if available
     timestamp = eventTemplate.getTimestamp() >= 0 ? eventTemplate.getTimestamp() : timestamp;
     if (acceptTimestamp(filter, timestamp)) {
-      streamEventBuffer.fillBuffer(eventInput, readLength());
+      if (compression == StreamFileCompression.NONE) {
+        streamEventBuffer.fillBuffer(eventInput, readLength());
+      } else {
+        streamEventBuffer.fillBuffer(eventInput, readLength(), compression);
+      }
       this.timestamp = timestamp;
       return;
     }
@@ -32,6 +32,7 @@ import com.google.common.io.OutputSupplier;
 import com.google.common.primitives.Longs;
 import org.apache.hadoop.fs.Syncable;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -48,17 +49,27 @@ import javax.annotation.concurrent.NotThreadSafe;
  * {@code
  *
  * event_file = <header> <data>* <end_marker>
- * header = "E" "1" <properties>
+ * header = "E" <version> <properties>
+ * version = "2" for uncompressed files, "3" for files with compressed data blocks
  * properties = Avro encoded with the properties schema
- * data = <timestamp> <length> <stream_event>+
+ * data = <timestamp> <length> <stream_event>+                  (version 2)
+ *      | <timestamp> <length> <raw_length> <block>            (version 3)
  * timestamp = 8 bytes int64 for timestamp in milliseconds
- * length = Avro encoded int32 for size in bytes for all <stream_event>s
+ * length = Avro encoded int32 for size in bytes for all <stream_event>s, or <raw_length> and <block>
  * stream_event = Avro encoded bytes according to the StreamData schema
+ * raw_length = Avro encoded int32 for size in bytes of the uncompressed <stream_event>s in the <block>,
+ *              or 0 if the <block> is not compressed
+ * block = <stream_event>+, compressed with the compression in the "stream.compression" property if raw_length > 0
  * end_marker = 8 bytes int64 with value == -(close_timestamp)
  *
  * }
  * </pre>
  *
+ * The position of an event is its offset in the event file. For a compressed block, event positions are instead
+ * the offset of the compressed data plus the index of the event in the block. A block is only compressed if the
+ * compressed data is at least as large as the number of events, so that event positions stay unique and within
+ * the block, and readers can start from any position.
+ *
  * Stream index file:
  *
  * <pre>
@@ -84,10 +95,13 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
   private final long indexInterval;
   private final BufferedEncoder encoder;
   private final BufferedEncoder lengthEncoder;
+  private final StreamFileCompression compression;
+  private final ByteArrayOutputStream blockOutput;
 
   // Timestamp for the current block
   private long currentTimestamp;
   private long position;
+  private int blockEvents;
   private long nextIndexTime;
   private boolean synced;
   private boolean closed;
@@ -110,7 +124,9 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
    * @param eventOutputSupplier the provider of the {@link OutputStream} for writing events
    * @param indexOutputSupplier the provider of the {@link OutputStream} for writing the index
    * @param indexInterval the time interval in milliseconds for emitting a new index entry
-   * @param properties the property set that will be stored as file properties
+   * @param properties the property set that will be stored as file properties. The
+   *                   {@link StreamDataFileConstants.Property.Key#COMPRESSION} property sets the
+   *                   {@link StreamFileCompression} of the data blocks
    * @throws IOException if there is an error in preparing the output streams
    */
   public StreamDataFileWriter(OutputSupplier<? extends OutputStream> eventOutputSupplier,
@@ -130,6 +146,9 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
     Function<OutputStream, Encoder> encoderFactory = createEncoderFactory();
     this.encoder = new BufferedEncoder(BUFFER_SIZE, encoderFactory);
     this.lengthEncoder = new BufferedEncoder(5, encoderFactory);
+    this.compression = StreamFileCompression.fromName(
+      properties.get(StreamDataFileConstants.Property.Key.COMPRESSION));
+    this.blockOutput = new ByteArrayOutputStream(compression == StreamFileCompression.NONE ? 0 : BUFFER_SIZE);
 
     try {
       init(properties);
@@ -222,6 +241,7 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
 
       // Encodes the event data into buffer.
       StreamEventDataCodec.encode(event, encoder);
+      blockEvents++;
 
       // Optionally flush if already filled up the buffer.
       if (encoder.size() >= flushLimit) {
@@ -235,10 +255,15 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
 
   private void init(Map<String, String> properties) throws IOException {
     // Writes the header for event file
-    encoder.writeRaw(StreamDataFileConstants.MAGIC_HEADER_V2);
-
     Map<String, String> headers = Maps.newHashMap(properties);
     headers.put(StreamDataFileConstants.Property.Key.SCHEMA, StreamEventDataCodec.STREAM_DATA_SCHEMA.toString());
+    if (compression == StreamFileCompression.NONE) {
+      encoder.writeRaw(StreamDataFileConstants.MAGIC_HEADER_V2);
+      headers.remove(StreamDataFileConstants.Property.Key.COMPRESSION);
+    } else {
+      encoder.writeRaw(StreamDataFileConstants.MAGIC_HEADER_V3);
+      headers.put(StreamDataFileConstants.Property.Key.COMPRESSION, compression.name());
+    }
     StreamUtils.encodeMap(headers, encoder);
 
     long headerSize = encoder.size();
@@ -278,16 +303,20 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
       indexOffset = position - Bytes.SIZEOF_LONG;
     }
 
-    // Writes the size of the encoded event
-    lengthEncoder.writeInt(encoder.size());
-    int size = lengthEncoder.size();
-    lengthEncoder.writeTo(eventOutput);
-    position += size;
-
-    // Writes all encoded data from the buffer to the output.
-    size = encoder.size();
-    encoder.writeTo(eventOutput);
-    position += size;
+    if (compression == StreamFileCompression.NONE) {
+      // Writes the size of the encoded event
+      lengthEncoder.writeInt(encoder.size());
+      int size = lengthEncoder.size();
+      lengthEncoder.writeTo(eventOutput);
+      position += size;
+
+      // Writes all encoded data from the buffer to the output.
+      size = encoder.size();
+      encoder.writeTo(eventOutput);
+      position += size;
+    } else {
+      position += writeCompressedBlock();
+    }
     if (sync) {
       sync(eventOutput);
     }
@@ -307,9 +336,37 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
 
     // Reset the current timestamp so that a data block will start.
     currentTimestamp = -1L;
+    blockEvents = 0;
     synced = sync;
   }
 
+  /**
+   * Compresses the encoded events in the buffer and writes them as a data block to the underlying output stream.
+   *
+   * @return number of bytes written
+   */
+  private int writeCompressedBlock() throws IOException {
+    int rawSize = encoder.size();
+    encoder.writeTo(blockOutput);
+    byte[] rawData = blockOutput.toByteArray();
+    blockOutput.reset();
+
+    byte[] data = compression.compress(rawData, rawSize);
+    int rawLength = rawSize;
+    if (data.length >= rawSize || data.length < blockEvents) {
+      // Not worth compressing, or too small to give each event an unique position
+      data = rawData;
+      rawLength = 0;
+    }
+
+    lengthEncoder.writeInt(getIntEncodedSize(rawLength) + data.length);
+    lengthEncoder.writeInt(rawLength);
+    int size = lengthEncoder.size();
+    lengthEncoder.writeTo(eventOutput);
+    eventOutput.write(data);
+    return size + data.length;
+  }
+
   private void sync(OutputStream output) throws IOException {
     if (output instanceof Syncable) {
       ((Syncable) output).hsync();
@@ -329,6 +386,19 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
     throw ex;
   }
 
+  /**
+   * Returns the number of bytes of the Avro encoding of the given int, which is zig-zag variable length encoded.
+   */
+  private static int getIntEncodedSize(int value) {
+    int zigzag = (value << 1) ^ (value >> 31);
+    int size = 1;
+    while ((zigzag & ~0x7F) != 0) {
+      zigzag >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
   private static Function<OutputStream, Encoder> createEncoderFactory() {
     return new Function<OutputStream, Encoder>() {
       @Override
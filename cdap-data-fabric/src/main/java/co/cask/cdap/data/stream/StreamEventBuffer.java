@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,6 +16,7 @@
 
 package co.cask.cdap.data.stream;
 
+import co.cask.cdap.api.stream.StreamEventData;
 import co.cask.cdap.common.io.BinaryDecoder;
 import co.cask.cdap.common.io.ByteBuffers;
 import co.cask.cdap.common.io.Decoder;
@@ -32,7 +33,9 @@ import javax.annotation.concurrent.NotThreadSafe;
 
 /**
  * A buffer for holding encoded stream events. It is used by {@link StreamDataFileReader} for holding
- * encoded stream events in each data block.
+ * encoded stream events in each data block. If the input stream supports {@link SeekableInputStream#readBuffer(int)},
+ * the data block is not copied into the buffer. The bodies of the decoded events are always copied to heap
+ * buffers, so that they are writable, have a backing array and don't hold on to the block read from the stream.
  */
 @NotThreadSafe
 final class StreamEventBuffer {
@@ -41,13 +44,22 @@ final class StreamEventBuffer {
   private final Decoder decoder;
 
   private ByteBuffer buffer;
+  private ByteBuffer heapBuffer;
+  private byte[] compressedBlock;
   private long basePosition;
+  private long endPosition;
+  // If true, event positions are the base position plus the event index, instead of the event offset in the buffer
+  private boolean eventIndexed;
+  private int eventIndex;
 
   StreamEventBuffer() {
     this.buffer = ByteBuffers.EMPTY_BUFFER;
+    this.heapBuffer = buffer;
+    this.compressedBlock = new byte[0];
     this.bufferInput = new ByteBufferInputStream(buffer);
     this.decoder = new BinaryDecoder(bufferInput);
     this.basePosition = -1L;
+    this.endPosition = -1L;
   }
 
   /**
@@ -59,29 +71,75 @@ final class StreamEventBuffer {
    * @throws EOFException if failed to read the given number of bytes from the input
    */
   void fillBuffer(SeekableInputStream input, int size) throws IOException {
-    buffer.clear();
-    buffer = ensureCapacity(buffer, size);
+    try {
+      basePosition = input.getPos();
+      buffer = readBlock(input, size);
+      bufferInput.reset(buffer);
+      endPosition = basePosition + size;
+      eventIndexed = false;
+    } catch (IOException e) {
+      // Make the buffer has nothing to read
+      buffer.position(buffer.limit());
+      basePosition = -1L;
+      endPosition = -1L;
+      throw e;
+    }
+  }
 
+  /**
+   * Fills the internal buffer by reading a data block of a stream file with compressed data blocks.
+   *
+   * @param input input stream to read from
+   * @param size size of the data block
+   * @param compression the compression of the data block
+   * @throws IOException if failed to read from the stream or to decompress
+   * @throws EOFException if failed to read the given number of bytes from the input
+   * @see StreamDataFileWriter
+   */
+  void fillBuffer(SeekableInputStream input, int size, StreamFileCompression compression) throws IOException {
     try {
+      long blockPosition = input.getPos();
+      // The block starts with the size of the uncompressed events, or 0 if the events are not compressed
+      int rawSize = new BinaryDecoder(input).readInt();
       basePosition = input.getPos();
-      int bytesRead = 0;
-      while (bytesRead != size) {
-        int len = input.read(buffer.array(), bytesRead, size - bytesRead);
-        if (len < 0) {
-          throw new EOFException("Expected to read " + size + ", but only " + bytesRead + " was read");
+      int dataSize = size - (int) (basePosition - blockPosition);
+
+      if (rawSize == 0) {
+        buffer = readBlock(input, dataSize);
+        eventIndexed = false;
+      } else {
+        if (compressedBlock.length < dataSize) {
+          compressedBlock = new byte[dataSize];
         }
-        bytesRead += len;
+        readFully(input, compressedBlock, dataSize);
+        heapBuffer.clear();
+        heapBuffer = ensureCapacity(heapBuffer, rawSize);
+        compression.decompress(compressedBlock, 0, dataSize, heapBuffer.array(), rawSize);
+        heapBuffer.limit(rawSize);
+        buffer = heapBuffer;
+        eventIndexed = true;
+        eventIndex = 0;
       }
-      buffer.limit(size);
       bufferInput.reset(buffer);
+      endPosition = blockPosition + size;
     } catch (IOException e) {
       // Make the buffer has nothing to read
       buffer.position(buffer.limit());
       basePosition = -1L;
+      endPosition = -1L;
       throw e;
     }
   }
 
+  /**
+   * Discards all events in the buffer.
+   */
+  void clear() {
+    buffer.position(buffer.limit());
+    basePosition = -1L;
+    endPosition = -1L;
+  }
+
   /**
    * Returns {@code true} if there are events in the buffer, {@code false} otherwise.
    */
@@ -94,7 +152,13 @@ final class StreamEventBuffer {
    * read from the stream.
    */
   long getPosition() {
-    return basePosition >= 0 ? basePosition + buffer.position() : -1L;
+    if (basePosition < 0) {
+      return -1L;
+    }
+    if (eventIndexed) {
+      return hasEvent() ? basePosition + eventIndex : endPosition;
+    }
+    return basePosition + buffer.position();
   }
 
   /**
@@ -102,7 +166,7 @@ final class StreamEventBuffer {
    * been read from the stream.
    */
   long getEndPosition() {
-    return basePosition >= 0 ? basePosition + buffer.limit() : -1L;
+    return endPosition;
   }
 
   /**
@@ -120,12 +184,63 @@ final class StreamEventBuffer {
       throw new IOException("No more event in the buffer");
     }
 
-    long eventPos = basePosition + buffer.position();
-    if (filter.acceptOffset(eventPos)) {
-      return new PositionStreamEvent(StreamEventDataCodec.decode(decoder, defaultHeaders), timestamp, eventPos);
+    long eventPos = getPosition();
+    eventIndex++;
+    if (!filter.acceptOffset(eventPos)) {
+      StreamEventDataCodec.skip(decoder);
+      return null;
+    }
+
+    // Decode with a slice of the buffer as the body, so that the filter can reject the event without copying
+    int bodySize = decoder.readInt();
+    ByteBuffer body = buffer.slice();
+    body.limit(bodySize);
+    buffer.position(buffer.position() + bodySize);
+    StreamEventData data = StreamEventDataCodec.decode(body, decoder, defaultHeaders);
+    if (!filter.acceptEvent(data.getHeaders(), body)) {
+      return null;
+    }
+
+    // Copy the body, so that the event doesn't hold on to the data block
+    data = new StreamEventData(data.getHeaders(), ByteBuffers.copy(body));
+    return new PositionStreamEvent(data, timestamp, eventPos);
+  }
+
+  /**
+   * Reads a data block from the given input stream, without copying if the input stream supports it.
+   */
+  private ByteBuffer readBlock(SeekableInputStream input, int size) throws IOException {
+    ByteBuffer block = input.readBuffer(size);
+    if (block != null) {
+      return block;
+    }
+
+    heapBuffer.clear();
+    heapBuffer = ensureCapacity(heapBuffer, size);
+    readFully(input, heapBuffer.array(), size);
+    heapBuffer.limit(size);
+    return heapBuffer;
+  }
+
+  /**
+   * Releases the data block read from the input stream. The buffer is empty after this call.
+   */
+  void release() {
+    buffer = ByteBuffers.EMPTY_BUFFER;
+    bufferInput.reset(buffer);
+    basePosition = -1L;
+    endPosition = -1L;
+  }
+
+  private void readFully(SeekableInputStream input, byte[] bytes, int size) throws IOException {
+    int bytesRead = 0;
+    while (bytesRead != size) {
+      int len = input.read(bytes, bytesRead, size - bytesRead);
+      if (len < 0) {
+        throw new EOFException("Expected to read " + size + ", but only " + bytesRead + " was read");
+      }
+      bytesRead += len;
     }
-    StreamEventDataCodec.skip(decoder);
-    return null;
   }
 
   /**
@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.stream;
+
+import co.cask.cdap.api.common.RuntimeArguments;
+import co.cask.cdap.api.data.format.RecordFormat;
+import co.cask.cdap.api.flow.flowlet.StreamEvent;
+import co.cask.cdap.data.file.ReadFilter;
+import co.cask.cdap.data.file.ReadFilters;
+import co.cask.cdap.data.file.filter.BodyPrefixReadFilter;
+import co.cask.cdap.data.file.filter.BodyRegexReadFilter;
+import co.cask.cdap.data.file.filter.HeaderReadFilter;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import javax.annotation.Nullable;
+
+/**
+ * Creates the {@link ReadFilter} for filtering stream events by headers and body from arguments. All conditions
+ * given by the arguments must be satisfied for an event to be accepted:
+ *
+ * <ul>
+ *   <li>{@code filter.header.<name>}: the value of header {@code <name>} must fully match the regular expression</li>
+ *   <li>{@code filter.body.prefix}: the body must start with the UTF-8 bytes of the value</li>
+ *   <li>{@code filter.body.regex}: the body, decoded as UTF-8 text, must contain a match of the regular
+ *       expression</li>
+ *   <li>{@code filter.body.field.<name>}: field {@code <name>} of the record formatted from the body must satisfy
+ *       the comparison, such as {@code >=100}. See {@link RecordFieldReadFilter}.</li>
+ * </ul>
+ *
+ * When reading a stream from a program, the arguments are taken from the runtime arguments scoped to the stream,
+ * e.g. {@code stream.purchases.filter.header.type=order}. Unscoped arguments are ignored, so that arguments meant
+ * for other purposes never filter a stream by accident.
+ */
+public final class StreamEventReadFilters {
+
+  public static final String HEADER_PREFIX = "filter.header.";
+  public static final String BODY_PREFIX = "filter.body.prefix";
+  public static final String BODY_REGEX = "filter.body.regex";
+  public static final String BODY_FIELD_PREFIX = "filter.body.field.";
+
+  private static final String SCOPE = "stream";
+  private static final String FILTER_PREFIX = "filter.";
+
+  /**
+   * Returns the filtering arguments for reading the given stream from the given runtime arguments of a program.
+   *
+   * @param streamName name of the stream
+   * @param runtimeArguments the runtime arguments of the program
+   * @return a new map with the filtering arguments scoped to the stream, with the scope prefix removed
+   */
+  public static Map<String, String> getArguments(String streamName, Map<String, String> runtimeArguments) {
+    String prefix = RuntimeArguments.addScope(SCOPE, streamName, "");
+    Map<String, String> arguments = Maps.newHashMap();
+    for (Map.Entry<String, String> entry : runtimeArguments.entrySet()) {
+      if (!entry.getKey().startsWith(prefix)) {
+        continue;
+      }
+      String key = entry.getKey().substring(prefix.length());
+      if (key.startsWith(FILTER_PREFIX)) {
+        arguments.put(key, entry.getValue());
+      }
+    }
+    return arguments;
+  }
+
+  /**
+   * Creates a {@link ReadFilter} from the given arguments.
+   *
+   * @param arguments the arguments, where the ones not for filtering are ignored
+   * @param format the format for formatting the event body for field comparisons, or {@code null} if there is none
+   * @return a {@link ReadFilter} or {@code null} if there is no filtering argument
+   * @throws IllegalArgumentException if any filtering argument is invalid
+   */
+  @Nullable
+  public static ReadFilter create(Map<String, String> arguments, @Nullable RecordFormat<StreamEvent, ?> format) {
+    List<ReadFilter> filters = Lists.newArrayList();
+    for (Map.Entry<String, String> entry : arguments.entrySet()) {
+      String key = entry.getKey();
+      String value = entry.getValue();
+
+      if (key.startsWith(HEADER_PREFIX)) {
+        filters.add(new HeaderReadFilter(key.substring(HEADER_PREFIX.length()), compile(key, value)));
+      } else if (key.equals(BODY_PREFIX)) {
+        filters.add(new BodyPrefixReadFilter(value.getBytes(Charsets.UTF_8)));
+      } else if (key.equals(BODY_REGEX)) {
+        filters.add(new BodyRegexReadFilter(compile(key, value)));
+      } else if (key.startsWith(BODY_FIELD_PREFIX)) {
+        Preconditions.checkArgument(format != null, "Argument %s requires the stream body format to be set", key);
+        filters.add(new RecordFieldReadFilter(format, key.substring(BODY_FIELD_PREFIX.length()), value));
+      }
+    }
+
+    if (filters.isEmpty()) {
+      return null;
+    }
+    return filters.size() == 1 ? filters.get(0) : ReadFilters.and(filters.toArray(new ReadFilter[filters.size()]));
+  }
+
+  private static Pattern compile(String key, String regex) {
+    try {
+      return Pattern.compile(regex);
+    } catch (PatternSyntaxException e) {
+      throw new IllegalArgumentException("Invalid regular expression for argument " + key + ": " + regex, e);
+    }
+  }
+
+  private StreamEventReadFilters() {
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.stream;
+
+import org.xerial.snappy.Snappy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import javax.annotation.Nullable;
+
+/**
+ * Compression of the data blocks in stream event files.
+ */
+public enum StreamFileCompression {
+
+  /**
+   * Data blocks are not compressed.
+   */
+  NONE {
+    @Override
+    byte[] compress(byte[] data, int len) {
+      throw new UnsupportedOperationException("Compression is not enabled");
+    }
+
+    @Override
+    void decompress(byte[] data, int off, int len, byte[] output, int outputLen) {
+      throw new UnsupportedOperationException("Compression is not enabled");
+    }
+  },
+
+  /**
+   * Data blocks are compressed with {@link Deflater}.
+   */
+  DEFLATE {
+    @Override
+    byte[] compress(byte[] data, int len) {
+      Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+      try {
+        deflater.setInput(data, 0, len);
+        deflater.finish();
+        ByteArrayOutputStream os = new ByteArrayOutputStream(len / 2);
+        byte[] buffer = new byte[Math.min(len, 64 * 1024) + 64];
+        while (!deflater.finished()) {
+          int size = deflater.deflate(buffer);
+          os.write(buffer, 0, size);
+        }
+        return os.toByteArray();
+      } finally {
+        deflater.end();
+      }
+    }
+
+    @Override
+    void decompress(byte[] data, int off, int len, byte[] output, int outputLen) throws IOException {
+      Inflater inflater = new Inflater();
+      try {
+        inflater.setInput(data, off, len);
+        int size = 0;
+        while (size < outputLen && !inflater.finished()) {
+          int inflated = inflater.inflate(output, size, outputLen - size);
+          if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+            break;
+          }
+          size += inflated;
+        }
+        if (size != outputLen) {
+          throw new IOException("Expected to decompress " + outputLen + " bytes, but only " + size + " was produced");
+        }
+      } catch (DataFormatException e) {
+        throw new IOException("Failed to decompress data block", e);
+      } finally {
+        inflater.end();
+      }
+    }
+  },
+
+  /**
+   * Data blocks are compressed with Snappy.
+   */
+  SNAPPY {
+    @Override
+    byte[] compress(byte[] data, int len) throws IOException {
+      byte[] output = new byte[Snappy.maxCompressedLength(len)];
+      int size = Snappy.compress(data, 0, len, output, 0);
+      byte[] result = new byte[size];
+      System.arraycopy(output, 0, result, 0, size);
+      return result;
+    }
+
+    @Override
+    void decompress(byte[] data, int off, int len, byte[] output, int outputLen) throws IOException {
+      if (Snappy.uncompressedLength(data, off, len) != outputLen) {
+        throw new IOException("Expected to decompress " + outputLen + " bytes from the data block");
+      }
+      Snappy.uncompress(data, off, len, output, 0);
+    }
+  };
+
+  /**
+   * Compresses the given data.
+   *
+   * @param data buffer containing the data to compress, starting at offset 0
+   * @param len number of bytes to compress
+   * @return the compressed data
+   */
+  abstract byte[] compress(byte[] data, int len) throws IOException;
+
+  /**
+   * Decompresses data compressed by {@link #compress(byte[], int)}.
+   *
+   * @param data buffer containing the compressed data
+   * @param off offset of the compressed data in the buffer
+   * @param len length of the compressed data
+   * @param output buffer to decompress to, starting at offset 0
+   * @param outputLen the expected length of the decompressed data
+   * @throws IOException if failed to decompress, or the decompressed data is not of the expected length
+   */
+  abstract void decompress(byte[] data, int off, int len, byte[] output, int outputLen) throws IOException;
+
+  /**
+   * Returns the {@link StreamFileCompression} of the given name, case insensitively, or {@link #NONE} if the name
+   * is {@code null}.
+   *
+   * @throws IllegalArgumentException if the name is not a known compression
+   */
+  public static StreamFileCompression fromName(@Nullable String name) {
+    return name == null ? NONE : valueOf(name.toUpperCase());
+  }
+}
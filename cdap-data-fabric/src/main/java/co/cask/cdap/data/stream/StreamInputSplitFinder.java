@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -28,6 +28,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.util.Collection;
 import java.util.List;
+import javax.annotation.Nullable;
 
 /**
  * Finds input splits for a stream given several stream configuration settings and the location of the stream.
@@ -43,9 +44,11 @@ public class StreamInputSplitFinder<T> {
   private final long minSplitSize;
   private final Path path;
   private final StreamInputSplitFactory<T> splitFactory;
+  private final StreamPartitionSplitFinder<T> partitionSplitFinder;
 
   private StreamInputSplitFinder(URI path, long startTime, long endTime, long maxSplitSize,
-                                 long minSplitSize, StreamInputSplitFactory<T> splitFactory) {
+                                 long minSplitSize, StreamInputSplitFactory<T> splitFactory,
+                                 @Nullable StreamPartitionSplitFinder<T> partitionSplitFinder) {
     Preconditions.checkArgument(startTime >= 0, "Invalid start time %s", startTime);
     Preconditions.checkArgument(endTime >= 0, "Invalid end time %s", endTime);
     this.path = new Path(path);
@@ -54,6 +57,7 @@ public class StreamInputSplitFinder<T> {
     this.maxSplitSize = maxSplitSize;
     this.minSplitSize = minSplitSize;
     this.splitFactory = splitFactory;
+    this.partitionSplitFinder = partitionSplitFinder;
   }
 
   /**
@@ -85,6 +89,13 @@ public class StreamInputSplitFinder<T> {
         continue;
       }
 
+      // Read the partition from other files if the partition split finder can do so
+      if (partitionSplitFinder != null
+        && partitionSplitFinder.findSplits(fs, partitionStatus.getPath(), partitionStartTime, partitionEndTime,
+                                           startTime, endTime, splits)) {
+        continue;
+      }
+
       // Collects all bucket file status in the partition.
       Collection<StreamDataFileSplitter> eventFiles = collectBuckets(fs, partitionStatus.getPath());
 
@@ -165,7 +176,22 @@ public class StreamInputSplitFinder<T> {
      * @return a new instance of {@link StreamInputSplitFinder}
      */
     public <T> StreamInputSplitFinder<T> build(StreamInputSplitFactory<T> splitFactory) {
-      return new StreamInputSplitFinder<>(path, startTime, endTime, maxSplitSize, minSplitSize, splitFactory);
+      return build(splitFactory, null);
+    }
+
+    /**
+     * Build the input split finder given a factory for creating splits of the stream event files and a
+     * {@link StreamPartitionSplitFinder} for finding splits of partitions that can be read from other files.
+     *
+     * @param splitFactory Factory for creating input splits
+     * @param partitionSplitFinder finder of the splits of a partition, or {@code null} to always read event files
+     * @param <T> Type of split to find. Expected to be either mapred.InputSplit or mapreduce.InputSplit.
+     * @return a new instance of {@link StreamInputSplitFinder}
+     */
+    public <T> StreamInputSplitFinder<T> build(StreamInputSplitFactory<T> splitFactory,
+                                               @Nullable StreamPartitionSplitFinder<T> partitionSplitFinder) {
+      return new StreamInputSplitFinder<>(path, startTime, endTime, maxSplitSize, minSplitSize,
+                                          splitFactory, partitionSplitFinder);
     }
   }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.stream;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Finds input splits of a stream partition that read from files other than the stream event files, such as a
+ * copy of the partition in a different file format. Used by {@link StreamInputSplitFinder}.
+ *
+ * @param <T> Type of input split to find. Expected to be mapred.InputSplit or mapreduce.InputSplit.
+ */
+public interface StreamPartitionSplitFinder<T> {
+
+  /**
+   * Adds the input splits for reading the given partition to the given list.
+   *
+   * @param fs the {@link FileSystem} of the stream
+   * @param partitionPath path of the partition directory
+   * @param partitionStartTime start timestamp of the partition (inclusive)
+   * @param partitionEndTime end timestamp of the partition (exclusive)
+   * @param startTime start timestamp of the events to read (inclusive)
+   * @param endTime end timestamp of the events to read (exclusive)
+   * @param splits list for adding the splits to
+   * @return {@code true} if splits for the partition were added, in which case the event files of the partition
+   *         will not be read; {@code false} to read the event files
+   * @throws IOException if failed to find the splits
+   */
+  boolean findSplits(FileSystem fs, Path partitionPath, long partitionStartTime, long partitionEndTime,
+                     long startTime, long endTime, List<T> splits) throws IOException;
+}
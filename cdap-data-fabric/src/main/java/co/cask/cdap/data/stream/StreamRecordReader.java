@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -18,6 +18,7 @@ package co.cask.cdap.data.stream;
 import co.cask.cdap.api.stream.StreamEventDecoder;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.data.file.ReadFilter;
+import co.cask.cdap.data.file.ReadFilters;
 import co.cask.cdap.proto.id.StreamId;
 import co.cask.cdap.proto.security.Action;
 import co.cask.cdap.proto.security.Principal;
@@ -31,8 +32,11 @@ import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * A {@link RecordReader} for reading stream events.
@@ -43,6 +47,7 @@ import java.util.concurrent.TimeUnit;
 final class StreamRecordReader<K, V> extends RecordReader<K, V> {
 
   private final StreamEventDecoder<K, V> decoder;
+  private final ReadFilter eventFilter;
   private final List<PositionStreamEvent> events;
   private final Principal principal;
   private final StreamId streamId;
@@ -57,10 +62,13 @@ final class StreamRecordReader<K, V> extends RecordReader<K, V> {
    * Construct a {@link StreamRecordReader} with a given {@link StreamEventDecoder}.
    *
    * @param decoder The decoder to use for decoding stream events.
+   * @param eventFilter The filter for skipping stream events by headers and body, or {@code null} for no filtering.
    */
-  StreamRecordReader(StreamEventDecoder<K, V> decoder, AuthorizationEnforcer authorizationEnforcer,
+  StreamRecordReader(StreamEventDecoder<K, V> decoder, @Nullable ReadFilter eventFilter,
+                     AuthorizationEnforcer authorizationEnforcer,
                      AuthenticationContext authenticationContext, StreamId streamId) {
     this.decoder = decoder;
+    this.eventFilter = eventFilter;
     this.events = Lists.newArrayListWithCapacity(1);
     this.currentEntry = new StreamEventDecoder.DecodeResult<>();
     this.authorizationEnforcer = authorizationEnforcer;
@@ -75,6 +83,10 @@ final class StreamRecordReader<K, V> extends RecordReader<K, V> {
     reader = createReader(FileSystem.get(context.getConfiguration()), inputSplit);
     reader.initialize();
     readFilter = new TimeRangeReadFilter(inputSplit.getStartTime(), inputSplit.getEndTime());
+    if (eventFilter != null) {
+      readFilter = new SplitReadFilter(ReadFilters.and(readFilter, eventFilter),
+                                       inputSplit.getStart() + inputSplit.getLength());
+    }
   }
 
   @Override
@@ -127,6 +139,48 @@ final class StreamRecordReader<K, V> extends RecordReader<K, V> {
     }
   }
 
+  /**
+   * A {@link ReadFilter} that accepts all events starting at or after the end of the split, so that reading stops
+   * at the end of the split instead of skipping events until the end of the file.
+   */
+  private static final class SplitReadFilter extends ReadFilter {
+
+    private final ReadFilter filter;
+    private final long splitEnd;
+    private boolean pastSplitEnd;
+
+    SplitReadFilter(ReadFilter filter, long splitEnd) {
+      this.filter = filter;
+      this.splitEnd = splitEnd;
+    }
+
+    @Override
+    public void reset() {
+      filter.reset();
+    }
+
+    @Override
+    public boolean acceptTimestamp(long timestamp) {
+      return filter.acceptTimestamp(timestamp);
+    }
+
+    @Override
+    public long getNextTimestampHint() {
+      return filter.getNextTimestampHint();
+    }
+
+    @Override
+    public boolean acceptOffset(long offset) {
+      pastSplitEnd = offset >= splitEnd;
+      return pastSplitEnd || filter.acceptOffset(offset);
+    }
+
+    @Override
+    public boolean acceptEvent(Map<String, String> headers, ByteBuffer body) {
+      return pastSplitEnd || filter.acceptEvent(headers, body);
+    }
+  }
+
   /**
    * Creates a {@link StreamDataFileReader} based on the input split.
    *
@@ -554,6 +554,11 @@ public final class ConcurrentStreamWriter implements Closeable {
           }
           bytesWritten = metrics.bytesWritten;
           eventsWritten = metrics.eventsWritten;
+        } catch (WriteAheadLogFullException e) {
+          // The writer is still usable, only reject the requests in this batch
+          for (WriteRequest processed : processQueue) {
+            processed.completed(e);
+          }
         } catch (Throwable t) {
           // On exception, remove this EventQueue from the map and close this event queue
           eventQueues.remove(streamId, this);
@@ -19,6 +19,9 @@ package co.cask.cdap.data.stream.service;
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.common.io.Encoder;
+import co.cask.cdap.common.stream.StreamEventDataCodec;
 import co.cask.cdap.common.stream.StreamEventTypeAdapter;
 import co.cask.cdap.common.utils.TimeMathParser;
 import co.cask.cdap.data.file.FileReader;
@@ -57,6 +60,7 @@ import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -77,6 +81,11 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
   private static final int MAX_EVENTS_PER_READ = 100;
   private static final int CHUNK_SIZE = 8192;
 
+  // Content type, read batch size and chunk size for responses in binary format
+  private static final String BINARY_CONTENT_TYPE = "application/octet-stream";
+  private static final int MAX_BINARY_EVENTS_PER_READ = 10000;
+  private static final int BINARY_CHUNK_SIZE = 64 * 1024;
+
   private final CConfiguration cConf;
   private final StreamAdmin streamAdmin;
   private final StreamMetaStore streamMetaStore;
@@ -107,7 +116,10 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
    * </ul>
    * </p>
    * <p>
-   * Response body is a JSON array of the StreamEvent object.
+   * Response body is a JSON array of the StreamEvent object. If the request accepts {@code application/octet-stream},
+   * the response body is instead the binary encoding of the events, one after another. Each event is encoded as
+   * its timestamp, as an Avro long, followed by the event data, as encoded by
+   * {@link StreamEventDataCodec#encode(co.cask.cdap.api.stream.StreamEventData, Encoder)}.
    * </p>
    *
    * @see StreamEventTypeAdapter StreamEventTypeAdapter for the format of the StreamEvent object
@@ -136,6 +148,7 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
     endTime = Math.min(endTime, now);
     final long streamStartTime = startTime;
     final long streamEndTime = endTime;
+    final boolean binary = acceptsBinary(request);
     impersonator.doAs(streamId, new Callable<Void>() {
       @Override
       public Void call() throws Exception {
@@ -147,7 +160,7 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
           List<StreamEvent> events = Lists.newArrayListWithCapacity(100);
 
           // Reads the first batch of events from the stream.
-          int eventsRead = readEvents(reader, events, limit, readFilter);
+          int eventsRead = readEvents(reader, events, limit, MAX_EVENTS_PER_READ, readFilter);
 
           // If empty already, return 204 no content
           if (eventsRead <= 0) {
@@ -155,47 +168,11 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
             return null;
           }
 
-          // Send with chunk response, as we don't want to buffer all events in memory to determine the content-length.
-          ChunkResponder chunkResponder = responder.sendChunkStart(
-            HttpResponseStatus.OK, ImmutableMultimap.of(HttpHeaders.Names.CONTENT_TYPE,
-                                                        "application/json; charset=utf-8"));
-          ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
-          JsonWriter jsonWriter = new JsonWriter(new OutputStreamWriter(new ChannelBufferOutputStream(buffer),
-                                                                        Charsets.UTF_8));
-          // Response is an array of stream event
-          jsonWriter.beginArray();
-          while (limit > 0 && eventsRead > 0) {
-            limit -= eventsRead;
-
-            for (StreamEvent event : events) {
-              GSON.toJson(event, StreamEvent.class, jsonWriter);
-              jsonWriter.flush();
-
-              // If exceeded chunk size limit, send a new chunk.
-              if (buffer.readableBytes() >= CHUNK_SIZE) {
-                // If the connect is closed, sendChunk will throw IOException.
-                // No need to handle the exception as it will just propagated back to the netty-http library
-                // and it will handle it.
-                // Need to copy the buffer because the buffer will get reused and send chunk is an async operation
-                chunkResponder.sendChunk(buffer.copy());
-                buffer.clear();
-              }
-            }
-            events.clear();
-
-            if (limit > 0) {
-              eventsRead = readEvents(reader, events, limit, readFilter);
-            }
-          }
-          jsonWriter.endArray();
-          jsonWriter.close();
-
-          // Send the last chunk that still has data
-          if (buffer.readable()) {
-            // No need to copy the last chunk, since the buffer will not be reused
-            chunkResponder.sendChunk(buffer);
+          if (binary) {
+            sendBinaryEvents(responder, reader, events, eventsRead, limit, readFilter);
+          } else {
+            sendJsonEvents(responder, reader, events, eventsRead, limit, readFilter);
           }
-          Closeables.closeQuietly(chunkResponder);
         }
         return null;
       }
@@ -203,18 +180,126 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
 
   }
 
+  /**
+   * Sends the events as a JSON array in a chunked response, starting with the events already read.
+   */
+  private void sendJsonEvents(HttpResponder responder,
+                              FileReader<StreamEventOffset, Iterable<StreamFileOffset>> reader,
+                              List<StreamEvent> events, int eventsRead, int limit,
+                              TimeRangeReadFilter readFilter) throws IOException, InterruptedException {
+    // Send with chunk response, as we don't want to buffer all events in memory to determine the content-length.
+    ChunkResponder chunkResponder = responder.sendChunkStart(
+      HttpResponseStatus.OK, ImmutableMultimap.of(HttpHeaders.Names.CONTENT_TYPE,
+                                                  "application/json; charset=utf-8"));
+    ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+    JsonWriter jsonWriter = new JsonWriter(new OutputStreamWriter(new ChannelBufferOutputStream(buffer),
+                                                                  Charsets.UTF_8));
+    // Response is an array of stream event
+    jsonWriter.beginArray();
+    while (limit > 0 && eventsRead > 0) {
+      limit -= eventsRead;
+
+      for (StreamEvent event : events) {
+        GSON.toJson(event, StreamEvent.class, jsonWriter);
+        jsonWriter.flush();
+
+        // If exceeded chunk size limit, send a new chunk.
+        if (buffer.readableBytes() >= CHUNK_SIZE) {
+          // If the connect is closed, sendChunk will throw IOException.
+          // No need to handle the exception as it will just propagated back to the netty-http library
+          // and it will handle it.
+          // Need to copy the buffer because the buffer will get reused and send chunk is an async operation
+          chunkResponder.sendChunk(buffer.copy());
+          buffer.clear();
+        }
+      }
+      events.clear();
+
+      if (limit > 0) {
+        eventsRead = readEvents(reader, events, limit, MAX_EVENTS_PER_READ, readFilter);
+      }
+    }
+    jsonWriter.endArray();
+    jsonWriter.close();
+
+    // Send the last chunk that still has data
+    if (buffer.readable()) {
+      // No need to copy the last chunk, since the buffer will not be reused
+      chunkResponder.sendChunk(buffer);
+    }
+    Closeables.closeQuietly(chunkResponder);
+  }
+
+  /**
+   * Sends the events in binary format in a chunked response, starting with the events already read. The number of
+   * events read from the reader at a time grows as long as reads return as many events as requested.
+   */
+  private void sendBinaryEvents(HttpResponder responder,
+                                FileReader<StreamEventOffset, Iterable<StreamFileOffset>> reader,
+                                List<StreamEvent> events, int eventsRead, int limit,
+                                TimeRangeReadFilter readFilter) throws IOException, InterruptedException {
+    ChunkResponder chunkResponder = responder.sendChunkStart(
+      HttpResponseStatus.OK, ImmutableMultimap.of(HttpHeaders.Names.CONTENT_TYPE, BINARY_CONTENT_TYPE));
+    ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(BINARY_CHUNK_SIZE);
+    Encoder encoder = new BinaryEncoder(new ChannelBufferOutputStream(buffer));
+
+    int readLimit = MAX_EVENTS_PER_READ;
+    while (limit > 0 && eventsRead > 0) {
+      limit -= eventsRead;
+
+      for (StreamEvent event : events) {
+        // Writes the body directly to the buffer, since it can be a direct buffer that the encoder would copy
+        ByteBuffer body = event.getBody();
+        encoder.writeLong(event.getTimestamp());
+        encoder.writeInt(body.remaining());
+        buffer.writeBytes(body.duplicate());
+        StreamEventDataCodec.encodeHeaders(event.getHeaders(), encoder);
+
+        if (buffer.readableBytes() >= BINARY_CHUNK_SIZE) {
+          // Need to copy the buffer because the buffer will get reused and send chunk is an async operation
+          chunkResponder.sendChunk(buffer.copy());
+          buffer.clear();
+        }
+      }
+      events.clear();
+
+      if (limit > 0) {
+        if (eventsRead >= readLimit) {
+          readLimit = Math.min(readLimit * 2, MAX_BINARY_EVENTS_PER_READ);
+        }
+        eventsRead = readEvents(reader, events, limit, readLimit, readFilter);
+      }
+    }
+
+    // Send the last chunk that still has data
+    if (buffer.readable()) {
+      // No need to copy the last chunk, since the buffer will not be reused
+      chunkResponder.sendChunk(buffer);
+    }
+    Closeables.closeQuietly(chunkResponder);
+  }
+
+  /**
+   * Returns {@code true} if the request accepts the binary response format.
+   */
+  private boolean acceptsBinary(HttpRequest request) {
+    String accept = request.getHeader(HttpHeaders.Names.ACCEPT);
+    return accept != null && accept.contains(BINARY_CONTENT_TYPE);
+  }
+
   /**
    * Reads events from the given reader.
    */
   private int readEvents(FileReader<StreamEventOffset, Iterable<StreamFileOffset>> reader,
-                         List<StreamEvent> events, int limit,
+                         List<StreamEvent> events, int limit, int maxEventsPerRead,
                          TimeRangeReadFilter readFilter) throws IOException, InterruptedException {
     // Keeps reading as long as the filter is active.
     // This mean there are events in the stream, just that they are rejected by the filter.
-    int eventsRead = reader.read(events, getReadLimit(limit), 0, TimeUnit.SECONDS, readFilter);
+    int readLimit = Math.min(limit, maxEventsPerRead);
+    int eventsRead = reader.read(events, readLimit, 0, TimeUnit.SECONDS, readFilter);
     while (eventsRead == 0 && readFilter.isActive()) {
       readFilter.reset();
-      eventsRead = reader.read(events, getReadLimit(limit), 0, TimeUnit.SECONDS, readFilter);
+      eventsRead = reader.read(events, readLimit, 0, TimeUnit.SECONDS, readFilter);
     }
     return eventsRead;
   }
@@ -345,14 +430,4 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
       }
     };
   }
-
-  /**
-   * Returns the events limit for each round of read from the stream reader.
-   *
-   * @param count Number of events wanted to read.
-   * @return The actual number of events to read.
-   */
-  private int getReadLimit(int count) {
-    return (count > MAX_EVENTS_PER_READ) ? MAX_EVENTS_PER_READ : count;
-  }
 }
@@ -115,6 +115,8 @@ public final class StreamHandler extends AbstractHttpHandler {
   private final long batchBufferThreshold;
   private final StreamBodyConsumerFactory streamBodyConsumerFactory;
   private final NamespaceQueryAdmin namespaceQueryAdmin;
+  // Factory of writers that write through a local write-ahead log, or null if the write-ahead log is disabled
+  private final WriteAheadStreamFileWriterFactory writeAheadWriterFactory;
 
   // Executor for serving async enqueue requests
   private ExecutorService asyncExecutor;
@@ -135,7 +137,8 @@ public final class StreamHandler extends AbstractHttpHandler {
     this.streamAdmin = streamAdmin;
     this.sizeCollector = sizeCollector;
     this.batchBufferThreshold = cConf.getLong(Constants.Stream.BATCH_BUFFER_THRESHOLD);
-    this.streamBodyConsumerFactory = new StreamBodyConsumerFactory();
+    this.streamBodyConsumerFactory = new StreamBodyConsumerFactory(
+      cConf.getLong(Constants.Stream.BATCH_INFLIGHT_LIMIT));
     this.streamHandlerMetricsContext = metricsCollectionService.getContext(getStreamHandlerMetricsContext());
     streamMetricsCollectors = CacheBuilder.newBuilder()
       .build(new CacheLoader<NamespaceId, MetricsContext>() {
@@ -145,6 +148,12 @@ public final class StreamHandler extends AbstractHttpHandler {
         }
       });
     StreamMetricsCollectorFactory metricsCollectorFactory = createStreamMetricsCollectorFactory();
+    if (cConf.getBoolean(Constants.Stream.WAL_ENABLED)) {
+      this.writeAheadWriterFactory = new WriteAheadStreamFileWriterFactory(cConf, writerFactory);
+      writerFactory = writeAheadWriterFactory;
+    } else {
+      this.writeAheadWriterFactory = null;
+    }
     this.streamWriter = new ConcurrentStreamWriter(streamCoordinatorClient, streamAdmin, writerFactory,
                                                    cConf.getInt(Constants.Stream.WORKER_THREADS),
                                                    metricsCollectorFactory, impersonator);
@@ -172,6 +181,18 @@ public final class StreamHandler extends AbstractHttpHandler {
                                                          createAsyncRejectedExecutionHandler());
     executor.allowCoreThreadTimeOut(true);
     asyncExecutor = executor;
+
+    if (writeAheadWriterFactory != null) {
+      // Writes events left in the write-ahead logs by the previous run in the background
+      Thread recoveryThread = new Thread("stream-wal-recovery") {
+        @Override
+        public void run() {
+          writeAheadWriterFactory.recover(streamAdmin);
+        }
+      };
+      recoveryThread.setDaemon(true);
+      recoveryThread.start();
+    }
   }
 
   @Override
@@ -0,0 +1,34 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.stream.service;
+
+import co.cask.cdap.proto.id.StreamId;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link WriteAheadStreamFileWriter#flush()} when the events in the write-ahead log that are not yet written
+ * to the stream would exceed the maximum size of the log. The events appended since the last flush are discarded, but
+ * the writer remains usable.
+ */
+final class WriteAheadLogFullException extends IOException {
+
+  WriteAheadLogFullException(StreamId streamId, long undrainedSize) {
+    super(String.format("Write-ahead log of stream %s is full, with %d bytes not yet written to the stream",
+                        streamId, undrainedSize));
+  }
+}
@@ -0,0 +1,576 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.stream.service;
+
+import co.cask.cdap.api.flow.flowlet.StreamEvent;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.common.io.Decoder;
+import co.cask.cdap.common.io.Encoder;
+import co.cask.cdap.common.stream.StreamEventDataCodec;
+import co.cask.cdap.common.utils.DirUtils;
+import co.cask.cdap.data.file.FileWriter;
+import co.cask.cdap.data.stream.Refreshable;
+import co.cask.cdap.data.stream.StreamFileWriterFactory;
+import co.cask.cdap.data.stream.StreamUtils;
+import co.cask.cdap.data2.transaction.stream.StreamConfig;
+import co.cask.cdap.proto.id.StreamId;
+import com.google.common.collect.Lists;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link FileWriter} that commits stream events to a write-ahead log on local disk, and writes them to the
+ * {@link FileWriter} created by another {@link StreamFileWriterFactory} from a background thread.
+ *
+ * <p>The events appended between two calls to {@link #flush()} are written to the log as one record, which is
+ * synced to disk by the flush, so that a batch of write requests handled by the {@link ConcurrentStreamWriter} is
+ * committed with a single sync. The log is a sequence of segment files in a directory. The position in the log up to
+ * which events have been written and flushed to the stream is recorded in a checkpoint file in the same directory,
+ * so that the events remaining in the log are written again by the next writer opened on the same directory.
+ * An event may therefore be written to the stream more than once if the process fails.
+ * </p>
+ *
+ * <p>Stream readers never go back to a partition that has ended, hence an event whose partition has ended by the
+ * time it is written to the stream gets the current time as its timestamp. Timestamps of the written events are
+ * also kept non-decreasing.
+ * </p>
+ */
+final class WriteAheadStreamFileWriter implements FileWriter<StreamEvent>, Refreshable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WriteAheadStreamFileWriter.class);
+
+  private static final String SEGMENT_EXTENSION = "wal";
+  private static final String CHECKPOINT_FILE = "checkpoint";
+  private static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+  // Each record is prefixed with the length and the CRC32 of the record
+  private static final int RECORD_HEADER_SIZE = 8;
+  private static final long MIN_RETRY_DELAY_MS = 100;
+  private static final long MAX_RETRY_DELAY_MS = TimeUnit.SECONDS.toMillis(30);
+
+  private final StreamId streamId;
+  private final File dir;
+  private final long maxSize;
+  private final StreamFileWriterFactory writerFactory;
+  private final StreamConfig config;
+  private final int generation;
+  private final Semaphore dirLock;
+  private final AtomicLong undrainedSize;
+  private final Thread drainer;
+
+  // States used by the thread that appends events and flushes
+  private final RecordBuffer record;
+  private final Encoder recordEncoder;
+  private final CRC32 writeChecksum;
+  private long activeSeq;
+  private FileChannel activeChannel;
+  private long activeSize;
+
+  // States shared between the writing thread and the drainer thread, guarded by this object
+  private long committedSeq;
+  private long committedSize;
+  private boolean refreshRequested;
+  private boolean closed;
+
+  // States used by the drainer thread only
+  private final CRC32 readChecksum;
+  private FileWriter<StreamEvent> delegate;
+  private long checkpointSeq;
+  private long checkpointOffset;
+  private long readSeq;
+  private long readOffset;
+  private long lastTimestamp;
+
+  /**
+   * Creates a new writer on the given write-ahead log directory.
+   *
+   * @param dir directory of the write-ahead log
+   * @param maxSize maximum size of the records in the log that are not yet written to the stream
+   * @param writerFactory the {@link StreamFileWriterFactory} for creating the {@link FileWriter} to write to the stream
+   * @param config configuration of the stream
+   * @param generation generation of the stream
+   * @param dirLock a {@link Semaphore} that is already acquired for the directory, which will be released when
+   *                this writer is closed and no longer uses the directory
+   * @throws IOException if failed to open the write-ahead log
+   */
+  WriteAheadStreamFileWriter(File dir, long maxSize, StreamFileWriterFactory writerFactory,
+                             StreamConfig config, int generation, Semaphore dirLock) throws IOException {
+    this.streamId = config.getStreamId();
+    this.dir = dir;
+    this.maxSize = maxSize;
+    this.writerFactory = writerFactory;
+    this.config = config;
+    this.generation = generation;
+    this.dirLock = dirLock;
+    this.record = new RecordBuffer();
+    this.recordEncoder = new BinaryEncoder(record);
+    this.writeChecksum = new CRC32();
+    this.readChecksum = new CRC32();
+
+    if (!DirUtils.mkdirs(dir)) {
+      throw new IOException("Failed to create write-ahead log directory " + dir);
+    }
+
+    // Drop the segments that were completely written to the stream, and start a new segment for new events
+    readCheckpoint();
+    if (!getSegmentFile(checkpointSeq).exists()) {
+      checkpointOffset = 0L;
+    }
+    long lastSeq = -1L;
+    long undrained = 0L;
+    for (long seq : listSegments()) {
+      File segment = getSegmentFile(seq);
+      if (seq < checkpointSeq) {
+        deleteSegment(segment);
+        continue;
+      }
+      lastSeq = seq;
+      undrained += segment.length() - (seq == checkpointSeq ? checkpointOffset : 0L);
+    }
+    this.undrainedSize = new AtomicLong(Math.max(0L, undrained));
+    this.activeSeq = Math.max(lastSeq + 1, checkpointSeq);
+    this.activeChannel = FileChannel.open(getSegmentFile(activeSeq).toPath(),
+                                          StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    this.activeSize = 0L;
+    this.committedSeq = activeSeq;
+    this.committedSize = 0L;
+    this.readSeq = checkpointSeq;
+    this.readOffset = checkpointOffset;
+
+    this.drainer = new Thread("stream-wal-" + streamId.getNamespace() + "-" + streamId.getStream()) {
+      @Override
+      public void run() {
+        drain();
+      }
+    };
+    drainer.setDaemon(true);
+    drainer.start();
+  }
+
+  @Override
+  public void append(StreamEvent event) throws IOException {
+    recordEncoder.writeLong(event.getTimestamp());
+    StreamEventDataCodec.encode(event, recordEncoder);
+  }
+
+  @Override
+  public void appendAll(Iterator<? extends StreamEvent> events) throws IOException {
+    while (events.hasNext()) {
+      append(events.next());
+    }
+  }
+
+  /**
+   * Writes the events appended since the last flush to the write-ahead log as one record and syncs it to disk.
+   *
+   * @throws WriteAheadLogFullException if the events in the log that are not yet written to the stream would exceed
+   *                                     the maximum size of the log
+   * @throws IOException if failed to write to the log
+   */
+  @Override
+  public void flush() throws IOException {
+    int length = record.size();
+    if (length == 0) {
+      return;
+    }
+    try {
+      int recordSize = RECORD_HEADER_SIZE + length;
+      if (undrainedSize.get() + recordSize > maxSize) {
+        throw new WriteAheadLogFullException(streamId, undrainedSize.get());
+      }
+      if (activeSize >= SEGMENT_SIZE) {
+        rollSegment();
+      }
+
+      writeChecksum.reset();
+      writeChecksum.update(record.getBuffer(), 0, length);
+      ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+      header.putInt(length).putInt((int) writeChecksum.getValue()).flip();
+      ByteBuffer[] buffers = new ByteBuffer[] { header, ByteBuffer.wrap(record.getBuffer(), 0, length) };
+      try {
+        long written = 0;
+        while (written < recordSize) {
+          written += activeChannel.write(buffers);
+        }
+        activeChannel.force(false);
+      } catch (IOException e) {
+        discardUncommitted();
+        throw e;
+      }
+
+      activeSize += recordSize;
+      undrainedSize.addAndGet(recordSize);
+      synchronized (this) {
+        committedSeq = activeSeq;
+        committedSize = activeSize;
+        notifyAll();
+      }
+    } finally {
+      record.reset();
+    }
+  }
+
+  /**
+   * Removes the bytes of a record that failed to be written or synced from the active segment, so that the next record
+   * follows the last committed one. If the segment cannot be truncated, a new segment is started instead, and the
+   * drainer skips the unreadable tail of the old one.
+   */
+  private void discardUncommitted() {
+    try {
+      activeChannel.truncate(activeSize);
+      activeChannel.position(activeSize);
+      return;
+    } catch (IOException e) {
+      LOG.warn("Failed to truncate write-ahead log segment {}, starting a new segment", getSegmentFile(activeSeq), e);
+    }
+    // The drainer counts the skipped tail as drained
+    undrainedSize.addAndGet(Math.max(0L, getSegmentFile(activeSeq).length() - activeSize));
+    try {
+      rollSegment();
+    } catch (IOException e) {
+      LOG.warn("Failed to start a new write-ahead log segment for stream {}", streamId, e);
+    }
+  }
+
+  /**
+   * Requests a refresh of the underlying {@link FileWriter} if it is {@link Refreshable}. The refresh is performed
+   * by the drainer thread.
+   */
+  @Override
+  public synchronized void refresh() {
+    refreshRequested = true;
+    notifyAll();
+  }
+
+  /**
+   * Closes this writer. Events that were not flushed are discarded. This method blocks until the events in the log
+   * are written to the stream, or until writing to the stream fails, in which case the remaining events are left in
+   * the log to be written by the next writer opened on the same directory.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      notifyAll();
+    }
+    Closeables.closeQuietly(activeChannel);
+    try {
+      drainer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the write-ahead log of stream " +
+                                         streamId + " to be written");
+    }
+  }
+
+  /**
+   * Body of the drainer thread. It writes committed records to the stream until this writer is closed.
+   */
+  private void drain() {
+    long retryDelay = MIN_RETRY_DELAY_MS;
+    try {
+      while (true) {
+        long seq;
+        long size;
+        boolean refresh;
+        boolean closing;
+        synchronized (this) {
+          while (!closed && !refreshRequested && readSeq == committedSeq && readOffset >= committedSize) {
+            wait();
+          }
+          seq = committedSeq;
+          size = committedSize;
+          refresh = refreshRequested;
+          closing = closed;
+          refreshRequested = false;
+        }
+
+        try {
+          if (readSeq < seq || readOffset < size) {
+            drainTo(seq, size);
+          }
+          if (refresh && delegate instanceof Refreshable) {
+            ((Refreshable) delegate).refresh();
+          }
+          retryDelay = MIN_RETRY_DELAY_MS;
+        } catch (Exception e) {
+          // Discard the underlying writer and retry from the last checkpoint with a new one
+          LOG.warn("Failed to write events from the write-ahead log to stream {}", streamId, e);
+          Closeables.closeQuietly(delegate);
+          delegate = null;
+          readSeq = checkpointSeq;
+          readOffset = checkpointOffset;
+          if (closing) {
+            return;
+          }
+          synchronized (this) {
+            if (!closed) {
+              wait(retryDelay);
+            }
+          }
+          retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS);
+          continue;
+        }
+
+        if (closing) {
+          closeDelegate();
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      LOG.debug("Write-ahead log drainer for stream {} interrupted", streamId);
+    } finally {
+      Closeables.closeQuietly(delegate);
+      dirLock.release();
+    }
+  }
+
+  /**
+   * Closes the underlying writer after all the events in the log are written, and removes the log.
+   */
+  private void closeDelegate() {
+    try {
+      if (delegate != null) {
+        delegate.close();
+        delegate = null;
+      }
+      DirUtils.deleteDirectoryContents(dir);
+    } catch (IOException e) {
+      LOG.warn("Failed to close the write-ahead log of stream {}", streamId, e);
+    }
+  }
+
+  /**
+   * Writes the records up to the given position in the log to the stream and records the new checkpoint.
+   */
+  private void drainTo(long seq, long size) throws IOException {
+    long drained = 0L;
+    while (true) {
+      File segment = getSegmentFile(readSeq);
+      // Segments before the last committed one are complete, hence are read till the end
+      long limit = readSeq == seq ? size : Long.MAX_VALUE;
+      long offset = segment.exists() ? drainSegment(segment, readOffset, limit) : readOffset;
+      drained += offset - readOffset;
+      if (readSeq == seq) {
+        if (offset < size) {
+          // Committed records are expected to be readable. Skip them rather than failing on the same record forever.
+          LOG.error("Skipping {} bytes of unreadable records at offset {} of write-ahead log {}",
+                    size - offset, offset, segment);
+          drained += size - offset;
+          offset = size;
+        }
+        readOffset = offset;
+        break;
+      }
+      // Count the unreadable tail of a segment as drained
+      drained += Math.max(0L, segment.length() - offset);
+      readSeq++;
+      readOffset = 0L;
+    }
+
+    if (delegate != null) {
+      delegate.flush();
+    }
+    writeCheckpoint(readSeq, readOffset);
+    for (long s = checkpointSeq; s < readSeq; s++) {
+      deleteSegment(getSegmentFile(s));
+    }
+    checkpointSeq = readSeq;
+    checkpointOffset = readOffset;
+    undrainedSize.addAndGet(-drained);
+  }
+
+  /**
+   * Writes the events in the records of the given segment file, starting at the given offset and until the limit
+   * or the end of the file is reached.
+   *
+   * @return the offset in the segment after the last record written
+   */
+  private long drainSegment(File segment, long offset, long limit) throws IOException {
+    try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      channel.position(offset);
+      ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+      while (offset < limit && offset + RECORD_HEADER_SIZE <= fileSize) {
+        header.clear();
+        readFully(channel, header);
+        int length = header.getInt(0);
+        int checksum = header.getInt(4);
+        if (length <= 0 || offset + RECORD_HEADER_SIZE + length > fileSize) {
+          LOG.warn("Ignoring incomplete record at offset {} of write-ahead log {}", offset, segment);
+          break;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(channel, buffer);
+        readChecksum.reset();
+        readChecksum.update(buffer.array(), 0, length);
+        if ((int) readChecksum.getValue() != checksum) {
+          LOG.warn("Ignoring corrupted record at offset {} of write-ahead log {}", offset, segment);
+          break;
+        }
+
+        FileWriter<StreamEvent> writer = getDelegate();
+        ByteArrayInputStream is = new ByteArrayInputStream(buffer.array(), 0, length);
+        Decoder decoder = new BinaryDecoder(is);
+        while (is.available() > 0) {
+          long timestamp = getDrainTimestamp(decoder.readLong());
+          writer.append(new StreamEvent(StreamEventDataCodec.decode(decoder), timestamp));
+        }
+        offset += RECORD_HEADER_SIZE + length;
+      }
+      return offset;
+    }
+  }
+
+  /**
+   * Returns the timestamp for writing an event with the given timestamp to the stream. It is the current time if
+   * the partition of the event has already ended, so that the event is not written to a partition that stream
+   * readers may have moved past.
+   */
+  private long getDrainTimestamp(long timestamp) {
+    long now = System.currentTimeMillis();
+    long partitionDuration = config.getPartitionDuration();
+    if (StreamUtils.getPartitionStartTime(timestamp, partitionDuration)
+      < StreamUtils.getPartitionStartTime(now, partitionDuration)) {
+      timestamp = now;
+    }
+    lastTimestamp = Math.max(lastTimestamp, timestamp);
+    return lastTimestamp;
+  }
+
+  private FileWriter<StreamEvent> getDelegate() throws IOException {
+    if (delegate == null) {
+      delegate = writerFactory.create(config, generation);
+    }
+    return delegate;
+  }
+
+  private void rollSegment() throws IOException {
+    activeChannel.close();
+    activeSeq++;
+    activeSize = 0L;
+    activeChannel = FileChannel.open(getSegmentFile(activeSeq).toPath(),
+                                     StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+  }
+
+  private void readCheckpoint() throws IOException {
+    checkpointSeq = 0L;
+    checkpointOffset = 0L;
+    File file = new File(dir, CHECKPOINT_FILE);
+    if (file.exists()) {
+      try (DataInputStream is = new DataInputStream(new FileInputStream(file))) {
+        checkpointSeq = is.readLong();
+        checkpointOffset = is.readLong();
+        return;
+      } catch (EOFException e) {
+        // Start from the first segment, which may write some events to the stream again
+        LOG.warn("Ignoring incomplete checkpoint of write-ahead log {}", dir);
+        checkpointOffset = 0L;
+      }
+    }
+    List<Long> segments = listSegments();
+    checkpointSeq = segments.isEmpty() ? 0L : segments.get(0);
+  }
+
+  private void writeCheckpoint(long seq, long offset) throws IOException {
+    File tmpFile = new File(dir, CHECKPOINT_FILE + ".tmp");
+    try (FileOutputStream os = new FileOutputStream(tmpFile)) {
+      DataOutputStream output = new DataOutputStream(os);
+      output.writeLong(seq);
+      output.writeLong(offset);
+      output.flush();
+      os.getFD().sync();
+    }
+    if (!tmpFile.renameTo(new File(dir, CHECKPOINT_FILE))) {
+      throw new IOException("Failed to update the checkpoint of write-ahead log " + dir);
+    }
+  }
+
+  /**
+   * Returns the sequence numbers of the segment files in the log directory, in ascending order.
+   */
+  private List<Long> listSegments() {
+    List<Long> segments = Lists.newArrayList();
+    for (String name : DirUtils.list(dir, SEGMENT_EXTENSION)) {
+      try {
+        segments.add(Long.parseLong(Files.getNameWithoutExtension(name)));
+      } catch (NumberFormatException e) {
+        LOG.warn("Ignoring unknown file {} in write-ahead log directory {}", name, dir);
+      }
+    }
+    Collections.sort(segments);
+    return segments;
+  }
+
+  private File getSegmentFile(long seq) {
+    return new File(dir, String.format("%016d.%s", seq, SEGMENT_EXTENSION));
+  }
+
+  private void deleteSegment(File segment) {
+    if (segment.exists() && !segment.delete()) {
+      LOG.warn("Failed to delete write-ahead log segment {}", segment);
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new IOException("Unexpected end of write-ahead log file");
+      }
+    }
+  }
+
+  /**
+   * A {@link ByteArrayOutputStream} that exposes its buffer, so that a record can be written without copying.
+   */
+  private static final class RecordBuffer extends ByteArrayOutputStream {
+
+    RecordBuffer() {
+      super(64 * 1024);
+    }
+
+    byte[] getBuffer() {
+      return buf;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.stream.service;
+
+import co.cask.cdap.api.flow.flowlet.StreamEvent;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.utils.DirUtils;
+import co.cask.cdap.data.file.FileWriter;
+import co.cask.cdap.data.stream.StreamFileWriterFactory;
+import co.cask.cdap.data2.transaction.stream.StreamAdmin;
+import co.cask.cdap.data2.transaction.stream.StreamConfig;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.StreamId;
+import com.google.common.base.Throwables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link StreamFileWriterFactory} that creates {@link WriteAheadStreamFileWriter}, which commits events to a
+ * write-ahead log on local disk before they are written to the {@link FileWriter} created by another
+ * {@link StreamFileWriterFactory}. There is one log directory for each generation of a stream, which is used by at
+ * most one writer at a time.
+ */
+final class WriteAheadStreamFileWriterFactory implements StreamFileWriterFactory {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WriteAheadStreamFileWriterFactory.class);
+
+  // Maximum time to wait for the previous writer of the same log directory to finish
+  private static final long LOCK_TIMEOUT_SECONDS = 60;
+
+  private final StreamFileWriterFactory writerFactory;
+  private final File baseDir;
+  private final long maxSize;
+  private final ConcurrentMap<File, Semaphore> dirLocks;
+
+  WriteAheadStreamFileWriterFactory(CConfiguration cConf, StreamFileWriterFactory writerFactory) {
+    this(new File(cConf.get(Constants.Stream.WAL_DIR)), cConf.getLong(Constants.Stream.WAL_MAX_SIZE), writerFactory);
+  }
+
+  WriteAheadStreamFileWriterFactory(File walDir, long maxSize, StreamFileWriterFactory writerFactory) {
+    this.writerFactory = writerFactory;
+    // Stream writers of different instances have different file prefixes, hence use it to separate the logs
+    this.baseDir = new File(walDir, writerFactory.getFileNamePrefix());
+    this.maxSize = maxSize;
+    this.dirLocks = new ConcurrentHashMap<>();
+  }
+
+  @Override
+  public String getFileNamePrefix() {
+    return writerFactory.getFileNamePrefix();
+  }
+
+  @Override
+  public FileWriter<StreamEvent> create(StreamConfig config, int generation) throws IOException {
+    FileWriter<StreamEvent> writer = tryCreate(config, generation, LOCK_TIMEOUT_SECONDS);
+    if (writer == null) {
+      throw new IOException("Timeout in waiting for the write-ahead log of stream " + config.getStreamId() +
+                              " to be released by the previous writer");
+    }
+    return writer;
+  }
+
+  /**
+   * Creates a {@link WriteAheadStreamFileWriter} if the log directory of the given stream generation is not
+   * used by another writer, or becomes available within the given timeout.
+   *
+   * @return a new writer, or {@code null} if the log directory is still in use after the timeout
+   */
+  @Nullable
+  private FileWriter<StreamEvent> tryCreate(StreamConfig config, int generation,
+                                            long timeoutSeconds) throws IOException {
+    StreamId streamId = config.getStreamId();
+    File dir = new File(new File(new File(baseDir, streamId.getNamespace()), streamId.getStream()),
+                        Integer.toString(generation));
+    Semaphore lock = dirLocks.get(dir);
+    if (lock == null) {
+      Semaphore newLock = new Semaphore(1);
+      lock = dirLocks.putIfAbsent(dir, newLock);
+      lock = lock == null ? newLock : lock;
+    }
+
+    try {
+      if (!lock.tryAcquire(timeoutSeconds, TimeUnit.SECONDS)) {
+        return null;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for the write-ahead log of stream " + streamId, e);
+    }
+
+    try {
+      return new WriteAheadStreamFileWriter(dir, maxSize, writerFactory, config, generation, lock);
+    } catch (Throwable t) {
+      lock.release();
+      Throwables.propagateIfPossible(t, IOException.class);
+      throw Throwables.propagate(t);
+    }
+  }
+
+  /**
+   * Writes the events left in the write-ahead logs, by a previous process that didn't finish writing them,
+   * to the streams. The logs of streams that no longer exist are deleted.
+   *
+   * @param streamAdmin the {@link StreamAdmin} for getting stream configurations
+   */
+  void recover(StreamAdmin streamAdmin) {
+    for (File namespaceDir : DirUtils.listFiles(baseDir)) {
+      for (File streamDir : DirUtils.listFiles(namespaceDir)) {
+        StreamId streamId = new NamespaceId(namespaceDir.getName()).stream(streamDir.getName());
+        try {
+          if (!streamAdmin.exists(streamId)) {
+            LOG.info("Deleting write-ahead log of stream {}, which no longer exists", streamId);
+            DirUtils.deleteDirectoryContents(streamDir);
+            continue;
+          }
+          StreamConfig config = streamAdmin.getConfig(streamId);
+          for (File generationDir : DirUtils.listFiles(streamDir)) {
+            // Opening and closing a writer writes all the remaining events in the log to the stream.
+            // If the log is in use, the writer using it will write the remaining events.
+            FileWriter<StreamEvent> writer = tryCreate(config, Integer.parseInt(generationDir.getName()), 0L);
+            if (writer != null) {
+              LOG.info("Recovering write-ahead log {} of stream {}", generationDir, streamId);
+              writer.close();
+            }
+          }
+        } catch (Exception e) {
+          LOG.warn("Failed to recover write-ahead log of stream {}", streamId, e);
+        }
+      }
+    }
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -17,81 +17,116 @@
 package co.cask.cdap.data.stream.service.upload;
 
 import co.cask.cdap.common.conf.Constants;
-import co.cask.cdap.common.io.ByteBuffers;
-import co.cask.common.io.ByteBufferInputStream;
 import co.cask.http.BodyConsumer;
 import co.cask.http.HttpResponder;
 import com.google.common.base.Charsets;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.hash.Hashing;
-import com.google.common.io.Closeables;
 import org.apache.avro.Schema;
-import org.apache.avro.file.DataFileStream;
 import org.apache.avro.io.BinaryDecoder;
-import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.Decoder;
 import org.apache.avro.io.DecoderFactory;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xerial.snappy.Snappy;
 
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
  * A {@link BodyConsumer} that process Avro object file and write to stream.
+ *
+ * <p>The Avro object file is parsed incrementally as chunks of the upload arrive. Each data block is processed once
+ * it is completely received, and each encoded Avro object in it is written to stream as a slice of the block,
+ * without decoding the object. For uncompressed files, the slices share the memory of the uploaded content.
+ * Files compressed with the deflate and snappy codecs are supported, which are all the codecs of the Avro version
+ * used by CDAP. Uploads with other codecs are rejected.
+ * </p>
  */
 @NotThreadSafe
 final class AvroStreamBodyConsumer extends BodyConsumer {
 
   private static final Logger LOG = LoggerFactory.getLogger(AvroStreamBodyConsumer.class);
 
-  private final AsyncChannelBufferInputStream bufferInput;
-  private final ContentWriterThread writerThread;
+  private static final byte[] MAGIC = new byte[] { 'O', 'b', 'j', 1 };
+  private static final int SYNC_SIZE = 16;
+  private static final String SCHEMA_KEY = "avro.schema";
+  private static final String CODEC_KEY = "avro.codec";
+
   private final ContentWriterFactory contentWriterFactory;
+  private final long maxInFlightBytes;
+  private final DecoderFactory decoderFactory;
+  private ChannelBuffer buffer = ChannelBuffers.EMPTY_BUFFER;
+  private BinaryDecoder decoder;
+  private Schema schema;
+  private String codec;
+  private byte[] sync;
+  private ContentWriter contentWriter;
   private boolean failed;
 
-  AvroStreamBodyConsumer(ContentWriterFactory contentWriterFactory) {
+  AvroStreamBodyConsumer(ContentWriterFactory contentWriterFactory, long maxInFlightBytes) {
     this.contentWriterFactory = contentWriterFactory;
-    this.bufferInput = new AsyncChannelBufferInputStream();
-    this.writerThread = new ContentWriterThread(bufferInput, contentWriterFactory);
+    this.maxInFlightBytes = maxInFlightBytes;
+    this.decoderFactory = DecoderFactory.get();
   }
 
   @Override
   public void chunk(ChannelBuffer request, HttpResponder responder) {
-    if (failed || (failed = respondIfFailed(responder))) {
+    if (failed) {
       return;
     }
-    if (!writerThread.isAlive()) {
-      writerThread.start();
-    }
+    buffer = buffer.readable() ? ChannelBuffers.wrappedBuffer(buffer, request) : request;
     try {
-      bufferInput.append(request);
-    } catch (Exception e) {
-      throw Throwables.propagate(e);
+      process();
+    } catch (Throwable t) {
+      fail(responder, t);
+      // Propagate the exception so that the netty http service will terminate the handling
+      throw Throwables.propagate(t);
+    }
+
+    if (buffer.readableBytes() > maxInFlightBytes) {
+      failed = true;
+      buffer = ChannelBuffers.EMPTY_BUFFER;
+      cancelContentWriter();
+      responder.sendString(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE,
+                           "Avro data block exceeds the maximum size of " + maxInFlightBytes + " bytes");
+      throw new IllegalStateException("Avro data block exceeds the maximum size of " + maxInFlightBytes +
+                                        " bytes in upload to stream " + contentWriterFactory.getStream());
     }
   }
 
   @Override
   public void finished(HttpResponder responder) {
+    if (failed) {
+      return;
+    }
     try {
-      // Signal the end of input and wait for the writer thread to complete
-      bufferInput.append(ChannelBuffers.EMPTY_BUFFER);
-      writerThread.join();
-
-      if (!respondIfFailed(responder)) {
-        responder.sendStatus(HttpResponseStatus.OK);
+      process();
+      if (schema == null || buffer.readable()) {
+        throw new EOFException("Unexpected end of Avro file");
       }
-    } catch (InterruptedException e) {
-      // Just log and response. No need to propagate since it's the end of upload already.
-      LOG.warn("Join on writer thread interrupted", e);
-      responder.sendString(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Failed to complete upload due to interruption");
+    } catch (Throwable t) {
+      fail(responder, t);
+      return;
+    }
+
+    try {
+      contentWriter.close();
+      responder.sendStatus(HttpResponseStatus.OK);
     } catch (IOException e) {
       // Just log and response. No need to propagate since it's the end of upload already.
       LOG.error("Failed to write upload content to stream {}", contentWriterFactory.getStream(), e);
@@ -102,205 +137,272 @@ final class AvroStreamBodyConsumer extends BodyConsumer {
   @Override
   public void handleError(Throwable cause) {
     LOG.warn("Failed to handle upload to stream {}", contentWriterFactory.getStream(), cause);
-    Closeables.closeQuietly(bufferInput);
-    try {
-      writerThread.join();
-    } catch (InterruptedException e) {
-      // Just log
-      LOG.warn("Join on writer thread interrupted", e);
-    }
+    buffer = ChannelBuffers.EMPTY_BUFFER;
+    cancelContentWriter();
   }
 
   /**
-   * Writes a failure status if the writer thread is failed.
+   * Writes a failure status and cancels the content written so far.
    */
-  private boolean respondIfFailed(HttpResponder responder) {
-    Throwable failure = writerThread.getFailure();
-    if (failure == null) {
-      return false;
-    }
+  private void fail(HttpResponder responder, Throwable failure) {
+    failed = true;
+    buffer = ChannelBuffers.EMPTY_BUFFER;
+    cancelContentWriter();
     LOG.debug("Upload failed", failure);
     responder.sendString(HttpResponseStatus.BAD_REQUEST,
                          "Failed to process uploaded avro file: " + failure.getMessage());
-    return true;
+  }
+
+  private void cancelContentWriter() {
+    if (contentWriter != null) {
+      contentWriter.cancel();
+    }
   }
 
   /**
-   * The thread for reading Avro file and writing encoded Avro object to {@link ContentWriter}.
+   * Processes the file header and all the complete data blocks in the buffer.
    */
-  private static final class ContentWriterThread extends Thread {
-    private static final AtomicLong id = new AtomicLong();
-
-    private final InputStream contentStream;
-    private final ContentWriterFactory contentWriterFactory;
-    private volatile Throwable failure;
+  private void process() throws IOException {
+    if (schema == null && !readHeader()) {
+      return;
+    }
+    while (readBlock()) {
+      if (!buffer.readable()) {
+        // Release the reference to the consumed content
+        buffer = ChannelBuffers.EMPTY_BUFFER;
+      }
+    }
+  }
 
-    ContentWriterThread(InputStream contentStream, ContentWriterFactory contentWriterFactory) {
-      super("avro-uploader-" + contentWriterFactory.getStream() + "-" + id.getAndIncrement());
-      this.contentStream = contentStream;
-      this.contentWriterFactory = contentWriterFactory;
+  /**
+   * Reads the Avro file header and creates the {@link ContentWriter}.
+   *
+   * @return {@code true} if the header is read, {@code false} if more content is needed
+   */
+  private boolean readHeader() throws IOException {
+    if (buffer.readableBytes() < MAGIC.length) {
+      return false;
+    }
+    int startIndex = buffer.readerIndex();
+    Map<String, byte[]> meta = new HashMap<>();
+    try {
+      byte[] magic = new byte[MAGIC.length];
+      buffer.readBytes(magic);
+      if (!Arrays.equals(MAGIC, magic)) {
+        throw new IOException("Not an Avro data file");
+      }
+      decoder = decoderFactory.directBinaryDecoder(new ChannelBufferInputStream(buffer), decoder);
+      for (long count = decoder.readMapStart(); count != 0; count = decoder.mapNext()) {
+        for (long i = 0; i < count; i++) {
+          String key = decoder.readString(null).toString();
+          ByteBuffer value = decoder.readBytes(null);
+          byte[] bytes = new byte[value.remaining()];
+          value.get(bytes);
+          meta.put(key, bytes);
+        }
+      }
+      byte[] syncMarker = new byte[SYNC_SIZE];
+      decoder.readFixed(syncMarker);
+      sync = syncMarker;
+    } catch (EOFException e) {
+      buffer.readerIndex(startIndex);
+      return false;
     }
 
-    @Override
-    public void run() {
-      try {
-        // Create an Avro reader from the given content stream.
-        try (DataFileStream<Object> reader = new DataFileStream<>(contentStream, new DummyDatumReader())) {
-          Schema schema = reader.getSchema();
-          DecoderFactory decoderFactory = DecoderFactory.get();
-          ByteBufferInputStream blockInput = new ByteBufferInputStream(ByteBuffers.EMPTY_BUFFER);
-          BinaryDecoder decoder = null;
+    if (!meta.containsKey(SCHEMA_KEY)) {
+      throw new IOException("Missing schema in Avro data file");
+    }
+    String schemaStr = new String(meta.get(SCHEMA_KEY), Charsets.UTF_8);
+    codec = meta.containsKey(CODEC_KEY) ? new String(meta.get(CODEC_KEY), Charsets.UTF_8) : "null";
+    if (!"null".equals(codec) && !"deflate".equals(codec) && !"snappy".equals(codec)) {
+      LOG.warn("Rejecting upload to stream {} with unsupported Avro codec {}", contentWriterFactory.getStream(), codec);
+      throw new IOException("Unsupported Avro codec " + codec + ". Supported codecs are null, deflate and snappy");
+    }
+    schema = new Schema.Parser().parse(schemaStr);
 
-          // Create the {@link ContentWriter} for writing encoded Avro content to stream
-          String schemaStr = schema.toString();
-          ContentWriter contentWriter = contentWriterFactory.create(ImmutableMap.of(
-            Constants.Stream.Headers.SCHEMA, schemaStr,
-            Constants.Stream.Headers.SCHEMA_HASH, Hashing.md5().hashString(schemaStr, Charsets.UTF_8).toString()
-          ));
+    // Create the {@link ContentWriter} for writing encoded Avro content to stream
+    contentWriter = contentWriterFactory.create(ImmutableMap.of(
+      Constants.Stream.Headers.SCHEMA, schemaStr,
+      Constants.Stream.Headers.SCHEMA_HASH, Hashing.md5().hashString(schemaStr, Charsets.UTF_8).toString()
+    ));
+    return true;
+  }
 
-          try {
-            while (reader.hasNext()) {
-              // Instead of decoding the whole object, we just keep finding the object boundary in
-              // an Avro raw data block.
-              ByteBuffer block = reader.nextBlock();
-              decoder = decoderFactory.directBinaryDecoder(blockInput.reset(block), decoder);
-              int limit = block.limit();
+  /**
+   * Reads a data block and writes the Avro objects in it to the {@link ContentWriter}.
+   *
+   * @return {@code true} if a block is read, {@code false} if more content is needed
+   */
+  private boolean readBlock() throws IOException {
+    int startIndex = buffer.readerIndex();
+    long count;
+    long size;
+    try {
+      decoder = decoderFactory.directBinaryDecoder(new ChannelBufferInputStream(buffer), decoder);
+      count = decoder.readLong();
+      size = decoder.readLong();
+    } catch (EOFException e) {
+      buffer.readerIndex(startIndex);
+      return false;
+    }
+    if (count < 0 || size < 0 || size > Integer.MAX_VALUE - SYNC_SIZE) {
+      throw new IOException("Invalid Avro data block with " + count + " objects in " + size + " bytes");
+    }
+    if (buffer.readableBytes() < size + SYNC_SIZE) {
+      buffer.readerIndex(startIndex);
+      return false;
+    }
 
-              // Since we are depending on position in the block buffer, a direct binary decoder must be used
-              // to ensure no buffering happens in the decoder.
-              while (block.hasRemaining()) {
-                // Mark the beginning of the datum
-                block.mark();
-                skipDatum(schema, decoder);
+    ChannelBuffer block = buffer.readSlice((int) size);
+    for (byte b : sync) {
+      if (buffer.readByte() != b) {
+        throw new IOException("Invalid sync marker in Avro data file");
+      }
+    }
 
-                // Mark the end of the datum
-                int pos = block.position();
-                block.reset();
-                block.limit(pos);
+    // Instead of decoding the whole object, we just keep finding the object boundary in the raw data block.
+    // Since we are depending on the position in the block buffer, a direct binary decoder must be used
+    // to ensure no buffering happens in the decoder.
+    block = decompress(block);
+    decoder = decoderFactory.directBinaryDecoder(new ChannelBufferInputStream(block), decoder);
+    for (long i = 0; i < count; i++) {
+      int datumIndex = block.readerIndex();
+      skipDatum(schema, decoder);
+      // The block is never modified, hence the slice can be written without copying
+      contentWriter.append(block.slice(datumIndex, block.readerIndex() - datumIndex).toByteBuffer(), true);
+    }
+    if (block.readable()) {
+      throw new IOException("Avro data block has " + block.readableBytes() + " bytes after " + count + " objects");
+    }
+    return true;
+  }
 
-                // Append the encoded datum to content writer.
-                // Need to tell content write that the buffer provided is not immutable.
-                contentWriter.append(block, false);
+  /**
+   * Decompresses a data block according to the codec of the file.
+   */
+  private ChannelBuffer decompress(ChannelBuffer block) throws IOException {
+    if ("null".equals(codec)) {
+      return block;
+    }
 
-                // Restore the position and limit for the next datum
-                block.position(pos);
-                block.limit(limit);
-              }
-            }
-            contentWriter.close();
-          } catch (Throwable t) {
-            contentWriter.cancel();
-            throw t;
+    byte[] data = new byte[block.readableBytes()];
+    block.readBytes(data);
+    if ("deflate".equals(codec)) {
+      Inflater inflater = new Inflater(true);
+      try {
+        inflater.setInput(data);
+        ByteArrayOutputStream os = new ByteArrayOutputStream(data.length * 2);
+        byte[] buf = new byte[8192];
+        while (!inflater.finished()) {
+          int len = inflater.inflate(buf);
+          if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+            break;
           }
+          os.write(buf, 0, len);
         }
-      } catch (Throwable t) {
-        failure = t;
+        return ChannelBuffers.wrappedBuffer(os.toByteArray());
+      } catch (DataFormatException e) {
+        throw new IOException("Failed to decompress Avro data block", e);
       } finally {
-        Closeables.closeQuietly(contentStream);
+        inflater.end();
       }
     }
 
-    public Throwable getFailure() {
-      return failure;
+    // Snappy compressed block is followed by the CRC32 checksum of the uncompressed data
+    int len = data.length - 4;
+    if (len < 0) {
+      throw new IOException("Invalid snappy compressed Avro data block");
     }
-
-    /**
-     * Skips a datum from the given decoder according to the given schema.
-     */
-    private void skipDatum(Schema schema, Decoder decoder) throws IOException {
-      switch (schema.getType()) {
-        case NULL:
-          decoder.readNull();
-          break;
-        case BOOLEAN:
-          decoder.readBoolean();
-          break;
-        case INT:
-          decoder.readInt();
-          break;
-        case LONG:
-          decoder.readLong();
-          break;
-        case FLOAT:
-          decoder.readFloat();
-          break;
-        case DOUBLE:
-          decoder.readDouble();
-          break;
-        case ENUM:
-          decoder.readEnum();
-          break;
-        case FIXED:
-          decoder.skipFixed(schema.getFixedSize());
-          break;
-        case STRING:
-          decoder.skipString();
-          break;
-        case BYTES:
-          decoder.skipBytes();
-          break;
-        case RECORD:
-          skipRecord(schema, decoder);
-          break;
-        case ARRAY:
-          skipArray(schema, decoder);
-          break;
-        case MAP:
-          skipMap(schema, decoder);
-          break;
-        case UNION:
-          skipDatum(schema.getTypes().get(decoder.readIndex()), decoder);
-          break;
-      }
+    byte[] uncompressed = new byte[Snappy.uncompressedLength(data, 0, len)];
+    Snappy.uncompress(data, 0, len, uncompressed, 0);
+    CRC32 crc = new CRC32();
+    crc.update(uncompressed);
+    if ((int) crc.getValue() != ByteBuffer.wrap(data, len, 4).getInt()) {
+      throw new IOException("Checksum mismatch in snappy compressed Avro data block");
     }
+    return ChannelBuffers.wrappedBuffer(uncompressed);
+  }
 
-    /**
-     * Skips an array from the given decoder according to the given array schema.
-     */
-    private void skipArray(Schema schema, Decoder decoder) throws IOException {
-      for (long count = decoder.skipArray(); count != 0; count = decoder.skipArray()) {
-        while (count-- > 0) {
-          skipDatum(schema.getElementType(), decoder);
-        }
-      }
+  /**
+   * Skips a datum from the given decoder according to the given schema.
+   */
+  private void skipDatum(Schema schema, Decoder decoder) throws IOException {
+    switch (schema.getType()) {
+      case NULL:
+        decoder.readNull();
+        break;
+      case BOOLEAN:
+        decoder.readBoolean();
+        break;
+      case INT:
+        decoder.readInt();
+        break;
+      case LONG:
+        decoder.readLong();
+        break;
+      case FLOAT:
+        decoder.readFloat();
+        break;
+      case DOUBLE:
+        decoder.readDouble();
+        break;
+      case ENUM:
+        decoder.readEnum();
+        break;
+      case FIXED:
+        decoder.skipFixed(schema.getFixedSize());
+        break;
+      case STRING:
+        decoder.skipString();
+        break;
+      case BYTES:
+        decoder.skipBytes();
+        break;
+      case RECORD:
+        skipRecord(schema, decoder);
+        break;
+      case ARRAY:
+        skipArray(schema, decoder);
+        break;
+      case MAP:
+        skipMap(schema, decoder);
+        break;
+      case UNION:
+        skipDatum(schema.getTypes().get(decoder.readIndex()), decoder);
+        break;
     }
+  }
 
-    /**
-     * Skips a map from the given decoder according to the given map schema.
-     */
-    private void skipMap(Schema schema, Decoder decoder) throws IOException {
-      for (long count = decoder.skipMap(); count != 0; count = decoder.skipMap()) {
-        while (count-- > 0) {
-          // Skip key
-          decoder.skipString();
-          skipDatum(schema.getValueType(), decoder);
-        }
+  /**
+   * Skips an array from the given decoder according to the given array schema.
+   */
+  private void skipArray(Schema schema, Decoder decoder) throws IOException {
+    for (long count = decoder.skipArray(); count != 0; count = decoder.skipArray()) {
+      while (count-- > 0) {
+        skipDatum(schema.getElementType(), decoder);
       }
     }
+  }
 
-    /**
-     * Skips a record from the given decoder according to the given record schema.
-     */
-    private void skipRecord(Schema schema, Decoder decoder) throws IOException {
-      for (Schema.Field field : schema.getFields()) {
-        skipDatum(field.schema(), decoder);
+  /**
+   * Skips a map from the given decoder according to the given map schema.
+   */
+  private void skipMap(Schema schema, Decoder decoder) throws IOException {
+    for (long count = decoder.skipMap(); count != 0; count = decoder.skipMap()) {
+      while (count-- > 0) {
+        // Skip key
+        decoder.skipString();
+        skipDatum(schema.getValueType(), decoder);
       }
     }
   }
 
   /**
-   * A dummy {@link DatumReader} that reads nothing.
+   * Skips a record from the given decoder according to the given record schema.
    */
-  private static final class DummyDatumReader implements DatumReader<Object> {
-
-    @Override
-    public void setSchema(Schema schema) {
-      // No-op
-    }
-
-    @Override
-    public Object read(Object reuse, Decoder in) throws IOException {
-      return null;
+  private void skipRecord(Schema schema, Decoder decoder) throws IOException {
+    for (Schema.Field field : schema.getFields()) {
+      skipDatum(field.schema(), decoder);
     }
   }
 }
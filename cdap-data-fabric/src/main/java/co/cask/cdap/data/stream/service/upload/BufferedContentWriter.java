@@ -47,7 +47,7 @@ final class BufferedContentWriter implements ContentWriter, Iterable<ByteBuffer>
     this.streamId = streamId;
     this.streamWriter = streamWriter;
     this.headers = ImmutableMap.copyOf(headers);
-    this.bodies = Lists.newLinkedList();
+    this.bodies = Lists.newArrayList();
   }
 
   @Override
@@ -25,6 +25,16 @@ import org.jboss.netty.handler.codec.http.HttpRequest;
  */
 public class StreamBodyConsumerFactory {
 
+  private final long maxInFlightBytes;
+
+  /**
+   * Creates a factory for {@link BodyConsumer} that holds at most the given number of bytes of an upload in memory
+   * while waiting for more content to complete an event.
+   */
+  public StreamBodyConsumerFactory(long maxInFlightBytes) {
+    this.maxInFlightBytes = maxInFlightBytes;
+  }
+
   /**
    * Creates a {@link BodyConsumer} to handle the given batch request.
    *
@@ -40,10 +50,10 @@ public class StreamBodyConsumerFactory {
     }
 
     if (contentType.startsWith("text/")) {
-      return new TextStreamBodyConsumer(contentWriterFactory);
+      return new TextStreamBodyConsumer(contentWriterFactory, maxInFlightBytes);
     }
     if (contentType.equals("avro/binary")) {
-      return new AvroStreamBodyConsumer(contentWriterFactory);
+      return new AvroStreamBodyConsumer(contentWriterFactory, maxInFlightBytes);
     }
     throw new UnsupportedOperationException("Unsupported content type " + contentType);
   }
@@ -34,7 +34,8 @@ import java.nio.ByteBuffer;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
- * A {@link BodyConsumer} for consuming line separated text file upload.
+ * A {@link BodyConsumer} for consuming line separated text file upload. Each line is written as a slice of the
+ * uploaded content, without copying.
  */
 @NotThreadSafe
 final class TextStreamBodyConsumer extends BodyConsumer {
@@ -43,13 +44,15 @@ final class TextStreamBodyConsumer extends BodyConsumer {
 
   private final StreamId streamId;
   private final ContentWriterFactory contentWriterFactory;
+  private final long maxInFlightBytes;
   private ContentWriter contentWriter;
   private boolean failed;
   private ChannelBuffer buffer = ChannelBuffers.EMPTY_BUFFER;
 
-  TextStreamBodyConsumer(ContentWriterFactory contentWriterFactory) {
+  TextStreamBodyConsumer(ContentWriterFactory contentWriterFactory, long maxInFlightBytes) {
     this.streamId = contentWriterFactory.getStream();
     this.contentWriterFactory = contentWriterFactory;
+    this.maxInFlightBytes = maxInFlightBytes;
   }
 
   @Override
@@ -77,6 +80,15 @@ final class TextStreamBodyConsumer extends BodyConsumer {
       // Propagate the exception so that the netty http service will terminate the handling
       throw Throwables.propagate(e);
     }
+
+    if (buffer.readableBytes() > maxInFlightBytes) {
+      failed = true;
+      cancelContentWriter();
+      responder.sendString(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE,
+                           "Line exceeds the maximum size of " + maxInFlightBytes + " bytes");
+      throw new IllegalStateException("Line exceeds the maximum size of " + maxInFlightBytes + " bytes in upload " +
+                                        "to stream " + streamId);
+    }
   }
 
   @Override
@@ -116,15 +128,21 @@ final class TextStreamBodyConsumer extends BodyConsumer {
           return endOfData();
         }
         ChannelBuffer body = chunk.readSlice(len);
-        // Skip the CRLF.
-        while (chunk.bytesBefore(ChannelBufferIndexFinder.CRLF) == 0) {
-          chunk.readByte();
+        // Skip the CRLF. Only look at the next byte, instead of searching for the next CRLF in the whole chunk.
+        while (chunk.readable() && ChannelBufferIndexFinder.CRLF.find(chunk, chunk.readerIndex())) {
+          chunk.skipBytes(1);
         }
         return body.toByteBuffer();
       }
     }, true);
   }
 
+  private void cancelContentWriter() {
+    if (contentWriter != null) {
+      contentWriter.cancel();
+    }
+  }
+
   private ContentWriter getContentWriter() throws IOException {
     if (contentWriter == null) {
       contentWriter = contentWriterFactory.create(ImmutableMap.<String, String>of());
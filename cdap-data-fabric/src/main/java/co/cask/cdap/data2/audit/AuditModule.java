@@ -79,6 +79,9 @@ public class AuditModule extends RuntimeModule {
     @Override
     public AuditPublisher get() {
       if (cConf.getBoolean(Constants.Audit.ENABLED, false)) {
+        if (cConf.getInt(Constants.Audit.PUBLISH_BATCH_SIZE, 1) > 1) {
+          return injector.getInstance(BatchingAuditPublisher.class);
+        }
         return injector.getInstance(DefaultAuditPublisher.class);
       }
       return injector.getInstance(NoOpAuditPublisher.class);
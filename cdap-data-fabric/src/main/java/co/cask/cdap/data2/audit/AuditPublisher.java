@@ -21,6 +21,8 @@ import co.cask.cdap.proto.audit.AuditPayload;
 import co.cask.cdap.proto.audit.AuditType;
 import co.cask.cdap.proto.id.EntityId;
 
+import java.util.Map;
+
 /**
  * AuditPublisher is used to publish non-data changes to entities that need to be logged for audit purpose.
  */
@@ -34,4 +36,12 @@ public interface AuditPublisher {
    * @param auditPayload information on the change
    */
   void publish(EntityId entityId, AuditType auditType, AuditPayload auditPayload);
+
+  /**
+   * Publish audit logs for a batch of changes of the same type. The logs are published together, one per entity.
+   *
+   * @param auditType type of the changes
+   * @param auditPayloads information on the change of each affected entity
+   */
+  void publish(AuditType auditType, Map<? extends EntityId, ? extends AuditPayload> auditPayloads);
 }
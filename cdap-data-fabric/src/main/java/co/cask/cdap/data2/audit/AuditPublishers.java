@@ -26,6 +26,7 @@ import com.google.common.cache.CacheBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -112,6 +113,23 @@ public final class AuditPublishers {
     publisher.publish(entityId, auditType, auditPayload);
   }
 
+  /**
+   * Publish audit information for a batch of changes using {@link AuditPublisher}.
+   *
+   * @param publisher audit publisher, if null no audit information is published
+   * @param auditType audit type
+   * @param auditPayloads audit payload for each entity for which audit information is being published
+   */
+  public static void publishAudit(@Nullable AuditPublisher publisher, AuditType auditType,
+                                  Map<? extends EntityId, ? extends AuditPayload> auditPayloads) {
+    if (publisher == null) {
+      logWarning();
+      return;
+    }
+
+    publisher.publish(auditType, auditPayloads);
+  }
+
   /**
    * Logs warning about not having audit publisher. The warning is logged only once.
    */
@@ -0,0 +1,182 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.audit;
+
+import co.cask.cdap.api.messaging.TopicNotFoundException;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.service.RetryStrategies;
+import co.cask.cdap.common.service.RetryStrategy;
+import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.MessagingServices;
+import co.cask.cdap.proto.audit.AuditMessage;
+import co.cask.cdap.proto.audit.AuditPayload;
+import co.cask.cdap.proto.audit.AuditType;
+import co.cask.cdap.proto.codec.AuditMessagePayloadCodec;
+import co.cask.cdap.proto.id.EntityId;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.TopicId;
+import co.cask.cdap.security.spi.authentication.SecurityRequestContext;
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.inject.Inject;
+import org.apache.twill.common.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Flushable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An implementation of {@link AuditPublisher} that publishes to TMS in batches. Audit messages are buffered until
+ * either the configured batch size is reached or the oldest buffered message has waited for the configured linger
+ * time. Each batch is published as a single compressed message, which consumers decode with
+ * {@link AuditMessagePayloadCodec}. Batches are published in the order the messages were buffered.
+ * <p>
+ * Buffered messages are published when this service is stopped, hence it should be stopped after the services
+ * that publish audit messages, and before the messaging service. Messages published after it is stopped are
+ * published right away.
+ */
+public final class BatchingAuditPublisher extends AbstractIdleService implements AuditPublisher, Flushable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BatchingAuditPublisher.class);
+
+  private final MessagingService messagingService;
+  private final TopicId auditTopic;
+  private final RetryStrategy retryStrategy;
+  private final int batchSize;
+  private final long lingerMillis;
+  private final ScheduledExecutorService executor;
+  private final Runnable flushTask;
+  // Held while a batch is taken from the buffer and published, so that batches are published in order
+  private final Object publishLock = new Object();
+
+  // Guarded by this
+  private List<AuditMessage> buffer;
+  private boolean flushScheduled;
+
+  @Inject
+  BatchingAuditPublisher(CConfiguration cConf, MessagingService messagingService) {
+    this.messagingService = messagingService;
+    this.auditTopic = NamespaceId.SYSTEM.topic(cConf.get(Constants.Audit.TOPIC));
+    this.retryStrategy = RetryStrategies.timeLimit(
+      cConf.getLong(Constants.Audit.PUBLISH_TIMEOUT_MS), TimeUnit.MILLISECONDS,
+      RetryStrategies.exponentialDelay(10, 200, TimeUnit.MILLISECONDS));
+    this.batchSize = cConf.getInt(Constants.Audit.PUBLISH_BATCH_SIZE);
+    this.lingerMillis = cConf.getLong(Constants.Audit.PUBLISH_LINGER_MS);
+    this.executor = Executors.newSingleThreadScheduledExecutor(Threads.createDaemonThreadFactory("audit-publisher"));
+    this.flushTask = new Runnable() {
+      @Override
+      public void run() {
+        flush();
+      }
+    };
+    this.buffer = new ArrayList<>();
+  }
+
+  @Override
+  protected void startUp() throws Exception {
+    // no-op
+  }
+
+  @Override
+  protected void shutDown() throws Exception {
+    executor.shutdown();
+    flush();
+  }
+
+  @Override
+  public void publish(EntityId entityId, AuditType auditType, AuditPayload auditPayload) {
+    String userId = Objects.firstNonNull(SecurityRequestContext.getUserId(), "");
+    add(Collections.singletonList(
+      new AuditMessage(System.currentTimeMillis(), entityId, userId, auditType, auditPayload)));
+  }
+
+  @Override
+  public void publish(AuditType auditType, Map<? extends EntityId, ? extends AuditPayload> auditPayloads) {
+    String userId = Objects.firstNonNull(SecurityRequestContext.getUserId(), "");
+    long time = System.currentTimeMillis();
+    List<AuditMessage> auditMessages = new ArrayList<>(auditPayloads.size());
+    for (Map.Entry<? extends EntityId, ? extends AuditPayload> entry : auditPayloads.entrySet()) {
+      auditMessages.add(new AuditMessage(time, entry.getKey(), userId, auditType, entry.getValue()));
+    }
+    add(auditMessages);
+  }
+
+  /**
+   * Publishes all buffered audit messages.
+   */
+  @Override
+  public void flush() {
+    synchronized (publishLock) {
+      List<AuditMessage> batch;
+      synchronized (this) {
+        batch = buffer;
+        buffer = new ArrayList<>();
+        flushScheduled = false;
+      }
+      publish(batch);
+    }
+  }
+
+  private void add(List<AuditMessage> auditMessages) {
+    if (auditMessages.isEmpty()) {
+      return;
+    }
+    boolean flush = false;
+    synchronized (this) {
+      buffer.addAll(auditMessages);
+      if (buffer.size() >= batchSize) {
+        // The batch is full, publish it in the caller thread
+        flush = true;
+      } else if (!flushScheduled) {
+        try {
+          executor.schedule(flushTask, lingerMillis, TimeUnit.MILLISECONDS);
+          flushScheduled = true;
+        } catch (RejectedExecutionException e) {
+          // Already stopped, publish right away
+          flush = true;
+        }
+      }
+    }
+    if (flush) {
+      flush();
+    }
+  }
+
+  private void publish(List<AuditMessage> auditMessages) {
+    for (List<AuditMessage> batch : Lists.partition(auditMessages, batchSize)) {
+      LOG.trace("Publishing a batch of audit messages {}", batch);
+      try {
+        MessagingServices.publishWithRetry(messagingService, auditTopic, retryStrategy,
+                                           AuditMessagePayloadCodec.encode(batch));
+      } catch (TopicNotFoundException e) {
+        LOG.error("Missing topic for audit publish: {}", auditTopic);
+      } catch (Exception e) {
+        LOG.error("Got exception publishing a batch of {} audit messages. Exception:", batch.size(), e);
+      }
+    }
+  }
+}
@@ -26,17 +26,17 @@ import co.cask.cdap.messaging.MessagingServices;
 import co.cask.cdap.proto.audit.AuditMessage;
 import co.cask.cdap.proto.audit.AuditPayload;
 import co.cask.cdap.proto.audit.AuditType;
+import co.cask.cdap.proto.codec.AuditMessagePayloadCodec;
 import co.cask.cdap.proto.id.EntityId;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.proto.id.TopicId;
 import co.cask.cdap.security.spi.authentication.SecurityRequestContext;
 import com.google.common.base.Objects;
-import com.google.gson.Gson;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -45,7 +45,6 @@ import java.util.concurrent.TimeUnit;
 public final class DefaultAuditPublisher implements AuditPublisher {
 
   private static final Logger LOG = LoggerFactory.getLogger(DefaultAuditPublisher.class);
-  private static final Gson GSON = new Gson();
 
   private final MessagingService messagingService;
   private final TopicId auditTopic;
@@ -68,11 +67,35 @@ public final class DefaultAuditPublisher implements AuditPublisher {
 
     try {
       MessagingServices.publishWithRetry(messagingService, auditTopic, retryStrategy,
-                                         GSON.toJson(auditMessage).getBytes(StandardCharsets.UTF_8));
+                                         AuditMessagePayloadCodec.encode(auditMessage));
     } catch (TopicNotFoundException e) {
       LOG.error("Missing topic for audit publish: {}", auditTopic);
     } catch (Exception e) {
       LOG.error("Got exception publishing audit message {}. Exception:", auditMessage, e);
     }
   }
+
+  @Override
+  public void publish(AuditType auditType, Map<? extends EntityId, ? extends AuditPayload> auditPayloads) {
+    if (auditPayloads.isEmpty()) {
+      return;
+    }
+    String userId = Objects.firstNonNull(SecurityRequestContext.getUserId(), "");
+    long time = System.currentTimeMillis();
+    byte[][] payloads = new byte[auditPayloads.size()][];
+    int i = 0;
+    for (Map.Entry<? extends EntityId, ? extends AuditPayload> entry : auditPayloads.entrySet()) {
+      AuditMessage auditMessage = new AuditMessage(time, entry.getKey(), userId, auditType, entry.getValue());
+      LOG.trace("Publishing audit message {}", auditMessage);
+      payloads[i++] = AuditMessagePayloadCodec.encode(auditMessage);
+    }
+
+    try {
+      MessagingServices.publishWithRetry(messagingService, auditTopic, retryStrategy, payloads);
+    } catch (TopicNotFoundException e) {
+      LOG.error("Missing topic for audit publish: {}", auditTopic);
+    } catch (Exception e) {
+      LOG.error("Got exception publishing {} audit messages of type {}. Exception:", payloads.length, auditType, e);
+    }
+  }
 }
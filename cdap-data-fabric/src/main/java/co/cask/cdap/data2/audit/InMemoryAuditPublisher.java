@@ -23,6 +23,7 @@ import co.cask.cdap.proto.id.EntityId;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -38,6 +39,13 @@ public class InMemoryAuditPublisher implements AuditPublisher {
     messages.add(auditMessage);
   }
 
+  @Override
+  public void publish(AuditType auditType, Map<? extends EntityId, ? extends AuditPayload> auditPayloads) {
+    for (Map.Entry<? extends EntityId, ? extends AuditPayload> entry : auditPayloads.entrySet()) {
+      publish(entry.getKey(), auditType, entry.getValue());
+    }
+  }
+
   public List<AuditMessage> popMessages() {
     ArrayList<AuditMessage> list = new ArrayList<>();
     messages.drainTo(list);
@@ -20,6 +20,8 @@ import co.cask.cdap.proto.audit.AuditPayload;
 import co.cask.cdap.proto.audit.AuditType;
 import co.cask.cdap.proto.id.EntityId;
 
+import java.util.Map;
+
 /**
  * No-op audit publisher.
  */
@@ -29,4 +31,9 @@ public class NoOpAuditPublisher implements AuditPublisher {
   public void publish(EntityId entityId, AuditType auditType, AuditPayload auditPayload) {
 
   }
+
+  @Override
+  public void publish(AuditType auditType, Map<? extends EntityId, ? extends AuditPayload> auditPayloads) {
+
+  }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 Cask Data, Inc.
+ * Copyright 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -35,6 +35,16 @@ public class FactCodec {
   private static final Logger LOG = LoggerFactory.getLogger(FactCodec.class);
   // current version
   private static final byte[] VERSION = new byte[] {0};
+  // prefix of the dimension-value index rows, sorts after all fact rows
+  private static final byte[] INDEX_VERSION = new byte[] {1};
+
+  // index column types
+  private static final byte INDEX_COLUMN_DIMENSION = 'd';
+  private static final byte INDEX_COLUMN_MEASURE = 'm';
+  // column of the row that records the first timebase covered by the index, the row key is the index version only
+  private static final byte[] INDEX_COVERAGE_COLUMN = new byte[] {'c'};
+  // column of the same row that counts the deletes of index cells
+  private static final byte[] INDEX_GENERATION_COLUMN = new byte[] {'g'};
 
   // encoding types
   private static final String TYPE_MEASURE_NAME = "measureName";
@@ -147,6 +157,138 @@ public class FactCodec {
     return rowKey;
   }
 
+  /**
+   * Builds row key of the dimension-value index for the given aggregation and its leading dimension values.
+   * @param dimensionValues dimension values, their names define the aggregation group
+   * @param prefixLength number of leading dimension values to include in the key
+   * @param ts timestamp, rounded to the timebase of the fact rows
+   * @return index row key
+   */
+  public byte[] createIndexRowKey(List<DimensionValue> dimensionValues, int prefixLength, long ts) {
+    // Index row key format:
+    // <index version><encoded agg group><prefix length><encoded dimension1 value>...
+    //                                                      <encoded dimension{prefixLength} value><time base>
+    Preconditions.checkArgument(prefixLength <= dimensionValues.size() && prefixLength <= Short.MAX_VALUE,
+                                "Invalid prefix length " + prefixLength);
+    byte[] rowKey = new byte[INDEX_VERSION.length + (prefixLength + 1) * entityTable.getIdSize() +
+                               Bytes.SIZEOF_SHORT + Bytes.SIZEOF_INT];
+    System.arraycopy(INDEX_VERSION, 0, rowKey, 0, INDEX_VERSION.length);
+    int offset = writeEncodedAggGroup(dimensionValues, rowKey, INDEX_VERSION.length);
+    offset = Bytes.putShort(rowKey, offset, (short) prefixLength);
+    for (int i = 0; i < prefixLength; i++) {
+      DimensionValue dimensionValue = dimensionValues.get(i);
+      Preconditions.checkArgument(dimensionValue.getValue() != null,
+                                  "Indexed prefix cannot contain null value of dimension " + dimensionValue.getName());
+      offset = writeEncoded(dimensionValue.getName(), dimensionValue.getValue(), rowKey, offset);
+    }
+    Bytes.putInt(rowKey, offset, getTimeBase(roundToResolution(ts)));
+    return rowKey;
+  }
+
+  /**
+   * Builds the key prefix of the fact rows that have the given leading dimension values in the timebase of
+   * the given timestamp. Unlike {@link #createStartRowKey(List, String, long, boolean)}, a {@code null} dimension
+   * value in the prefix only matches facts that don't have a value for that dimension.
+   * @param dimensionValues dimension values, their names define the aggregation group
+   * @param prefixLength number of leading dimension values to include in the key
+   * @param ts timestamp
+   * @return row key prefix
+   */
+  public byte[] createRowKeyPrefix(List<DimensionValue> dimensionValues, int prefixLength, long ts) {
+    byte[] rowKey = new byte[VERSION.length + (prefixLength + 1) * entityTable.getIdSize() + Bytes.SIZEOF_INT];
+    int offset = writeVersion(rowKey);
+    offset = writeEncodedAggGroup(dimensionValues, rowKey, offset);
+    offset = Bytes.putInt(rowKey, offset, getTimeBase(roundToResolution(ts)));
+    for (int i = 0; i < prefixLength; i++) {
+      DimensionValue dimensionValue = dimensionValues.get(i);
+      if (dimensionValue.getValue() != null) {
+        offset = writeEncoded(dimensionValue.getName(), dimensionValue.getValue(), rowKey, offset);
+      } else {
+        // same as the "undefined" value written for null dimension values of facts
+        offset = writeAnyEncoded(rowKey, offset, false);
+      }
+    }
+    return rowKey;
+  }
+
+  /**
+   * Returns the timebase of the rows that store the given timestamp.
+   */
+  public int getRowTimeBase(long ts) {
+    return getTimeBase(roundToResolution(ts));
+  }
+
+  /**
+   * Returns the key of the row that records the first timebase covered by the dimension-value index.
+   * The row sorts before all index rows, and after all fact rows.
+   */
+  public byte[] getIndexCoverageRowKey() {
+    return Arrays.copyOf(INDEX_VERSION, INDEX_VERSION.length);
+  }
+
+  /**
+   * Returns the column that records the first timebase covered by the dimension-value index.
+   */
+  public byte[] getIndexCoverageColumn() {
+    return Arrays.copyOf(INDEX_COVERAGE_COLUMN, INDEX_COVERAGE_COLUMN.length);
+  }
+
+  /**
+   * Returns the column of the index coverage row that counts the deletes of dimension-value index cells.
+   */
+  public byte[] getIndexGenerationColumn() {
+    return Arrays.copyOf(INDEX_GENERATION_COLUMN, INDEX_GENERATION_COLUMN.length);
+  }
+
+  /**
+   * Builds index column that records a value of the dimension at the given position in the aggregation.
+   */
+  public byte[] createIndexDimensionColumn(DimensionValue dimensionValue, int dimensionIndex) {
+    byte[] column = new byte[1 + Bytes.SIZEOF_SHORT + entityTable.getIdSize()];
+    column[0] = INDEX_COLUMN_DIMENSION;
+    int offset = Bytes.putShort(column, 1, (short) dimensionIndex);
+    writeEncoded(dimensionValue.getName(), dimensionValue.getValue(), column, offset);
+    return column;
+  }
+
+  /**
+   * Builds index column that records a measure name.
+   */
+  public byte[] createIndexMeasureColumn(String measureName) {
+    byte[] column = new byte[1 + entityTable.getIdSize()];
+    column[0] = INDEX_COLUMN_MEASURE;
+    writeEncoded(TYPE_MEASURE_NAME, measureName, column, 1);
+    return column;
+  }
+
+  /**
+   * Decodes index column created with {@link #createIndexDimensionColumn(DimensionValue, int)}.
+   * @param dimensionNames dimension names of the aggregation the index row belongs to
+   * @param column index column
+   * @return decoded dimension value or {@code null} if the column is not a dimension column
+   */
+  @Nullable
+  public DimensionValue getIndexedDimensionValue(List<String> dimensionNames, byte[] column) {
+    if (column.length == 0 || column[0] != INDEX_COLUMN_DIMENSION) {
+      return null;
+    }
+    String dimensionName = dimensionNames.get(Bytes.toShort(column, 1));
+    String value = entityTable.getName(readEncoded(column, 1 + Bytes.SIZEOF_SHORT), dimensionName);
+    return value == null ? null : new DimensionValue(dimensionName, value);
+  }
+
+  /**
+   * Decodes index column created with {@link #createIndexMeasureColumn(String)}.
+   * @return decoded measure name or {@code null} if the column is not a measure column
+   */
+  @Nullable
+  public String getIndexedMeasureName(byte[] column) {
+    if (column.length == 0 || column[0] != INDEX_COLUMN_MEASURE) {
+      return null;
+    }
+    return entityTable.getName(readEncoded(column, 1), TYPE_MEASURE_NAME);
+  }
+
   private static int writeVersion(byte[] rowKey) {
     System.arraycopy(VERSION, 0, rowKey, 0, VERSION.length);
     return VERSION.length;
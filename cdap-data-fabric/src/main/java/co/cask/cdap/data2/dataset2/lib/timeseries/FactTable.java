@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -27,6 +27,8 @@ import co.cask.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
 import co.cask.cdap.data2.dataset2.lib.table.MetricsTable;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -36,6 +38,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -46,6 +49,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
@@ -60,6 +64,12 @@ public final class FactTable implements Closeable {
   // hard limits on some ops to stay on safe side
   private static final int MAX_RECORDS_TO_SCAN_DURING_SEARCH = 10 * 1000 * 1000;
   private static final int MAX_SCANS_DURING_SEARCH = 10 * 1000;
+  // value written into the dimension-value index cells, only presence of the cell matters
+  private static final Long INDEX_CELL_VALUE = 1L;
+  // time to remember written index cells to skip re-writing them on every add, which is also the interval of
+  // re-writing the index coverage row so that it doesn't expire by TTL
+  private static final long INDEX_CACHE_EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  private static final int INDEX_CACHE_MAX_SIZE = 100 * 1000;
 
   private static final Function<byte[], Long> BYTES_TO_LONG = new Function<byte[], Long>() {
     @Override
@@ -86,6 +96,14 @@ public final class FactTable implements Closeable {
   private final String putCountMetric;
   private final String incrementCountMetric;
 
+  // index cells written recently, keyed by row and column
+  private final Cache<ByteBuffer, Boolean> writtenIndexCells;
+  // index generation the cached cells are valid for, it changes whenever any writer deletes index cells
+  private volatile Long indexGeneration;
+  // first timebase from which all facts are in the dimension-value index, null if not known yet
+  private volatile Long indexStartTimeBase;
+  private volatile long indexCoverageWriteMillis;
+
   @Nullable
   private MetricsCollector metrics;
 
@@ -112,6 +130,10 @@ public final class FactTable implements Closeable {
     this.rollTime = rollTime;
     this.putCountMetric = "factTable." + resolution + ".put.count";
     this.incrementCountMetric = "factTable." + resolution + ".increment.count";
+    this.writtenIndexCells = CacheBuilder.newBuilder()
+      .expireAfterWrite(INDEX_CACHE_EXPIRY_MILLIS, TimeUnit.MILLISECONDS)
+      .maximumSize(INDEX_CACHE_MAX_SIZE)
+      .build();
   }
 
   public void setMetricsCollector(MetricsCollector metrics) {
@@ -119,10 +141,16 @@ public final class FactTable implements Closeable {
   }
 
   public void add(List<Fact> facts) {
+    ensureIndexCoverage();
+
     // Simply collecting all rows/cols/values that need to be put to the underlying table.
     NavigableMap<byte[], NavigableMap<byte[], byte[]>> gaugesTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     NavigableMap<byte[], NavigableMap<byte[], byte[]>> incrementsTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    NavigableMap<byte[], NavigableMap<byte[], Long>> indexTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    List<IndexCell> indexCells = Lists.newArrayList();
+    List<IndexCell> skippedIndexCells = Lists.newArrayList();
     for (Fact fact : facts) {
+      addToIndex(indexTable, indexCells, skippedIndexCells, fact);
       for (Measurement measurement : fact.getMeasurements()) {
         byte[] rowKey = codec.createRowKey(fact.getDimensionValues(), measurement.getName(), fact.getTimestamp());
         byte[] column = codec.createColumn(fact.getTimestamp());
@@ -144,12 +172,198 @@ public final class FactTable implements Closeable {
     // todo: replace with single call, to be able to optimize rpcs in underlying table
     timeSeriesTable.put(convertedGaugesTable);
     timeSeriesTable.increment(convertedIncrementsTable);
+
+    // The generation is read after the facts are written: either it already reflects a delete that removed a
+    // skipped cell, or that delete will see the facts when it re-checks the cells it removed
+    if (!skippedIndexCells.isEmpty() && refreshIndexGeneration()) {
+      for (IndexCell cell : skippedIndexCells) {
+        addToIndex(indexTable, cell);
+        indexCells.add(cell);
+      }
+    }
+    if (!indexTable.isEmpty()) {
+      timeSeriesTable.put(indexTable);
+      for (IndexCell cell : indexCells) {
+        writtenIndexCells.put(cell.getKey(), Boolean.TRUE);
+      }
+    }
     if (metrics != null) {
       metrics.increment(putCountMetric, convertedGaugesTable.size());
       metrics.increment(incrementCountMetric, convertedIncrementsTable.size());
     }
   }
 
+  /**
+   * Makes sure the index coverage row exists, which tells the first timebase from which all facts are in the
+   * dimension-value index. Facts written before the index existed are not in the index, hence if the table already
+   * has facts, only the timebases after the current one are covered.
+   */
+  private void ensureIndexCoverage() {
+    long now = System.currentTimeMillis();
+    if (indexStartTimeBase != null && now - indexCoverageWriteMillis < INDEX_CACHE_EXPIRY_MILLIS) {
+      return;
+    }
+
+    byte[] rowKey = codec.getIndexCoverageRowKey();
+    byte[] column = codec.getIndexCoverageColumn();
+    Long startTimeBase = getIndexStartTimeBase();
+    if (startTimeBase == null) {
+      long value = hasFacts() ? codec.getRowTimeBase(TimeUnit.MILLISECONDS.toSeconds(now)) + 1L : 0L;
+      // only the first writer sets the value, others read it back
+      timeSeriesTable.swap(rowKey, column, null, Bytes.toBytes(value));
+      getIndexStartTimeBase();
+    } else {
+      // re-write the same value, so that the row doesn't expire by TTL
+      NavigableMap<byte[], NavigableMap<byte[], Long>> update = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      NavigableMap<byte[], Long> row = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      row.put(column, startTimeBase);
+      update.put(rowKey, row);
+      timeSeriesTable.put(update);
+    }
+    indexCoverageWriteMillis = now;
+  }
+
+  /**
+   * Reads the current index generation and clears the cache of written index cells if it has changed since the
+   * cells were cached, i.e. some of them may have been deleted.
+   *
+   * @return {@code true} if the generation has changed
+   */
+  private boolean refreshIndexGeneration() {
+    byte[] value = timeSeriesTable.get(codec.getIndexCoverageRowKey(), codec.getIndexGenerationColumn());
+    Long generation = value == null ? 0L : Bytes.toLong(value);
+    if (generation.equals(indexGeneration)) {
+      return false;
+    }
+    writtenIndexCells.invalidateAll();
+    indexGeneration = generation;
+    return true;
+  }
+
+  /**
+   * Returns the first timebase from which all facts are in the dimension-value index, or {@code null} if the index
+   * has never been written.
+   */
+  @Nullable
+  private Long getIndexStartTimeBase() {
+    Long startTimeBase = indexStartTimeBase;
+    if (startTimeBase == null) {
+      byte[] value = timeSeriesTable.get(codec.getIndexCoverageRowKey(), codec.getIndexCoverageColumn());
+      if (value != null) {
+        startTimeBase = Bytes.toLong(value);
+        indexStartTimeBase = startTimeBase;
+      }
+    }
+    return startTimeBase;
+  }
+
+  /**
+   * Returns {@code true} if all facts starting from the given timestamp are in the dimension-value index.
+   */
+  private boolean isIndexed(long startTs) {
+    Long startTimeBase = getIndexStartTimeBase();
+    return startTimeBase != null && codec.getRowTimeBase(startTs) >= startTimeBase;
+  }
+
+  /**
+   * Returns {@code true} if the table has any fact.
+   */
+  private boolean hasFacts() {
+    // fact rows sort before the index rows
+    try (Scanner scanner = timeSeriesTable.scan(null, codec.getIndexCoverageRowKey(), null)) {
+      return scanner.next() != null;
+    }
+  }
+
+  /**
+   * Collects dimension-value index entries for the given fact. For every prefix of the fact's dimension values
+   * that has no null values, the index row of that prefix records the first non-null dimension value following
+   * the prefix and the names of all measures of the fact. This allows answering
+   * {@link #findSingleDimensionValue(List, Map, long, long)} and {@link #findMeasureNames(List, Map, long, long)}
+   * with a bounded prefix scan when the slice fixes the leading dimensions of an aggregation.
+   */
+  private void addToIndex(NavigableMap<byte[], NavigableMap<byte[], Long>> indexTable,
+                          List<IndexCell> indexCells, List<IndexCell> skippedIndexCells, Fact fact) {
+    List<String> measureNames = Lists.newArrayListWithCapacity(fact.getMeasurements().size());
+    for (Measurement measurement : fact.getMeasurements()) {
+      measureNames.add(measurement.getName());
+    }
+    for (IndexCell cell : getIndexCells(fact.getDimensionValues(), measureNames, fact.getTimestamp())) {
+      // skip cells that were written recently
+      if (writtenIndexCells.getIfPresent(cell.getKey()) != null) {
+        skippedIndexCells.add(cell);
+        continue;
+      }
+      addToIndex(indexTable, cell);
+      indexCells.add(cell);
+    }
+  }
+
+  private void addToIndex(NavigableMap<byte[], NavigableMap<byte[], Long>> indexTable, IndexCell cell) {
+    NavigableMap<byte[], Long> row = indexTable.get(cell.row);
+    if (row == null) {
+      row = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      indexTable.put(cell.row, row);
+    }
+    row.put(cell.column, INDEX_CELL_VALUE);
+  }
+
+  /**
+   * Returns the dimension-value index cells of a fact with the given dimension values and measure names.
+   */
+  private List<IndexCell> getIndexCells(List<DimensionValue> dimensionValues,
+                                        Collection<String> measureNames, long ts) {
+    List<IndexCell> cells = Lists.newArrayList();
+    for (int prefixLength = 0; prefixLength <= dimensionValues.size(); prefixLength++) {
+      if (prefixLength > 0 && dimensionValues.get(prefixLength - 1).getValue() == null) {
+        // prefixes with null values are never looked up in the index
+        break;
+      }
+      byte[] rowKey = codec.createIndexRowKey(dimensionValues, prefixLength, ts);
+      for (int i = prefixLength; i < dimensionValues.size(); i++) {
+        DimensionValue dimensionValue = dimensionValues.get(i);
+        if (dimensionValue.getValue() != null) {
+          cells.add(new IndexCell(rowKey, codec.createIndexDimensionColumn(dimensionValue, i),
+                                  dimensionValues, prefixLength, ts, i, null));
+          break;
+        }
+      }
+      for (String measureName : measureNames) {
+        cells.add(new IndexCell(rowKey, codec.createIndexMeasureColumn(measureName),
+                                dimensionValues, prefixLength, ts, -1, measureName));
+      }
+    }
+    return cells;
+  }
+
+  /**
+   * Returns {@code true} if there is any fact in the timebase of the given index cell that the cell is derived from.
+   */
+  private boolean hasFacts(IndexCell cell) {
+    if (cell.measureName == null) {
+      // facts with the prefix values, no value in the dimensions between the prefix and the indexed dimension,
+      // and the indexed dimension value
+      byte[] startRow = codec.createRowKeyPrefix(cell.dimensionValues, cell.dimensionIndex + 1, cell.ts);
+      try (Scanner scanner = timeSeriesTable.scan(startRow, Bytes.stopKeyForPrefix(startRow), null)) {
+        return scanner.next() != null;
+      }
+    }
+
+    // facts with the prefix values and the measure
+    List<DimensionValue> dimensionValues = Lists.newArrayListWithCapacity(cell.dimensionValues.size());
+    for (int i = 0; i < cell.dimensionValues.size(); i++) {
+      DimensionValue dimensionValue = cell.dimensionValues.get(i);
+      dimensionValues.add(i < cell.prefixLength ? dimensionValue : new DimensionValue(dimensionValue.getName(), null));
+    }
+    byte[] startRow = codec.createRowKeyPrefix(dimensionValues, cell.prefixLength, cell.ts);
+    FuzzyRowFilter fuzzyRowFilter = createFuzzyRowFilter(new FactScan(cell.ts, cell.ts, cell.measureName,
+                                                                      dimensionValues),
+                                                         ImmutableList.of(cell.measureName));
+    try (Scanner scanner = timeSeriesTable.scan(startRow, Bytes.stopKeyForPrefix(startRow), fuzzyRowFilter)) {
+      return scanner.next() != null;
+    }
+  }
+
   private class MeasureNameComparator implements Comparator<String> {
     private final Map<String, Long> measureNameToEntityIdMap;
 
@@ -216,9 +430,13 @@ public final class FactTable implements Closeable {
 
   /**
    * Delete entries in fact table.
+   * Dimension-value index cells of the deleted entries are removed if there are no other facts for them in the
+   * same timebase. Removing them bumps the index generation, which makes all writers drop their cache of written
+   * index cells on their next add, and the removed cells are re-written if facts for them were added concurrently.
    * @param scan specifies deletion criteria
    */
   public void delete(FactScan scan) {
+    Map<ByteBuffer, IndexCell> indexCells = Maps.newLinkedHashMap();
     try (Scanner scanner = getScanner(scan)) {
       Row row;
       while ((row = scanner.next()) != null) {
@@ -242,11 +460,44 @@ public final class FactTable implements Closeable {
         // todo: do deletes efficiently, in batches, not one-by-one
         timeSeriesTable.delete(row.getRow(), columns.toArray(new byte[columns.size()][]));
 
+        if (!columns.isEmpty()) {
+          for (IndexCell cell : getIndexCells(codec.getDimensionValues(row.getRow()),
+                                              ImmutableList.of(codec.getMeasureName(row.getRow())),
+                                              codec.getTimestamp(row.getRow(), columns.get(0)))) {
+            indexCells.put(cell.getKey(), cell);
+          }
+        }
+
         if (exhausted) {
           break;
         }
       }
     }
+
+    List<IndexCell> deletedIndexCells = Lists.newArrayList();
+    for (IndexCell cell : indexCells.values()) {
+      if (!hasFacts(cell)) {
+        timeSeriesTable.delete(cell.row, new byte[][] { cell.column });
+        deletedIndexCells.add(cell);
+      }
+    }
+    if (deletedIndexCells.isEmpty()) {
+      return;
+    }
+
+    // Writers that cached the deleted cells skip writing them until they see the new generation. Facts they wrote
+    // before reading the generation are found by the re-check below, hence their index cells are restored.
+    timeSeriesTable.incrementAndGet(codec.getIndexCoverageRowKey(), codec.getIndexGenerationColumn(), 1L);
+    writtenIndexCells.invalidateAll();
+    NavigableMap<byte[], NavigableMap<byte[], Long>> indexTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    for (IndexCell cell : deletedIndexCells) {
+      if (hasFacts(cell)) {
+        addToIndex(indexTable, cell);
+      }
+    }
+    if (!indexTable.isEmpty()) {
+      timeSeriesTable.put(indexTable);
+    }
   }
 
   /**
@@ -293,6 +544,13 @@ public final class FactTable implements Closeable {
     }
 
     Set<DimensionValue> result = Sets.newHashSet();
+    int prefixLength = getIndexedPrefixLength(allDimensionNames, dimensionSlice);
+    // the index doesn't have facts written before it was introduced, scan the facts if the time range has them
+    if (prefixLength >= 0 && isIndexed(startTs)) {
+      scanIndex(allDimensions, prefixLength, startTs, endTs, result, null);
+      return result;
+    }
+
     int scans = 0;
     int scannedRecords = 0;
 
@@ -380,13 +638,20 @@ public final class FactTable implements Closeable {
       allDimensions.add(new DimensionValue(dimensionName, dimensionSlice.get(dimensionName)));
     }
 
+    Set<String> measureNames = Sets.newHashSet();
+    int prefixLength = getIndexedPrefixLength(allDimensionNames, dimensionSlice);
+    // the index doesn't have facts written before it was introduced, scan the facts if the time range has them
+    if (prefixLength >= 0 && isIndexed(startTs)) {
+      scanIndex(allDimensions, prefixLength, startTs, endTs, null, measureNames);
+      return measureNames;
+    }
+
     byte[] startRow = codec.createStartRowKey(allDimensions, null, startTs, false);
     byte[] endRow = codec.createEndRowKey(allDimensions, null, endTs, false);
     endRow = Bytes.stopKeyForPrefix(endRow);
     FuzzyRowFilter fuzzyRowFilter =
       createFuzzyRowFilter(new FactScan(startTs, endTs, ImmutableList.<String>of(), allDimensions), startRow);
 
-    Set<String> measureNames = Sets.newHashSet();
     int scannedRecords = 0;
     // todo: make configurable
 
@@ -415,12 +680,99 @@ public final class FactTable implements Closeable {
     return measureNames;
   }
 
+  /**
+   * Returns the number of leading dimensions of the aggregation that are fixed by the given slice, or {@code -1} if
+   * the slice cannot be answered by the dimension-value index, i.e. it is not a prefix of the aggregation dimensions
+   * or it contains {@code null} values.
+   */
+  private static int getIndexedPrefixLength(List<String> allDimensionNames, Map<String, String> dimensionSlice) {
+    int prefixLength = dimensionSlice.size();
+    if (prefixLength > allDimensionNames.size()) {
+      return -1;
+    }
+    for (int i = 0; i < prefixLength; i++) {
+      if (dimensionSlice.get(allDimensionNames.get(i)) == null) {
+        return -1;
+      }
+    }
+    return prefixLength;
+  }
+
+  /**
+   * Collects dimension values and/or measure names recorded in the dimension-value index rows of the given
+   * aggregation prefix in the given time range.
+   */
+  private void scanIndex(List<DimensionValue> allDimensions, int prefixLength, long startTs, long endTs,
+                         @Nullable Set<DimensionValue> dimensionValues, @Nullable Set<String> measureNames) {
+    List<String> dimensionNames = Lists.newArrayListWithCapacity(allDimensions.size());
+    for (DimensionValue dimensionValue : allDimensions) {
+      dimensionNames.add(dimensionValue.getName());
+    }
+    byte[] startRow = codec.createIndexRowKey(allDimensions, prefixLength, startTs);
+    byte[] endRow = Bytes.stopKeyForPrefix(codec.createIndexRowKey(allDimensions, prefixLength, endTs));
+
+    int scannedRecords = 0;
+    try (Scanner scanner = timeSeriesTable.scan(startRow, endRow, null)) {
+      Row rowResult;
+      while ((rowResult = scanner.next()) != null) {
+        scannedRecords++;
+        for (byte[] column : rowResult.getColumns().keySet()) {
+          if (dimensionValues != null) {
+            DimensionValue dimensionValue = codec.getIndexedDimensionValue(dimensionNames, column);
+            if (dimensionValue != null) {
+              dimensionValues.add(dimensionValue);
+            }
+          }
+          if (measureNames != null) {
+            String measureName = codec.getIndexedMeasureName(column);
+            if (measureName != null) {
+              measureNames.add(measureName);
+            }
+          }
+        }
+      }
+    }
+
+    LOG.trace("search in dimension-value index completed, scanned records: {}", scannedRecords);
+  }
+
   @Override
   public void close() throws IOException {
     timeSeriesTable.close();
     entityTable.close();
   }
 
+  /**
+   * A cell in the dimension-value index, together with the fact information it is derived from.
+   */
+  private static final class IndexCell {
+    private final byte[] row;
+    private final byte[] column;
+    private final List<DimensionValue> dimensionValues;
+    private final int prefixLength;
+    private final long ts;
+    // position of the indexed dimension for a dimension cell
+    private final int dimensionIndex;
+    // measure name for a measure cell, null for a dimension cell
+    private final String measureName;
+
+    private IndexCell(byte[] row, byte[] column, List<DimensionValue> dimensionValues, int prefixLength, long ts,
+                      int dimensionIndex, @Nullable String measureName) {
+      this.row = row;
+      this.column = column;
+      this.dimensionValues = dimensionValues;
+      this.prefixLength = prefixLength;
+      this.ts = ts;
+      this.dimensionIndex = dimensionIndex;
+      this.measureName = measureName;
+    }
+
+    ByteBuffer getKey() {
+      // the row key length is determined by its content, hence the concatenation is unique
+      return ByteBuffer.wrap(Bytes.concat(row, column));
+    }
+  }
+
   public static byte[][] getSplits(int aggGroupsCount) {
     return FactCodec.getSplits(aggGroupsCount);
   }
@@ -26,6 +26,7 @@ import co.cask.cdap.proto.id.NamespacedEntityId;
  */
 public class MdsHistoryKey {
   private static final byte[] ROW_PREFIX = {'h'};
+  private static final byte[] LATEST_ROW_PREFIX = {'s'}; // row prefix for the latest snapshot of an entity
 
   public static MDSKey getMdsKey(NamespacedEntityId targetId, long time) {
     MDSKey.Builder builder = new MDSKey.Builder();
@@ -47,6 +48,17 @@ public class MdsHistoryKey {
     return new MDSKey(Bytes.stopKeyForPrefix(key));
   }
 
+  /**
+   * Returns the key of the row that holds the latest metadata snapshot of an entity. Unlike history rows, the key does
+   * not depend on time, so that the latest snapshots of many entities can be read with a single batched get.
+   */
+  public static MDSKey getMdsLatestKey(NamespacedEntityId targetId) {
+    MDSKey.Builder builder = new MDSKey.Builder();
+    builder.add(LATEST_ROW_PREFIX);
+    EntityIdKeyHelper.addTargetIdToKey(builder, targetId);
+    return builder.build();
+  }
+
   private static long invertTime(long time) {
     return Long.MAX_VALUE - time;
   }
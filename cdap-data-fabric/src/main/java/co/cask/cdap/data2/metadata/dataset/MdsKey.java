@@ -34,6 +34,7 @@ import javax.annotation.Nullable;
 final class MdsKey {
   private static final byte[] VALUE_ROW_PREFIX = {'v'}; // value row prefix to store metadata value
   private static final byte[] INDEX_ROW_PREFIX = {'i'}; // index row prefix used for metadata search
+  private static final byte[] REBUILD_ROW_PREFIX = {'r'}; // row prefix to store the progress of index rebuilds
 
   static String getMetadataKey(String type, byte[] rowKey) {
     MDSKey.Splitter keySplitter = new MDSKey(rowKey).split();
@@ -143,6 +144,21 @@ final class MdsKey {
     return key.getKey();
   }
 
+  static byte[] getValueRowPrefix(String targetType) {
+    MDSKey key = new MDSKey.Builder().add(MdsKey.VALUE_ROW_PREFIX).add(targetType).build();
+    return key.getKey();
+  }
+
+  static byte[] getRebuildRowPrefix() {
+    MDSKey key = new MDSKey.Builder().add(MdsKey.REBUILD_ROW_PREFIX).build();
+    return key.getKey();
+  }
+
+  static byte[] getRebuildRowKey(String range) {
+    MDSKey key = new MDSKey.Builder().add(MdsKey.REBUILD_ROW_PREFIX).add(range).build();
+    return key.getKey();
+  }
+
   static byte[] getIndexRowPrefix() {
     MDSKey key = new MDSKey.Builder().add(MdsKey.INDEX_ROW_PREFIX).build();
     return key.getKey();
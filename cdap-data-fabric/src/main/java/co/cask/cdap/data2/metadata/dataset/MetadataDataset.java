@@ -20,6 +20,7 @@ import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.lib.AbstractDataset;
 import co.cask.cdap.api.dataset.lib.IndexedTable;
 import co.cask.cdap.api.dataset.table.Delete;
+import co.cask.cdap.api.dataset.table.Get;
 import co.cask.cdap.api.dataset.table.Put;
 import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scan;
@@ -48,7 +49,6 @@ import co.cask.cdap.proto.id.StreamId;
 import co.cask.cdap.proto.metadata.MetadataScope;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
-import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
@@ -88,8 +88,12 @@ public class MetadataDataset extends AbstractDataset {
 
   private static final Pattern SPACE_SEPARATOR_PATTERN = Pattern.compile("\\s+");
   private static final String HISTORY_COLUMN = "h"; // column for metadata history
+  private static final byte[] HISTORY_TIME_COLUMN = Bytes.toBytes("t"); // column for the time of the latest snapshot
   private static final String VALUE_COLUMN = "v";  // column for metadata value
+  private static final byte[] REBUILD_PROGRESS_COLUMN = Bytes.toBytes("p"); // column for the progress of a rebuild
   private static final String TAGS_SEPARATOR = ",";
+  // Number of index hits to look up the metadata entries of with one batched read
+  private static final int HYDRATE_BATCH_SIZE = 1000;
 
   // Fuzzy key is of form <row key, key mask>. We want to compare row keys.
   private static final Comparator<ImmutablePair<byte[], byte[]>> FUZZY_KEY_COMPARATOR =
@@ -192,6 +196,32 @@ public class MetadataDataset extends AbstractDataset {
     setMetadata(newTagsEntry);
   }
 
+  /**
+   * Sets the specified properties and adds the specified tags for the specified {@link NamespacedEntityId}. This is
+   * equivalent to calling {@link #setProperty} for every property and {@link #addTags} for the tags, except that the
+   * metadata history of the entity is snapshotted only once.
+   *
+   * @param targetId the target Id: app-id(ns+app) / program-id(ns+app+pgtype+pgm) /
+   *                 dataset-id(ns+dataset)/stream-id(ns+stream).
+   * @param properties the properties to set
+   * @param tagsToAdd the tags to add
+   */
+  public void addMetadata(NamespacedEntityId targetId, Map<String, String> properties, Set<String> tagsToAdd) {
+    if (properties.isEmpty() && tagsToAdd.isEmpty()) {
+      return;
+    }
+    for (Map.Entry<String, String> property : properties.entrySet()) {
+      MetadataEntry entry = new MetadataEntry(targetId, property.getKey(), property.getValue());
+      writeValue(targetId, entry, getIndexersForKey(entry.getKey()));
+    }
+    if (!tagsToAdd.isEmpty()) {
+      Iterable<String> newTags = Iterables.concat(getTags(targetId), tagsToAdd);
+      MetadataEntry entry = new MetadataEntry(targetId, TAGS_KEY, Joiner.on(TAGS_SEPARATOR).join(newTags));
+      writeValue(targetId, entry, getIndexersForKey(TAGS_KEY));
+    }
+    writeHistory(targetId);
+  }
+
   /**
    * Return metadata based on target id, and key.
    *
@@ -429,9 +459,24 @@ public class MetadataDataset extends AbstractDataset {
    * @return the snapshot of the metadata for entities on or before the given time
    */
   public Set<Metadata> getSnapshotBeforeTime(Set<NamespacedEntityId> targetIds, long timeMillis) {
+    // Read the latest snapshots of all entities in one batch. The history only needs to be scanned for the entities
+    // that changed after the given time, and for entities that have not been written since latest snapshots exist.
+    List<NamespacedEntityId> entityIds = new ArrayList<>(targetIds);
+    List<Get> gets = new ArrayList<>(entityIds.size());
+    for (NamespacedEntityId entityId : entityIds) {
+      gets.add(new Get(MdsHistoryKey.getMdsLatestKey(entityId).getKey()));
+    }
+    List<Row> rows = indexedTable.get(gets);
+
     ImmutableSet.Builder<Metadata> builder = ImmutableSet.builder();
-    for (NamespacedEntityId namespacedEntityId : targetIds) {
-      builder.add(getSnapshotBeforeTime(namespacedEntityId, timeMillis));
+    for (int i = 0; i < entityIds.size(); i++) {
+      Row row = rows.get(i);
+      Long snapshotTime = row.getLong(HISTORY_TIME_COLUMN);
+      if (snapshotTime != null && snapshotTime <= timeMillis) {
+        builder.add(GSON.fromJson(row.getString(HISTORY_COLUMN), Metadata.class));
+      } else {
+        builder.add(getSnapshotBeforeTime(entityIds.get(i), timeMillis));
+      }
     }
     return builder.build();
   }
@@ -567,10 +612,53 @@ public class MetadataDataset extends AbstractDataset {
     return searchByDefaultIndex(namespaceId, searchQuery, types, showHidden, entityScope);
   }
 
+  /**
+   * Scores the entities that match the specified search query in the specified namespace and
+   * {@link NamespaceId#SYSTEM} by their number of matching metadata entries. Only the posting lists of the search
+   * terms in the index are read, metadata values are not looked up.
+   *
+   * @param namespaceId the namespace to search in
+   * @param searchQuery the search query, in the same form as for {@link #search}
+   * @param types the {@link EntityTypeSimpleName} to restrict the search to, if empty all types are searched
+   * @param showHidden boolean which specifies whether to include hidden entities or not
+   * @param entityScope a set which specifies which scope of entities to include
+   * @return the number of matching metadata entries of each matching entity
+   */
+  public Map<NamespacedEntityId, Integer> getSearchScores(String namespaceId, String searchQuery,
+                                                          Set<EntityTypeSimpleName> types, boolean showHidden,
+                                                          Set<EntityScope> entityScope) {
+    Map<NamespacedEntityId, Integer> scores = new HashMap<>();
+    for (String searchTerm : getSearchTerms(namespaceId, searchQuery, entityScope)) {
+      Scanner scanner;
+      if (searchTerm.endsWith("*")) {
+        byte[] startKey = Bytes.toBytes(searchTerm.substring(0, searchTerm.lastIndexOf("*")));
+        byte[] stopKey = Bytes.stopKeyForPrefix(startKey);
+        scanner = indexedTable.scanRowKeysByIndex(Bytes.toBytes(DEFAULT_INDEX_COLUMN), startKey, stopKey);
+      } else {
+        scanner = indexedTable.readRowKeysByIndex(Bytes.toBytes(DEFAULT_INDEX_COLUMN), Bytes.toBytes(searchTerm));
+      }
+      try {
+        Row next;
+        while ((next = scanner.next()) != null) {
+          IndexHit hit = parseRow(next, DEFAULT_INDEX_COLUMN, types, showHidden);
+          if (hit == null) {
+            continue;
+          }
+          Integer score = scores.get(hit.targetId);
+          scores.put(hit.targetId, score == null ? 1 : score + 1);
+        }
+      } finally {
+        scanner.close();
+      }
+    }
+    return scores;
+  }
+
   private SearchResults searchByDefaultIndex(String namespaceId, String searchQuery,
                                              Set<EntityTypeSimpleName> types, boolean showHidden,
                                              Set<EntityScope> entityScope) {
-    List<MetadataEntry> results = new LinkedList<>();
+    List<MetadataEntry> results = new ArrayList<>();
+    List<IndexHit> hits = new ArrayList<>(HYDRATE_BATCH_SIZE);
     for (String searchTerm : getSearchTerms(namespaceId, searchQuery, entityScope)) {
       Scanner scanner;
       if (searchTerm.endsWith("*")) {
@@ -585,15 +673,21 @@ public class MetadataDataset extends AbstractDataset {
       try {
         Row next;
         while ((next = scanner.next()) != null) {
-          Optional<MetadataEntry> metadataEntry = parseRow(next, DEFAULT_INDEX_COLUMN, types, showHidden);
-          if (metadataEntry.isPresent()) {
-            results.add(metadataEntry.get());
+          IndexHit hit = parseRow(next, DEFAULT_INDEX_COLUMN, types, showHidden);
+          if (hit == null) {
+            continue;
+          }
+          hits.add(hit);
+          if (hits.size() >= HYDRATE_BATCH_SIZE) {
+            addNonNull(results, hydrate(hits));
+            hits.clear();
           }
         }
       } finally {
         scanner.close();
       }
     }
+    addNonNull(results, hydrate(hits));
 
     // cursors are currently not supported for default indexes
     return new SearchResults(results, Collections.<String>emptyList(), results);
@@ -603,14 +697,15 @@ public class MetadataDataset extends AbstractDataset {
                                             SortInfo sortInfo, int offset, int limit, int numCursors,
                                             @Nullable String cursor, boolean showHidden,
                                             Set<EntityScope> entityScope) {
-    List<MetadataEntry> resultsFromOffset = new LinkedList<>();
-    List<MetadataEntry> resultsFromBeginning = new LinkedList<>();
+    List<MetadataEntry> resultsFromOffset = new ArrayList<>();
+    List<MetadataEntry> resultsFromBeginning = new ArrayList<>();
     String indexColumn = getIndexColumn(sortInfo.getSortBy(), sortInfo.getSortOrder());
     // we want to return the first chunk of 'limit' elements after offset
     // in addition, we want to pre-fetch 'numCursors' chunks of size 'limit'.
     // Note that there's a potential for overflow so we account by limiting it to Integer.MAX_VALUE
     int fetchSize = (int) Math.min(offset + ((numCursors + 1) * (long) limit), Integer.MAX_VALUE);
     List<String> cursors = new ArrayList<>(numCursors);
+    List<IndexHit> hits = new ArrayList<>();
     for (String searchTerm : getSearchTerms(namespaceId, "*", entityScope)) {
       byte[] startKey = Bytes.toBytes(searchTerm.substring(0, searchTerm.lastIndexOf("*")));
       byte[] stopKey = Bytes.stopKeyForPrefix(startKey);
@@ -625,26 +720,41 @@ public class MetadataDataset extends AbstractDataset {
       // remainder on division can never be 1, it is always 0.
       int mod = (limit == 1) ? 0 : 1;
       try (Scanner scanner = indexedTable.scanByIndex(Bytes.toBytes(indexColumn), startKey, stopKey)) {
-        Row next;
-        while ((next = scanner.next()) != null && resultsFromBeginning.size() < fetchSize) {
-          Optional<MetadataEntry> metadataEntry = parseRow(next, indexColumn, types, showHidden);
-          if (!metadataEntry.isPresent()) {
-            continue;
+        boolean scannerDone = false;
+        while (!scannerDone && resultsFromBeginning.size() < fetchSize) {
+          // Collect no more hits than results still needed, so that rows past the last page are not looked up
+          int batchSize = Math.min(HYDRATE_BATCH_SIZE, fetchSize - resultsFromBeginning.size());
+          hits.clear();
+          Row next;
+          while (hits.size() < batchSize && (next = scanner.next()) != null) {
+            IndexHit hit = parseRow(next, indexColumn, types, showHidden);
+            if (hit != null) {
+              hits.add(hit);
+            }
           }
-          resultsFromBeginning.add(metadataEntry.get());
+          scannerDone = hits.size() < batchSize;
 
-          // skip until we reach offset
-          if (resultsFromBeginning.size() <= offset) {
-            continue;
-          }
+          List<MetadataEntry> entries = hydrate(hits);
+          for (int i = 0; i < entries.size() && resultsFromBeginning.size() < fetchSize; i++) {
+            MetadataEntry metadataEntry = entries.get(i);
+            if (metadataEntry == null) {
+              continue;
+            }
+            resultsFromBeginning.add(metadataEntry);
 
-          if (resultsFromOffset.size() < limit) {
-            resultsFromOffset.add(metadataEntry.get());
-          } else {
-            if ((resultsFromBeginning.size() - offset) % limit == mod) {
-              // add the cursor, with the namespace removed.
-              String cursorWithNamespace = Bytes.toString(next.get(indexColumn));
-              cursors.add(cursorWithNamespace.substring(cursorWithNamespace.indexOf(KEYVALUE_SEPARATOR) + 1));
+            // skip until we reach offset
+            if (resultsFromBeginning.size() <= offset) {
+              continue;
+            }
+
+            if (resultsFromOffset.size() < limit) {
+              resultsFromOffset.add(metadataEntry);
+            } else {
+              if ((resultsFromBeginning.size() - offset) % limit == mod) {
+                // add the cursor, with the namespace removed.
+                String cursorWithNamespace = hits.get(i).indexValue;
+                cursors.add(cursorWithNamespace.substring(cursorWithNamespace.indexOf(KEYVALUE_SEPARATOR) + 1));
+              }
             }
           }
         }
@@ -654,12 +764,13 @@ public class MetadataDataset extends AbstractDataset {
   }
 
   // there may not be a MetadataEntry in the row or it may for a different targetType (entityFilter),
-  // so return an Optional
-  private Optional<MetadataEntry> parseRow(Row rowToProcess, String indexColumn,
-                                           Set<EntityTypeSimpleName> entityFilter, boolean showHidden) {
+  // so return null in that case
+  @Nullable
+  private IndexHit parseRow(Row rowToProcess, String indexColumn,
+                            Set<EntityTypeSimpleName> entityFilter, boolean showHidden) {
     String rowValue = rowToProcess.getString(indexColumn);
     if (rowValue == null) {
-      return Optional.absent();
+      return null;
     }
 
     final byte[] rowKey = rowToProcess.getRow();
@@ -668,18 +779,65 @@ public class MetadataDataset extends AbstractDataset {
     // Filter on target type if not set to include all types
     boolean includeAllTypes = entityFilter.isEmpty() || entityFilter.contains(EntityTypeSimpleName.ALL);
     if (!includeAllTypes && !entityFilter.contains(EntityTypeSimpleName.valueOfSerializedForm(targetType))) {
-      return Optional.absent();
+      return null;
     }
 
     NamespacedEntityId targetId = MdsKey.getNamespacedIdFromKey(targetType, rowKey);
     // if the entity starts with _ then skip it unless the caller choose to showHidden.
     // This is done to hide entities from Tracker. See: CDAP-7910
     if (!showHidden && targetId.getEntityName().startsWith("_")) {
-      return Optional.absent();
+      return null;
     }
     String key = MdsKey.getMetadataKey(targetType, rowKey);
-    MetadataEntry entry = getMetadata(targetId, key);
-    return Optional.fromNullable(entry);
+    return new IndexHit(targetId, key, rowValue);
+  }
+
+  /**
+   * Looks up the metadata entries of the given index hits with a single batched read.
+   *
+   * @return the {@link MetadataEntry} of each hit, in the same order as the hits. An element is {@code null} if the
+   *         metadata entry doesn't exist anymore
+   */
+  private List<MetadataEntry> hydrate(List<IndexHit> hits) {
+    if (hits.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<Get> gets = new ArrayList<>(hits.size());
+    for (IndexHit hit : hits) {
+      gets.add(new Get(MdsKey.getMDSValueKey(hit.targetId, hit.key).getKey(), Bytes.toBytes(VALUE_COLUMN)));
+    }
+    List<Row> rows = indexedTable.get(gets);
+    List<MetadataEntry> entries = new ArrayList<>(hits.size());
+    for (int i = 0; i < hits.size(); i++) {
+      // value can be null when all tags are removed one by one. The row still exists, but the value is null.
+      byte[] value = rows.get(i).get(VALUE_COLUMN);
+      entries.add(value == null ? null : new MetadataEntry(hits.get(i).targetId, hits.get(i).key,
+                                                           Bytes.toString(value)));
+    }
+    return entries;
+  }
+
+  private static void addNonNull(List<MetadataEntry> results, List<MetadataEntry> entries) {
+    for (MetadataEntry entry : entries) {
+      if (entry != null) {
+        results.add(entry);
+      }
+    }
+  }
+
+  /**
+   * An index row matched by a search, identifying the metadata entry to look up.
+   */
+  private static final class IndexHit {
+    private final NamespacedEntityId targetId;
+    private final String key;
+    private final String indexValue;
+
+    IndexHit(NamespacedEntityId targetId, String key, String indexValue) {
+      this.targetId = targetId;
+      this.key = key;
+      this.indexValue = indexValue;
+    }
   }
 
   /**
@@ -721,6 +879,11 @@ public class MetadataDataset extends AbstractDataset {
   }
 
   private void write(NamespacedEntityId targetId, MetadataEntry entry, Set<Indexer> indexers) {
+    writeValue(targetId, entry, indexers);
+    writeHistory(targetId);
+  }
+
+  private void writeValue(NamespacedEntityId targetId, MetadataEntry entry, Set<Indexer> indexers) {
     String key = entry.getKey();
     MDSKey mdsValueKey = MdsKey.getMDSValueKey(targetId, key);
     Put put = new Put(mdsValueKey.getKey());
@@ -729,7 +892,6 @@ public class MetadataDataset extends AbstractDataset {
     put.add(Bytes.toBytes(VALUE_COLUMN), Bytes.toBytes(entry.getValue()));
     indexedTable.put(put);
     storeIndexes(targetId, key, indexers, entry);
-    writeHistory(targetId);
   }
 
   /**
@@ -808,8 +970,15 @@ public class MetadataDataset extends AbstractDataset {
     Map<String, String> properties = getProperties(targetId);
     Set<String> tags = getTags(targetId);
     Metadata metadata = new Metadata(targetId, properties, tags);
-    byte[] row = MdsHistoryKey.getMdsKey(targetId, System.currentTimeMillis()).getKey();
-    indexedTable.put(row, Bytes.toBytes(HISTORY_COLUMN), Bytes.toBytes(GSON.toJson(metadata)));
+    long time = System.currentTimeMillis();
+    byte[] snapshot = Bytes.toBytes(GSON.toJson(metadata));
+    byte[] row = MdsHistoryKey.getMdsKey(targetId, time).getKey();
+    indexedTable.put(row, Bytes.toBytes(HISTORY_COLUMN), snapshot);
+    // Also keep the snapshot as the latest one of the entity, for point in time reads after the last change
+    Put latest = new Put(MdsHistoryKey.getMdsLatestKey(targetId).getKey());
+    latest.add(Bytes.toBytes(HISTORY_COLUMN), snapshot);
+    latest.add(HISTORY_TIME_COLUMN, time);
+    indexedTable.put(latest);
   }
 
   /**
@@ -827,9 +996,97 @@ public class MetadataDataset extends AbstractDataset {
     startRowKey = startRowKey == null ? valueRowPrefix : startRowKey;
     // stopRowKey will always be the last row key with the valueRowPrefix
     byte[] stopRowKey = Bytes.stopKeyForPrefix(valueRowPrefix);
+    return rebuildIndexes(startRowKey, stopRowKey, limit).getSecond();
+  }
+
+  /**
+   * Returns the ranges of metadata values that indexes can be rebuilt for independently of each other, using
+   * {@link #rebuildIndexes(String, int)}. There is one range for every type of entity.
+   */
+  public static Set<String> getRebuildRanges() {
+    return ImmutableSet.copyOf(EntityIdKeyHelper.TYPE_MAP.values());
+  }
+
+  /**
+   * Rebuilds the indexes for the next batch of metadata values in a range. The batch starts where the previous batch
+   * for the range ended, and the progress is saved in the same transaction as the batch, so that an interrupted
+   * rebuild resumes where it left off. The progress is kept until {@link #deleteRebuildProgress()} is called.
+   *
+   * @param range the range to rebuild the indexes for, one of {@link #getRebuildRanges()}
+   * @param limit the batch size
+   * @return the number of metadata values processed in the batch, {@code 0} if the range has been rebuilt completely
+   */
+  public int rebuildIndexes(String range, int limit) {
+    byte[] progressRowKey = MdsKey.getRebuildRowKey(range);
+    byte[] startRowKey = indexedTable.get(progressRowKey, REBUILD_PROGRESS_COLUMN);
+    if (startRowKey != null && startRowKey.length == 0) {
+      // An empty start row marks a completed range
+      return 0;
+    }
+    byte[] valueRowPrefix = MdsKey.getValueRowPrefix(range);
+    startRowKey = startRowKey == null ? valueRowPrefix : startRowKey;
+    ImmutablePair<Integer, byte[]> result = rebuildIndexes(startRowKey, Bytes.stopKeyForPrefix(valueRowPrefix), limit);
+    byte[] nextStartRowKey = result.getSecond();
+    indexedTable.put(progressRowKey, REBUILD_PROGRESS_COLUMN,
+                     nextStartRowKey == null ? Bytes.EMPTY_BYTE_ARRAY : nextStartRowKey);
+    return result.getFirst();
+  }
+
+  /**
+   * Counts the metadata values in a range that have not been processed by {@link #rebuildIndexes(String, int)} yet.
+   *
+   * @param range the range to count the values in, one of {@link #getRebuildRanges()}
+   * @param startRowKey the key of the row to start counting at for the current batch, {@code null} to start at the
+   *                    progress saved for the range
+   * @param limit the batch size
+   * @return the number of values counted in the current batch, and the row key to start the next batch with, which is
+   * {@code null} if there are no more rows to count
+   */
+  public ImmutablePair<Integer, byte[]> countValuesToRebuild(String range, @Nullable byte[] startRowKey, int limit) {
+    byte[] valueRowPrefix = MdsKey.getValueRowPrefix(range);
+    if (startRowKey == null) {
+      startRowKey = indexedTable.get(MdsKey.getRebuildRowKey(range), REBUILD_PROGRESS_COLUMN);
+      if (startRowKey != null && startRowKey.length == 0) {
+        return ImmutablePair.of(0, null);
+      }
+      startRowKey = startRowKey == null ? valueRowPrefix : startRowKey;
+    }
+    int count = 0;
+    try (Scanner scanner = indexedTable.scan(startRowKey, Bytes.stopKeyForPrefix(valueRowPrefix))) {
+      while (count < limit && scanner.next() != null) {
+        count++;
+      }
+      Row startRowForNextBatch = scanner.next();
+      return ImmutablePair.of(count, startRowForNextBatch == null ? null : startRowForNextBatch.getRow());
+    }
+  }
+
+  /**
+   * Deletes the progress saved by {@link #rebuildIndexes(String, int)} for all ranges, so that the next rebuild
+   * starts from the beginning.
+   */
+  public void deleteRebuildProgress() {
+    byte[] startKey = MdsKey.getRebuildRowPrefix();
+    try (Scanner scanner = indexedTable.scan(startKey, Bytes.stopKeyForPrefix(startKey))) {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        indexedTable.delete(row.getRow());
+      }
+    }
+  }
+
+  /**
+   * Rebuilds the indexes for at most limit metadata values between the start and stop row keys.
+   *
+   * @return the number of metadata values processed and the row key to start the next batch with, which is
+   * {@code null} if there are no more rows to scan
+   */
+  private ImmutablePair<Integer, byte[]> rebuildIndexes(byte[] startRowKey, byte[] stopRowKey, int limit) {
+    int processed = 0;
     Row row;
     try (Scanner scanner = indexedTable.scan(startRowKey, stopRowKey)) {
       while ((limit > 0) && (row = scanner.next()) != null) {
+        processed++;
         byte[] rowKey = row.getRow();
         String targetType = MdsKey.getTargetType(rowKey);
         NamespacedEntityId namespacedEntityId = MdsKey.getNamespacedIdFromKey(targetType, rowKey);
@@ -846,10 +1103,7 @@ public class MetadataDataset extends AbstractDataset {
         limit--;
       }
       Row startRowForNextBatch = scanner.next();
-      if (startRowForNextBatch == null) {
-        return null;
-      }
-      return startRowForNextBatch.getRow();
+      return ImmutablePair.of(processed, startRowForNextBatch == null ? null : startRowForNextBatch.getRow());
     }
   }
 
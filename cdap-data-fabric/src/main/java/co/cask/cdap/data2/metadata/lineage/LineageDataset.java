@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -35,6 +35,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import org.apache.twill.api.RunId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,6 +69,25 @@ public class LineageDataset extends AbstractDataset {
   // -------------------------------------------------------------------------------
   // | p | <id.run>     | <inverted-start-time> | s | <id.stream>  | <access-type> |
   // -------------------------------------------------------------------------------
+  //
+  // Lineage adjacency index, with one row per entity, neighbour and day of the program run start time.
+  // Each access is a column of the row, with the access time as value:
+  // -----------------------------------------------------------------------------------------------------
+  // | a | <id.dataset/id.stream> | <inverted-start-day> | p | <id.program>           | (columns) |
+  // -----------------------------------------------------------------------------------------------------
+  // | a | <id.program>           | <inverted-start-day> | d/s | <id.dataset/id.stream> | (columns) |
+  // -----------------------------------------------------------------------------------------------------
+  //
+  // Adjacency index column:
+  // -------------------------------------------
+  // | <id.run> | <access-type> | <component> |
+  // -------------------------------------------
+  //
+  // Start time of the program runs from which all accesses are in the adjacency index. Accesses recorded before
+  // the index existed are only in the index after the upgrade, which sets it to 0:
+  // -----------------------------------
+  // | i | (column: <indexed-since>) |
+  // -----------------------------------
 
   private static final Logger LOG = LoggerFactory.getLogger(LineageDataset.class);
   // Column used to store access time
@@ -78,6 +98,11 @@ public class LineageDataset extends AbstractDataset {
   private static final char FLOWLET_MARKER = 'f';
   private static final char STREAM_MARKER = 's';
   private static final char NONE_MARKER = '0';
+  private static final char ADJACENCY_MARKER = 'a';
+  private static final char INDEXED_SINCE_MARKER = 'i';
+  private static final byte[] INDEXED_SINCE_ROW = new MDSKey.Builder().add(INDEXED_SINCE_MARKER).build().getKey();
+
+  private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
 
   private Table accessRegistryTable;
 
@@ -111,10 +136,12 @@ public class LineageDataset extends AbstractDataset {
                         AccessType accessType, long accessTimeMillis, @Nullable NamespacedEntityId component) {
     LOG.trace("Recording access run={}, dataset={}, accessType={}, accessTime={}, component={}",
               run, datasetInstance, accessType, accessTimeMillis, component);
+    ensureIndexedSince(accessTimeMillis);
     accessRegistryTable.put(getDatasetKey(datasetInstance, run, accessType, component),
                             ACCESS_TIME_COLS_BYTE, Bytes.toBytes(accessTimeMillis));
     accessRegistryTable.put(getProgramKey(run, datasetInstance, accessType, component),
                             ACCESS_TIME_COLS_BYTE, Bytes.toBytes(accessTimeMillis));
+    addAdjacency(run, datasetInstance, accessType, accessTimeMillis, component);
   }
 
   /**
@@ -143,10 +170,12 @@ public class LineageDataset extends AbstractDataset {
                         AccessType accessType, long accessTimeMillis, @Nullable NamespacedEntityId component) {
     LOG.trace("Recording access run={}, stream={}, accessType={}, accessTime={}, component={}",
               run, stream, accessType, accessTimeMillis, component);
+    ensureIndexedSince(accessTimeMillis);
     accessRegistryTable.put(getStreamKey(stream, run, accessType, component),
                             ACCESS_TIME_COLS_BYTE, Bytes.toBytes(accessTimeMillis));
     accessRegistryTable.put(getProgramKey(run, stream, accessType, component),
                             ACCESS_TIME_COLS_BYTE, Bytes.toBytes(accessTimeMillis));
+    addAdjacency(run, stream, accessType, accessTimeMillis, component);
   }
 
   /**
@@ -217,6 +246,72 @@ public class LineageDataset extends AbstractDataset {
                          filter);
   }
 
+  /**
+   * Fetch access information for a set of datasets, streams or programs for a given period from the lineage
+   * adjacency index. Only the days of the given period are read for each entity.
+   *
+   * @param entities datasets, streams or programs for which to fetch access information
+   * @param start start time period
+   * @param end end time period
+   * @param filter filter to be applied on result set
+   * @return program-dataset and program-stream access information
+   */
+  public Set<Relation> getAdjacentRelations(Set<? extends NamespacedEntityId> entities, long start, long end,
+                                            Predicate<Relation> filter) {
+    ImmutableSet.Builder<Relation> relationsBuilder = ImmutableSet.builder();
+    if (!isIndexed(start)) {
+      // Accesses of runs started before the index existed are only found by scanning the access rows
+      for (NamespacedEntityId entity : entities) {
+        relationsBuilder.addAll(getRelations(entity, start, end, filter));
+      }
+      return relationsBuilder.build();
+    }
+    for (NamespacedEntityId entity : entities) {
+      // days are inverted, hence the day of end time is in the start key
+      byte[] startKey = getAdjacencyScanKey(entity, invertTime(end / DAY_MILLIS));
+      byte[] stopKey = Bytes.stopKeyForPrefix(getAdjacencyScanKey(entity, invertTime(start / DAY_MILLIS)));
+      try (Scanner scanner = accessRegistryTable.scan(startKey, stopKey)) {
+        Row row;
+        while ((row = scanner.next()) != null) {
+          if (LOG.isTraceEnabled()) {
+            LOG.trace("Got row key = {}", Bytes.toString(row.getRow()));
+          }
+          addAdjacentRelations(row, start, end, filter, relationsBuilder);
+        }
+      }
+    }
+    return relationsBuilder.build();
+  }
+
+  /**
+   * Adds the lineage adjacency index entries of existing accesses, starting from the given row key.
+   *
+   * @param startRow the row to start from, or {@code null} to start from the beginning
+   * @param limit maximum number of accesses to index
+   * @return the row to continue from, or {@code null} if all accesses are indexed
+   */
+  @Nullable
+  public byte[] upgradeAdjacencyIndex(@Nullable byte[] startRow, int limit) {
+    // Every access has a program row, so indexing the program rows covers all accesses
+    byte[] programPrefix = new MDSKey.Builder().add(PROGRAM_MARKER).build().getKey();
+    byte[] startKey = startRow == null ? programPrefix : startRow;
+    int count = 0;
+    try (Scanner scanner = accessRegistryTable.scan(startKey, Bytes.stopKeyForPrefix(programPrefix))) {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        if (count++ >= limit) {
+          return row.getRow();
+        }
+        Relation relation = toRelation(row);
+        NamespacedEntityId component = Iterables.getFirst(relation.getComponents(), null);
+        addAdjacency(relation.getProgram().run(relation.getRun().getId()), relation.getData(), relation.getAccess(),
+                     Bytes.toLong(row.get(ACCESS_TIME_COLS_BYTE)), component);
+      }
+    }
+    accessRegistryTable.put(INDEXED_SINCE_ROW, ACCESS_TIME_COLS_BYTE, Bytes.toBytes(0L));
+    return null;
+  }
+
   /**
    * @return a set of access times (for program and data it accesses) associated with a program run.
    */
@@ -256,6 +351,101 @@ public class LineageDataset extends AbstractDataset {
     return relationsBuilder.build();
   }
 
+  private Set<Relation> getRelations(NamespacedEntityId entity, long start, long end, Predicate<Relation> filter) {
+    if (entity instanceof DatasetId) {
+      return getRelations((DatasetId) entity, start, end, filter);
+    }
+    if (entity instanceof StreamId) {
+      return getRelations((StreamId) entity, start, end, filter);
+    }
+    if (entity instanceof ProgramId) {
+      return getRelations((ProgramId) entity, start, end, filter);
+    }
+    throw new IllegalArgumentException("Invalid lineage entity " + entity);
+  }
+
+  /**
+   * Records the time from which all accesses are in the adjacency index, when the first access is indexed.
+   * If there are accesses already, they were recorded before the index existed.
+   */
+  private void ensureIndexedSince(long accessTimeMillis) {
+    if (accessRegistryTable.get(INDEXED_SINCE_ROW, ACCESS_TIME_COLS_BYTE) != null) {
+      return;
+    }
+    byte[] programPrefix = new MDSKey.Builder().add(PROGRAM_MARKER).build().getKey();
+    boolean hasAccesses;
+    try (Scanner scanner = accessRegistryTable.scan(programPrefix, Bytes.stopKeyForPrefix(programPrefix))) {
+      hasAccesses = scanner.next() != null;
+    }
+    accessRegistryTable.put(INDEXED_SINCE_ROW, ACCESS_TIME_COLS_BYTE,
+                            Bytes.toBytes(hasAccesses ? accessTimeMillis : 0L));
+  }
+
+  /**
+   * Returns whether all accesses of program runs started at or after the given time are in the adjacency index.
+   */
+  private boolean isIndexed(long startTimeMillis) {
+    byte[] indexedSince = accessRegistryTable.get(INDEXED_SINCE_ROW, ACCESS_TIME_COLS_BYTE);
+    return indexedSince != null && startTimeMillis >= Bytes.toLong(indexedSince);
+  }
+
+  private void addAdjacency(ProgramRunId run, NamespacedEntityId data, AccessType accessType,
+                            long accessTimeMillis, @Nullable NamespacedEntityId component) {
+    long invertedStartDay = invertTime(RunIds.getTime(RunIds.fromString(run.getEntityName()),
+                                                      TimeUnit.MILLISECONDS) / DAY_MILLIS);
+    MDSKey.Builder columnBuilder = new MDSKey.Builder()
+      .add(run.getEntityName())
+      .add(accessType.getType());
+    addComponent(columnBuilder, component);
+    byte[] column = columnBuilder.build().getKey();
+
+    accessRegistryTable.put(getAdjacencyKey(data, invertedStartDay, run.getParent()),
+                            column, Bytes.toBytes(accessTimeMillis));
+    accessRegistryTable.put(getAdjacencyKey(run.getParent(), invertedStartDay, data),
+                            column, Bytes.toBytes(accessTimeMillis));
+  }
+
+  private byte[] getAdjacencyKey(NamespacedEntityId entity, long invertedStartDay, NamespacedEntityId neighbour) {
+    MDSKey.Builder builder = new MDSKey.Builder().add(ADJACENCY_MARKER);
+    addEntity(builder, entity);
+    builder.add(invertedStartDay);
+    addEntity(builder, neighbour);
+    return builder.build().getKey();
+  }
+
+  private byte[] getAdjacencyScanKey(NamespacedEntityId entity, long invertedStartDay) {
+    MDSKey.Builder builder = new MDSKey.Builder().add(ADJACENCY_MARKER);
+    addEntity(builder, entity);
+    builder.add(invertedStartDay);
+    return builder.build().getKey();
+  }
+
+  private void addAdjacentRelations(Row row, long start, long end, Predicate<Relation> filter,
+                                    ImmutableSet.Builder<Relation> relationsBuilder) {
+    MDSKey.Splitter splitter = new MDSKey(row.getRow()).split();
+    splitter.skipInt(); // adjacency marker
+    NamespacedEntityId entity = toEntityId(splitter, (char) splitter.getInt());
+    splitter.skipLong(); // inverted start day
+    NamespacedEntityId neighbour = toEntityId(splitter, (char) splitter.getInt());
+
+    ProgramId program = (ProgramId) (entity instanceof ProgramId ? entity : neighbour);
+    NamespacedEntityId data = entity instanceof ProgramId ? neighbour : entity;
+    for (byte[] column : row.getColumns().keySet()) {
+      MDSKey.Splitter columnSplitter = new MDSKey(column).split();
+      RunId runId = RunIds.fromString(columnSplitter.getString());
+      long runStartTime = RunIds.getTime(runId, TimeUnit.MILLISECONDS);
+      // the day bucket can be wider than the time period
+      if (runStartTime < start || runStartTime > end) {
+        continue;
+      }
+      AccessType accessType = AccessType.fromType((char) columnSplitter.getInt());
+      Relation relation = newRelation(data, program, accessType, runId, toComponent(columnSplitter, program));
+      if (filter.apply(relation)) {
+        relationsBuilder.add(relation);
+      }
+    }
+  }
+
   private byte[] getDatasetKey(DatasetId datasetInstance, ProgramRunId run,
                                AccessType accessType, @Nullable NamespacedEntityId component) {
     MDSKey.Builder builder = new MDSKey.Builder();
@@ -430,6 +620,18 @@ public class LineageDataset extends AbstractDataset {
       .add(program.getEntityName());
   }
 
+  private void addEntity(MDSKey.Builder keyBuilder, NamespacedEntityId entity) {
+    if (entity instanceof DatasetId) {
+      addDataset(keyBuilder, (DatasetId) entity);
+    } else if (entity instanceof StreamId) {
+      addStream(keyBuilder, (StreamId) entity);
+    } else if (entity instanceof ProgramId) {
+      addProgram(keyBuilder, (ProgramId) entity);
+    } else {
+      throw new IllegalArgumentException("Invalid lineage entity " + entity);
+    }
+  }
+
   private void addComponent(MDSKey.Builder keyBuilder, EntityId component) {
     if (component instanceof FlowletId) {
       keyBuilder.add(FLOWLET_MARKER)
@@ -512,23 +714,18 @@ public class LineageDataset extends AbstractDataset {
     NamespacedEntityId component = toComponent(splitter, program);
     LOG.trace("Got component {}", component);
 
-    if (stream == null) {
-      return new Relation(datasetInstance,
-                          program,
-                          accessType,
-                          runId,
-                          component == null ?
-                            ImmutableSet.<NamespacedEntityId>of() :
-                            ImmutableSet.of((NamespacedEntityId) component));
-    }
+    return newRelation(stream == null ? datasetInstance : stream, program, accessType, runId, component);
+  }
 
-    return new Relation(stream,
-                        program,
-                        accessType,
-                        runId,
-                        component == null ?
-                          ImmutableSet.<NamespacedEntityId>of() :
-                          ImmutableSet.of((NamespacedEntityId) component));
+  private Relation newRelation(NamespacedEntityId data, ProgramId program, AccessType accessType, RunId runId,
+                               @Nullable NamespacedEntityId component) {
+    Set<NamespacedEntityId> components = component == null ?
+      ImmutableSet.<NamespacedEntityId>of() :
+      ImmutableSet.of(component);
+    if (data instanceof StreamId) {
+      return new Relation((StreamId) data, program, accessType, runId, components);
+    }
+    return new Relation((DatasetId) data, program, accessType, runId, components);
   }
 
   private static final class RowKey {
@@ -45,6 +45,7 @@ import javax.annotation.Nullable;
  */
 public class LineageStore implements LineageStoreReader, LineageStoreWriter {
   private static final DatasetId LINEAGE_DATASET_ID = NamespaceId.SYSTEM.dataset("lineage");
+  private static final int UPGRADE_BATCH_SIZE = 1000;
 
   private final TransactionExecutorFactory executorFactory;
   private final DatasetFramework datasetFramework;
@@ -205,6 +206,42 @@ public class LineageStore implements LineageStoreReader, LineageStoreWriter {
     });
   }
 
+  /**
+   * Fetch access information for a set of datasets, streams or programs for a given period.
+   *
+   * @param entities datasets, streams or programs for which to fetch access information
+   * @param start start time period
+   * @param end end time period
+   * @param filter filter to be applied on result set
+   * @return program-dataset and program-stream access information
+   */
+  @Override
+  public Set<Relation> getRelations(final Set<? extends NamespacedEntityId> entities, final long start,
+                                    final long end, final Predicate<Relation> filter) {
+    return execute(new TransactionExecutor.Function<LineageDataset, Set<Relation>>() {
+      @Override
+      public Set<Relation> apply(LineageDataset input) throws Exception {
+        return input.getAdjacentRelations(entities, start, end, filter);
+      }
+    });
+  }
+
+  /**
+   * Builds the lineage adjacency index for accesses recorded before the index was introduced.
+   */
+  public void upgrade() {
+    byte[] startRow = null;
+    do {
+      final byte[] batchStartRow = startRow;
+      startRow = execute(new TransactionExecutor.Function<LineageDataset, byte[]>() {
+        @Override
+        public byte[] apply(LineageDataset input) throws Exception {
+          return input.upgradeAdjacencyIndex(batchStartRow, UPGRADE_BATCH_SIZE);
+        }
+      });
+    } while (startRow != null);
+  }
+
   /**
    * @return a set of access times (for program and data it accesses) associated with a program run.
    */
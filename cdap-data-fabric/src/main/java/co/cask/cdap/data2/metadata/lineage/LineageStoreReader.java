@@ -71,4 +71,16 @@ public interface LineageStoreReader {
    */
   Set<Relation> getRelations(ProgramId program, long start, long end,
                              Predicate<Relation> filter);
+
+  /**
+   * Fetch access information for a set of datasets, streams or programs for a given period.
+   *
+   * @param entities datasets, streams or programs for which to fetch access information
+   * @param start start time period
+   * @param end end time period
+   * @param filter filter to be applied on result set
+   * @return program-dataset and program-stream access information
+   */
+  Set<Relation> getRelations(Set<? extends NamespacedEntityId> entities, long start, long end,
+                             Predicate<Relation> filter);
 }
@@ -16,12 +16,15 @@
 
 package co.cask.cdap.data2.metadata.store;
 
+import co.cask.cdap.api.Predicate;
 import co.cask.cdap.api.dataset.DatasetDefinition;
 import co.cask.cdap.api.dataset.DatasetManagementException;
 import co.cask.cdap.api.dataset.DatasetProperties;
+import co.cask.cdap.api.retry.RetryableException;
 import co.cask.cdap.common.BadRequestException;
 import co.cask.cdap.common.service.Retries;
 import co.cask.cdap.common.service.RetryStrategy;
+import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.common.utils.ProjectInfo;
 import co.cask.cdap.data2.audit.AuditPublisher;
 import co.cask.cdap.data2.audit.AuditPublishers;
@@ -36,6 +39,7 @@ import co.cask.cdap.data2.metadata.dataset.SearchResults;
 import co.cask.cdap.data2.metadata.dataset.SortInfo;
 import co.cask.cdap.data2.transaction.Transactions;
 import co.cask.cdap.proto.EntityScope;
+import co.cask.cdap.proto.audit.AuditPayload;
 import co.cask.cdap.proto.audit.AuditType;
 import co.cask.cdap.proto.element.EntityTypeSimpleName;
 import co.cask.cdap.proto.id.DatasetId;
@@ -46,29 +50,42 @@ import co.cask.cdap.proto.metadata.MetadataScope;
 import co.cask.cdap.proto.metadata.MetadataSearchResponse;
 import co.cask.cdap.proto.metadata.MetadataSearchResultRecord;
 import com.google.common.base.Throwables;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
+import org.apache.tephra.TransactionConflictException;
 import org.apache.tephra.TransactionExecutor;
 import org.apache.tephra.TransactionExecutorFactory;
+import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
 
 /**
  * Implementation of {@link MetadataStore} used in distributed mode.
@@ -78,6 +95,26 @@ public class DefaultMetadataStore implements MetadataStore {
   private static final Map<String, String> EMPTY_PROPERTIES = ImmutableMap.of();
   private static final Set<String> EMPTY_TAGS = ImmutableSet.of();
   private static final int BATCH_SIZE = 1000;
+  // Number of entities updated in one transaction by addMetadata
+  private static final int UPDATE_BATCH_SIZE = 500;
+  // Number of ranges of metadata values that indexes are rebuilt for concurrently
+  private static final int REBUILD_PARALLELISM = 4;
+  // Number of metadata values counted in one transaction to estimate the remaining time of an index rebuild
+  private static final int COUNT_BATCH_SIZE = 10000;
+  private static final long REBUILD_PROGRESS_INTERVAL_SECONDS = 30;
+  // Index rebuilds run while the metadata service is serving requests, so a batch can conflict with metadata updates.
+  // Rebuilding is idempotent, so such batches are retried.
+  private static final Predicate<Throwable> RETRY_ON_CONFLICT = new Predicate<Throwable>() {
+    @Override
+    public boolean apply(Throwable throwable) {
+      for (Throwable cause : Throwables.getCausalChain(throwable)) {
+        if (cause instanceof RetryableException || cause instanceof TransactionConflictException) {
+          return true;
+        }
+      }
+      return false;
+    }
+  };
 
   private static final DatasetId BUSINESS_METADATA_INSTANCE_ID = NamespaceId.SYSTEM.dataset("business.metadata");
   private static final DatasetId SYSTEM_METADATA_INSTANCE_ID = NamespaceId.SYSTEM.dataset("system.metadata");
@@ -86,15 +123,6 @@ public class DefaultMetadataStore implements MetadataStore {
   private static final String NEEDS_UPGRADE_TAG = "cdap.metadatadataset.needs_upgrade";
   private static final String VERSION_TAG_PREFIX = "cdap.version:";
 
-  private static final Comparator<Map.Entry<NamespacedEntityId, Integer>> SEARCH_RESULT_DESC_SCORE_COMPARATOR =
-    new Comparator<Map.Entry<NamespacedEntityId, Integer>>() {
-      @Override
-      public int compare(Map.Entry<NamespacedEntityId, Integer> o1, Map.Entry<NamespacedEntityId, Integer> o2) {
-        // sort in descending order
-        return o2.getValue() - o1.getValue();
-      }
-    };
-
   private final TransactionExecutorFactory txExecutorFactory;
   private final DatasetFramework dsFramework;
   private AuditPublisher auditPublisher;
@@ -191,6 +219,85 @@ public class DefaultMetadataStore implements MetadataStore {
                  new MetadataRecord(namespacedEntityId, scope));
   }
 
+  @Override
+  public void addMetadata(Collection<MetadataRecord> records) {
+    // Merge the records per scope and entity, so that every entity is updated once
+    Map<MetadataScope, Map<NamespacedEntityId, MetadataRecord>> updates = new EnumMap<>(MetadataScope.class);
+    for (MetadataRecord record : records) {
+      Map<NamespacedEntityId, MetadataRecord> scopeUpdates = updates.get(record.getScope());
+      if (scopeUpdates == null) {
+        scopeUpdates = new LinkedHashMap<>();
+        updates.put(record.getScope(), scopeUpdates);
+      }
+      MetadataRecord existing = scopeUpdates.get(record.getEntityId());
+      if (existing == null) {
+        scopeUpdates.put(record.getEntityId(), record);
+        continue;
+      }
+      Map<String, String> properties = new HashMap<>(existing.getProperties());
+      properties.putAll(record.getProperties());
+      scopeUpdates.put(record.getEntityId(),
+                       new MetadataRecord(record.getEntityId(), record.getScope(), properties,
+                                          Sets.union(existing.getTags(), record.getTags())));
+    }
+
+    for (Map.Entry<MetadataScope, Map<NamespacedEntityId, MetadataRecord>> entry : updates.entrySet()) {
+      for (List<MetadataRecord> batch : Iterables.partition(entry.getValue().values(), UPDATE_BATCH_SIZE)) {
+        addMetadata(entry.getKey(), batch);
+      }
+    }
+  }
+
+  /**
+   * Applies a batch of {@link MetadataRecord}s, each for a different entity, in a single transaction and publishes
+   * the audit information for the batch together.
+   */
+  private void addMetadata(final MetadataScope scope, final List<MetadataRecord> records) {
+    final Set<NamespacedEntityId> entityIds = new HashSet<>();
+    for (MetadataRecord record : records) {
+      entityIds.add(record.getEntityId());
+    }
+    final Map<NamespacedEntityId, Metadata> previous = new HashMap<>();
+    execute(new TransactionExecutor.Procedure<MetadataDataset>() {
+      @Override
+      public void apply(MetadataDataset input) throws Exception {
+        previous.clear();
+        for (Metadata metadata : input.getMetadata(entityIds)) {
+          previous.put(metadata.getEntityId(), metadata);
+        }
+        for (MetadataRecord record : records) {
+          input.addMetadata(record.getEntityId(), record.getProperties(), record.getTags());
+        }
+      }
+    }, scope);
+
+    Map<NamespacedEntityId, AuditPayload> auditPayloads = new LinkedHashMap<>();
+    for (MetadataRecord record : records) {
+      NamespacedEntityId entityId = record.getEntityId();
+      Metadata existing = previous.get(entityId);
+      Map<String, String> existingProperties = existing == null ? EMPTY_PROPERTIES : existing.getProperties();
+      Set<String> existingTags = existing == null ? EMPTY_TAGS : existing.getTags();
+      ImmutableMap.Builder<String, String> propAdditions = ImmutableMap.builder();
+      ImmutableMap.Builder<String, String> propDeletions = ImmutableMap.builder();
+      for (Map.Entry<String, String> entry : record.getProperties().entrySet()) {
+        String existingValue = existingProperties.get(entry.getKey());
+        if (entry.getValue().equals(existingValue)) {
+          continue;
+        }
+        if (existingValue != null) {
+          propDeletions.put(entry.getKey(), existingValue);
+        }
+        propAdditions.put(entry.getKey(), entry.getValue());
+      }
+      MetadataPayloadBuilder builder = new MetadataPayloadBuilder();
+      builder.addPrevious(new MetadataRecord(entityId, scope, existingProperties, existingTags));
+      builder.addAdditions(new MetadataRecord(entityId, scope, propAdditions.build(), record.getTags()));
+      builder.addDeletions(new MetadataRecord(entityId, scope, propDeletions.build(), EMPTY_TAGS));
+      auditPayloads.put(entityId, builder.build());
+    }
+    AuditPublishers.publishAudit(auditPublisher, AuditType.METADATA_CHANGE, auditPayloads);
+  }
+
   @Override
   public Set<MetadataRecord> getMetadata(NamespacedEntityId namespacedEntityId) {
     return ImmutableSet.of(getMetadata(MetadataScope.USER, namespacedEntityId), getMetadata(MetadataScope.SYSTEM,
@@ -416,6 +523,11 @@ public class DefaultMetadataStore implements MetadataStore {
       throw new IllegalArgumentException("limit must not be negative");
     }
 
+    if (SortInfo.SortOrder.WEIGHTED == sortInfo.getSortOrder()) {
+      return searchByWeight(scopes, namespaceId, searchQuery, types, sortInfo, offset, limit, numCursors, showHidden,
+                            entityScope);
+    }
+
     List<MetadataEntry> resultsFromOffset = new LinkedList<>();
     List<String> cursors = new LinkedList<>();
     List<MetadataEntry> resultsFromBeginning = new LinkedList<>();
@@ -429,23 +541,8 @@ public class DefaultMetadataStore implements MetadataStore {
     }
 
     // sort if required
-    Set<NamespacedEntityId> sortedEntities = getSortedEntities(resultsFromOffset, sortInfo);
-    int total = getSortedEntities(resultsFromBeginning, sortInfo).size();
-
-    // pagination is not performed at the dataset level, because:
-    // 1. scoring is needed for DEFAULT sort info. So perform it here for now.
-    // 2. Even when using custom sorting, we still fetch extra results if numCursors > 1
-    // TODO: Figure out how all of this can be done server (HBase) side
-    if (SortInfo.DEFAULT.equals(sortInfo)) {
-      int startIndex = Math.min(offset, sortedEntities.size());
-      int endIndex = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit); // Account for overflow
-      endIndex = Math.min(endIndex, sortedEntities.size());
-
-      // add 1 to maxIndex because end index is exclusive
-      sortedEntities = new LinkedHashSet<>(
-        ImmutableList.copyOf(sortedEntities).subList(startIndex, endIndex)
-      );
-    }
+    Set<NamespacedEntityId> sortedEntities = getSortedEntities(resultsFromOffset);
+    int total = getSortedEntities(resultsFromBeginning).size();
 
     // Fetch metadata for entities in the result list
     // Note: since the fetch is happening in a different transaction, the metadata for entities may have been
@@ -459,6 +556,65 @@ public class DefaultMetadataStore implements MetadataStore {
       entityScope);
   }
 
+  /**
+   * Searches entities ranked by the number of metadata entries that match the search query. Only the entity ids and
+   * scores of the matches are collected, and only the top entities up to the requested page are kept in memory.
+   * Cursors are not supported, since the scores are only known after all matches are collected.
+   */
+  private MetadataSearchResponse searchByWeight(Set<MetadataScope> scopes, final String namespaceId,
+                                                final String searchQuery, final Set<EntityTypeSimpleName> types,
+                                                SortInfo sortInfo, int offset, int limit, int numCursors,
+                                                final boolean showHidden, final Set<EntityScope> entityScope) {
+    // Sum up the scores of the entities in all scopes
+    Map<NamespacedEntityId, Integer> scores = new HashMap<>();
+    for (MetadataScope scope : scopes) {
+      Map<NamespacedEntityId, Integer> scopeScores = execute(
+        new TransactionExecutor.Function<MetadataDataset, Map<NamespacedEntityId, Integer>>() {
+          @Override
+          public Map<NamespacedEntityId, Integer> apply(MetadataDataset input) throws Exception {
+            return input.getSearchScores(namespaceId, searchQuery, types, showHidden, entityScope);
+          }
+        }, scope);
+      for (Map.Entry<NamespacedEntityId, Integer> entry : scopeScores.entrySet()) {
+        Integer score = scores.get(entry.getKey());
+        scores.put(entry.getKey(), score == null ? entry.getValue() : score + entry.getValue());
+      }
+    }
+
+    // Keep the top entities up to the requested page in a heap with the lowest ranked on top
+    int fetchSize = (int) Math.min(offset + (long) limit, Integer.MAX_VALUE);
+    PriorityQueue<WeightedEntity> topEntities =
+      new PriorityQueue<>(Math.max(1, Math.min(fetchSize, scores.size())), Collections.reverseOrder());
+    if (fetchSize > 0) {
+      for (Map.Entry<NamespacedEntityId, Integer> entry : scores.entrySet()) {
+        WeightedEntity entity = new WeightedEntity(entry.getKey(), entry.getValue());
+        if (topEntities.size() < fetchSize) {
+          topEntities.add(entity);
+        } else if (entity.compareTo(topEntities.peek()) < 0) {
+          topEntities.poll();
+          topEntities.add(entity);
+        }
+      }
+    }
+    List<WeightedEntity> ranked = new ArrayList<>(topEntities);
+    Collections.sort(ranked);
+
+    Set<NamespacedEntityId> page = new LinkedHashSet<>();
+    int endIndex = (int) Math.min(ranked.size(), (long) offset + limit);
+    for (int i = offset; i < endIndex; i++) {
+      page.add(ranked.get(i).entityId);
+    }
+
+    // Fetch metadata for entities in the result page
+    Map<NamespacedEntityId, Metadata> systemMetadata = fetchMetadata(page, MetadataScope.SYSTEM);
+    Map<NamespacedEntityId, Metadata> userMetadata = fetchMetadata(page, MetadataScope.USER);
+
+    return new MetadataSearchResponse(
+      sortInfo.getSortBy() + " " + sortInfo.getSortOrder(), offset, limit, numCursors, scores.size(),
+      addMetadataToEntities(page, systemMetadata, userMetadata), Collections.<String>emptyList(), showHidden,
+      entityScope);
+  }
+
   private SearchResults getSearchResults(final MetadataScope scope, final String namespaceId,
                                          final String searchQuery, final Set<EntityTypeSimpleName> types,
                                          final SortInfo sortInfo, final int offset,
@@ -475,33 +631,13 @@ public class DefaultMetadataStore implements MetadataStore {
       }, scope);
   }
 
-  private Set<NamespacedEntityId> getSortedEntities(List<MetadataEntry> results, SortInfo sortInfo) {
-    // if sort order is not weighted, return entities in the order received.
-    // in this case, the backing storage is expected to return results in the expected order.
-    if (SortInfo.SortOrder.WEIGHTED != sortInfo.getSortOrder()) {
-      Set<NamespacedEntityId> entities = new LinkedHashSet<>(results.size());
-      for (MetadataEntry metadataEntry : results) {
-        entities.add(metadataEntry.getTargetId());
-      }
-      return entities;
-    }
-    // if sort order is weighted, score results by weight, and return in descending order of weights
-    // Score results
-    final Map<NamespacedEntityId, Integer> weightedResults = new HashMap<>();
+  private Set<NamespacedEntityId> getSortedEntities(List<MetadataEntry> results) {
+    // the backing storage is expected to return results in the expected order.
+    Set<NamespacedEntityId> entities = new LinkedHashSet<>(results.size());
     for (MetadataEntry metadataEntry : results) {
-      Integer score = weightedResults.get(metadataEntry.getTargetId());
-      score = (score == null) ? 0 : score;
-      weightedResults.put(metadataEntry.getTargetId(), score + 1);
+      entities.add(metadataEntry.getTargetId());
     }
-
-    // Sort the results by score
-    List<Map.Entry<NamespacedEntityId, Integer>> resultList = new ArrayList<>(weightedResults.entrySet());
-    Collections.sort(resultList, SEARCH_RESULT_DESC_SCORE_COMPARATOR);
-    Set<NamespacedEntityId> result = new LinkedHashSet<>(resultList.size());
-    for (Map.Entry<NamespacedEntityId, Integer> entry : resultList) {
-      result.add(entry.getKey());
-    }
-    return result;
+    return entities;
   }
 
   private Map<NamespacedEntityId, Metadata> fetchMetadata(final Set<NamespacedEntityId> namespacedEntityIds,
@@ -576,30 +712,115 @@ public class DefaultMetadataStore implements MetadataStore {
   }
 
   @Override
-  public void rebuildIndexes(MetadataScope scope,
-                             RetryStrategy retryStrategy) {
-    byte[] row = null;
-    while ((row = rebuildIndexesWithRetries(scope, row, retryStrategy)) != null) {
-      LOG.debug("Completed a batch for rebuilding {} metadata indexes.", scope);
+  public void rebuildIndexes(final MetadataScope scope, final RetryStrategy retryStrategy) {
+    // The metadata values are split into ranges that are rebuilt concurrently. The progress of every range is saved
+    // with each batch, so that a rebuild that is interrupted resumes where it left off.
+    Set<String> ranges = MetadataDataset.getRebuildRanges();
+    final AtomicLong total = new AtomicLong();
+    final AtomicLong processed = new AtomicLong();
+    long startTime = System.currentTimeMillis();
+    ExecutorService executor = Executors.newFixedThreadPool(
+      Math.min(REBUILD_PARALLELISM, ranges.size()), Threads.createDaemonThreadFactory("metadata-index-rebuild-%d"));
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (final String range : ranges) {
+        futures.add(executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            // Count the values to rebuild first, so that the remaining time can be estimated
+            ImmutablePair<Integer, byte[]> counted = countValuesToRebuildWithRetries(scope, range, null, retryStrategy);
+            total.addAndGet(counted.getFirst());
+            while (counted.getSecond() != null) {
+              counted = countValuesToRebuildWithRetries(scope, range, counted.getSecond(), retryStrategy);
+              total.addAndGet(counted.getFirst());
+            }
+            int count;
+            while ((count = rebuildIndexesWithRetries(scope, range, retryStrategy)) > 0) {
+              processed.addAndGet(count);
+              LOG.trace("Completed a batch for rebuilding {} metadata indexes of range {}.", scope, range);
+            }
+            LOG.debug("Completed rebuilding {} metadata indexes of range {}.", scope, range);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        while (true) {
+          try {
+            future.get(REBUILD_PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+            break;
+          } catch (TimeoutException e) {
+            logRebuildProgress(scope, processed.get(), total.get(), startTime);
+          }
+        }
+      }
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } finally {
+      executor.shutdownNow();
     }
+
+    // All ranges are rebuilt, clear the progress so that the next rebuild starts from the beginning
+    execute(new TransactionExecutor.Procedure<MetadataDataset>() {
+      @Override
+      public void apply(MetadataDataset input) throws Exception {
+        input.deleteRebuildProgress();
+      }
+    }, scope);
+    LOG.info("Rebuilt {} metadata indexes for {} values in {} seconds.", scope, processed.get(),
+             TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - startTime));
+  }
+
+  private void logRebuildProgress(MetadataScope scope, long processed, long total, long startTime) {
+    long elapsedMillis = System.currentTimeMillis() - startTime;
+    double valuesPerSecond = elapsedMillis == 0 ? 0 : processed * 1000d / elapsedMillis;
+    String remaining = valuesPerSecond == 0 ?
+      "unknown" : TimeUnit.SECONDS.toMinutes((long) (Math.max(total - processed, 0) / valuesPerSecond)) + " minutes";
+    LOG.info("Rebuilt {} metadata indexes for {} of {} values at {} values per second. Estimated time remaining: {}.",
+             scope, processed, total, (long) valuesPerSecond, remaining);
   }
 
-  private byte[] rebuildIndexesWithRetries(final MetadataScope scope,
-                             final byte[] row, RetryStrategy retryStrategy) {
-    byte[] returnRow;
+  private int rebuildIndexesWithRetries(final MetadataScope scope, final String range, RetryStrategy retryStrategy) {
     try {
-      returnRow = Retries.callWithRetries(new Retries.Callable<byte[], Exception>() {
+      return Retries.callWithRetries(new Retries.Callable<Integer, Exception>() {
         @Override
-        public byte[] call() throws Exception {
-          // Run data migration
-          return rebuildIndex(row, scope);
+        public Integer call() throws Exception {
+          return execute(new TransactionExecutor.Function<MetadataDataset, Integer>() {
+            @Override
+            public Integer apply(MetadataDataset input) throws Exception {
+              return input.rebuildIndexes(range, BATCH_SIZE);
+            }
+          }, scope);
         }
-      }, retryStrategy);
+      }, retryStrategy, RETRY_ON_CONFLICT);
     } catch (Exception e) {
       LOG.error("Failed to reIndex while Upgrading Metadata Dataset.", e);
       throw new RuntimeException(e);
     }
-    return returnRow;
+  }
+
+  private ImmutablePair<Integer, byte[]> countValuesToRebuildWithRetries(final MetadataScope scope,
+                                                                         final String range,
+                                                                         @Nullable final byte[] startRowKey,
+                                                                         RetryStrategy retryStrategy) {
+    try {
+      return Retries.callWithRetries(new Retries.Callable<ImmutablePair<Integer, byte[]>, Exception>() {
+        @Override
+        public ImmutablePair<Integer, byte[]> call() throws Exception {
+          return execute(new TransactionExecutor.Function<MetadataDataset, ImmutablePair<Integer, byte[]>>() {
+            @Override
+            public ImmutablePair<Integer, byte[]> apply(MetadataDataset input) throws Exception {
+              return input.countValuesToRebuild(range, startRowKey, COUNT_BATCH_SIZE);
+            }
+          }, scope);
+        }
+      }, retryStrategy, RETRY_ON_CONFLICT);
+    } catch (Exception e) {
+      LOG.error("Failed to count metadata values while Upgrading Metadata Dataset.", e);
+      throw new RuntimeException(e);
+    }
   }
 
   @Override
@@ -629,15 +850,6 @@ public class DefaultMetadataStore implements MetadataStore {
     txExecutor.executeUnchecked(func, metadataDataset);
   }
 
-  private byte[] rebuildIndex(final byte[] startRowKey, MetadataScope scope) {
-    return execute(new TransactionExecutor.Function<MetadataDataset, byte[]>() {
-      @Override
-      public byte[] apply(MetadataDataset input) throws Exception {
-        return input.rebuildIndexes(startRowKey, BATCH_SIZE);
-      }
-    }, scope);
-  }
-
   private int deleteBatch(MetadataScope scope) {
     return execute(new TransactionExecutor.Function<MetadataDataset, Integer>() {
       @Override
@@ -745,4 +957,28 @@ public class DefaultMetadataStore implements MetadataStore {
   private String getTagWithVersion(String version) {
     return new String (VERSION_TAG_PREFIX + version);
   }
+
+  /**
+   * An entity matching a search query with its score. Entities are ordered by descending score, and by the entity id
+   * for entities with the same score, which gives a stable order across pages.
+   */
+  private static final class WeightedEntity implements Comparable<WeightedEntity> {
+    private final NamespacedEntityId entityId;
+    private final String entity;
+    private final int score;
+
+    WeightedEntity(NamespacedEntityId entityId, int score) {
+      this.entityId = entityId;
+      this.entity = entityId.toString();
+      this.score = score;
+    }
+
+    @Override
+    public int compareTo(WeightedEntity other) {
+      if (score != other.score) {
+        return score > other.score ? -1 : 1;
+      }
+      return entity.compareTo(other.entity);
+    }
+  }
 }
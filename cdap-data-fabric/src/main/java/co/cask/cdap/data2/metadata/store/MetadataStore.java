@@ -29,6 +29,7 @@ import co.cask.cdap.proto.metadata.MetadataScope;
 import co.cask.cdap.proto.metadata.MetadataSearchResponse;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
@@ -72,6 +73,15 @@ public interface MetadataStore {
    */
   void addTags(MetadataScope scope, NamespacedEntityId namespacedEntityId, String... tagsToAdd);
 
+  /**
+   * Sets the properties and adds the tags of each of the specified {@link MetadataRecord}s for its
+   * {@link NamespacedEntityId} in its {@link MetadataScope}. The records are applied in batches, each in a single
+   * transaction, and the audit information for a batch is published together.
+   *
+   * @param records the {@link MetadataRecord}s containing the properties to add/update and the tags to add
+   */
+  void addMetadata(Collection<MetadataRecord> records);
+
   /**
    * @return a set of {@link MetadataRecord} representing all the metadata (including properties and tags) for the
    * specified {@link NamespacedEntityId} in both {@link MetadataScope#USER} and {@link MetadataScope#SYSTEM}.
@@ -213,7 +223,8 @@ public interface MetadataStore {
                                             long timeMillis);
 
   /**
-   * Rebuild stale metadata indexes.
+   * Rebuild stale metadata indexes. Ranges of metadata values are rebuilt concurrently, and the progress of each range
+   * is saved, so that a rebuild that is interrupted resumes where it left off.
    */
   void rebuildIndexes(MetadataScope scope, RetryStrategy retryStrategy);
 
@@ -28,6 +28,7 @@ import co.cask.cdap.proto.metadata.MetadataSearchResultRecord;
 import com.google.common.collect.ImmutableSet;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
@@ -53,6 +54,11 @@ public class NoOpMetadataStore implements MetadataStore {
     // NO-OP
   }
 
+  @Override
+  public void addMetadata(Collection<MetadataRecord> records) {
+    // NO-OP
+  }
+
   @Override
   public Set<MetadataRecord> getMetadata(NamespacedEntityId namespacedEntityId) {
     return ImmutableSet.of(new MetadataRecord(namespacedEntityId, MetadataScope.USER),
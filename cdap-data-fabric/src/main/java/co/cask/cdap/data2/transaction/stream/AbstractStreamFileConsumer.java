@@ -94,6 +94,23 @@ import javax.annotation.concurrent.NotThreadSafe;
  *   state = ConsumerEntryState.getState(), either CLAIMED or PROCESSED
  * }</pre>
  *
+ * For FIFO consumer groups with more than one instance, entries are claimed in ranges of offsets of a stream file.
+ * The range claimed last is stored in the state column of the row with offset {@link Long#MAX_VALUE} of the file,
+ * which is updated with a single check and put per range:
+ *
+ * <pre>{@code
+ *   claim_value = <end_offset> <start_offset> <instance_id> <mode>
+ *   end_offset = 8 bytes offset after the last entry claimed. All entries before it are claimed.
+ *   start_offset = 8 bytes offset of the first entry in the range.
+ *   instance_id = 4 bytes Instance id of the consumer who claimed the range.
+ *   mode = 1 byte, either RANGE_CLAIM or ENTRY_CLAIM
+ * }</pre>
+ *
+ * The state value of each entry in a claimed range is then written as CLAIMED in one batch.
+ * A consumer only claims a range if it read all entries from the end of the last range. A consumer that started
+ * reading the file after that waits for consumers that are behind to move the end offset past its start. If that
+ * doesn't happen within the transaction timeout, it sets the mode to ENTRY_CLAIM, after which all consumers claim
+ * entries after the end offset individually.
  */
 @NotThreadSafe
 public abstract class AbstractStreamFileConsumer implements StreamConsumer {
@@ -103,6 +120,10 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
 
   protected static final int MAX_SCAN_ROWS = 1000;
 
+  // Claim modes of a stream file for FIFO consumers
+  private static final byte RANGE_CLAIM = 0;
+  private static final byte ENTRY_CLAIM = 1;
+
   // Persist state at most once per second.
   private static final long STATE_PERSIST_MIN_INTERVAL = TimeUnit.SECONDS.toNanos(1);
 
@@ -152,6 +173,11 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
   private final Map<byte[], SortedMap<byte[], byte[]>> entryStates;
   private final Set<byte[]> entryStatesScanCompleted;
 
+  // Map from row key prefix to the range claim of the stream file, for FIFO with group size > 1.
+  private final Map<byte[], RangeClaim> rangeClaims;
+  // Map from row key prefix to the file offset that the reader of this consumer started reading the stream file from.
+  private final Map<byte[], Long> readerStartOffsets;
+
   private final StreamConsumerState consumerState;
   private final List<StreamEventOffset> eventCache;
   private Transaction transaction;
@@ -190,6 +216,11 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
 
     this.entryStates = Maps.newTreeMap(ROW_PREFIX_COMPARATOR);
     this.entryStatesScanCompleted = Sets.newTreeSet(ROW_PREFIX_COMPARATOR);
+    this.rangeClaims = Maps.newTreeMap(ROW_PREFIX_COMPARATOR);
+    this.readerStartOffsets = Maps.newTreeMap(ROW_PREFIX_COMPARATOR);
+    for (StreamFileOffset offset : reader.getPosition()) {
+      readerStartOffsets.put(createStateRow(offset), offset.getOffset());
+    }
 
     this.eventCache = Lists.newArrayList();
     this.consumerState = beginConsumerState;
@@ -250,11 +281,19 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
 
     // Save the reader position.
     // It's a conservative approach to save the reader position before reading so that no
-    // event will be missed upon restart.
-    consumerState.setState(reader.getPosition());
+    // event will be missed upon restart. If there are events left in the cache that are waiting to be claimed,
+    // keep the previous position, as those events are before the reader position.
+    if (eventCache.isEmpty()) {
+      consumerState.setState(reader.getPosition());
+    }
 
     // Read from the underlying file reader
     while (polledEvents.size() < maxEvents) {
+      if (eventCache.size() >= maxRead) {
+        // The cache is full of events waiting to be claimed by other consumers. Don't read further ahead,
+        // but try to claim them again in the next poll.
+        break;
+      }
       int readCount = reader.read(eventCache, maxRead, timeoutNano, TimeUnit.NANOSECONDS, readFilter);
       long elapsedNano = stopwatch.elapsedTime(TimeUnit.NANOSECONDS);
       timeoutNano -= elapsedNano;
@@ -445,14 +484,18 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
     };
   }
 
-  private int getEvents(List<? extends StreamEventOffset> source,
+  private int getEvents(List<StreamEventOffset> source,
                          List<? super PollStreamEvent> result,
-                         int maxEvents, byte[] stateContent) throws IOException {
+                         int maxEvents, @Nullable byte[] fifoStateContent) throws IOException {
+    if (fifoStateContent != null) {
+      return getFifoEvents(source, result, maxEvents, fifoStateContent);
+    }
+
     Iterator<? extends StreamEventOffset> iterator = Iterators.consumingIterator(source.iterator());
     int eventsClaimed = 0;
     while (result.size() < maxEvents && iterator.hasNext()) {
       StreamEventOffset event = iterator.next();
-      byte[] stateRow = claimEntry(event.getOffset(), stateContent);
+      byte[] stateRow = claimEntry(event.getOffset());
       if (stateRow == null) {
         continue;
       }
@@ -462,6 +505,203 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
     return eventsClaimed;
   }
 
+  /**
+   * Gets events for FIFO with group size > 1. Entries with initial states are claimed individually,
+   * while the other entries are claimed in one range per stream file.
+   * Events of stream files that are waiting for other consumers to claim are kept in the source list.
+   */
+  private int getFifoEvents(List<StreamEventOffset> source,
+                            List<? super PollStreamEvent> result,
+                            int maxEvents, byte[] claimedStateContent) throws IOException {
+    Iterator<? extends StreamEventOffset> iterator = Iterators.consumingIterator(source.iterator());
+    List<PollStreamEvent> candidates = Lists.newArrayList();
+    Map<byte[], List<byte[]>> rangeRows = Maps.newTreeMap(ROW_PREFIX_COMPARATOR);
+    Set<byte[]> claimedRows = Sets.newTreeSet(Bytes.BYTES_COMPARATOR);
+    Set<byte[]> waitingRows = Sets.newTreeSet(Bytes.BYTES_COMPARATOR);
+    List<StreamEventOffset> waitingEvents = Lists.newArrayList();
+
+    int eventsClaimed = 0;
+    while (result.size() < maxEvents && iterator.hasNext()) {
+      candidates.clear();
+      rangeRows.clear();
+      claimedRows.clear();
+      waitingRows.clear();
+
+      while (candidates.size() < maxEvents - result.size() && iterator.hasNext()) {
+        StreamEventOffset event = iterator.next();
+        byte[] row = createStateRow(event.getOffset());
+        SortedMap<byte[], byte[]> rowStates = getInitRowStates(row);
+
+        if (rowStates.containsKey(row)) {
+          // The entry should be ignored if it is in the rowStates with null value, otherwise claim it individually
+          byte[] rowState = rowStates.get(row);
+          if (rowState == null || !claimFifoEntry(row, claimedStateContent, rowState)) {
+            continue;
+          }
+          claimedRows.add(row);
+        } else if (getRangeClaim(row).isRecoverable(getOffset(row))) {
+          // Entry without state in a range that can be recovered, claim it individually
+          if (!claimFifoEntry(row, claimedStateContent, null)) {
+            continue;
+          }
+          claimedRows.add(row);
+        } else {
+          List<byte[]> rows = rangeRows.get(row);
+          if (rows == null) {
+            rows = Lists.newArrayList();
+            rangeRows.put(row, rows);
+          }
+          rows.add(row);
+        }
+        candidates.add(new PollStreamEvent(event, row));
+      }
+
+      for (List<byte[]> rows : rangeRows.values()) {
+        claimRange(getRangeClaim(rows.get(0)), rows, claimedStateContent, claimedRows, waitingRows);
+      }
+
+      for (PollStreamEvent event : candidates) {
+        if (claimedRows.contains(event.getStateRow())) {
+          result.add(event);
+          eventsClaimed++;
+        } else if (waitingRows.contains(event.getStateRow())) {
+          waitingEvents.add(event.getStreamEventOffset());
+        }
+      }
+    }
+
+    // Put the waiting events back to the beginning of the source, so that they can be claimed in later calls
+    source.addAll(0, waitingEvents);
+    return eventsClaimed;
+  }
+
+  /**
+   * Claims the range of entries from the current claim pointer of a stream file to the last of the given rows.
+   * Rows that are before the claim pointer are already claimed by other consumers.
+   *
+   * @param claim the {@link RangeClaim} of the stream file
+   * @param rows rows of the entries to claim, sorted by offset
+   * @param claimedStateContent the CLAIMED state value
+   * @param claimedRows set for adding rows that are claimed successfully
+   * @param waitingRows set for adding rows that are not claimed yet and should be retried later
+   */
+  private void claimRange(RangeClaim claim, List<byte[]> rows, byte[] claimedStateContent,
+                          Set<byte[]> claimedRows, Set<byte[]> waitingRows) throws IOException {
+    int start = 0;
+    while (true) {
+      long pointer = claim.getPointer();
+      while (start < rows.size() && getOffset(rows.get(start)) < pointer) {
+        start++;
+      }
+      if (start == rows.size()) {
+        return;
+      }
+      List<byte[]> remaining = rows.subList(start, rows.size());
+
+      if (claim.isEntryClaim()) {
+        // Entries after the pointer are claimed individually
+        for (byte[] row : remaining) {
+          if (claimFifoEntry(row, claimedStateContent, null)) {
+            claimedRows.add(row);
+          }
+        }
+        return;
+      }
+
+      byte[] value;
+      Long readerStart = readerStartOffsets.get(claim.getRow());
+      if (readerStart != null && readerStart > pointer) {
+        // This consumer started reading the file after the claim pointer, hence it cannot claim a range from the
+        // pointer, since it never read the entries in between. Those can only be claimed by consumers that are behind.
+        // Give them a chance to move the pointer, then switch the file to claim entries individually.
+        long now = System.nanoTime();
+        if (claim.waitDeadline == 0L) {
+          claim.waitDeadline = now + txTimeoutNano;
+        }
+        if (now < claim.waitDeadline) {
+          waitingRows.addAll(remaining);
+          return;
+        }
+        value = encodeEntryClaim(claim.value);
+      } else {
+        // This consumer read all entries from the pointer
+        value = encodeRangeClaim(pointer, getOffset(rows.get(rows.size() - 1)) + 1);
+      }
+
+      if (claimFifoEntry(claim.getRow(), value, claim.value)) {
+        claim.value = value;
+        if (claim.isEntryClaim()) {
+          // Claim the entries individually in the next iteration
+          continue;
+        }
+        updateState(remaining, remaining.size(), claimedStateContent);
+        claimedRows.addAll(remaining);
+        return;
+      }
+
+      // Some other consumer updated the claim, read the latest claim and try again
+      claim.value = readRangeClaim(claim.getRow());
+    }
+  }
+
+  /**
+   * Returns the {@link RangeClaim} of the stream file of the given entry row, reading it from the state table
+   * if it is not yet known.
+   */
+  private RangeClaim getRangeClaim(byte[] row) throws IOException {
+    RangeClaim claim = rangeClaims.get(row);
+    if (claim != null) {
+      return claim;
+    }
+
+    byte[] claimRow = Arrays.copyOf(row, row.length);
+    Bytes.putLong(claimRow, claimRow.length - Longs.BYTES, Long.MAX_VALUE);
+    claim = new RangeClaim(claimRow, readRangeClaim(claimRow));
+
+    // If the last range was claimed by this instance before it started, or by an instance that no longer exists,
+    // the consumer might have stopped before writing the entry states of the range.
+    // Entries in that range without state can be claimed individually.
+    if (claim.value != null) {
+      int instanceId = Bytes.toInt(claim.value, Longs.BYTES * 2);
+      if (instanceId == consumerConfig.getInstanceId() || instanceId >= consumerConfig.getGroupSize()) {
+        claim.recoverStart = Bytes.toLong(claim.value, Longs.BYTES);
+        claim.recoverEnd = claim.getPointer();
+      }
+    }
+    rangeClaims.put(claimRow, claim);
+    return claim;
+  }
+
+  @Nullable
+  private byte[] readRangeClaim(byte[] claimRow) throws IOException {
+    try (StateScanner scanner = scanStates(claimRow, Bytes.add(claimRow, new byte[1]))) {
+      return scanner.nextStateRow() ? scanner.getState() : null;
+    }
+  }
+
+  private byte[] encodeRangeClaim(long startOffset, long endOffset) {
+    byte[] value = new byte[Longs.BYTES * 2 + Ints.BYTES + 1];
+    Bytes.putLong(value, 0, endOffset);
+    Bytes.putLong(value, Longs.BYTES, startOffset);
+    Bytes.putInt(value, Longs.BYTES * 2, consumerConfig.getInstanceId());
+    Bytes.putByte(value, Longs.BYTES * 2 + Ints.BYTES, RANGE_CLAIM);
+    return value;
+  }
+
+  /**
+   * Encodes the claim value for switching a stream file to claim entries individually, keeping the pointer and
+   * the last claimed range of the given claim value.
+   */
+  private byte[] encodeEntryClaim(@Nullable byte[] claimValue) {
+    byte[] value = claimValue == null ? encodeRangeClaim(0L, 0L) : Arrays.copyOf(claimValue, claimValue.length);
+    Bytes.putByte(value, Longs.BYTES * 2 + Ints.BYTES, ENTRY_CLAIM);
+    return value;
+  }
+
+  private long getOffset(byte[] row) {
+    return Bytes.toLong(row, row.length - Longs.BYTES);
+  }
+
   private void persistConsumerState() {
     try {
       if (lastPersistedState == null || !consumerState.equals(lastPersistedState)) {
@@ -492,31 +732,30 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
   }
 
   /**
-   * Try to claim a stream event offset.
-   *
-   * @return The row key for writing to the state table if successfully claimed or {@code null} if not claimed.
+   * Creates the state table row key for the given stream event offset.
    */
-  private byte[] claimEntry(StreamFileOffset offset, byte[] claimedStateContent) throws IOException {
+  private byte[] createStateRow(StreamFileOffset offset) {
     ByteArrayDataOutput out = ByteStreams.newDataOutput(50);
     out.writeLong(consumerConfig.getGroupId());
     StreamUtils.encodeOffset(out, offset);
-    byte[] row = out.toByteArray();
+    return out.toByteArray();
+  }
 
+  /**
+   * Try to claim a stream event offset for Hash, RR and FIFO with group size == 1.
+   *
+   * @return The row key for writing to the state table if successfully claimed or {@code null} if not claimed.
+   */
+  private byte[] claimEntry(StreamFileOffset offset) throws IOException {
+    byte[] row = createStateRow(offset);
     SortedMap<byte[], byte[]> rowStates = getInitRowStates(row);
 
     // See if the entry should be ignored. If it is in the rowStates with null value, then it should be ignored.
-    byte[] rowState = rowStates.get(row);
-    if (rowStates.containsKey(row) && rowState == null) {
+    if (rowStates.containsKey(row) && rowStates.get(row) == null) {
       return null;
     }
 
-    // Only need to claim entry if FIFO and group size > 1
-    if (consumerConfig.getDequeueStrategy() == DequeueStrategy.FIFO && consumerConfig.getGroupSize() > 1) {
-      return claimFifoEntry(row, claimedStateContent, rowState) ? row : null;
-    }
-
-    // For Hash, RR and FIFO with group size == 1, no need to claim and check,
-    // as it's already handled by the readFilter
+    // No need to claim and check, as it's already handled by the readFilter
     return row;
   }
 
@@ -633,6 +872,48 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
     byte[] getState();
   }
 
+  /**
+   * The range claim of a stream file for FIFO consumers, as stored in the state table.
+   */
+  private static final class RangeClaim {
+
+    private final byte[] row;
+    // The last known claim value in the state table, or null if nothing is claimed yet.
+    private byte[] value;
+    // Range of entries that can be claimed individually if they don't have state
+    private long recoverStart;
+    private long recoverEnd;
+    // Time to stop waiting for consumers that are behind to claim entries before this consumer starts reading
+    private long waitDeadline;
+
+    RangeClaim(byte[] row, @Nullable byte[] value) {
+      this.row = row;
+      this.value = value;
+    }
+
+    byte[] getRow() {
+      return row;
+    }
+
+    /**
+     * Returns the offset that all entries before it are claimed.
+     */
+    long getPointer() {
+      return value == null ? 0L : Bytes.toLong(value, 0);
+    }
+
+    /**
+     * Returns {@code true} if entries after the pointer are claimed individually instead of in ranges.
+     */
+    boolean isEntryClaim() {
+      return value != null && value[Longs.BYTES * 2 + Ints.BYTES] == ENTRY_CLAIM;
+    }
+
+    boolean isRecoverable(long offset) {
+      return offset >= recoverStart && offset < recoverEnd;
+    }
+  }
+
   /**
    * Represents a {@link StreamEvent} created by the {@link #poll(int, long, java.util.concurrent.TimeUnit)} call.
    */
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -22,6 +22,7 @@ import co.cask.cdap.data.file.FileReader;
 import co.cask.cdap.data.file.ReadFilter;
 import co.cask.cdap.data.file.filter.TTLReadFilter;
 import co.cask.cdap.data.stream.MultiLiveStreamFileReader;
+import co.cask.cdap.data.stream.SharedStreamFileReaders;
 import co.cask.cdap.data.stream.StreamEventOffset;
 import co.cask.cdap.data.stream.StreamFileOffset;
 import co.cask.cdap.data.stream.StreamFileType;
@@ -59,6 +60,7 @@ public abstract class AbstractStreamFileConsumerFactory implements StreamConsume
   private final StreamAdmin streamAdmin;
   private final StreamConsumerStateStoreFactory stateStoreFactory;
   private final String tablePrefix;
+  private final SharedStreamFileReaders sharedReaders;
 
   protected AbstractStreamFileConsumerFactory(CConfiguration cConf, StreamAdmin streamAdmin,
                                               StreamConsumerStateStoreFactory stateStoreFactory) {
@@ -67,6 +69,9 @@ public abstract class AbstractStreamFileConsumerFactory implements StreamConsume
     this.stateStoreFactory = stateStoreFactory;
     this.tablePrefix = String.format("%s.%s", NamespaceId.SYSTEM.getEntityName(),
                                      QueueConstants.QueueType.STREAM.toString());
+    // Consumers created by this factory share the reading of the same stream files
+    long readerCacheSize = cConf.getLong(Constants.Stream.CONSUMER_READER_CACHE_SIZE);
+    this.sharedReaders = readerCacheSize > 0 ? new SharedStreamFileReaders(readerCacheSize) : null;
   }
 
   /**
@@ -173,7 +178,8 @@ public abstract class AbstractStreamFileConsumerFactory implements StreamConsume
       if (useStoredStates) {
         LOG.info("Create file reader with consumer state: {}", consumerState);
         // Has existing offsets, just resume from there.
-        MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(streamConfig, consumerState.getState());
+        MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(streamConfig, consumerState.getState(),
+                                                                          sharedReaders);
         reader.initialize();
         return reader;
       }
@@ -212,7 +218,7 @@ public abstract class AbstractStreamFileConsumerFactory implements StreamConsume
     LOG.info("Empty consumer state. Create file reader with file offsets: groupId={}, instanceId={} states={}",
              consumerState.getGroupId(), consumerState.getInstanceId(), fileOffsets);
 
-    MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(streamConfig, fileOffsets);
+    MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(streamConfig, fileOffsets, sharedReaders);
     reader.initialize();
     return reader;
   }
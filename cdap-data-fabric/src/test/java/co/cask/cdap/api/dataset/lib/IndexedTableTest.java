@@ -33,6 +33,11 @@ import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -828,6 +833,122 @@ public class IndexedTableTest {
       dsFrameworkUtil.deleteInstance(incrTabInstance);
     }
   }
+  @Test
+  public void testCompositeIndexes() throws Exception {
+    DatasetId compositeTabInstance = DatasetFrameworkTestUtil.NAMESPACE_ID.dataset("compositetab");
+    dsFrameworkUtil.createInstance("indexedTable", compositeTabInstance, IndexedTableProperties.builder()
+      .addCompositeIndex(CompositeIndex.builder("byPrice")
+                           .addColumn("category", CompositeIndex.ValueType.STRING)
+                           .addColumn("price", CompositeIndex.ValueType.LONG)
+                           .addCoveredColumn("name")
+                           .build())
+      .addCompositeIndex(CompositeIndex.builder("byScore")
+                           .addColumn("score", CompositeIndex.ValueType.DOUBLE)
+                           .build())
+      .build());
+    final byte[] categoryCol = Bytes.toBytes("category");
+    final byte[] priceCol = Bytes.toBytes("price");
+    final byte[] nameCol = Bytes.toBytes("name");
+    final byte[] scoreCol = Bytes.toBytes("score");
+    final byte[][] categoryA = { Bytes.toBytes("a") };
+
+    final IndexedTable cTable = dsFrameworkUtil.getInstance(compositeTabInstance);
+    try {
+      TransactionExecutor tx = dsFrameworkUtil.newTransactionExecutor(cTable);
+      tx.execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          String[] categories = { "a", "a", "a", "b", "ab" };
+          long[] prices = { -5L, 10L, 200L, 3L, 1L };
+          double[] scores = { 2.5d, -1.5d, 0d, -10d, 7d };
+          for (int i = 0; i < categories.length; i++) {
+            cTable.put(new Put(Bytes.toBytes("r" + (i + 1)))
+                         .add(categoryCol, categories[i])
+                         .add(priceCol, prices[i])
+                         .add(nameCol, "n" + (i + 1))
+                         .add(scoreCol, scores[i])
+                         .add(valCol, valA));
+          }
+        }
+      });
+
+      tx.execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          // values are ordered numerically, and "ab" is not matched by the prefix "a"
+          Assert.assertEquals(Arrays.asList("r1", "r2", "r3"), readRowKeys(cTable.readByIndex("byPrice", categoryA)));
+          Assert.assertEquals(Collections.singletonList("r2"),
+                              readRowKeys(cTable.scanByIndex("byPrice", categoryA,
+                                                             Bytes.toBytes(0L), Bytes.toBytes(100L))));
+          Assert.assertEquals(Arrays.asList("r4", "r2", "r3", "r1", "r5"),
+                              readRowKeys(cTable.scanByIndex("byScore", new byte[0][], null, null)));
+          Assert.assertEquals(Arrays.asList("r2", "r3"),
+                              readRowKeys(cTable.scanByIndex("byScore", new byte[0][],
+                                                             Bytes.toBytes(-2d), Bytes.toBytes(1d))));
+
+          // rows read by index contain all columns
+          Row row = readFirst(cTable.readByIndex("byPrice", new byte[][] { Bytes.toBytes("b") }));
+          assertArrayEquals(valA, row.get(valCol));
+
+          // rows read from the index contain the indexed and covered columns only
+          row = readFirst(cTable.scanFromIndex("byPrice", categoryA, null, Bytes.toBytes(0L)));
+          assertArrayEquals(Bytes.toBytes("r1"), row.getRow());
+          Assert.assertEquals(3, row.getColumns().size());
+          Assert.assertEquals("a", row.getString(categoryCol));
+          Assert.assertEquals(-5L, (long) row.getLong(priceCol));
+          Assert.assertEquals("n1", row.getString(nameCol));
+        }
+      });
+
+      tx.execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          // change an indexed value and a covered value, and remove indexed values
+          cTable.put(new Put(Bytes.toBytes("r2")).add(priceCol, 300L));
+          cTable.put(new Put(Bytes.toBytes("r1")).add(nameCol, "m1"));
+          cTable.delete(Bytes.toBytes("r3"), priceCol);
+          cTable.delete(Bytes.toBytes("r4"));
+          Assert.assertTrue(cTable.compareAndSwap(Bytes.toBytes("r5"), scoreCol, Bytes.toBytes(7d),
+                                                  Bytes.toBytes(-20d)));
+        }
+      });
+
+      tx.execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          Assert.assertEquals(Arrays.asList("r1", "r2"), readRowKeys(cTable.readFromIndex("byPrice", categoryA)));
+          Row row = readFirst(cTable.readFromIndex("byPrice", categoryA));
+          Assert.assertEquals("m1", row.getString(nameCol));
+          assertEmpty(cTable.readByIndex("byPrice", new byte[][] { Bytes.toBytes("b") }));
+          Assert.assertEquals(Arrays.asList("r5", "r2", "r3", "r1"),
+                              readRowKeys(cTable.scanByIndex("byScore", new byte[0][], null, null)));
+
+          // read-less increments are not supported on the columns of composite indexes
+          try {
+            cTable.increment(Bytes.toBytes("r1"), nameCol, 1L);
+            fail("Expected IllegalArgumentException performing read-less increment on a covered column");
+          } catch (IllegalArgumentException e) {
+            // expected
+          }
+        }
+      });
+    } finally {
+      dsFrameworkUtil.deleteInstance(compositeTabInstance);
+    }
+  }
+
+  private List<String> readRowKeys(Scanner scanner) {
+    List<String> rowKeys = new ArrayList<>();
+    try {
+      for (Row row = scanner.next(); row != null; row = scanner.next()) {
+        rowKeys.add(Bytes.toString(row.getRow()));
+      }
+    } finally {
+      scanner.close();
+    }
+    return rowKeys;
+  }
+
   /**
    * Asserts that the given scanner contains no more rows.
    */
@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.stream;
+
+import co.cask.cdap.api.data.format.FormatSpecification;
+import co.cask.cdap.api.data.format.Formats;
+import co.cask.cdap.api.data.format.RecordFormat;
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.flow.flowlet.StreamEvent;
+import co.cask.cdap.data.file.ReadFilter;
+import co.cask.cdap.format.RecordFormats;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link StreamEventReadFilters} and {@link RecordFieldReadFilter}.
+ */
+public class StreamEventReadFiltersTest {
+
+  @Test
+  public void testArguments() {
+    Map<String, String> runtimeArguments = ImmutableMap.<String, String>builder()
+      .put("filter.body.prefix", "unscoped")
+      .put("stream.*.filter.body.regex", "wildcard")
+      .put("stream.other.filter.header.type", "other")
+      .put("stream.purchases.filter.header.type", "order")
+      .put("stream.purchases.read.timeout", "30")
+      .build();
+
+    // Only the filtering arguments explicitly scoped to the stream are used
+    Assert.assertEquals(ImmutableMap.of("filter.header.type", "order"),
+                        StreamEventReadFilters.getArguments("purchases", runtimeArguments));
+    Assert.assertEquals(ImmutableMap.of("filter.header.type", "other"),
+                        StreamEventReadFilters.getArguments("other", runtimeArguments));
+    Assert.assertTrue(StreamEventReadFilters.getArguments("unknown", runtimeArguments).isEmpty());
+  }
+
+  @Test
+  public void testNonFiniteField() throws Exception {
+    Schema schema = Schema.recordOf("event", Schema.Field.of("price", Schema.of(Schema.Type.DOUBLE)));
+    RecordFormat<StreamEvent, StructuredRecord> format = RecordFormats.createInitializedFormat(
+      new FormatSpecification(Formats.CSV, schema, Collections.<String, String>emptyMap()));
+
+    ReadFilter filter = StreamEventReadFilters.create(ImmutableMap.of("filter.body.field.price", ">100"), format);
+    Assert.assertNotNull(filter);
+    Assert.assertTrue(accept(filter, "150"));
+    Assert.assertFalse(accept(filter, "50"));
+    Assert.assertFalse(accept(filter, "NaN"));
+    Assert.assertTrue(accept(filter, "Infinity"));
+    Assert.assertFalse(accept(filter, "-Infinity"));
+
+    filter = new RecordFieldReadFilter(format, "price", "<=100");
+    Assert.assertFalse(accept(filter, "NaN"));
+    Assert.assertFalse(accept(filter, "Infinity"));
+    Assert.assertTrue(accept(filter, "-Infinity"));
+
+    // NaN is not equal to any number
+    filter = new RecordFieldReadFilter(format, "price", "=100");
+    Assert.assertFalse(accept(filter, "NaN"));
+    filter = new RecordFieldReadFilter(format, "price", "!=100");
+    Assert.assertTrue(accept(filter, "NaN"));
+    Assert.assertTrue(accept(filter, "Infinity"));
+  }
+
+  private boolean accept(ReadFilter filter, String body) {
+    return filter.acceptEvent(ImmutableMap.<String, String>of(), Charsets.UTF_8.encode(body));
+  }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.stream.service;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.flow.flowlet.StreamEvent;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.data.file.FileReader;
+import co.cask.cdap.data.file.FileWriter;
+import co.cask.cdap.data.stream.LiveStreamFileReader;
+import co.cask.cdap.data.stream.PositionStreamEvent;
+import co.cask.cdap.data.stream.StreamFileOffset;
+import co.cask.cdap.data.stream.StreamFileType;
+import co.cask.cdap.data.stream.StreamFileWriterFactory;
+import co.cask.cdap.data.stream.StreamUtils;
+import co.cask.cdap.data.stream.TimePartitionedStreamFileWriter;
+import co.cask.cdap.data2.transaction.stream.StreamConfig;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.StreamId;
+import co.cask.cdap.security.impersonation.DefaultImpersonator;
+import co.cask.cdap.security.impersonation.Impersonator;
+import co.cask.cdap.security.impersonation.UnsupportedUGIProvider;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
+import org.apache.twill.filesystem.LocalLocationFactory;
+import org.apache.twill.filesystem.Location;
+import org.apache.twill.filesystem.LocationFactory;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests for {@link WriteAheadStreamFileWriter}.
+ */
+public class WriteAheadStreamFileWriterTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  private static final StreamId STREAM_ID = NamespaceId.DEFAULT.stream("walStream");
+  // Uses a single partition, so that the timestamps of the events are kept when they are written to the stream
+  private static final StreamConfig STREAM_CONFIG = new StreamConfig(STREAM_ID, Long.MAX_VALUE, 10000L,
+                                                                     Long.MAX_VALUE, null, null, 1000);
+
+  @Test
+  public void testWriteAndDrain() throws Exception {
+    File walDir = TMP_FOLDER.newFolder();
+    ListStreamFileWriterFactory listFactory = new ListStreamFileWriterFactory();
+    StreamFileWriterFactory factory = new WriteAheadStreamFileWriterFactory(walDir, Long.MAX_VALUE, listFactory);
+
+    FileWriter<StreamEvent> writer = factory.create(STREAM_CONFIG, 0);
+    for (int i = 0; i < 100; i++) {
+      writer.append(createEvent(i));
+      if (i % 10 == 9) {
+        writer.flush();
+      }
+    }
+    writer.close();
+
+    // All events should be written to the stream when the writer is closed, and the log is removed
+    verifyEvents(listFactory.getEvents(), 0, 100);
+    Assert.assertFalse(new File(new File(walDir, listFactory.getFileNamePrefix()),
+                                STREAM_ID.getNamespace() + "/" + STREAM_ID.getStream() + "/0").exists());
+  }
+
+  @Test
+  public void testRecovery() throws Exception {
+    File walDir = TMP_FOLDER.newFolder();
+    ListStreamFileWriterFactory listFactory = new ListStreamFileWriterFactory();
+    StreamFileWriterFactory factory = new WriteAheadStreamFileWriterFactory(walDir, Long.MAX_VALUE, listFactory);
+
+    // Write some events successfully
+    FileWriter<StreamEvent> writer = factory.create(STREAM_CONFIG, 0);
+    for (int i = 0; i < 10; i++) {
+      writer.append(createEvent(i));
+    }
+    writer.flush();
+    writer.close();
+    verifyEvents(listFactory.getEvents(), 0, 10);
+
+    // Fails writing to the stream. Flushing to the log should still succeed
+    listFactory.setFailing(true);
+    writer = factory.create(STREAM_CONFIG, 0);
+    for (int i = 10; i < 20; i++) {
+      writer.append(createEvent(i));
+    }
+    writer.flush();
+    writer.close();
+    verifyEvents(listFactory.getEvents(), 0, 10);
+
+    // Opening the log again, as if the process restarted, should write the remaining events
+    listFactory.setFailing(false);
+    factory = new WriteAheadStreamFileWriterFactory(walDir, Long.MAX_VALUE, listFactory);
+    writer = factory.create(STREAM_CONFIG, 0);
+    for (int i = 20; i < 30; i++) {
+      writer.append(createEvent(i));
+    }
+    writer.flush();
+    writer.close();
+    verifyEvents(listFactory.getEvents(), 0, 30);
+  }
+
+  @Test
+  public void testMaxSize() throws Exception {
+    File walDir = TMP_FOLDER.newFolder();
+    ListStreamFileWriterFactory listFactory = new ListStreamFileWriterFactory();
+    listFactory.setFailing(true);
+    StreamFileWriterFactory factory = new WriteAheadStreamFileWriterFactory(walDir, 1024, listFactory);
+
+    FileWriter<StreamEvent> writer = factory.create(STREAM_CONFIG, 0);
+    try {
+      // Without writing to the stream, the log should be full after some flushes
+      for (int i = 0; i < 100; i++) {
+        writer.append(createEvent(i));
+        writer.flush();
+      }
+      Assert.fail("Expected the write-ahead log to be full");
+    } catch (WriteAheadLogFullException e) {
+      // Expected
+    } finally {
+      writer.close();
+    }
+
+    // All flushed events should be written once the stream is writable again
+    listFactory.setFailing(false);
+    writer = factory.create(STREAM_CONFIG, 0);
+    writer.close();
+    List<StreamEvent> events = listFactory.getEvents();
+    Assert.assertFalse(events.isEmpty());
+    verifyEvents(events, 0, events.size());
+  }
+
+  @Test
+  public void testDrainAfterPartitionEnd() throws Exception {
+    LocationFactory locationFactory = new LocalLocationFactory(TMP_FOLDER.newFolder());
+    Location location = locationFactory.create(STREAM_ID.getStream());
+    Assert.assertTrue(location.mkdirs());
+    long partitionDuration = 2000L;
+    final StreamConfig config = new StreamConfig(STREAM_ID, partitionDuration, 10000L, Long.MAX_VALUE,
+                                                 location, null, 1000);
+
+    // A factory of the regular stream writer, which fails until the events are expected to be written
+    final AtomicBoolean failing = new AtomicBoolean(true);
+    final Impersonator impersonator = new DefaultImpersonator(CConfiguration.create(), new UnsupportedUGIProvider());
+    StreamFileWriterFactory streamFactory = new StreamFileWriterFactory() {
+      @Override
+      public String getFileNamePrefix() {
+        return "file";
+      }
+
+      @Override
+      public FileWriter<StreamEvent> create(StreamConfig config, int generation) throws IOException {
+        if (failing.get()) {
+          throw new IOException("Failed to write to the stream");
+        }
+        return new TimePartitionedStreamFileWriter(config.getLocation(), config.getPartitionDuration(),
+                                                   getFileNamePrefix(), config.getIndexInterval(),
+                                                   config.getStreamId(), impersonator);
+      }
+    };
+    StreamFileWriterFactory factory = new WriteAheadStreamFileWriterFactory(TMP_FOLDER.newFolder(), Long.MAX_VALUE,
+                                                                            streamFactory);
+
+    // Commit events to the log, with timestamps in the current partition
+    long partitionStart = StreamUtils.getPartitionStartTime(System.currentTimeMillis(), partitionDuration);
+    FileWriter<StreamEvent> writer = factory.create(config, 0);
+    for (int i = 0; i < 10; i++) {
+      writer.append(new StreamEvent(ImmutableMap.of("index", Integer.toString(i)),
+                                    ByteBuffer.wrap(Bytes.toBytes("Event " + i)), System.currentTimeMillis()));
+    }
+    writer.flush();
+
+    // A live reader of the partition should move to the next partitions once the partition ended
+    Location eventLocation = StreamUtils.createStreamLocation(
+      StreamUtils.createPartitionLocation(location, partitionStart, partitionDuration),
+      streamFactory.getFileNamePrefix(), 0, StreamFileType.EVENT);
+    FileReader<PositionStreamEvent, StreamFileOffset> reader =
+      new LiveStreamFileReader(config, new StreamFileOffset(eventLocation, 0L, 0), 100);
+    List<PositionStreamEvent> events = new ArrayList<>();
+    while (System.currentTimeMillis() < partitionStart + partitionDuration * 2) {
+      Assert.assertEquals(0, reader.read(events, 10, 100, TimeUnit.MILLISECONDS));
+    }
+
+    // Write the events from the log to the stream, which should be read by the live reader
+    failing.set(false);
+    writer.close();
+
+    Stopwatch stopwatch = new Stopwatch().start();
+    while (events.size() < 10 && stopwatch.elapsedTime(TimeUnit.SECONDS) < 10) {
+      reader.read(events, 10, 100, TimeUnit.MILLISECONDS);
+    }
+    reader.close();
+
+    Assert.assertEquals(10, events.size());
+    long lastTimestamp = partitionStart + partitionDuration;
+    for (int i = 0; i < 10; i++) {
+      StreamEvent event = events.get(i);
+      Assert.assertEquals(Integer.toString(i), event.getHeaders().get("index"));
+      Assert.assertEquals("Event " + i, Bytes.toString(event.getBody()));
+      Assert.assertTrue(event.getTimestamp() >= lastTimestamp);
+      lastTimestamp = event.getTimestamp();
+    }
+  }
+
+  private StreamEvent createEvent(int i) {
+    return new StreamEvent(ImmutableMap.of("index", Integer.toString(i)),
+                           ByteBuffer.wrap(Bytes.toBytes("Event " + i)), i);
+  }
+
+  private void verifyEvents(List<StreamEvent> events, int start, int end) {
+    Assert.assertEquals(end - start, events.size());
+    for (int i = start; i < end; i++) {
+      StreamEvent event = events.get(i - start);
+      Assert.assertEquals(i, event.getTimestamp());
+      Assert.assertEquals(Integer.toString(i), event.getHeaders().get("index"));
+      Assert.assertEquals("Event " + i, Bytes.toString(event.getBody()));
+    }
+  }
+
+  /**
+   * A {@link StreamFileWriterFactory} that writes events to a list when the writer is flushed.
+   */
+  private static final class ListStreamFileWriterFactory implements StreamFileWriterFactory {
+
+    private final List<StreamEvent> events = Collections.synchronizedList(new ArrayList<StreamEvent>());
+    private volatile boolean failing;
+
+    void setFailing(boolean failing) {
+      this.failing = failing;
+    }
+
+    List<StreamEvent> getEvents() {
+      synchronized (events) {
+        return new ArrayList<>(events);
+      }
+    }
+
+    @Override
+    public String getFileNamePrefix() {
+      return "file";
+    }
+
+    @Override
+    public FileWriter<StreamEvent> create(StreamConfig config, int generation) throws IOException {
+      return new FileWriter<StreamEvent>() {
+
+        private final List<StreamEvent> pending = new ArrayList<>();
+
+        @Override
+        public void append(StreamEvent event) throws IOException {
+          if (failing) {
+            throw new IOException("Failed to write to the stream");
+          }
+          pending.add(new StreamEvent(event));
+        }
+
+        @Override
+        public void appendAll(Iterator<? extends StreamEvent> events) throws IOException {
+          while (events.hasNext()) {
+            append(events.next());
+          }
+        }
+
+        @Override
+        public void flush() throws IOException {
+          if (failing) {
+            throw new IOException("Failed to write to the stream");
+          }
+          events.addAll(pending);
+          pending.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+          flush();
+        }
+      };
+    }
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -31,6 +31,7 @@ import org.apache.avro.reflect.ReflectDatumWriter;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -39,8 +40,19 @@ import java.util.Map;
 public class AvroStreamBodyConsumerTest extends StreamBodyConsumerTestBase {
 
   @Override
-  protected ContentInfo generateFile(final int recordCount) throws IOException {
-    return new FileContentInfo(generateAvroFile(TMP_FOLDER.newFile(), recordCount)) {
+  protected ContentInfo generateFile(int recordCount) throws IOException {
+    return generateFile(recordCount, CodecFactory.snappyCodec());
+  }
+
+  @Override
+  protected List<ContentInfo> generateFiles(int recordCount) throws IOException {
+    return ImmutableList.of(generateFile(recordCount, CodecFactory.nullCodec()),
+                            generateFile(recordCount, CodecFactory.deflateCodec(6)),
+                            generateFile(recordCount, CodecFactory.snappyCodec()));
+  }
+
+  private ContentInfo generateFile(final int recordCount, CodecFactory codec) throws IOException {
+    return new FileContentInfo(generateAvroFile(TMP_FOLDER.newFile(), recordCount, codec)) {
 
       @Override
       public boolean verify(Map<String, String> headers,
@@ -64,11 +76,11 @@ public class AvroStreamBodyConsumerTest extends StreamBodyConsumerTestBase {
   }
 
   @Override
-  protected BodyConsumer createBodyConsumer(ContentWriterFactory contentWriterFactory) {
-    return new AvroStreamBodyConsumer(contentWriterFactory);
+  protected BodyConsumer createBodyConsumer(ContentWriterFactory contentWriterFactory, long maxInFlightBytes) {
+    return new AvroStreamBodyConsumer(contentWriterFactory, maxInFlightBytes);
   }
 
-  private File generateAvroFile(File file, int recordCount) throws IOException {
+  private File generateAvroFile(File file, int recordCount, CodecFactory codec) throws IOException {
     Schema schema = Schema.createRecord("Record", null, null, false);
     schema.setFields(ImmutableList.of(
       new Schema.Field("id", Schema.create(Schema.Type.INT), null, null),
@@ -78,7 +90,7 @@ public class AvroStreamBodyConsumerTest extends StreamBodyConsumerTestBase {
 
     DataFileWriter<Record> writer = new DataFileWriter<>(new ReflectDatumWriter<>(Record.class));
     try {
-      writer.setCodec(CodecFactory.snappyCodec());
+      writer.setCodec(codec);
       writer.create(schema, file);
 
       for (int i = 0; i < recordCount; i++) {
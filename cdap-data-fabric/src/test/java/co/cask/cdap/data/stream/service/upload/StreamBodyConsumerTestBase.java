@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -40,6 +40,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -57,14 +58,27 @@ public abstract class StreamBodyConsumerTestBase {
 
   protected abstract ContentInfo generateFile(int recordCount) throws IOException;
 
-  protected abstract BodyConsumer createBodyConsumer(ContentWriterFactory contentWriterFactory);
+  /**
+   * Generates the files uploaded by {@link #testChunkedContent()}. By default it is the single file generated by
+   * {@link #generateFile(int)}. Sub-classes can override it to cover the different encodings of the content.
+   */
+  protected List<ContentInfo> generateFiles(int recordCount) throws IOException {
+    return Collections.singletonList(generateFile(recordCount));
+  }
+
+  protected abstract BodyConsumer createBodyConsumer(ContentWriterFactory contentWriterFactory,
+                                                     long maxInFlightBytes);
 
   @Test
   public void testChunkedContent() throws Exception {
     int recordCount = 1000;
-    // Generate a file for upload
-    ContentInfo contentInfo = generateFile(recordCount);
+    // Generate the files for upload
+    for (ContentInfo contentInfo : generateFiles(recordCount)) {
+      testChunkedContent(contentInfo, recordCount);
+    }
+  }
 
+  private void testChunkedContent(ContentInfo contentInfo, int recordCount) throws Exception {
     final Map<String, String> contentHeaders = Maps.newHashMap();
     final TestContentWriter contentWriter = new TestContentWriter();
     BodyConsumer bodyConsumer = createBodyConsumer(new ContentWriterFactory() {
@@ -78,7 +92,7 @@ public abstract class StreamBodyConsumerTestBase {
         contentHeaders.putAll(headers);
         return contentWriter;
       }
-    });
+    }, Long.MAX_VALUE);
     TestHttpResponder responder = new TestHttpResponder();
 
     // Feed the file content in small chunk
@@ -96,6 +110,30 @@ public abstract class StreamBodyConsumerTestBase {
     }));
   }
 
+  @Test
+  public void testInFlightLimit() throws Exception {
+    ContentInfo contentInfo = generateFile(1000);
+
+    final TestContentWriter contentWriter = new TestContentWriter();
+    BodyConsumer bodyConsumer = createBodyConsumer(new ContentWriterFactory() {
+      @Override
+      public StreamId getStream() {
+        return new StreamId("test_namespace", "test-stream");
+      }
+
+      @Override
+      public ContentWriter create(Map<String, String> headers) throws IOException {
+        return contentWriter;
+      }
+    }, 4);
+    TestHttpResponder responder = new TestHttpResponder();
+
+    // Content that can't be processed within the limit should be rejected
+    sendChunks(contentInfo.getContentSupplier(), 10, bodyConsumer, responder);
+    Assert.assertEquals(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE, responder.getResponseStatus());
+    Assert.assertEquals(0, contentWriter.getContent().remaining());
+  }
+
   /**
    * Sends content as provided by the given {@link InputSupplier} as small chunks to the given
    * {@link BodyConsumer}.
@@ -63,8 +63,8 @@ public class TextStreamBodyConsumerTest extends StreamBodyConsumerTestBase {
   }
 
   @Override
-  protected BodyConsumer createBodyConsumer(ContentWriterFactory contentWriterFactory) {
-    return new TextStreamBodyConsumer(contentWriterFactory);
+  protected BodyConsumer createBodyConsumer(ContentWriterFactory contentWriterFactory, long maxInFlightBytes) {
+    return new TextStreamBodyConsumer(contentWriterFactory, maxInFlightBytes);
   }
 
   private File generateFile(File file, int recordCount) throws IOException {
@@ -0,0 +1,184 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.audit;
+
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.api.metrics.MetricsCollectionService;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.guice.ConfigModule;
+import co.cask.cdap.common.guice.DiscoveryRuntimeModule;
+import co.cask.cdap.common.metrics.NoOpMetricsCollectionService;
+import co.cask.cdap.common.utils.Tasks;
+import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.data.RawMessage;
+import co.cask.cdap.messaging.guice.MessagingServerRuntimeModule;
+import co.cask.cdap.proto.audit.AuditMessage;
+import co.cask.cdap.proto.audit.AuditPayload;
+import co.cask.cdap.proto.audit.AuditType;
+import co.cask.cdap.proto.codec.AuditMessagePayloadCodec;
+import co.cask.cdap.proto.id.DatasetId;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.TopicId;
+import com.google.common.util.concurrent.Service;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link BatchingAuditPublisher}.
+ */
+public class BatchingAuditPublisherTest {
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  private CConfiguration cConf;
+  private MessagingService messagingService;
+  private TopicId auditTopic;
+
+  @Before
+  public void init() throws Exception {
+    cConf = CConfiguration.create();
+    cConf.set(Constants.CFG_LOCAL_DATA_DIR, TEMP_FOLDER.newFolder().getAbsolutePath());
+    Injector injector = Guice.createInjector(
+      new ConfigModule(cConf),
+      new DiscoveryRuntimeModule().getInMemoryModules(),
+      new MessagingServerRuntimeModule().getInMemoryModules(),
+      new AbstractModule() {
+        @Override
+        protected void configure() {
+          bind(MetricsCollectionService.class).toInstance(new NoOpMetricsCollectionService());
+        }
+      });
+    messagingService = injector.getInstance(MessagingService.class);
+    if (messagingService instanceof Service) {
+      ((Service) messagingService).startAndWait();
+    }
+    auditTopic = NamespaceId.SYSTEM.topic(cConf.get(Constants.Audit.TOPIC));
+  }
+
+  @After
+  public void stop() throws Exception {
+    if (messagingService instanceof Service) {
+      ((Service) messagingService).stopAndWait();
+    }
+  }
+
+  @Test
+  public void testBatchSizeFlush() throws Exception {
+    BatchingAuditPublisher publisher = createPublisher(3, TimeUnit.HOURS.toMillis(1));
+    publisher.startAndWait();
+    try {
+      publish(publisher, 0, 2);
+      Assert.assertTrue(fetchBatches().isEmpty());
+
+      // The third message fills the batch, which is published in the caller thread
+      publish(publisher, 2, 3);
+      List<List<AuditMessage>> batches = fetchBatches();
+      Assert.assertEquals(1, batches.size());
+      assertMessages(0, 3, batches.get(0));
+    } finally {
+      publisher.stopAndWait();
+    }
+  }
+
+  @Test
+  public void testLingerFlush() throws Exception {
+    BatchingAuditPublisher publisher = createPublisher(100, 100L);
+    publisher.startAndWait();
+    try {
+      publish(publisher, 0, 5);
+      Tasks.waitFor(1, new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          return fetchBatches().size();
+        }
+      }, 10, TimeUnit.SECONDS, 50, TimeUnit.MILLISECONDS);
+      assertMessages(0, 5, fetchBatches().get(0));
+    } finally {
+      publisher.stopAndWait();
+    }
+  }
+
+  @Test
+  public void testStopFlush() throws Exception {
+    BatchingAuditPublisher publisher = createPublisher(4, TimeUnit.HOURS.toMillis(1));
+    publisher.startAndWait();
+    publish(publisher, 0, 10);
+    // Two full batches are published right away, the remaining messages are published on stop
+    Assert.assertEquals(2, fetchBatches().size());
+    publisher.stopAndWait();
+
+    // Messages published after stop are published right away
+    publish(publisher, 10, 11);
+
+    List<AuditMessage> messages = new ArrayList<>();
+    for (List<AuditMessage> batch : fetchBatches()) {
+      messages.addAll(batch);
+    }
+    // All messages are published in order
+    assertMessages(0, 11, messages);
+  }
+
+  private BatchingAuditPublisher createPublisher(int batchSize, long lingerMillis) {
+    CConfiguration publisherConf = CConfiguration.copy(cConf);
+    publisherConf.setInt(Constants.Audit.PUBLISH_BATCH_SIZE, batchSize);
+    publisherConf.setLong(Constants.Audit.PUBLISH_LINGER_MS, lingerMillis);
+    return new BatchingAuditPublisher(publisherConf, messagingService);
+  }
+
+  private void publish(AuditPublisher publisher, int from, int to) {
+    for (int i = from; i < to; i++) {
+      publisher.publish(getDataset(i), AuditType.UPDATE, AuditPayload.EMPTY_PAYLOAD);
+    }
+  }
+
+  private List<List<AuditMessage>> fetchBatches() throws Exception {
+    List<List<AuditMessage>> batches = new ArrayList<>();
+    try (CloseableIterator<RawMessage> iterator = messagingService.prepareFetch(auditTopic).fetch()) {
+      while (iterator.hasNext()) {
+        batches.add(AuditMessagePayloadCodec.decode(iterator.next().getPayload()));
+      }
+    }
+    return batches;
+  }
+
+  private void assertMessages(int from, int to, List<AuditMessage> messages) {
+    Assert.assertEquals(to - from, messages.size());
+    for (int i = from; i < to; i++) {
+      AuditMessage message = messages.get(i - from);
+      Assert.assertEquals(getDataset(i), message.getEntityId());
+      Assert.assertEquals(AuditType.UPDATE, message.getType());
+    }
+  }
+
+  private DatasetId getDataset(int i) {
+    return NamespaceId.DEFAULT.dataset("ds" + i);
+  }
+}
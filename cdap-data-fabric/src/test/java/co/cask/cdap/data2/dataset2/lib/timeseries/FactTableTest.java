@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -269,6 +269,96 @@ public class FactTableTest {
 
   }
 
+  @Test
+  public void testSearchWithUnindexedFacts() throws Exception {
+    InMemoryTableService.create("UnindexedEntityTable");
+    InMemoryTableService.create("UnindexedDataTable");
+    int resolution = 10;
+    int rollTimebaseInterval = 2;
+
+    InMemoryMetricsTable metricsTable = new InMemoryMetricsTable("UnindexedDataTable");
+    EntityTable entityTable = new EntityTable(new InMemoryMetricsTable("UnindexedEntityTable"));
+    long ts = ((System.currentTimeMillis() / 1000) / resolution) * resolution;
+
+    // facts written before the dimension-value index existed, without index rows
+    FactCodec codec = new FactCodec(entityTable, resolution, rollTimebaseInterval);
+    List<DimensionValue> oldDimensions = dimValues("dim1", "value1", "dim2", "old");
+    metricsTable.increment(codec.createRowKey(oldDimensions, "old.metric", ts - 100),
+                           ImmutableMap.of(codec.createColumn(ts - 100), 1L));
+
+    FactTable table = new FactTable(metricsTable, entityTable, resolution, rollTimebaseInterval);
+    writeInc(table, "new.metric", ts + 100, 1, "dim1", "value1", "dim2", "new");
+
+    List<String> aggregation = ImmutableList.of("dim1", "dim2");
+    Map<String, String> slice = ImmutableMap.of("dim1", "value1");
+
+    // time range with the old facts
+    Assert.assertEquals(ImmutableSet.of(new DimensionValue("dim2", "old"), new DimensionValue("dim2", "new")),
+                        table.findSingleDimensionValue(aggregation, slice, ts - 200, ts + 200));
+    Assert.assertEquals(ImmutableSet.of("old.metric", "new.metric"),
+                        table.findMeasureNames(aggregation, slice, ts - 200, ts + 200));
+
+    // time range with only the new facts
+    Assert.assertEquals(ImmutableSet.of(new DimensionValue("dim2", "new")),
+                        table.findSingleDimensionValue(aggregation, slice, ts + 50, ts + 200));
+    Assert.assertEquals(ImmutableSet.of("new.metric"), table.findMeasureNames(aggregation, slice, ts + 50, ts + 200));
+
+    // time range without facts
+    Assert.assertEquals(ImmutableSet.<DimensionValue>of(),
+                        table.findSingleDimensionValue(aggregation, slice, ts + 500, ts + 600));
+    Assert.assertEquals(ImmutableSet.<String>of(), table.findMeasureNames(aggregation, slice, ts + 500, ts + 600));
+  }
+
+  @Test
+  public void testSearchAfterDelete() throws Exception {
+    InMemoryTableService.create("SearchDeleteEntityTable");
+    InMemoryTableService.create("SearchDeleteDataTable");
+    int resolution = 10;
+    int rollTimebaseInterval = 2;
+
+    FactTable table = new FactTable(new InMemoryMetricsTable("SearchDeleteDataTable"),
+                                    new EntityTable(new InMemoryMetricsTable("SearchDeleteEntityTable")),
+                                    resolution, rollTimebaseInterval);
+    long ts = ((System.currentTimeMillis() / 1000) / resolution) * resolution;
+
+    writeInc(table, "metric1", ts, 1, "dim1", "value1", "dim2", "a");
+    writeInc(table, "metric2", ts, 1, "dim1", "value1", "dim2", "a");
+    writeInc(table, "metric1", ts, 1, "dim1", "value1", "dim2", "b");
+
+    List<String> aggregation = ImmutableList.of("dim1", "dim2");
+    Map<String, String> slice = ImmutableMap.of("dim1", "value1");
+    long startTs = ts - resolution;
+    long endTs = ts + resolution;
+
+    Assert.assertEquals(ImmutableSet.of(new DimensionValue("dim2", "a"), new DimensionValue("dim2", "b")),
+                        table.findSingleDimensionValue(aggregation, slice, startTs, endTs));
+    Assert.assertEquals(ImmutableSet.of("metric1", "metric2"),
+                        table.findMeasureNames(aggregation, slice, startTs, endTs));
+
+    // deleted dimension values are not found anymore
+    table.delete(new FactScan(startTs, endTs, dimValues("dim1", "value1", "dim2", "b")));
+    Assert.assertEquals(ImmutableSet.of(new DimensionValue("dim2", "a")),
+                        table.findSingleDimensionValue(aggregation, slice, startTs, endTs));
+    Assert.assertEquals(ImmutableSet.of("metric1", "metric2"),
+                        table.findMeasureNames(aggregation, slice, startTs, endTs));
+
+    // deleted measures are not found anymore
+    table.delete(new FactScan(startTs, endTs, "metric2", dimValues("dim1", "value1", "dim2", "a")));
+    Assert.assertEquals(ImmutableSet.of(new DimensionValue("dim2", "a")),
+                        table.findSingleDimensionValue(aggregation, slice, startTs, endTs));
+    Assert.assertEquals(ImmutableSet.of("metric1"), table.findMeasureNames(aggregation, slice, startTs, endTs));
+    Assert.assertEquals(ImmutableSet.of("metric1"),
+                        table.findMeasureNames(aggregation, ImmutableMap.of("dim1", "value1", "dim2", "a"),
+                                               startTs, endTs));
+
+    // writing deleted facts again makes them found again
+    writeInc(table, "metric2", ts, 1, "dim1", "value1", "dim2", "b");
+    Assert.assertEquals(ImmutableSet.of(new DimensionValue("dim2", "a"), new DimensionValue("dim2", "b")),
+                        table.findSingleDimensionValue(aggregation, slice, startTs, endTs));
+    Assert.assertEquals(ImmutableSet.of("metric1", "metric2"),
+                        table.findMeasureNames(aggregation, slice, startTs, endTs));
+  }
+
   private void testMetricNamesSearch(FactTable table, List<String> aggregationList ,
                                      Map<String, String> sliceBy,
                                      ImmutableSet<String> expectedResuls) throws Exception {
@@ -20,6 +20,7 @@ import co.cask.cdap.api.dataset.DatasetAdmin;
 import co.cask.cdap.api.dataset.DatasetProperties;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.common.BadRequestException;
+import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.data2.datafabric.dataset.DatasetsUtil;
 import co.cask.cdap.data2.dataset2.DatasetFrameworkTestUtil;
 import co.cask.cdap.data2.metadata.indexer.Indexer;
@@ -912,6 +913,48 @@ public class MetadataDatasetTest {
     doTestHistory(dataset, stream1, "s_");
   }
 
+  @Test
+  public void testSnapshotBeforeTimeForMultipleEntities() throws Exception {
+    final MetadataDataset dataset =
+      getDataset(DatasetFrameworkTestUtil.NAMESPACE_ID.dataset("testSnapshotMultipleEntities"));
+    TransactionExecutor txnl = dsFrameworkUtil.newInMemoryTransactionExecutor((TransactionAware) dataset);
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        dataset.setProperty(flow1, "fKey", "fValue1");
+      }
+    });
+    TimeUnit.MILLISECONDS.sleep(1);
+    final long time1 = System.currentTimeMillis();
+    TimeUnit.MILLISECONDS.sleep(1);
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        dataset.setProperty(flow1, "fKey", "fValue2");
+        dataset.addTags(dataset1, "dTag");
+      }
+    });
+    TimeUnit.MILLISECONDS.sleep(1);
+    final long time2 = System.currentTimeMillis();
+    final Set<NamespacedEntityId> entities = ImmutableSet.<NamespacedEntityId>of(flow1, dataset1, stream1);
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        // Before the latest changes, the snapshots are read from the history
+        Set<String> noTags = Collections.emptySet();
+        Assert.assertEquals(ImmutableSet.of(new Metadata(flow1, ImmutableMap.of("fKey", "fValue1"), noTags),
+                                            new Metadata(dataset1), new Metadata(stream1)),
+                            dataset.getSnapshotBeforeTime(entities, time1));
+        // After the latest changes, the latest snapshots are returned
+        Map<String, String> noProperties = Collections.emptyMap();
+        Assert.assertEquals(ImmutableSet.of(new Metadata(flow1, ImmutableMap.of("fKey", "fValue2"), noTags),
+                                            new Metadata(dataset1, noProperties, ImmutableSet.of("dTag")),
+                                            new Metadata(stream1)),
+                            dataset.getSnapshotBeforeTime(entities, time2));
+      }
+    });
+  }
+
   @Test
   public void testIndexRebuilding() throws Exception {
     final MetadataDataset dataset =
@@ -992,6 +1035,69 @@ public class MetadataDatasetTest {
     });
   }
 
+  @Test
+  public void testIndexRebuildingInRanges() throws Exception {
+    final MetadataDataset dataset =
+      getDataset(DatasetFrameworkTestUtil.NAMESPACE_ID.dataset("testIndexRebuildingInRanges"));
+    TransactionExecutor txnl = dsFrameworkUtil.newInMemoryTransactionExecutor((TransactionAware) dataset);
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        Indexer indexer = new ReversingIndexer();
+        dataset.setMetadata(new MetadataEntry(flow1, "flowKey", "flowValue"), Collections.singleton(indexer));
+        dataset.setMetadata(new MetadataEntry(dataset1, "datasetKey1", "datasetValue1"),
+                            Collections.singleton(indexer));
+        dataset.setMetadata(new MetadataEntry(dataset1, "datasetKey2", "datasetValue2"),
+                            Collections.singleton(indexer));
+      }
+    });
+    final String namespaceId = flow1.getNamespace();
+    final Set<EntityTypeSimpleName> targetTypes = Collections.singleton(EntityTypeSimpleName.ALL);
+    final String datasetRange = EntityTypeSimpleName.DATASET.getSerializedForm();
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        Assert.assertEquals(ImmutablePair.of(2, (byte[]) null),
+                            dataset.countValuesToRebuild(datasetRange, null, 10));
+        // rebuild one value of the dataset range
+        Assert.assertEquals(1, dataset.rebuildIndexes(datasetRange, 1));
+      }
+    });
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        // the rebuild resumes after the value that has been rebuilt already
+        Assert.assertEquals(ImmutablePair.of(1, (byte[]) null),
+                            dataset.countValuesToRebuild(datasetRange, null, 10));
+        Assert.assertEquals(1, dataset.rebuildIndexes(datasetRange, 1));
+        Assert.assertEquals(0, dataset.rebuildIndexes(datasetRange, 1));
+        Assert.assertEquals(ImmutablePair.of(0, (byte[]) null),
+                            dataset.countValuesToRebuild(datasetRange, null, 10));
+      }
+    });
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        Assert.assertEquals(1, searchByDefaultIndex(dataset, namespaceId, "datasetValue1", targetTypes).size());
+        Assert.assertEquals(1, searchByDefaultIndex(dataset, namespaceId, "datasetValue2", targetTypes).size());
+        // the program range has not been rebuilt yet
+        Assert.assertTrue(searchByDefaultIndex(dataset, namespaceId, "flowValue", targetTypes).isEmpty());
+        String programRange = EntityTypeSimpleName.PROGRAM.getSerializedForm();
+        Assert.assertEquals(1, dataset.rebuildIndexes(programRange, 10));
+        Assert.assertEquals(0, dataset.rebuildIndexes(programRange, 10));
+      }
+    });
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        Assert.assertEquals(1, searchByDefaultIndex(dataset, namespaceId, "flowValue", targetTypes).size());
+        // once the progress is deleted, the next rebuild starts from the beginning
+        dataset.deleteRebuildProgress();
+        Assert.assertEquals(2, dataset.rebuildIndexes(datasetRange, 10));
+      }
+    });
+  }
+
   @Test
   public void testIndexDeletion() throws Exception {
     final MetadataDataset dataset =
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,17 +16,24 @@
 
 package co.cask.cdap.data2.metadata.lineage;
 
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.DatasetProperties;
+import co.cask.cdap.api.dataset.table.Row;
+import co.cask.cdap.api.dataset.table.Scanner;
+import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.common.app.RunIds;
 import co.cask.cdap.data2.datafabric.dataset.DatasetsUtil;
 import co.cask.cdap.data2.dataset2.DatasetFrameworkTestUtil;
+import co.cask.cdap.data2.dataset2.lib.table.MDSKey;
 import co.cask.cdap.proto.ProgramType;
 import co.cask.cdap.proto.id.DatasetId;
 import co.cask.cdap.proto.id.FlowletId;
 import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.NamespacedEntityId;
 import co.cask.cdap.proto.id.ProgramId;
 import co.cask.cdap.proto.id.ProgramRunId;
 import co.cask.cdap.proto.id.StreamId;
+import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -38,6 +45,7 @@ import org.junit.ClassRule;
 import org.junit.Test;
 
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests storage and retrieval of Dataset accesses by Programs in {@link LineageDataset}.
@@ -188,6 +196,167 @@ public class LineageDatasetTest {
     });
   }
 
+  @Test
+  public void testAdjacentRelations() throws Exception {
+    final LineageDataset lineageDataset = getLineageDataset("testAdjacentRelations");
+    Assert.assertNotNull(lineageDataset);
+    TransactionExecutor txnl = dsFrameworkUtil.newInMemoryTransactionExecutor((TransactionAware) lineageDataset);
+
+    final long day = TimeUnit.DAYS.toMillis(1);
+    final RunId runId1 = RunIds.generate(10000);
+    final RunId runId2 = RunIds.generate(day + 10000);
+    final RunId runId3 = RunIds.generate(2 * day + 10000);
+
+    final DatasetId datasetInstance1 = NamespaceId.DEFAULT.dataset("dataset1");
+    final DatasetId datasetInstance2 = NamespaceId.DEFAULT.dataset("dataset2");
+    final StreamId stream1 = NamespaceId.DEFAULT.stream("stream1");
+
+    final ProgramId program1 = NamespaceId.DEFAULT.app("app1").flow("flow1");
+    final FlowletId flowlet1 = program1.flowlet("flowlet1");
+    final ProgramId program2 = NamespaceId.DEFAULT.app("app2").worker("worker2");
+
+    final ProgramRunId run11 = program1.run(runId1.getId());
+    final ProgramRunId run22 = program2.run(runId2.getId());
+    final ProgramRunId run23 = program2.run(runId3.getId());
+
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        lineageDataset.addAccess(run11, stream1, AccessType.READ, 10000, flowlet1);
+        lineageDataset.addAccess(run11, datasetInstance1, AccessType.WRITE, 10000, flowlet1);
+        lineageDataset.addAccess(run22, datasetInstance1, AccessType.READ, day + 10000);
+        lineageDataset.addAccess(run22, datasetInstance2, AccessType.WRITE, day + 10000);
+        lineageDataset.addAccess(run23, datasetInstance1, AccessType.READ, 2 * day + 10000);
+        lineageDataset.addAccess(run23, datasetInstance2, AccessType.WRITE, 2 * day + 10000);
+      }
+    });
+
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        // Adjacency index gives the same relations as the access rows
+        for (NamespacedEntityId entity : toSet(datasetInstance1, datasetInstance2, stream1, program1, program2)) {
+          Assert.assertEquals(getRelations(lineageDataset, entity, 0, 3 * day),
+                              lineageDataset.getAdjacentRelations(ImmutableSet.of(entity), 0, 3 * day,
+                                                                  Predicates.<Relation>alwaysTrue()));
+        }
+
+        // Multiple entities are read together
+        Assert.assertEquals(
+          ImmutableSet.of(new Relation(stream1, program1, AccessType.READ, runId1, ImmutableSet.of(flowlet1)),
+                          new Relation(datasetInstance1, program1, AccessType.WRITE, runId1,
+                                       ImmutableSet.of(flowlet1)),
+                          new Relation(datasetInstance1, program2, AccessType.READ, runId2),
+                          new Relation(datasetInstance2, program2, AccessType.WRITE, runId2),
+                          new Relation(datasetInstance1, program2, AccessType.READ, runId3),
+                          new Relation(datasetInstance2, program2, AccessType.WRITE, runId3)),
+          lineageDataset.getAdjacentRelations(ImmutableSet.of(program1, program2), 0, 3 * day,
+                                              Predicates.<Relation>alwaysTrue())
+        );
+
+        // Time range within days
+        Assert.assertEquals(
+          ImmutableSet.of(new Relation(datasetInstance1, program2, AccessType.READ, runId2)),
+          lineageDataset.getAdjacentRelations(ImmutableSet.of(datasetInstance1), 20000, day + 10000,
+                                              Predicates.<Relation>alwaysTrue())
+        );
+
+        // Filter
+        Assert.assertEquals(
+          ImmutableSet.of(new Relation(datasetInstance2, program2, AccessType.WRITE, runId3)),
+          lineageDataset.getAdjacentRelations(ImmutableSet.of(datasetInstance2), 0, 3 * day,
+                                              new Predicate<Relation>() {
+                                                @Override
+                                                public boolean apply(Relation input) {
+                                                  return runId3.equals(input.getRun());
+                                                }
+                                              })
+        );
+      }
+    });
+  }
+
+  @Test
+  public void testAdjacentRelationsWithoutIndex() throws Exception {
+    DatasetId tableId = DatasetFrameworkTestUtil.NAMESPACE_ID.dataset("testAdjacentRelationsWithoutIndex");
+    final Table table = DatasetsUtil.getOrCreateDataset(dsFrameworkUtil.getFramework(), tableId, Table.class.getName(),
+                                                        DatasetProperties.EMPTY, null, null);
+    final LineageDataset lineageDataset = new LineageDataset("testAdjacentRelationsWithoutIndex", table);
+    TransactionExecutor txnl = dsFrameworkUtil.newInMemoryTransactionExecutor((TransactionAware) lineageDataset);
+
+    final long day = TimeUnit.DAYS.toMillis(1);
+    final RunId runId1 = RunIds.generate(10000);
+    final RunId runId2 = RunIds.generate(day + 10000);
+    final RunId runId3 = RunIds.generate(2 * day + 10000);
+
+    final DatasetId datasetInstance1 = NamespaceId.DEFAULT.dataset("dataset1");
+    final StreamId stream1 = NamespaceId.DEFAULT.stream("stream1");
+    final ProgramId program1 = NamespaceId.DEFAULT.app("app1").worker("worker1");
+    final ProgramId program2 = NamespaceId.DEFAULT.app("app2").worker("worker2");
+
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        lineageDataset.addAccess(program1.run(runId1.getId()), stream1, AccessType.READ, 10000);
+        lineageDataset.addAccess(program1.run(runId1.getId()), datasetInstance1, AccessType.WRITE, 10000);
+        lineageDataset.addAccess(program2.run(runId2.getId()), datasetInstance1, AccessType.READ, day + 10000);
+
+        // Remove the adjacency index, as for accesses recorded before the index existed
+        for (char marker : new char[] { 'a', 'i' }) {
+          byte[] prefix = new MDSKey.Builder().add(marker).build().getKey();
+          try (Scanner scanner = table.scan(prefix, Bytes.stopKeyForPrefix(prefix))) {
+            Row row;
+            while ((row = scanner.next()) != null) {
+              table.delete(row.getRow());
+            }
+          }
+        }
+      }
+    });
+
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        lineageDataset.addAccess(program2.run(runId3.getId()), datasetInstance1, AccessType.READ, 2 * day + 10000);
+      }
+    });
+
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        // Accesses recorded before the index are found by scanning the access rows
+        Set<Relation> expected = ImmutableSet.of(
+          new Relation(datasetInstance1, program1, AccessType.WRITE, runId1),
+          new Relation(datasetInstance1, program2, AccessType.READ, runId2),
+          new Relation(datasetInstance1, program2, AccessType.READ, runId3));
+        Assert.assertEquals(expected, lineageDataset.getAdjacentRelations(ImmutableSet.of(datasetInstance1), 0,
+                                                                          3 * day, Predicates.<Relation>alwaysTrue()));
+        Assert.assertEquals(
+          ImmutableSet.of(new Relation(stream1, program1, AccessType.READ, runId1),
+                          new Relation(datasetInstance1, program1, AccessType.WRITE, runId1)),
+          lineageDataset.getAdjacentRelations(ImmutableSet.of(program1), 0, 3 * day,
+                                              Predicates.<Relation>alwaysTrue()));
+
+        // Runs started after the index exists are read from the index
+        Assert.assertEquals(
+          ImmutableSet.of(new Relation(datasetInstance1, program2, AccessType.READ, runId3)),
+          lineageDataset.getAdjacentRelations(ImmutableSet.of(datasetInstance1), 2 * day + 10000, 3 * day,
+                                              Predicates.<Relation>alwaysTrue()));
+      }
+    });
+  }
+
+  private static Set<Relation> getRelations(LineageDataset lineageDataset, NamespacedEntityId entity,
+                                            long start, long end) {
+    if (entity instanceof DatasetId) {
+      return lineageDataset.getRelations((DatasetId) entity, start, end, Predicates.<Relation>alwaysTrue());
+    }
+    if (entity instanceof StreamId) {
+      return lineageDataset.getRelations((StreamId) entity, start, end, Predicates.<Relation>alwaysTrue());
+    }
+    return lineageDataset.getRelations((ProgramId) entity, start, end, Predicates.<Relation>alwaysTrue());
+  }
+
   private static LineageDataset getLineageDataset(String instanceId) throws Exception {
     DatasetId id = DatasetFrameworkTestUtil.NAMESPACE_ID.dataset(instanceId);
     return DatasetsUtil.getOrCreateDataset(dsFrameworkUtil.getFramework(), id,
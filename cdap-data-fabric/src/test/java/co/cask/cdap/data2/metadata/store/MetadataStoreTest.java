@@ -40,6 +40,7 @@ import co.cask.cdap.proto.id.NamespacedEntityId;
 import co.cask.cdap.proto.id.ProgramId;
 import co.cask.cdap.proto.id.StreamId;
 import co.cask.cdap.proto.metadata.Metadata;
+import co.cask.cdap.proto.metadata.MetadataRecord;
 import co.cask.cdap.proto.metadata.MetadataScope;
 import co.cask.cdap.proto.metadata.MetadataSearchResponse;
 import co.cask.cdap.proto.metadata.MetadataSearchResultRecord;
@@ -411,6 +412,58 @@ public class MetadataStoreTest {
     );
   }
 
+  @Test
+  public void testAddMetadata() throws BadRequestException {
+    NamespaceId ns = new NamespaceId("batch");
+    ApplicationId app = ns.app("app");
+    StreamId stream = ns.stream("stream");
+    DatasetId dataset = ns.dataset("dataset");
+    store.setProperty(MetadataScope.USER, stream, "sKey", "oldValue");
+    auditPublisher.popMessages();
+
+    // records for the same entity are merged
+    store.addMetadata(ImmutableList.of(
+      new MetadataRecord(app, MetadataScope.USER, ImmutableMap.of("aKey", "aValue"), EMPTY_TAGS),
+      new MetadataRecord(dataset, MetadataScope.USER, EMPTY_PROPERTIES, ImmutableSet.of("dTag1")),
+      new MetadataRecord(stream, MetadataScope.USER, ImmutableMap.of("sKey", "newValue"), ImmutableSet.of("sTag")),
+      new MetadataRecord(dataset, MetadataScope.USER, EMPTY_PROPERTIES, ImmutableSet.of("dTag2"))
+    ));
+
+    Assert.assertEquals(new MetadataRecord(app, MetadataScope.USER, ImmutableMap.of("aKey", "aValue"), EMPTY_TAGS),
+                        store.getMetadata(MetadataScope.USER, app));
+    Assert.assertEquals(new MetadataRecord(dataset, MetadataScope.USER, EMPTY_PROPERTIES,
+                                           ImmutableSet.of("dTag1", "dTag2")),
+                        store.getMetadata(MetadataScope.USER, dataset));
+    Assert.assertEquals(new MetadataRecord(stream, MetadataScope.USER, ImmutableMap.of("sKey", "newValue"),
+                                           ImmutableSet.of("sTag")),
+                        store.getMetadata(MetadataScope.USER, stream));
+
+    // the indexes are updated
+    Assert.assertEquals(ImmutableSet.of(new MetadataSearchResultRecord(dataset)),
+                        stripMetadata(search(ns.getNamespace(), "dTag2").getResults()));
+    Assert.assertEquals(ImmutableSet.of(new MetadataSearchResultRecord(stream)),
+                        stripMetadata(search(ns.getNamespace(), "newValue").getResults()));
+    Assert.assertTrue(search(ns.getNamespace(), "oldValue").getResults().isEmpty());
+
+    // one audit message is published per entity
+    List<AuditMessage> expected = ImmutableList.of(
+      new AuditMessage(0, app, "", AuditType.METADATA_CHANGE, new MetadataPayload(
+        EMPTY_USER_METADATA, ImmutableMap.of(MetadataScope.USER, new Metadata(ImmutableMap.of("aKey", "aValue"),
+                                                                               EMPTY_TAGS)),
+        EMPTY_USER_METADATA)),
+      new AuditMessage(0, dataset, "", AuditType.METADATA_CHANGE, new MetadataPayload(
+        EMPTY_USER_METADATA, ImmutableMap.of(MetadataScope.USER, new Metadata(EMPTY_PROPERTIES,
+                                                                               ImmutableSet.of("dTag1", "dTag2"))),
+        EMPTY_USER_METADATA)),
+      new AuditMessage(0, stream, "", AuditType.METADATA_CHANGE, new MetadataPayload(
+        ImmutableMap.of(MetadataScope.USER, new Metadata(ImmutableMap.of("sKey", "oldValue"), EMPTY_TAGS)),
+        ImmutableMap.of(MetadataScope.USER, new Metadata(ImmutableMap.of("sKey", "newValue"),
+                                                         ImmutableSet.of("sTag"))),
+        ImmutableMap.of(MetadataScope.USER, new Metadata(ImmutableMap.of("sKey", "oldValue"), EMPTY_TAGS))))
+    );
+    Assert.assertEquals(expected, auditPublisher.popMessages());
+  }
+
   @AfterClass
   public static void teardown() {
     txManager.stopAndWait();
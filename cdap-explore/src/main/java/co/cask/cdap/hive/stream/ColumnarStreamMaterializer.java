@@ -0,0 +1,270 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.hive.stream;
+
+import co.cask.cdap.api.data.format.FormatSpecification;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.io.Locations;
+import co.cask.cdap.data.stream.PositionStreamEvent;
+import co.cask.cdap.data.stream.StreamDataFileReader;
+import co.cask.cdap.data.stream.StreamFileType;
+import co.cask.cdap.data2.transaction.stream.StreamConfig;
+import co.cask.cdap.format.RecordFormats;
+import co.cask.cdap.hive.serde.ObjectDeserializer;
+import co.cask.cdap.internal.io.SchemaTypeAdapter;
+import co.cask.cdap.spi.stream.AbstractStreamEventRecordFormat;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.io.orc.OrcFile;
+import org.apache.hadoop.hive.ql.io.orc.Writer;
+import org.apache.hadoop.hive.serde2.serdeConstants;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.twill.common.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.security.PrivilegedExceptionAction;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Materializes stream partitions into ORC files, with the columns of the Hive table of the stream, so that queries
+ * can read them with column projection and predicate pushdown instead of decoding every stream event. The ORC file
+ * of a partition is stored under the {@link #DIR_NAME} directory of the partition, and is named by a hash of the
+ * table columns and the stream format, followed by a hash of the names, lengths and modification times of the event
+ * files in the partition. A change of the stream format or of the event files, such as events written to the
+ * partition after it is closed, results in a different file, hence an ORC file is never used if it doesn't contain
+ * all the events of the partition. Since the file is inside the partition directory, it is removed together with
+ * the partition when the partition expires or the stream is truncated.
+ */
+final class ColumnarStreamMaterializer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ColumnarStreamMaterializer.class);
+
+  static final String DIR_NAME = "_columnar";
+
+  // timestamp and headers are always the first columns in a stream table, same as in StreamSerDe
+  private static final int BODY_OFFSET = 2;
+
+  // Time after the end of a partition before it is considered closed, to allow stream writers to close the files
+  private static final long PARTITION_CLOSE_DELAY = TimeUnit.MINUTES.toMillis(5);
+
+  private static final Gson GSON = new GsonBuilder()
+    .registerTypeAdapter(Schema.class, new SchemaTypeAdapter())
+    .create();
+
+  // Materialization runs in one background thread for the whole process, with at most one task per columnar file
+  private static final ExecutorService EXECUTOR =
+    Executors.newSingleThreadExecutor(Threads.createDaemonThreadFactory("stream-columnar-materializer"));
+  private static final Set<Path> PENDING = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+  private static final Set<Path> FAILED = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+
+  private static final Comparator<FileStatus> FILE_NAME_COMPARATOR = new Comparator<FileStatus>() {
+    @Override
+    public int compare(FileStatus status1, FileStatus status2) {
+      return status1.getPath().getName().compareTo(status2.getPath().getName());
+    }
+  };
+
+  private final Configuration conf;
+  private final FormatSpecification formatSpec;
+  private final String columns;
+  private final String columnTypes;
+  private final String tableHash;
+
+  /**
+   * Creates an instance for the table described by the given configuration.
+   *
+   * @param conf the job configuration, which contains the columns and the stream format of the Hive table
+   * @param streamConfig the {@link StreamConfig} for getting the stream format if it is not in the configuration
+   * @return a {@link ColumnarStreamMaterializer}, or {@code null} if the configuration doesn't have the columns
+   */
+  @Nullable
+  static ColumnarStreamMaterializer create(Configuration conf, StreamConfig streamConfig) {
+    String columns = conf.get(serdeConstants.LIST_COLUMNS);
+    String columnTypes = conf.get(serdeConstants.LIST_COLUMN_TYPES);
+    if (columns == null || columnTypes == null) {
+      return null;
+    }
+    // For backward compatibility, same as StreamSerDe, tables without the format use the format in the stream config
+    String formatSpec = conf.get(Constants.Explore.FORMAT_SPEC);
+    return new ColumnarStreamMaterializer(conf, formatSpec == null
+                                          ? streamConfig.getFormat()
+                                          : GSON.fromJson(formatSpec, FormatSpecification.class),
+                                          columns, columnTypes);
+  }
+
+  private ColumnarStreamMaterializer(Configuration conf, FormatSpecification formatSpec,
+                                     String columns, String columnTypes) {
+    this.conf = conf;
+    this.formatSpec = formatSpec;
+    this.columns = columns;
+    this.columnTypes = columnTypes;
+    String key = columns + "\n" + columnTypes + "\n" + GSON.toJson(formatSpec);
+    this.tableHash = Hashing.md5().hashString(key, Charsets.UTF_8).toString();
+  }
+
+  /**
+   * Returns {@code true} if the given partition is closed, meaning no more events will be written to it.
+   */
+  static boolean isPartitionClosed(long partitionEndTime) {
+    return partitionEndTime + PARTITION_CLOSE_DELAY <= System.currentTimeMillis();
+  }
+
+  /**
+   * Returns the {@link FileStatus} of the ORC file of the current event files of the given partition. If the file
+   * doesn't exist, a background task is submitted to create it, running as the current user.
+   *
+   * @param fs the {@link FileSystem} of the stream
+   * @param partitionPath path of a closed partition
+   * @return the {@link FileStatus} of the ORC file, or {@code null} if it is not available yet
+   */
+  @Nullable
+  FileStatus getOrSubmit(final FileSystem fs, final Path partitionPath) throws IOException {
+    final List<FileStatus> eventFiles = Lists.newArrayList();
+    StringBuilder eventFilesKey = new StringBuilder();
+    for (FileStatus status : fs.listStatus(partitionPath)) {
+      if (StreamFileType.EVENT.isMatched(status.getPath().getName())) {
+        eventFiles.add(status);
+      }
+    }
+    Collections.sort(eventFiles, FILE_NAME_COMPARATOR);
+    for (FileStatus status : eventFiles) {
+      eventFilesKey.append(status.getPath().getName()).append(':')
+        .append(status.getLen()).append(':')
+        .append(status.getModificationTime()).append('\n');
+    }
+    String fileName = tableHash + "." + Hashing.md5().hashString(eventFilesKey, Charsets.UTF_8).toString() + ".orc";
+
+    final Path path = new Path(new Path(partitionPath, DIR_NAME), fileName);
+    try {
+      return fs.getFileStatus(path);
+    } catch (FileNotFoundException e) {
+      // Materialize below
+    }
+
+    if (FAILED.contains(path) || !PENDING.add(path)) {
+      return null;
+    }
+
+    final UserGroupInformation ugi = UserGroupInformation.getCurrentUser();
+    EXECUTOR.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          ugi.doAs(new PrivilegedExceptionAction<Void>() {
+            @Override
+            public Void run() throws Exception {
+              materialize(fs, partitionPath, eventFiles, path);
+              return null;
+            }
+          });
+        } catch (Throwable t) {
+          LOG.warn("Failed to create columnar file {} for stream partition {}", path, partitionPath, t);
+          FAILED.add(path);
+        } finally {
+          PENDING.remove(path);
+        }
+      }
+    });
+    return null;
+  }
+
+  /**
+   * Writes all events in the given event files of a partition to an ORC file. The file is written to a temporary
+   * file first, which is renamed to the given path when completed.
+   */
+  private void materialize(FileSystem fs, Path partitionPath,
+                           List<FileStatus> eventFiles, Path path) throws Exception {
+    if (fs.exists(path)) {
+      return;
+    }
+
+    Properties properties = new Properties();
+    properties.setProperty(serdeConstants.LIST_COLUMNS, columns);
+    properties.setProperty(serdeConstants.LIST_COLUMN_TYPES, columnTypes);
+    ObjectDeserializer deserializer = new ObjectDeserializer(properties, formatSpec.getSchema(), BODY_OFFSET);
+    AbstractStreamEventRecordFormat<?> streamFormat =
+      (AbstractStreamEventRecordFormat) RecordFormats.createInitializedFormat(formatSpec);
+
+    LOG.debug("Creating columnar file {} for stream partition {}", path, partitionPath);
+    Path tmpPath = new Path(path.getParent(), "." + path.getName() + "." + UUID.randomUUID() + ".tmp");
+    Writer writer = OrcFile.createWriter(tmpPath, OrcFile.writerOptions(conf)
+      .inspector(deserializer.getInspector())
+      .fileSystem(fs));
+    boolean closed = false;
+    boolean renamed = false;
+    try {
+      List<PositionStreamEvent> events = Lists.newArrayList();
+      for (FileStatus status : eventFiles) {
+        StreamDataFileReader reader = StreamDataFileReader.create(Locations.newInputSupplier(fs, status.getPath()));
+        try {
+          reader.initialize();
+          // Since the partition is closed, there is no more event once nothing can be read
+          while (reader.read(events, 100, 0, TimeUnit.SECONDS) > 0) {
+            for (PositionStreamEvent event : events) {
+              // Same row layout as StreamSerDe
+              List<Object> row = Lists.newArrayList();
+              row.add(event.getTimestamp());
+              row.add(event.getHeaders());
+              row.addAll(deserializer.translateRecord(streamFormat.read(event)));
+              writer.addRow(row);
+            }
+            events.clear();
+          }
+        } finally {
+          reader.close();
+        }
+      }
+      writer.close();
+      closed = true;
+      // The rename fails if another process created the same file
+      renamed = fs.rename(tmpPath, path);
+    } finally {
+      if (!closed) {
+        try {
+          writer.close();
+        } catch (IOException e) {
+          LOG.trace("Failed to close columnar file writer for {}", tmpPath, e);
+        }
+      }
+      if (!renamed) {
+        fs.delete(tmpPath, false);
+      }
+    }
+    LOG.debug("Columnar file {} for stream partition {} created", path, partitionPath);
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.hive.stream;
+
+import co.cask.cdap.hive.context.ContextManager;
+import co.cask.cdap.proto.id.StreamId;
+import co.cask.cdap.proto.security.Action;
+import co.cask.cdap.proto.security.Principal;
+import co.cask.cdap.security.spi.authorization.AuthorizationEnforcer;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import org.apache.hadoop.hive.ql.io.orc.OrcFile;
+import org.apache.hadoop.hive.ql.io.orc.OrcProto;
+import org.apache.hadoop.hive.ql.io.orc.Reader;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgumentFactory;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.ObjectWritable;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link RecordReader} for reading the ORC file created by {@link ColumnarStreamMaterializer} for a stream
+ * partition in hive queries. Only the columns needed by the query are read, and the query predicate is pushed down
+ * to the ORC reader to skip row groups that cannot match. Each value is the list of column values of a row,
+ * with the same layout as the rows created by {@link StreamSerDe}.
+ */
+final class ColumnarStreamRecordReader implements RecordReader<Void, ObjectWritable> {
+  private static final Logger LOG = LoggerFactory.getLogger(ColumnarStreamRecordReader.class);
+
+  private final org.apache.hadoop.hive.ql.io.orc.RecordReader reader;
+  private final StructObjectInspector inspector;
+  private final StructField timestampField;
+  private final StreamInputSplit inputSplit;
+  private final Principal principal;
+  private final StreamId streamId;
+  private final AuthorizationEnforcer authorizationEnforcer;
+  private Object row;
+
+  ColumnarStreamRecordReader(InputSplit split, JobConf conf) throws IOException {
+    ContextManager.Context context = ContextManager.getContext(conf);
+    this.inputSplit = (StreamInputSplit) split;
+    Preconditions.checkArgument(context != null, "ContextManager should not be null in a Hive job.");
+    Preconditions.checkArgument(context.getAuthenticationContext() != null,
+                                "AuthenticationContext in Hive's ColumnarStreamRecordReader should not be null.");
+    this.principal = context.getAuthenticationContext().getPrincipal();
+    this.authorizationEnforcer = context.getAuthorizationEnforcer();
+    this.streamId = HiveStreamInputFormat.getStreamId(conf);
+
+    Reader orcReader = OrcFile.createReader(inputSplit.getEventPath(), OrcFile.readerOptions(conf));
+    this.inspector = (StructObjectInspector) orcReader.getObjectInspector();
+    // The timestamp is always the first column
+    this.timestampField = inspector.getAllStructFieldRefs().get(0);
+
+    List<OrcProto.Type> types = orcReader.getTypes();
+    Reader.Options options = new Reader.Options()
+      .include(getIncludedColumns(conf, types))
+      .range(inputSplit.getStart(), inputSplit.getLength());
+    SearchArgument searchArgument = createSearchArgument(conf);
+    if (searchArgument != null) {
+      options.searchArgument(searchArgument, getColumnNames(types));
+    }
+    this.reader = orcReader.rowsOptions(options);
+  }
+
+  @Override
+  public boolean next(Void key, ObjectWritable value) throws IOException {
+    // Make sure that the user has read access to the stream.
+    try {
+      authorizationEnforcer.enforce(streamId, principal, Action.READ);
+    } catch (Exception e) {
+      Throwables.propagateIfPossible(e, IOException.class);
+      throw new IOException(e);
+    }
+
+    while (reader.hasNext()) {
+      row = reader.next(row);
+      Object timestamp = ObjectInspectorUtils.copyToStandardJavaObject(
+        inspector.getStructFieldData(row, timestampField), timestampField.getFieldObjectInspector());
+      if (!(timestamp instanceof Long)
+        || (Long) timestamp < inputSplit.getStartTime() || (Long) timestamp >= inputSplit.getEndTime()) {
+        continue;
+      }
+      value.set(ObjectInspectorUtils.copyToStandardJavaObject(row, inspector));
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public Void createKey() {
+    return null;
+  }
+
+  @Override
+  public ObjectWritable createValue() {
+    return new ObjectWritable();
+  }
+
+  @Override
+  public long getPos() throws IOException {
+    return reader.getRowNumber();
+  }
+
+  @Override
+  public float getProgress() throws IOException {
+    return reader.getProgress();
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  /**
+   * Returns which ORC columns to read based on the columns needed by the query. The timestamp column is always
+   * read for filtering by time.
+   */
+  private boolean[] getIncludedColumns(JobConf conf, List<OrcProto.Type> types) {
+    boolean[] included = new boolean[types.size()];
+    OrcProto.Type root = types.get(0);
+    boolean readAll = ColumnProjectionUtils.isReadAllColumns(conf);
+    List<Integer> columnIds = ColumnProjectionUtils.getReadColumnIDs(conf);
+
+    included[0] = true;
+    for (int i = 0; i < root.getSubtypesCount(); i++) {
+      if (readAll || i == 0 || columnIds.contains(i)) {
+        // ORC column ids are assigned in pre-order, hence the ids of a column and its children are contiguous
+        int end = i + 1 < root.getSubtypesCount() ? root.getSubtypes(i + 1) : types.size();
+        for (int id = root.getSubtypes(i); id < end; id++) {
+          included[id] = true;
+        }
+      }
+    }
+    return included;
+  }
+
+  /**
+   * Returns the names of the top level columns indexed by the ORC column ids, as needed for predicate pushdown.
+   */
+  private String[] getColumnNames(List<OrcProto.Type> types) {
+    String[] columnNames = new String[types.size()];
+    OrcProto.Type root = types.get(0);
+    for (int i = 0; i < root.getSubtypesCount(); i++) {
+      columnNames[root.getSubtypes(i)] = root.getFieldNames(i);
+    }
+    return columnNames;
+  }
+
+  /**
+   * Creates a {@link SearchArgument} from the query predicate.
+   *
+   * @return the {@link SearchArgument} or {@code null} if there is no predicate or it is not supported
+   */
+  @Nullable
+  private SearchArgument createSearchArgument(JobConf conf) {
+    try {
+      ExprNodeGenericFuncDesc expr = HiveStreamInputFormat.getFilterExpression(conf);
+      return expr == null ? null : SearchArgumentFactory.create(expr);
+    } catch (Throwable t) {
+      // The search argument API differs between Hive versions. Hive still evaluates the predicate on the rows read,
+      // hence it is only an optimization.
+      LOG.debug("Failed to create search argument from query predicate. All row groups will be read.", t);
+      return null;
+    }
+  }
+}
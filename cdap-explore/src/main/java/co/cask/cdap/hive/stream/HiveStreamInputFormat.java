@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,16 +16,22 @@
 
 package co.cask.cdap.hive.stream;
 
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.ConfigurationUtil;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data.stream.StreamInputSplitFactory;
 import co.cask.cdap.data.stream.StreamInputSplitFinder;
+import co.cask.cdap.data.stream.StreamPartitionSplitFinder;
 import co.cask.cdap.data.stream.StreamUtils;
 import co.cask.cdap.data2.transaction.stream.StreamConfig;
+import co.cask.cdap.hive.context.CConfCodec;
 import co.cask.cdap.hive.context.ContextManager;
 import co.cask.cdap.proto.id.StreamId;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.ql.exec.Utilities;
 import org.apache.hadoop.hive.ql.index.IndexPredicateAnalyzer;
@@ -78,6 +84,9 @@ public class HiveStreamInputFormat implements InputFormat<Void, ObjectWritable>
   @Override
   public RecordReader<Void, ObjectWritable> getRecordReader(InputSplit split, JobConf conf, Reporter reporter)
     throws IOException {
+    if (((StreamInputSplit) split).isColumnar()) {
+      return new ColumnarStreamRecordReader(split, conf);
+    }
     return new StreamRecordReader(split, conf);
   }
 
@@ -87,6 +96,31 @@ public class HiveStreamInputFormat implements InputFormat<Void, ObjectWritable>
     return new StreamId(streamNamespace, streamName);
   }
 
+  /**
+   * Returns the query predicate in the given configuration.
+   *
+   * @return the predicate or {@code null} if the query has no predicate
+   * @throws Exception if failed to deserialize the predicate
+   */
+  @Nullable
+  static ExprNodeGenericFuncDesc getFilterExpression(Configuration conf) throws Exception {
+    // the conf contains a 'hive.io.filter.expr.serialized' key which contains the serialized form of ExprNodeDesc
+    String serializedExpr = conf.get(TableScanDesc.FILTER_EXPR_CONF_STR);
+    if (serializedExpr == null) {
+      return null;
+    }
+
+    // Hack to deal with the fact that older versions of Hive use
+    // Utilities.deserializeExpression(String, Configuration),
+    // whereas newer versions use Utilities.deserializeExpression(String).
+    try {
+      return Utilities.deserializeExpression(serializedExpr);
+    } catch (NoSuchMethodError e) {
+      return (ExprNodeGenericFuncDesc) Utilities.class.getMethod(
+        "deserializeExpression", String.class, Configuration.class).invoke(null, serializedExpr, conf);
+    }
+  }
+
   private StreamInputSplitFinder<InputSplit> getSplitFinder(JobConf conf) throws IOException {
     // first get the context we are in
     ContextManager.Context context = ContextManager.getContext(conf);
@@ -102,12 +136,38 @@ public class HiveStreamInputFormat implements InputFormat<Void, ObjectWritable>
     JobContext jobContext = ShimLoader.getHadoopShims().newJobContext(Job.getInstance(conf));
     final Path[] tablePaths = FileInputFormat.getInputPaths(jobContext);
 
-    return setupBuilder(conf, streamConfig, builder).build(new StreamInputSplitFactory<InputSplit>() {
+    StreamInputSplitFactory<InputSplit> splitFactory = new StreamInputSplitFactory<InputSplit>() {
       @Override
       public InputSplit createSplit(Path eventPath, Path indexPath, long startTime, long endTime,
                                     long start, long length, @Nullable String[] locations) {
         return new StreamInputSplit(tablePaths[0], eventPath, indexPath, startTime, endTime, start, length, locations);
       }
+    };
+
+    CConfiguration cConf = ConfigurationUtil.get(conf, Constants.Explore.CCONF_KEY, CConfCodec.INSTANCE);
+    final ColumnarStreamMaterializer materializer = cConf.getBoolean(Constants.Explore.STREAM_COLUMNAR_ENABLED)
+      ? ColumnarStreamMaterializer.create(conf, streamConfig)
+      : null;
+    if (materializer == null) {
+      return setupBuilder(conf, streamConfig, builder).build(splitFactory);
+    }
+
+    // Read closed partitions from their columnar files, which are created in the background if they do not exist
+    return setupBuilder(conf, streamConfig, builder).build(splitFactory, new StreamPartitionSplitFinder<InputSplit>() {
+      @Override
+      public boolean findSplits(FileSystem fs, Path partitionPath, long partitionStartTime, long partitionEndTime,
+                                long startTime, long endTime, List<InputSplit> splits) throws IOException {
+        if (!ColumnarStreamMaterializer.isPartitionClosed(partitionEndTime)) {
+          return false;
+        }
+        FileStatus status = materializer.getOrSubmit(fs, partitionPath);
+        if (status == null) {
+          return false;
+        }
+        splits.add(new StreamInputSplit(tablePaths[0], status.getPath(), null, startTime, endTime,
+                                        0L, status.getLen(), null, true));
+        return true;
+      }
     });
   }
 
@@ -116,25 +176,13 @@ public class HiveStreamInputFormat implements InputFormat<Void, ObjectWritable>
    */
   private StreamInputSplitFinder.Builder setupBuilder(Configuration conf, StreamConfig streamConfig,
                                                       StreamInputSplitFinder.Builder builder) {
-    // the conf contains a 'hive.io.filter.expr.serialized' key which contains the serialized form of ExprNodeDesc
     long startTime = Math.max(0L, System.currentTimeMillis() - streamConfig.getTTL());
     long endTime = System.currentTimeMillis();
 
-    String serializedExpr = conf.get(TableScanDesc.FILTER_EXPR_CONF_STR);
-    if (serializedExpr == null) {
-      return builder.setStartTime(startTime).setEndTime(endTime);
-    }
-
     try {
-      ExprNodeGenericFuncDesc expr;
-      // Hack to deal with the fact that older versions of Hive use
-      // Utilities.deserializeExpression(String, Configuration),
-      // whereas newer versions use Utilities.deserializeExpression(String).
-      try {
-        expr = Utilities.deserializeExpression(serializedExpr);
-      } catch (NoSuchMethodError e) {
-        expr = (ExprNodeGenericFuncDesc) Utilities.class.getMethod(
-          "deserializeExpression", String.class, Configuration.class).invoke(null, serializedExpr, conf);
+      ExprNodeGenericFuncDesc expr = getFilterExpression(conf);
+      if (expr == null) {
+        return builder.setStartTime(startTime).setEndTime(endTime);
       }
 
       // Analyze the query to extract predicates that can be used for indexing (i.e. setting start/end time)
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -35,6 +35,8 @@ import javax.annotation.Nullable;
  * {@link #getPath()} doesn't return a Path that is located inside the Hive internal path. Because of this
  * behavior, the StreamInputSplit {@link #getPath()} returns a dummy path which always match with what Hive wanted, but
  * the {@link HiveStreamInputFormat} never use it, but using {@link #getEventPath()} instead.
+ * A split can also be of a columnar copy of a stream partition, in which case {@link #getEventPath()} is the path
+ * of the columnar file.
  */
 public final class StreamInputSplit extends FileSplit implements Writable {
 
@@ -42,6 +44,7 @@ public final class StreamInputSplit extends FileSplit implements Writable {
   private Path indexPath;
   private long startTime;
   private long endTime;
+  private boolean columnar;
 
   /**
    * Default constructor. Called by MapReduce framework only.
@@ -64,11 +67,30 @@ public final class StreamInputSplit extends FileSplit implements Writable {
    */
   StreamInputSplit(Path path, Path eventPath, @Nullable Path indexPath, long startTime, long endTime,
                    long start, long length, @Nullable String[] locations) {
+    this(path, eventPath, indexPath, startTime, endTime, start, length, locations, false);
+  }
+
+  /**
+   * Constructs a split.
+   *
+   * @param path the hive file path. Never used by {@link HiveStreamInputFormat}; it is just to satisfy hive.
+   * @param eventPath Path for the stream event file, or the columnar file if {@code columnar} is {@code true}.
+   * @param indexPath Path for the stream index file.
+   * @param startTime Event start timestamp in milliseconds (inclusive).
+   * @param endTime Event end timestamp in milliseconds (exclusive).
+   * @param start Starting offset in the file. It can be arbitrary offset, no need to align to event start.
+   * @param length Size of this split.
+   * @param locations List of hosts containing this split.
+   * @param columnar {@code true} if the split is of a columnar copy of a stream partition.
+   */
+  StreamInputSplit(Path path, Path eventPath, @Nullable Path indexPath, long startTime, long endTime,
+                   long start, long length, @Nullable String[] locations, boolean columnar) {
     super(path, start, length, locations);
     this.eventPath = eventPath;
     this.indexPath = indexPath;
     this.startTime = startTime;
     this.endTime = endTime;
+    this.columnar = columnar;
   }
 
   /**
@@ -106,6 +128,13 @@ public final class StreamInputSplit extends FileSplit implements Writable {
     return endTime;
   }
 
+  /**
+   * Returns {@code true} if the split is of a columnar copy of a stream partition.
+   */
+  boolean isColumnar() {
+    return columnar;
+  }
+
   @Override
   public void write(DataOutput out) throws IOException {
     super.write(out);
@@ -118,6 +147,7 @@ public final class StreamInputSplit extends FileSplit implements Writable {
     }
     WritableUtils.writeVLong(out, startTime);
     WritableUtils.writeVLong(out, endTime);
+    out.writeBoolean(columnar);
   }
 
   @Override
@@ -130,6 +160,7 @@ public final class StreamInputSplit extends FileSplit implements Writable {
     }
     startTime = WritableUtils.readVLong(in);
     endTime = WritableUtils.readVLong(in);
+    columnar = in.readBoolean();
   }
 
   @Override
@@ -141,6 +172,7 @@ public final class StreamInputSplit extends FileSplit implements Writable {
       .add("length", getLength())
       .add("startTime", getStartTime())
       .add("endTime", getEndTime())
+      .add("columnar", isColumnar())
       .toString();
   }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -136,8 +136,12 @@ public class StreamSerDe implements SerDe {
 
   @Override
   public Object deserialize(Writable writable) throws SerDeException {
-    // The writable should always contains a StreamEvent object provided by the StreamRecordReader
+    // The writable should always contains a StreamEvent object provided by the StreamRecordReader,
+    // or a row already in the table layout provided by the ColumnarStreamRecordReader
     ObjectWritable objectWritable = (ObjectWritable) writable;
+    if (objectWritable.get() instanceof List) {
+      return objectWritable.get();
+    }
     StreamEvent streamEvent = (StreamEvent) objectWritable.get();
 
     // timestamp and headers are always guaranteed to be first.
@@ -1,5 +1,5 @@
 /*
-  * Copyright © 2014 Cask Data, Inc.
+  * Copyright © 2014-2017 Cask Data, Inc.
   *
   * Licensed under the Apache License, Version 2.0 (the "License"); you may not
   * use this file except in compliance with the License. You may obtain a copy of
@@ -21,11 +21,13 @@ import org.apache.hadoop.hive.metastore.HiveMetaHook;
 import org.apache.hadoop.hive.ql.metadata.DefaultStorageHandler;
 import org.apache.hadoop.hive.ql.plan.TableDesc;
 import org.apache.hadoop.hive.serde2.SerDe;
+import org.apache.hadoop.hive.serde2.serdeConstants;
 import org.apache.hadoop.mapred.InputFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Map;
+import java.util.Properties;
 
 /**
  * HiveStorageHandler to access Streams.
@@ -58,10 +60,20 @@ public class StreamStorageHandler extends DefaultStorageHandler {
                                           Map<String, String> jobProperties) {
     // NOTE: the jobProperties map will be put in the jobConf passed to the StreamInputFormat.
     // Hive ensures that the properties of the right table will be passed at the right time to those classes.
-    String streamName = tableDesc.getProperties().getProperty(Constants.Explore.STREAM_NAME);
+    Properties tableProperties = tableDesc.getProperties();
+    String streamName = tableProperties.getProperty(Constants.Explore.STREAM_NAME);
     jobProperties.put(Constants.Explore.STREAM_NAME, streamName);
-    String streamNamespace = tableDesc.getProperties().getProperty(Constants.Explore.STREAM_NAMESPACE);
+    String streamNamespace = tableProperties.getProperty(Constants.Explore.STREAM_NAMESPACE);
     jobProperties.put(Constants.Explore.STREAM_NAMESPACE, streamNamespace);
+
+    // The table schema and format are needed by the input format for reading columnar copies of the stream
+    for (String key : new String[] {
+      serdeConstants.LIST_COLUMNS, serdeConstants.LIST_COLUMN_TYPES, Constants.Explore.FORMAT_SPEC }) {
+      String value = tableProperties.getProperty(key);
+      if (value != null) {
+        jobProperties.put(key, value);
+      }
+    }
     LOG.debug("Got stream {} for external table {}", streamName, tableDesc.getTableName());
   }
 
@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.explore.service;
+
+import co.cask.cdap.api.flow.flowlet.StreamEvent;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.utils.Tasks;
+import co.cask.cdap.data.file.FileWriter;
+import co.cask.cdap.data.stream.StreamFileWriterFactory;
+import co.cask.cdap.data.stream.StreamUtils;
+import co.cask.cdap.data2.transaction.stream.StreamAdmin;
+import co.cask.cdap.data2.transaction.stream.StreamConfig;
+import co.cask.cdap.explore.client.ExploreExecutionResult;
+import co.cask.cdap.proto.QueryResult;
+import co.cask.cdap.proto.id.StreamId;
+import co.cask.cdap.test.SlowTests;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.apache.twill.filesystem.Location;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for querying closed stream partitions through their columnar copies.
+ */
+@Category(SlowTests.class)
+public class HiveExploreServiceStreamColumnarTest extends BaseHiveExploreServiceTest {
+
+  @ClassRule
+  public static TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private static final StreamId STREAM_ID = NAMESPACE_ID.stream("columnar");
+  private static final String STREAM_TABLE_NAME = "stream_columnar";
+
+  @BeforeClass
+  public static void start() throws Exception {
+    // use leveldb implementations, since stream input format examines the filesystem to determine input splits
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setBoolean(Constants.Explore.STREAM_COLUMNAR_ENABLED, true);
+    initialize(cConf, tmpFolder, true, false);
+    createStream(STREAM_ID);
+  }
+
+  @AfterClass
+  public static void finish() throws Exception {
+    dropStream(STREAM_ID);
+  }
+
+  @Test
+  public void testClosedPartition() throws Exception {
+    StreamConfig streamConfig = injector.getInstance(StreamAdmin.class).getConfig(STREAM_ID);
+
+    // Events from a day ago are in a closed partition
+    long timestamp = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+    writeEvents(streamConfig, timestamp, "event", 10);
+    List<String> expected = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      expected.add("event" + i);
+    }
+
+    // The first query reads the event files, while the columnar copy is created in the background
+    Assert.assertEquals(expected, queryBodies());
+    waitForColumnarFiles(streamConfig, 1);
+
+    // Query again, which reads the columnar copy, should give the same result
+    Assert.assertEquals(expected, queryBodies());
+
+    // Events written to the partition after the copy was created should not be missed
+    writeEvents(streamConfig, timestamp, "late", 5);
+    for (int i = 0; i < 5; i++) {
+      expected.add("late" + i);
+    }
+    Collections.sort(expected);
+    Assert.assertEquals(expected, queryBodies());
+
+    // A new copy is created for the current event files
+    waitForColumnarFiles(streamConfig, 2);
+    Assert.assertEquals(expected, queryBodies());
+  }
+
+  private void writeEvents(StreamConfig streamConfig, long timestamp, String prefix, int count) throws IOException {
+    FileWriter<StreamEvent> writer = injector.getInstance(StreamFileWriterFactory.class)
+      .create(streamConfig, StreamUtils.getGeneration(streamConfig));
+    try {
+      for (int i = 0; i < count; i++) {
+        writer.append(new StreamEvent(ImmutableMap.<String, String>of(), Charsets.UTF_8.encode(prefix + i),
+                                      timestamp));
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Queries the body of all events in the stream, sorted.
+   */
+  private List<String> queryBodies() throws Exception {
+    List<String> bodies = Lists.newArrayList();
+    try (ExploreExecutionResult results = exploreClient.submit(NAMESPACE_ID,
+                                                               "select body from " + STREAM_TABLE_NAME).get()) {
+      while (results.hasNext()) {
+        QueryResult result = results.next();
+        bodies.add((String) result.getColumns().get(0));
+      }
+    }
+    Collections.sort(bodies);
+    return bodies;
+  }
+
+  private void waitForColumnarFiles(final StreamConfig streamConfig, int count) throws Exception {
+    Tasks.waitFor(count, new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        return countColumnarFiles(streamConfig.getLocation());
+      }
+    }, 30, TimeUnit.SECONDS, 100, TimeUnit.MILLISECONDS);
+  }
+
+  private int countColumnarFiles(Location location) throws IOException {
+    int count = 0;
+    for (Location child : location.list()) {
+      if (child.isDirectory()) {
+        count += countColumnarFiles(child);
+      } else if (child.getName().endsWith(".orc") && !child.getName().startsWith(".")) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -113,6 +113,7 @@ public final class RouterPathLookup extends AbstractHttpHandler {
       matches(uriParts, "v3", "namespaces", null, "streams", null, "views", null, "metadata", "tags") ||
 
       matches(uriParts, "v3", "namespaces", null, "metadata", "search") ||
+      matches(uriParts, "v3", "namespaces", null, "metadata", "batch") ||
       matches(uriParts, "v3", "namespaces", null, "datasets", null, "lineage") ||
       matches(uriParts, "v3", "namespaces", null, "streams", null, "lineage") ||
       matches(uriParts, "v3", "namespaces", null, "apps", null, null, null, "runs", null, "metadata")) {
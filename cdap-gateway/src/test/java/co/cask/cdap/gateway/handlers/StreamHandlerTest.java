@@ -20,8 +20,11 @@ import co.cask.cdap.api.data.format.FormatSpecification;
 import co.cask.cdap.api.data.format.Formats;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
+import co.cask.cdap.api.stream.StreamEventData;
 import co.cask.cdap.common.NamespaceNotFoundException;
 import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.stream.StreamEventDataCodec;
 import co.cask.cdap.common.stream.StreamEventTypeAdapter;
 import co.cask.cdap.common.utils.Tasks;
 import co.cask.cdap.data2.transaction.stream.StreamConfig;
@@ -42,6 +45,7 @@ import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.io.ByteStreams;
+import com.google.common.net.HttpHeaders;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -55,6 +59,7 @@ import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
@@ -244,6 +249,41 @@ public class StreamHandlerTest extends GatewayTestBase {
     urlConn.disconnect();
   }
 
+  @Test
+  public void testBinaryFetch() throws Exception {
+    // Create new stream.
+    HttpURLConnection urlConn = openURL(createURL("streams/test_stream_binary"), HttpMethod.PUT);
+    Assert.assertEquals(HttpResponseStatus.OK.getCode(), urlConn.getResponseCode());
+    urlConn.disconnect();
+
+    // Enqueue 10 entries
+    for (int i = 0; i < 10; ++i) {
+      urlConn = openURL(createURL("streams/test_stream_binary"), HttpMethod.POST);
+      urlConn.setDoOutput(true);
+      urlConn.addRequestProperty("test_stream_binary.header1", Integer.toString(i));
+      urlConn.getOutputStream().write(Integer.toString(i).getBytes(Charsets.UTF_8));
+      Assert.assertEquals(HttpResponseStatus.OK.getCode(), urlConn.getResponseCode());
+      urlConn.disconnect();
+    }
+
+    // Fetch the entries in binary format
+    urlConn = openURL(createURL("streams/test_stream_binary/events"), HttpMethod.GET);
+    urlConn.setRequestProperty(HttpHeaders.ACCEPT, "application/octet-stream");
+    Assert.assertEquals(HttpResponseStatus.OK.getCode(), urlConn.getResponseCode());
+    Assert.assertEquals("application/octet-stream", urlConn.getContentType());
+    ByteArrayInputStream input = new ByteArrayInputStream(ByteStreams.toByteArray(urlConn.getInputStream()));
+    urlConn.disconnect();
+
+    BinaryDecoder decoder = new BinaryDecoder(input);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertTrue(decoder.readLong() > 0);
+      StreamEventData event = StreamEventDataCodec.decode(decoder);
+      Assert.assertEquals(i, Integer.parseInt(Charsets.UTF_8.decode(event.getBody()).toString()));
+      Assert.assertEquals(Integer.toString(i), event.getHeaders().get("header1"));
+    }
+    Assert.assertEquals(0, input.available());
+  }
+
   @Test
   public void testListStreams() throws Exception {
     List<StreamDetail> specs = listStreams(NamespaceId.DEFAULT);
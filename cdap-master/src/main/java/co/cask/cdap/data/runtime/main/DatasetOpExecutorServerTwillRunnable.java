@@ -36,6 +36,7 @@ import co.cask.cdap.data.runtime.DataSetsModules;
 import co.cask.cdap.data.stream.StreamAdminModules;
 import co.cask.cdap.data.view.ViewAdminModules;
 import co.cask.cdap.data2.audit.AuditModule;
+import co.cask.cdap.data2.audit.AuditPublisher;
 import co.cask.cdap.data2.datafabric.dataset.service.executor.DatasetOpExecutorService;
 import co.cask.cdap.explore.guice.ExploreClientModule;
 import co.cask.cdap.gateway.handlers.meta.RemoteSystemOperationsService;
@@ -138,6 +139,11 @@ public class DatasetOpExecutorServerTwillRunnable extends AbstractMasterTwillRun
 
   @Override
   protected void addServices(List<? super Service> services) {
+    // Added first so that it is stopped last, after all audit messages are buffered
+    AuditPublisher auditPublisher = injector.getInstance(AuditPublisher.class);
+    if (auditPublisher instanceof Service) {
+      services.add((Service) auditPublisher);
+    }
     services.add(injector.getInstance(AuthorizationEnforcementService.class));
     services.add(injector.getInstance(DatasetOpExecutorService.class));
     services.add(injector.getInstance(MetadataService.class));
@@ -50,6 +50,7 @@ import co.cask.cdap.data.runtime.DataSetsModules;
 import co.cask.cdap.data.stream.StreamAdminModules;
 import co.cask.cdap.data.view.ViewAdminModules;
 import co.cask.cdap.data2.audit.AuditModule;
+import co.cask.cdap.data2.audit.AuditPublisher;
 import co.cask.cdap.data2.datafabric.dataset.service.DatasetService;
 import co.cask.cdap.data2.util.hbase.ConfigurationTable;
 import co.cask.cdap.data2.util.hbase.HBaseDDLExecutorFactory;
@@ -637,6 +638,11 @@ public class MasterServiceMain extends DaemonMain {
       services.add(getAndStart(injector, OperationalStatsService.class));
       ServiceStore serviceStore = getAndStart(injector, ServiceStore.class);
       services.add(serviceStore);
+      // Stopped after the app-fabric and dataset services, so that their buffered audit messages get published
+      AuditPublisher auditPublisher = injector.getInstance(AuditPublisher.class);
+      if (auditPublisher instanceof Service) {
+        services.add((Service) auditPublisher);
+      }
 
       twillRunner = injector.getInstance(TwillRunnerService.class);
       twillRunner.start();
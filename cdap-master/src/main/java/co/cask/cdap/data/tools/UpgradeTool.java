@@ -122,6 +122,7 @@ public class UpgradeTool {
   private final DatasetBasedStreamSizeScheduleStore datasetBasedStreamSizeScheduleStore;
   private final DatasetBasedTimeScheduleStore datasetBasedTimeScheduleStore;
   private final DefaultStore store;
+  private final LineageStore lineageStore;
   private final HBaseTableFactory tmsTableFactory;
   private final CoprocessorManager coprocessorManager;
 
@@ -171,6 +172,7 @@ public class UpgradeTool {
     this.datasetBasedStreamSizeScheduleStore = injector.getInstance(DatasetBasedStreamSizeScheduleStore.class);
     this.datasetBasedTimeScheduleStore = injector.getInstance(DatasetBasedTimeScheduleStore.class);
     this.store = injector.getInstance(DefaultStore.class);
+    this.lineageStore = injector.getInstance(LineageStore.class);
     this.tmsTableFactory = injector.getInstance(HBaseTableFactory.class);
     LocationFactory locationFactory = injector.getInstance(LocationFactory.class);
     HBaseTableUtil tableUtil = injector.getInstance(HBaseTableUtil.class);
@@ -424,6 +426,9 @@ public class UpgradeTool {
 
     LOG.info("Upgrading time schedule store...");
     datasetBasedTimeScheduleStore.upgrade();
+
+    LOG.info("Upgrading lineage store...");
+    lineageStore.upgrade();
   }
 
   private void performHBaseUpgrade() throws Exception {
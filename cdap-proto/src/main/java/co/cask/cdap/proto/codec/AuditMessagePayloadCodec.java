@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.proto.codec;
+
+import co.cask.cdap.proto.audit.AuditMessage;
+import co.cask.cdap.proto.id.EntityId;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encodes and decodes the payloads of the messages published to the audit topic of the messaging system.
+ * A payload is either a single {@link AuditMessage} as JSON, or a batch of {@link AuditMessage}s as a gzip compressed
+ * JSON array. Consumers of the audit topic should use {@link #decode(byte[])}, which handles both.
+ */
+public final class AuditMessagePayloadCodec {
+
+  private static final Gson GSON = new GsonBuilder()
+    .registerTypeAdapter(AuditMessage.class, new AuditMessageTypeAdapter())
+    .registerTypeAdapter(EntityId.class, new EntityIdTypeAdapter())
+    .create();
+  private static final Type LIST_AUDIT_MESSAGE_TYPE = new TypeToken<List<AuditMessage>>() { }.getType();
+
+  private AuditMessagePayloadCodec() {
+  }
+
+  /**
+   * Encodes a single {@link AuditMessage} as JSON.
+   */
+  public static byte[] encode(AuditMessage auditMessage) {
+    return GSON.toJson(auditMessage).getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Encodes a batch of {@link AuditMessage}s as a gzip compressed JSON array.
+   */
+  public static byte[] encode(List<AuditMessage> auditMessages) {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(os), StandardCharsets.UTF_8)) {
+      GSON.toJson(auditMessages, LIST_AUDIT_MESSAGE_TYPE, writer);
+    } catch (IOException e) {
+      // Cannot happen when writing to a byte array
+      throw new IllegalStateException(e);
+    }
+    return os.toByteArray();
+  }
+
+  /**
+   * Decodes a payload encoded by either {@link #encode(AuditMessage)} or {@link #encode(List)}.
+   *
+   * @param payload the payload of a message
+   * @return the {@link AuditMessage}s in the payload
+   * @throws JsonParseException if the payload is not a valid encoding of audit messages
+   */
+  public static List<AuditMessage> decode(byte[] payload) {
+    if (!isCompressed(payload)) {
+      AuditMessage auditMessage = GSON.fromJson(new String(payload, StandardCharsets.UTF_8), AuditMessage.class);
+      return Collections.singletonList(auditMessage);
+    }
+    try (Reader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(payload)),
+                                               StandardCharsets.UTF_8)) {
+      return GSON.fromJson(reader, LIST_AUDIT_MESSAGE_TYPE);
+    } catch (IOException e) {
+      throw new JsonParseException("Failed to decompress a batch of audit messages", e);
+    }
+  }
+
+  private static boolean isCompressed(byte[] payload) {
+    // A JSON payload starts with '{', while gzip data starts with the gzip magic number
+    return payload.length >= 2
+      && (payload[0] & 0xff) == (GZIPInputStream.GZIP_MAGIC & 0xff)
+      && (payload[1] & 0xff) == (GZIPInputStream.GZIP_MAGIC >> 8);
+  }
+}
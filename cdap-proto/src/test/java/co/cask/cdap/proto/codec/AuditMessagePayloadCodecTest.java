@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.proto.codec;
+
+import co.cask.cdap.proto.audit.AuditMessage;
+import co.cask.cdap.proto.audit.AuditPayload;
+import co.cask.cdap.proto.audit.AuditType;
+import co.cask.cdap.proto.audit.payload.access.AccessPayload;
+import co.cask.cdap.proto.audit.payload.access.AccessType;
+import co.cask.cdap.proto.id.NamespaceId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for {@link AuditMessagePayloadCodec}.
+ */
+public class AuditMessagePayloadCodecTest {
+
+  private static final NamespaceId NS = new NamespaceId("ns1");
+
+  @Test
+  public void testSingleMessage() {
+    AuditMessage message = new AuditMessage(1000L, NS.dataset("ds1"), "user1", AuditType.CREATE,
+                                            AuditPayload.EMPTY_PAYLOAD);
+    byte[] payload = AuditMessagePayloadCodec.encode(message);
+    Assert.assertEquals('{', payload[0]);
+    Assert.assertEquals(Collections.singletonList(message), AuditMessagePayloadCodec.decode(payload));
+
+    // Messages published without the codec can be decoded as well
+    String json =
+      "{\"version\":1,\"time\":1000,\"entityId\":{\"namespace\":\"ns1\",\"dataset\":\"ds1\",\"entity\":\"DATASET\"}," +
+        "\"user\":\"user1\",\"type\":\"CREATE\",\"payload\":{}}";
+    Assert.assertEquals(Collections.singletonList(message),
+                        AuditMessagePayloadCodec.decode(json.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void testBatch() {
+    List<AuditMessage> messages = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      messages.add(new AuditMessage(i, NS.dataset("ds" + i), "user1", AuditType.CREATE, AuditPayload.EMPTY_PAYLOAD));
+      messages.add(new AuditMessage(i, NS.stream("s" + i), "user1", AuditType.ACCESS,
+                                    new AccessPayload(AccessType.WRITE, NS.app("app").flow("flow").run("run" + i))));
+    }
+    byte[] payload = AuditMessagePayloadCodec.encode(messages);
+    Assert.assertEquals(messages, AuditMessagePayloadCodec.decode(payload));
+
+    // The batch is compressed
+    int uncompressedSize = 0;
+    for (AuditMessage message : messages) {
+      uncompressedSize += AuditMessagePayloadCodec.encode(message).length;
+    }
+    Assert.assertTrue(payload.length < uncompressedSize / 4);
+  }
+}
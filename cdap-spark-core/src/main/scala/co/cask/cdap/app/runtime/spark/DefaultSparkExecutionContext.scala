@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -39,7 +39,7 @@ import co.cask.cdap.app.runtime.spark.SparkTransactional.TransactionType
 import co.cask.cdap.app.runtime.spark.preview.SparkDataTracer
 import co.cask.cdap.app.runtime.spark.stream.SparkStreamInputFormat
 import co.cask.cdap.common.conf.ConfigurationUtil
-import co.cask.cdap.data.stream.{AbstractStreamInputFormat, StreamUtils}
+import co.cask.cdap.data.stream.{AbstractStreamInputFormat, StreamEventReadFilters, StreamUtils}
 import co.cask.cdap.data2.metadata.lineage.AccessType
 import co.cask.cdap.internal.app.runtime.DefaultTaskLocalizationContext
 import co.cask.cdap.proto.id.StreamId
@@ -322,6 +322,10 @@ class DefaultSparkExecutionContext(runtimeContext: SparkRuntimeContext,
     )(
       spec => AbstractStreamInputFormat.setBodyFormatSpecification(configuration, spec)
     )
+    val filterArguments = StreamEventReadFilters.getArguments(streamId.getStream, runtimeContext.getRuntimeArguments)
+    if (!filterArguments.isEmpty) {
+      AbstractStreamInputFormat.setReadFilterArguments(configuration, filterArguments)
+    }
     configuration
   }
 
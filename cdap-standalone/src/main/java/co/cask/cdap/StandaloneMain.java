@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -45,6 +45,7 @@ import co.cask.cdap.data.stream.service.StreamService;
 import co.cask.cdap.data.stream.service.StreamServiceRuntimeModule;
 import co.cask.cdap.data.view.ViewAdminModules;
 import co.cask.cdap.data2.audit.AuditModule;
+import co.cask.cdap.data2.audit.AuditPublisher;
 import co.cask.cdap.data2.datafabric.dataset.service.DatasetService;
 import co.cask.cdap.explore.client.ExploreClient;
 import co.cask.cdap.explore.executor.ExploreExecutorService;
@@ -133,6 +134,7 @@ public class StandaloneMain {
   private final AuthorizationEnforcementService authorizationEnforcementService;
   private final AuthorizationBootstrapper authorizationBootstrapper;
   private final MessagingService messagingService;
+  private final AuditPublisher auditPublisher;
   private final OperationalStatsService operationalStatsService;
 
   private ExternalAuthenticationServer externalAuthenticationServer;
@@ -152,6 +154,7 @@ public class StandaloneMain {
     }
 
     messagingService = injector.getInstance(MessagingService.class);
+    auditPublisher = injector.getInstance(AuditPublisher.class);
     authorizerInstantiator = injector.getInstance(AuthorizerInstantiator.class);
     authorizationBootstrapper = injector.getInstance(AuthorizationBootstrapper.class);
     txService = injector.getInstance(InMemoryTransactionService.class);
@@ -227,6 +230,9 @@ public class StandaloneMain {
     }
     // TODO: CDAP-7688, remove next line after the issue is resolved
     injector.getInstance(MessagingHttpService.class).startAndWait();
+    if (auditPublisher instanceof Service) {
+      ((Service) auditPublisher).startAndWait();
+    }
 
     // Authorization bootstrapping is a blocking call, because CDAP will not start successfully if it does not
     // succeed on an authorization-enabled cluster
@@ -325,6 +331,10 @@ public class StandaloneMain {
         externalAuthenticationServer.stopAndWait();
       }
 
+      // publish the buffered audit messages before messaging stops
+      if (auditPublisher instanceof Service) {
+        ((Service) auditPublisher).stopAndWait();
+      }
       // TODO: CDAP-7688, remove next line after the issue is resolved
       injector.getInstance(MessagingHttpService.class).startAndWait();
       if (messagingService instanceof Service) {
@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.api.metrics;
+
+/**
+ * Base class for {@link MetricsContext} implementations that also support {@link MetricType#HISTOGRAM} metrics.
+ */
+public abstract class AbstractMetricsContext implements MetricsContext {
+
+  /**
+   * Records a value into the distribution of a {@link MetricType#HISTOGRAM} metric at the current time,
+   * e.g. the latency of an operation. Percentiles of the distribution can be queried from the {@link MetricStore}.
+   * @param metricName Name of the metric.
+   * @param value value to record.
+   */
+  public abstract void histogram(String metricName, long value);
+
+  /**
+   * Records a value into the distribution of a {@link MetricType#HISTOGRAM} metric of the given context.
+   * Nothing is recorded if the context doesn't support histograms.
+   *
+   * @see #histogram(String, long)
+   */
+  public static void histogram(MetricsContext context, String metricName, long value) {
+    if (context instanceof AbstractMetricsContext) {
+      ((AbstractMetricsContext) context).histogram(metricName, value);
+    }
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.api.metrics;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.SortedMap;
+import javax.annotation.Nullable;
+
+/**
+ * Log-linear bucketing of values of {@link MetricType#HISTOGRAM} metrics, similar to HDR histograms.
+ * <p>
+ * Values below 16 get a bucket each. Every power of two above it is split
+ * into {@code 2^SUB_BUCKET_BITS} buckets of equal width, which bounds the relative error of a reported
+ * percentile to {@code 1 / 2^SUB_BUCKET_BITS}. Since the buckets are fixed, histograms are merged by adding up
+ * the counts of the same bucket, which lets them be aggregated over time and tags as counters.
+ * </p>
+ * Negative values are recorded in the first bucket.
+ */
+public final class HistogramBuckets {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int LINEAR_BUCKETS = SUB_BUCKETS * 2;
+  private static final int LINEAR_BITS = Integer.numberOfTrailingZeros(LINEAR_BUCKETS);
+
+  /**
+   * Total number of buckets.
+   */
+  public static final int NUM_BUCKETS = LINEAR_BUCKETS + (Long.SIZE - 1 - LINEAR_BITS) * SUB_BUCKETS;
+
+  // Separates the metric name from the bucket index in the name of a bucket measure
+  private static final String BUCKET_MEASURE_SEPARATOR = ".histogram.bucket.";
+  // Separates the metric name from the percentile in a metric query
+  private static final String PERCENTILE_SEPARATOR = ":p";
+
+  private HistogramBuckets() {
+  }
+
+  /**
+   * Returns the index of the bucket the given value falls into.
+   */
+  public static int getBucket(long value) {
+    if (value < LINEAR_BUCKETS) {
+      return value < 0 ? 0 : (int) value;
+    }
+    int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return LINEAR_BUCKETS + (exponent - LINEAR_BITS) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * Returns the smallest value that falls into the given bucket.
+   */
+  public static long getLowerBound(int bucket) {
+    Preconditions.checkArgument(bucket >= 0 && bucket < NUM_BUCKETS, "Invalid bucket %s", bucket);
+    if (bucket < LINEAR_BUCKETS) {
+      return bucket;
+    }
+    int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + LINEAR_BITS;
+    long subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+    return (1L << exponent) + (subBucket << (exponent - SUB_BUCKET_BITS));
+  }
+
+  /**
+   * Returns the largest value that falls into the given bucket.
+   */
+  public static long getUpperBound(int bucket) {
+    return bucket == NUM_BUCKETS - 1 ? Long.MAX_VALUE : getLowerBound(bucket + 1) - 1;
+  }
+
+  /**
+   * Returns the value at the given percentile of the histogram with the given bucket counts. The upper bound of the
+   * bucket that contains the percentile is returned.
+   *
+   * @param bucketCounts counts of values by bucket index
+   * @param percentile percentile to compute, in the range of (0, 100]
+   * @return the percentile value or {@code -1} if the histogram is empty
+   */
+  public static long getPercentile(SortedMap<Integer, Long> bucketCounts, double percentile) {
+    Preconditions.checkArgument(percentile > 0 && percentile <= 100, "Percentile must be in (0, 100]: %s", percentile);
+    long total = 0;
+    for (long count : bucketCounts.values()) {
+      total += count;
+    }
+    if (total <= 0) {
+      return -1;
+    }
+    long rank = (long) Math.ceil(total * percentile / 100);
+    long seen = 0;
+    int bucket = bucketCounts.lastKey();
+    for (Map.Entry<Integer, Long> entry : bucketCounts.entrySet()) {
+      seen += entry.getValue();
+      if (seen >= rank) {
+        bucket = entry.getKey();
+        break;
+      }
+    }
+    return getUpperBound(bucket);
+  }
+
+  /**
+   * Merges the given bucket counts into at most the given number of buckets. Runs of consecutive non-empty buckets
+   * are merged, with the total count recorded in the highest bucket of the run. Since percentiles are reported as
+   * the upper bound of a bucket, the result still merges with other histograms and never under-reports a
+   * percentile, at the cost of a larger error.
+   *
+   * @param bucketCounts counts of values by bucket index
+   * @param maxBuckets maximum number of buckets in the result
+   * @return counts of values by bucket index with at most {@code maxBuckets} entries
+   */
+  public static SortedMap<Integer, Long> merge(Map<Integer, Long> bucketCounts, int maxBuckets) {
+    Preconditions.checkArgument(maxBuckets > 0, "Maximum number of buckets must be positive: %s", maxBuckets);
+    SortedMap<Integer, Long> sorted = Maps.newTreeMap();
+    sorted.putAll(bucketCounts);
+    if (sorted.size() <= maxBuckets) {
+      return sorted;
+    }
+
+    int runLength = (sorted.size() + maxBuckets - 1) / maxBuckets;
+    SortedMap<Integer, Long> merged = Maps.newTreeMap();
+    int count = 0;
+    long runCount = 0;
+    for (Map.Entry<Integer, Long> entry : sorted.entrySet()) {
+      runCount += entry.getValue();
+      if (++count % runLength == 0 || count == sorted.size()) {
+        merged.put(entry.getKey(), runCount);
+        runCount = 0;
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Returns the name of the measure that stores the count of the given bucket of the given histogram metric.
+   */
+  public static String getBucketMeasureName(String metricName, int bucket) {
+    return metricName + BUCKET_MEASURE_SEPARATOR + bucket;
+  }
+
+  /**
+   * Returns the name of the histogram metric if the given measure name was created with
+   * {@link #getBucketMeasureName(String, int)}, or {@code null} otherwise.
+   */
+  @Nullable
+  public static String getMetricName(String bucketMeasureName) {
+    int idx = bucketMeasureName.lastIndexOf(BUCKET_MEASURE_SEPARATOR);
+    return idx < 0 ? null : bucketMeasureName.substring(0, idx);
+  }
+
+  /**
+   * Returns the bucket index of a measure name created with {@link #getBucketMeasureName(String, int)}.
+   */
+  public static int getMeasureBucket(String bucketMeasureName) {
+    int idx = bucketMeasureName.lastIndexOf(BUCKET_MEASURE_SEPARATOR);
+    Preconditions.checkArgument(idx >= 0, "Not a histogram bucket measure: %s", bucketMeasureName);
+    return Integer.parseInt(bucketMeasureName.substring(idx + BUCKET_MEASURE_SEPARATOR.length()));
+  }
+
+  /**
+   * Returns the percentile requested by a metric name of the form {@code <metric>:p<percentile>},
+   * e.g. {@code request.latency:p99}, or {@code null} if the name doesn't request a percentile.
+   */
+  @Nullable
+  public static Double getQueriedPercentile(String metricName) {
+    int idx = metricName.lastIndexOf(PERCENTILE_SEPARATOR);
+    if (idx < 0) {
+      return null;
+    }
+    try {
+      return Double.valueOf(metricName.substring(idx + PERCENTILE_SEPARATOR.length()));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the name of the histogram metric in a metric name of the form {@code <metric>:p<percentile>}.
+   */
+  public static String getQueriedMetricName(String metricName) {
+    int idx = metricName.lastIndexOf(PERCENTILE_SEPARATOR);
+    return idx < 0 ? metricName : metricName.substring(0, idx);
+  }
+}
@@ -16,9 +16,13 @@
 package co.cask.cdap.api.metrics;
 
 /**
- * MetricType - COUNTER or GAUGE type
+ * MetricType - COUNTER, GAUGE or HISTOGRAM type
  */
 public enum MetricType {
   COUNTER,
-  GAUGE
+  GAUGE,
+  /**
+   * Distribution of values, recorded as counts of values in {@link HistogramBuckets}.
+   */
+  HISTOGRAM
 }
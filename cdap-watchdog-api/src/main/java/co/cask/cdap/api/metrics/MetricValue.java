@@ -17,6 +17,9 @@ package co.cask.cdap.api.metrics;
 
 import com.google.common.base.Objects;
 
+import java.util.Map;
+import javax.annotation.Nullable;
+
 /**
  * Carries the "raw" emitted metric data point: metric name, type, and value
  */
@@ -25,6 +28,8 @@ public class MetricValue {
   String name;
   MetricType type;
   long value;
+  // counts of values by HistogramBuckets index, only set for HISTOGRAM metric
+  Map<Integer, Long> buckets;
 
   public MetricValue (String name, MetricType type, long value) {
     this.name = name;
@@ -32,6 +37,23 @@ public class MetricValue {
     this.value = value;
   }
 
+  /**
+   * Creates a {@link MetricType#HISTOGRAM} metric value.
+   *
+   * @param name name of the metric
+   * @param buckets counts of values by {@link HistogramBuckets} index
+   */
+  public MetricValue(String name, Map<Integer, Long> buckets) {
+    this.name = name;
+    this.type = MetricType.HISTOGRAM;
+    this.buckets = buckets;
+    long count = 0;
+    for (long bucketCount : buckets.values()) {
+      count += bucketCount;
+    }
+    this.value = count;
+  }
+
   public String getName() {
     return name;
   }
@@ -40,16 +62,29 @@ public class MetricValue {
     return type;
   }
 
+  /**
+   * Returns the value of the metric. For {@link MetricType#HISTOGRAM} it is the number of recorded values.
+   */
   public long getValue() {
     return value;
   }
 
+  /**
+   * Returns counts of values by {@link HistogramBuckets} index for {@link MetricType#HISTOGRAM} metric,
+   * or {@code null} for other metric types.
+   */
+  @Nullable
+  public Map<Integer, Long> getBuckets() {
+    return buckets;
+  }
+
   @Override
   public String toString() {
     return Objects.toStringHelper(this)
       .add("name", name)
       .add("type", type)
       .add("value", value)
+      .add("buckets", buckets)
       .toString();
   }
 }
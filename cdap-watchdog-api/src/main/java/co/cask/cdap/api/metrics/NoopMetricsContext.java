@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015-2016 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -23,7 +23,7 @@ import java.util.Map;
 /**
  * A no-op implementation of {@link MetricsContext}.
  */
-public final class NoopMetricsContext implements MetricsContext {
+public final class NoopMetricsContext extends AbstractMetricsContext {
 
   private final Map<String, String> tags;
 
@@ -59,4 +59,9 @@ public final class NoopMetricsContext implements MetricsContext {
   public void gauge(String metricName, long value) {
     // no-op
   }
+
+  @Override
+  public void histogram(String metricName, long value) {
+    // no-op
+  }
 }
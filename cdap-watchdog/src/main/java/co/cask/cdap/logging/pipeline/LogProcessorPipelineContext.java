@@ -20,6 +20,7 @@ import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.Appender;
+import co.cask.cdap.api.metrics.AbstractMetricsContext;
 import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
@@ -43,7 +44,7 @@ import javax.annotation.Nullable;
 /**
  * A context object provide to log processor pipeline.
  */
-public class LogProcessorPipelineContext implements Flushable, Syncable, MetricsContext {
+public class LogProcessorPipelineContext extends AbstractMetricsContext implements Flushable, Syncable {
 
   private final String name;
   private final LoggerContext loggerContext;
@@ -193,4 +194,9 @@ public class LogProcessorPipelineContext implements Flushable, Syncable, Metrics
   public void gauge(String metricName, long value) {
     metricsContext.gauge(String.format("%s.%s", metricsPrefix, metricName), value);
   }
+
+  @Override
+  public void histogram(String metricName, long value) {
+    histogram(metricsContext, String.format("%s.%s", metricsPrefix, metricName), value);
+  }
 }
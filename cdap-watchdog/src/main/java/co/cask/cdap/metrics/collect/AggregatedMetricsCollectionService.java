@@ -15,6 +15,7 @@
  */
 package co.cask.cdap.metrics.collect;
 
+import co.cask.cdap.api.metrics.AbstractMetricsContext;
 import co.cask.cdap.api.metrics.MetricType;
 import co.cask.cdap.api.metrics.MetricValue;
 import co.cask.cdap.api.metrics.MetricValues;
@@ -28,6 +29,7 @@ import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,12 +37,18 @@ import org.slf4j.LoggerFactory;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Base class for {@link MetricsCollectionService} which collect metrics through a set of cached
  * {@link AggregatedMetricsEmitter}.
+ *
+ * Each {@link MetricsContext} resolves its emitters once by metric name and keeps them, so updating a metric
+ * neither hashes the tags nor allocates. A context registers itself for publishing when it is updated
+ * after the last publish, hence only contexts with new values are visited by the publishing thread.
  */
 public abstract class AggregatedMetricsCollectionService extends AbstractExecutionThreadService
                                                          implements MetricsCollectionService {
@@ -49,32 +57,17 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
   private static final long CACHE_EXPIRE_MINUTES = 1;
 
   private final LoadingCache<Map<String, String>, MetricsContext> collectors;
-  private final LoadingCache<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>> emitters;
+  // contexts that have been updated since the last publish
+  private final Set<MetricsContextImpl> updatedContexts;
   private Thread runThread;
 
   public AggregatedMetricsCollectionService() {
+    // NOTE : expiring a context from the cache doesn't lose metrics, as a context still in use registers itself
+    // in updatedContexts whenever it is updated.
     this.collectors = CacheBuilder.newBuilder()
       .expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES)
       .build(createCollectorLoader());
-
-    this.emitters = CacheBuilder.newBuilder()
-      // NOTE : we don't need to have removalListener to  emit metrics, as we have expireAfterAccess set for a minute,
-      // emitters.get() is used to increment/gauge and that would reset the access time,
-      // and since runOneIteration() emits all the metrics for the scheduled duration (every 1 second)
-      // there wont be any loss of emitter entries.
-      .expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES)
-      .build(new CacheLoader<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>>() {
-        @Override
-        public LoadingCache<String, AggregatedMetricsEmitter> load(Map<String, String> tags) throws Exception {
-          return CacheBuilder.newBuilder().expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES).
-            build(new CacheLoader<String, AggregatedMetricsEmitter>() {
-              @Override
-              public AggregatedMetricsEmitter load(String metricName) throws Exception {
-                return new AggregatedMetricsEmitter(metricName);
-              }
-            });
-        }
-      });
+    this.updatedContexts = Sets.newSetFromMap(Maps.<MetricsContextImpl, Boolean>newConcurrentMap());
   }
 
   /**
@@ -176,26 +169,37 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
   }
 
   private Iterator<MetricValues> getMetrics(final long timestamp) {
-    // NOTE : emitters.asMap does not reset the access time in cache,
-    // so it's the preferred way to access the cache entries. as we access and emit metrics every second.
-    final Iterator<Map.Entry<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>>> iterator =
-      emitters.asMap().entrySet().iterator();
+    final Iterator<MetricsContextImpl> iterator = updatedContexts.iterator();
     return new AbstractIterator<MetricValues>() {
       @Override
       protected MetricValues computeNext() {
         while (iterator.hasNext()) {
-          Map.Entry<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>> entry = iterator.next();
-          Map<String, AggregatedMetricsEmitter> metricEmitters = entry.getValue().asMap();
+          MetricsContextImpl context = iterator.next();
+          // Unregister before emitting, so that an update racing with the emit registers the context again
+          iterator.remove();
+          context.updated = false;
+
+          Map<String, AggregatedMetricsEmitter> metricEmitters = context.emitters;
+          Map<String, HistogramMetricsEmitter> histogramEmitters = context.histogramEmitters;
           // +1 because we add extra metric about how many metric values did we emit in this context (see below)
-          List<MetricValue> metricValues = Lists.newArrayListWithCapacity(metricEmitters.size() + 1);
-          for (Map.Entry<String, AggregatedMetricsEmitter> emitterEntry : metricEmitters.entrySet()) {
-            MetricValue metricValue = emitterEntry.getValue().emit();
+          List<MetricValue> metricValues =
+            Lists.newArrayListWithCapacity(metricEmitters.size() + histogramEmitters.size() + 1);
+          for (AggregatedMetricsEmitter emitter : metricEmitters.values()) {
+            MetricValue metricValue = emitter.emit();
             // skip increment by 0
             if (metricValue.getType() == MetricType.COUNTER && metricValue.getValue() == 0) {
               continue;
             }
             metricValues.add(metricValue);
           }
+          for (HistogramMetricsEmitter emitter : histogramEmitters.values()) {
+            MetricValue metricValue = emitter.emit();
+            // skip histogram without recorded values
+            if (metricValue.getValue() == 0) {
+              continue;
+            }
+            metricValues.add(metricValue);
+          }
 
           if (metricValues.isEmpty()) {
             // skip if there are no metric values to send
@@ -206,7 +210,7 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
           metricValues.add(new MetricValue("metrics.emitted.count", MetricType.COUNTER, metricValues.size() + 1));
 
           LOG.trace("Emit metric {}", metricValues);
-          return new MetricValues(entry.getKey(), timestamp, metricValues);
+          return new MetricValues(context.tags, timestamp, metricValues);
         }
         return endOfData();
       }
@@ -222,22 +226,63 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
     };
   }
 
-  private final class MetricsContextImpl implements MetricsContext {
+  private final class MetricsContextImpl extends AbstractMetricsContext {
 
     private final Map<String, String> tags;
+    private final ConcurrentMap<String, AggregatedMetricsEmitter> emitters;
+    private final ConcurrentMap<String, HistogramMetricsEmitter> histogramEmitters;
+    // whether this context is registered in updatedContexts
+    private volatile boolean updated;
 
     private MetricsContextImpl(final Map<String, String> tags) {
       this.tags = ImmutableMap.copyOf(tags);
+      this.emitters = Maps.newConcurrentMap();
+      this.histogramEmitters = Maps.newConcurrentMap();
     }
 
     @Override
     public void increment(String metricName, long value) {
-      emitters.getUnchecked(tags).getUnchecked(metricName).increment(value);
+      getEmitter(metricName).increment(value);
+      markUpdated();
     }
 
     @Override
     public void gauge(String metricName, long value) {
-      emitters.getUnchecked(tags).getUnchecked(metricName).gauge(value);
+      getEmitter(metricName).gauge(value);
+      markUpdated();
+    }
+
+    @Override
+    public void histogram(String metricName, long value) {
+      HistogramMetricsEmitter emitter = histogramEmitters.get(metricName);
+      if (emitter == null) {
+        emitter = new HistogramMetricsEmitter(metricName);
+        HistogramMetricsEmitter existing = histogramEmitters.putIfAbsent(metricName, emitter);
+        emitter = existing == null ? emitter : existing;
+      }
+      emitter.record(value);
+      markUpdated();
+    }
+
+    private AggregatedMetricsEmitter getEmitter(String metricName) {
+      AggregatedMetricsEmitter emitter = emitters.get(metricName);
+      if (emitter == null) {
+        emitter = new AggregatedMetricsEmitter(metricName);
+        AggregatedMetricsEmitter existing = emitters.putIfAbsent(metricName, emitter);
+        emitter = existing == null ? emitter : existing;
+      }
+      return emitter;
+    }
+
+    /**
+     * Registers this context for publishing. Must be called after the emitter is updated, so that either the
+     * publishing thread sees the update or this method sees the context unregistered and registers it again.
+     */
+    private void markUpdated() {
+      if (!updated) {
+        updated = true;
+        updatedContexts.add(this);
+      }
     }
 
     @Override
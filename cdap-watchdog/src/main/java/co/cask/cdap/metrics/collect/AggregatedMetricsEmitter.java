@@ -20,21 +20,29 @@ import co.cask.cdap.api.metrics.MetricValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * {@link MetricsEmitter} that aggregates  values for a metric
  * during collection and emit the aggregated value when emit.
+ *
+ * Updates are allocation free: counters are accumulated in a {@link StripedLongCounter} and a gauge is a single
+ * volatile write. If a gauge is set between two emits, the gauge value is emitted and increments done in
+ * the same interval are discarded.
  */
 final class AggregatedMetricsEmitter implements MetricsEmitter {
   private static final Logger LOG = LoggerFactory.getLogger(AggregatedMetricsEmitter.class);
 
+  // marker for no gauge value set since the last emit, hence a gauge of Long.MIN_VALUE cannot be reported
+  private static final long NO_GAUGE = Long.MIN_VALUE;
+  private static final AtomicLongFieldUpdater<AggregatedMetricsEmitter> GAUGE_UPDATER =
+    AtomicLongFieldUpdater.newUpdater(AggregatedMetricsEmitter.class, "gauge");
+
   private final String name;
-  // metric value
-  private final AtomicLong value;
-  // specifies if the metric type is gauge or counter
-  private final AtomicBoolean gaugeUsed;
+  // counter value
+  private final StripedLongCounter value;
+  // last gauge value, or NO_GAUGE if the metric is used as counter
+  private volatile long gauge;
 
   AggregatedMetricsEmitter(String name) {
     if (name == null || name.isEmpty()) {
@@ -42,25 +50,25 @@ final class AggregatedMetricsEmitter implements MetricsEmitter {
     }
 
     this.name = name;
-    this.value = new AtomicLong();
-    this.gaugeUsed = new AtomicBoolean(false);
+    this.value = new StripedLongCounter();
+    this.gauge = NO_GAUGE;
   }
 
   void increment(long value) {
-    this.value.addAndGet(value);
+    this.value.add(value);
   }
 
-
   @Override
   public MetricValue emit() {
-    // todo CDAP-2195 - potential race condition , reseting value and type has to be done together
-    long value = this.value.getAndSet(0);
-    MetricType type = gaugeUsed.getAndSet(false) ? MetricType.GAUGE : MetricType.COUNTER;
-    return new MetricValue(name, type, value);
+    long gauge = GAUGE_UPDATER.getAndSet(this, NO_GAUGE);
+    long value = this.value.sumThenReset();
+    if (gauge != NO_GAUGE) {
+      return new MetricValue(name, MetricType.GAUGE, gauge);
+    }
+    return new MetricValue(name, MetricType.COUNTER, value);
   }
 
   public void gauge(long value) {
-    this.value.set(value);
-    this.gaugeUsed.set(true);
+    this.gauge = value;
   }
 }
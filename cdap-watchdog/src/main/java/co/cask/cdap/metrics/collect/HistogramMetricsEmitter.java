@@ -0,0 +1,58 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.metrics.collect;
+
+import co.cask.cdap.api.metrics.HistogramBuckets;
+import co.cask.cdap.api.metrics.MetricType;
+import co.cask.cdap.api.metrics.MetricValue;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link MetricsEmitter} that aggregates values recorded for a {@link MetricType#HISTOGRAM} metric into
+ * {@link HistogramBuckets} during collection and emits the bucket counts when emit.
+ */
+final class HistogramMetricsEmitter implements MetricsEmitter {
+
+  private final String name;
+  private final AtomicLongArray buckets;
+
+  HistogramMetricsEmitter(String name) {
+    this.name = name;
+    this.buckets = new AtomicLongArray(HistogramBuckets.NUM_BUCKETS);
+  }
+
+  void record(long value) {
+    buckets.incrementAndGet(HistogramBuckets.getBucket(value));
+  }
+
+  /**
+   * Emits the bucket counts recorded since the last emit. The emitted value has zero count if nothing was recorded.
+   */
+  @Override
+  public MetricValue emit() {
+    Map<Integer, Long> counts = new TreeMap<>();
+    for (int i = 0; i < buckets.length(); i++) {
+      // avoid the write for the majority of buckets that are empty
+      if (buckets.get(i) != 0) {
+        counts.put(i, buckets.getAndSet(i, 0));
+      }
+    }
+    return new MetricValue(name, counts);
+  }
+}
@@ -87,7 +87,8 @@ public class MessagingMetricsCollectionService extends AggregatedMetricsCollecti
     while (metrics.hasNext()) {
       encoderOutputStream.reset();
       MetricValues metricValues = metrics.next();
-      // Encode MetricValues into bytes
+      // Encode MetricValues into bytes, prefixed with the payload version
+      encoderOutputStream.write(MetricValuesPayloads.VERSION);
       recordWriter.encode(metricValues, encoder);
       // Calculate the topic number with the hashcode of MetricValues' tags and store the encoded payload in the
       // corresponding list of the topic number
@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.metrics.collect;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.metrics.MetricValues;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helper for the format of {@link MetricValues} payloads published for the metrics processor.
+ * <p>
+ * A payload is the {@link #VERSION} byte followed by the {@link MetricValues} encoded with the schema generated from
+ * the class. Payloads published by older versions have no version byte and are encoded with the schema
+ * before histogram buckets were added. Those payloads start with the zig-zag encoding of a non-negative int,
+ * which is always an even byte, hence they cannot be mistaken for a versioned payload.
+ */
+public final class MetricValuesPayloads {
+
+  /**
+   * Version of the payload format, written as the first byte of a payload.
+   */
+  public static final int VERSION = 1;
+
+  private static final String BUCKETS_FIELD = "buckets";
+
+  /**
+   * Returns {@code true} if a payload starting with the given byte is prefixed with {@link #VERSION}.
+   */
+  public static boolean isVersioned(byte firstByte) {
+    return firstByte == VERSION;
+  }
+
+  /**
+   * Returns the schema of payloads without version byte, which is the given {@link MetricValues} schema without
+   * the histogram buckets field.
+   */
+  public static Schema getUnversionedSchema(Schema schema) {
+    switch (schema.getType()) {
+      case UNION:
+        List<Schema> unionSchemas = new ArrayList<>();
+        for (Schema unionSchema : schema.getUnionSchemas()) {
+          unionSchemas.add(getUnversionedSchema(unionSchema));
+        }
+        return Schema.unionOf(unionSchemas);
+      case ARRAY:
+        return Schema.arrayOf(getUnversionedSchema(schema.getComponentSchema()));
+      case RECORD:
+        List<Schema.Field> fields = new ArrayList<>();
+        for (Schema.Field field : schema.getFields()) {
+          if (!BUCKETS_FIELD.equals(field.getName())) {
+            fields.add(Schema.Field.of(field.getName(), getUnversionedSchema(field.getSchema())));
+          }
+        }
+        return Schema.recordOf(schema.getRecordName(), fields);
+      default:
+        return schema;
+    }
+  }
+
+  private MetricValuesPayloads() {
+    // no-op
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.metrics.collect;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A counter that is cheap to update concurrently from many threads, similar to the Java 8 {@code LongAdder}.
+ * Updates go to a single cell until contention is detected, after which they are spread over
+ * a set of cells selected by the updating thread. Reading sums up and resets all cells.
+ */
+final class StripedLongCounter {
+
+  // Number of longs between two cells, so that every cell sits on its own cache line
+  private static final int CELL_PADDING = 8;
+  private static final int CELLS = cellsCount();
+
+  private final AtomicLong base;
+  private final AtomicReference<AtomicLongArray> cells;
+
+  StripedLongCounter() {
+    this.base = new AtomicLong();
+    this.cells = new AtomicReference<>();
+  }
+
+  /**
+   * Adds the given value to the counter.
+   */
+  void add(long value) {
+    AtomicLongArray cells = this.cells.get();
+    if (cells == null) {
+      long current = base.get();
+      if (base.compareAndSet(current, current + value)) {
+        return;
+      }
+      // Contended, switch to striped cells
+      this.cells.compareAndSet(null, new AtomicLongArray(CELLS * CELL_PADDING));
+      cells = this.cells.get();
+    }
+    cells.addAndGet(cellIndex(), value);
+  }
+
+  /**
+   * Returns the current sum of the counter and resets it to zero. Updates concurrent with this call are
+   * either included in the returned sum or remain in the counter.
+   */
+  long sumThenReset() {
+    long sum = base.getAndSet(0);
+    AtomicLongArray cells = this.cells.get();
+    if (cells != null) {
+      for (int i = 0; i < cells.length(); i += CELL_PADDING) {
+        sum += cells.getAndSet(i, 0);
+      }
+    }
+    return sum;
+  }
+
+  private static int cellIndex() {
+    long id = Thread.currentThread().getId();
+    int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+    return ((hash >>> 16) & (CELLS - 1)) * CELL_PADDING;
+  }
+
+  private static int cellsCount() {
+    // Power of two that is at least the number of processors, capped to keep memory per counter bounded
+    int cells = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+    return Math.min(cells, 64);
+  }
+}
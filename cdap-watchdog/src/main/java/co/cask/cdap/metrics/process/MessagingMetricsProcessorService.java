@@ -37,6 +37,7 @@ import co.cask.cdap.messaging.MessageFetcher;
 import co.cask.cdap.messaging.MessagingService;
 import co.cask.cdap.messaging.MessagingUtils;
 import co.cask.cdap.messaging.data.RawMessage;
+import co.cask.cdap.metrics.collect.MetricValuesPayloads;
 import co.cask.cdap.metrics.store.MetricDatasetFactory;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.proto.id.TopicId;
@@ -55,39 +56,53 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Deque;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nullable;
 
 /**
  * Process metrics by consuming metrics being published to TMS.
+ * <p>
+ * Metrics are processed in a pipeline of three stages connected by bounded queues:
+ * <ol>
+ *   <li>one fetcher thread per topic fetches and decodes messages into {@link MetricValues};</li>
+ *   <li>an aggregator thread pre-aggregates the decoded records of the same context and timestamp into batches;</li>
+ *   <li>a writer thread writes the batches into the {@link MetricStore} and then persists the ids of the
+ *   last messages written.</li>
+ * </ol>
+ * A slow metric store blocks the aggregator and in turn the fetchers once the queues are full,
+ * which bounds the memory used by the service. The same applies while the writer retries a batch that failed to be
+ * written, since the fetchers have already moved past its messages.
+ * </p>
  */
 public class MessagingMetricsProcessorService extends AbstractExecutionThreadService {
   private static final Logger LOG = LoggerFactory.getLogger(MessagingMetricsProcessorService.class);
   // Log the metrics processing progress no more than once per minute.
   private static final Logger PROGRESS_LOG = Loggers.sampling(LOG, LogSamplers.limitRate(60000));
+  // Number of batches that can be pending between the aggregator and the writer
+  private static final int MAX_PENDING_BATCHES = 2;
+  // Marks the end of the batches for the writer
+  private static final PersistBatch END_OF_BATCHES =
+    new PersistBatch(Collections.<MetricValues>emptyList(), Collections.<TopicIdMetaKey, byte[]>emptyMap(), 0);
 
   private final MetricDatasetFactory metricDatasetFactory;
   private final List<TopicId> metricsTopics;
   private final MessagingService messagingService;
   private final DatumReader<MetricValues> recordReader;
   private final Schema recordSchema;
+  private final Schema unversionedRecordSchema;
   private final MetricStore metricStore;
   private final Map<String, String> metricsContextMap;
   private final int fetcherLimit;
-  private final ConcurrentLinkedDeque<MetricValues> records;
-  private final ConcurrentMap<TopicIdMetaKey, byte[]> topicMessageIds;
-  private final AtomicBoolean persistingFlag;
+  private final int maxBatchSize;
+  private final BlockingQueue<FetchedRecord> records;
+  private final BlockingQueue<PersistBatch> batches;
   private final int metricsProcessIntervalMillis;
   private final List<ProcessMetricsThread> processMetricsThreads;
 
@@ -96,6 +111,7 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
   private MetricsConsumerMetaTable metaTable;
 
   private volatile boolean stopping;
+  private volatile boolean fetchersDone;
 
   @Inject
   public MessagingMetricsProcessorService(MetricDatasetFactory metricDatasetFactory,
@@ -130,6 +146,7 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
     this.messagingService = messagingService;
     try {
       this.recordSchema = schemaGenerator.generate(MetricValues.class);
+      this.unversionedRecordSchema = MetricValuesPayloads.getUnversionedSchema(recordSchema);
       this.recordReader = readerFactory.create(TypeToken.of(MetricValues.class), recordSchema);
     } catch (UnsupportedTypeException e) {
       // This should never happen
@@ -140,9 +157,10 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
     this.fetcherLimit = fetcherLimit;
     this.metricsContextMap = metricsContext.getTags();
     this.processMetricsThreads = new ArrayList<>();
-    this.records = new ConcurrentLinkedDeque<>();
-    this.topicMessageIds = new ConcurrentHashMap<>();
-    this.persistingFlag = new AtomicBoolean();
+    // A batch takes at most one full fetch from every topic, and the queue can hold one more
+    this.maxBatchSize = Math.max(1, fetcherLimit) * Math.max(1, metricsTopics.size());
+    this.records = new ArrayBlockingQueue<>(maxBatchSize);
+    this.batches = new ArrayBlockingQueue<>(MAX_PENDING_BATCHES);
     this.metricsProcessIntervalMillis = metricsProcessIntervalMillis;
   }
 
@@ -195,20 +213,31 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
       return;
     }
 
+    Thread aggregatorThread = new AggregateMetricsThread();
+    Thread writerThread = new PersistMetricsThread();
+    aggregatorThread.start();
+    writerThread.start();
     for (ProcessMetricsThread thread : processMetricsThreads) {
       thread.start();
     }
 
     for (ProcessMetricsThread thread : processMetricsThreads) {
-      try {
-        thread.join();
-      } catch (InterruptedException e) {
-        LOG.info("Thread {} is being terminated while waiting for it to finish.", thread.getName());
-        Thread.currentThread().interrupt();
-      }
+      joinThread(thread);
+    }
+    // Let the aggregator and the writer persist the records and messageId's fetched before all
+    // ProcessMetricsThread's completed.
+    fetchersDone = true;
+    joinThread(aggregatorThread);
+    joinThread(writerThread);
+  }
+
+  private void joinThread(Thread thread) {
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      LOG.info("Thread {} is being terminated while waiting for it to finish.", thread.getName());
+      Thread.currentThread().interrupt();
     }
-    // Persist records and messageId's after all ProcessMetricsThread's complete.
-    persistRecordsMessageIds(records, topicMessageIds);
   }
 
   @Override
@@ -221,47 +250,147 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
     LOG.info("Metrics Processing Service stopped.");
   }
 
-  private void persistRecordsMessageIds(Deque<MetricValues> metricValues, Map<TopicIdMetaKey, byte[]> messageIds) {
-    try {
-      if (!metricValues.isEmpty()) {
-        persistRecords(metricValues);
-      }
+  /**
+   * Writes the batch to the {@link MetricStore} and then persists its message ids. The fetchers have already moved
+   * past the messages of the batch, hence writing the batch is retried until it succeeds.
+   *
+   * @return {@code true} if the batch is written, or {@code false} if the service stopped before that
+   */
+  private boolean persistRecordsMessageIds(PersistBatch batch) throws InterruptedException {
+    while (!batch.metricValues.isEmpty()) {
       try {
-        metaTable.saveMessageIds(messageIds);
+        persistRecords(batch);
+        break;
       } catch (Exception e) {
-        LOG.error("Failed to persist messageId's of consumed messages.", e);
+        if (stopping) {
+          LOG.warn("Failed to persist metrics while stopping, they will be processed again after restart.", e);
+          return false;
+        }
+        LOG.error("Failed to persist metrics, will retry in 1 sec.", e);
+        TimeUnit.SECONDS.sleep(1);
       }
+    }
+    try {
+      metaTable.saveMessageIds(batch.messageIds);
     } catch (Exception e) {
-      LOG.error("Failed to persist metrics.", e);
+      LOG.error("Failed to persist messageId's of consumed messages.", e);
     }
+    return true;
   }
 
-  private void persistRecords(Deque<MetricValues> metricValues) throws Exception {
+  private void persistRecords(PersistBatch batch) throws Exception {
+    // Copy the list so that the batch can be retried as is
+    List<MetricValues> metricValues = new ArrayList<>(batch.metricValues);
     long now = System.currentTimeMillis();
-    long lastRecordTime = metricValues.getLast().getTimestamp();
+    long lastRecordTime = metricValues.get(metricValues.size() - 1).getTimestamp();
     long delay = now - TimeUnit.SECONDS.toMillis(lastRecordTime);
     metricValues.add(
       new MetricValues(metricsContextMap, TimeUnit.MILLISECONDS.toSeconds(now), ImmutableList.of(
-        new MetricValue("metrics.process.count", MetricType.COUNTER, metricValues.size()),
-        new MetricValue("metrics.process.delay.ms", MetricType.GAUGE, delay))));
+        new MetricValue("metrics.process.count", MetricType.COUNTER, batch.recordsCount),
+        new MetricValue("metrics.process.delay.ms", MetricType.GAUGE, delay),
+        new MetricValue("metrics.process.queue.size", MetricType.GAUGE, records.size()))));
     metricStore.add(metricValues);
-    recordsProcessed += metricValues.size();
+    recordsProcessed += batch.recordsCount;
 
     PROGRESS_LOG.debug("{} metrics records processed. Last metric record's timestamp: {}. Metrics process delay: {}",
                        recordsProcessed, lastRecordTime, delay);
   }
 
+  /**
+   * Second stage of the pipeline, which pre-aggregates fetched records into batches for the writer.
+   */
+  private final class AggregateMetricsThread extends Thread {
+
+    private final MetricValuesAggregator aggregator;
+    private final Map<TopicIdMetaKey, byte[]> messageIds;
+
+    AggregateMetricsThread() {
+      super("AggregateMetricsThread");
+      setDaemon(true);
+      this.aggregator = new MetricValuesAggregator();
+      this.messageIds = new HashMap<>();
+    }
+
+    @Override
+    public void run() {
+      try {
+        boolean done = false;
+        while (!done) {
+          // Checks the flag before polling, so that records added before the fetchers completed are all consumed
+          done = fetchersDone;
+          FetchedRecord record = records.poll(metricsProcessIntervalMillis, TimeUnit.MILLISECONDS);
+          while (record != null) {
+            if (record.metricValues != null) {
+              aggregator.add(record.metricValues);
+            }
+            messageIds.put(record.topicIdMetaKey, record.messageId);
+            if (aggregator.getRecordsAdded() >= maxBatchSize) {
+              break;
+            }
+            record = records.poll();
+          }
+          if (record != null) {
+            // Batch is full, there may be more records to consume
+            done = false;
+          }
+          if (!messageIds.isEmpty()) {
+            int recordsCount = aggregator.getRecordsAdded();
+            batches.put(new PersistBatch(aggregator.drain(), new HashMap<>(messageIds), recordsCount));
+            messageIds.clear();
+          }
+        }
+        batches.put(END_OF_BATCHES);
+      } catch (InterruptedException e) {
+        LOG.info("Thread {} is interrupted, stop aggregating metrics.", getName());
+        Thread.currentThread().interrupt();
+        // Best effort to stop the writer, the service is being terminated anyway
+        batches.offer(END_OF_BATCHES);
+      }
+    }
+  }
+
+  /**
+   * Last stage of the pipeline, which writes batches to the {@link MetricStore} and persists the message ids.
+   */
+  private final class PersistMetricsThread extends Thread {
+
+    PersistMetricsThread() {
+      super("PersistMetricsThread");
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      try {
+        boolean persisting = true;
+        PersistBatch batch = batches.take();
+        while (batch != END_OF_BATCHES) {
+          // Once a batch is not written, the message ids of the following batches must not be persisted either,
+          // so that all of them are fetched again after restart. Keep taking batches to not block the aggregator.
+          persisting = persisting && persistRecordsMessageIds(batch);
+          batch = batches.take();
+        }
+      } catch (InterruptedException e) {
+        LOG.info("Thread {} is interrupted, stop persisting metrics.", getName());
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * First stage of the pipeline, which fetches and decodes metrics from a topic.
+   */
   private class ProcessMetricsThread extends Thread {
     private final TopicIdMetaKey topicIdMetaKey;
     private final PayloadInputStream payloadInput;
     private final BinaryDecoder decoder;
+    // Id of the last message fetched and handed over to the aggregator
+    private byte[] lastMessageId;
 
     ProcessMetricsThread(TopicIdMetaKey topicIdMetaKey, @Nullable byte[] messageId) {
       super(String.format("ProcessMetricsThread-%s", topicIdMetaKey.getTopicId()));
       setDaemon(true);
-      if (messageId != null) {
-        topicMessageIds.put(topicIdMetaKey, messageId);
-      }
+      this.lastMessageId = messageId;
       this.topicIdMetaKey = topicIdMetaKey;
       this.payloadInput = new PayloadInputStream();
       this.decoder = new BinaryDecoder(payloadInput);
@@ -276,16 +405,16 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
         } catch (InterruptedException e) {
           // It's triggered by stop
           Thread.currentThread().interrupt();
+          break;
         }
       }
     }
 
-    private void processMetrics() {
+    private void processMetrics() throws InterruptedException {
       // Decode the metrics records.
       try {
         MessageFetcher fetcher = messagingService.prepareFetch(topicIdMetaKey.getTopicId());
         fetcher.setLimit(fetcherLimit);
-        byte[] lastMessageId = topicMessageIds.get(topicIdMetaKey);
         if (lastMessageId != null) {
           if (LOG.isTraceEnabled()) {
             LOG.trace("Start fetching from lastMessageId = {}", Bytes.toStringBinary(lastMessageId));
@@ -296,62 +425,72 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
           fetcher.setStartTime(0L);
         }
 
-        byte[] currentMessageId = null;
         try (CloseableIterator<RawMessage> iterator = fetcher.fetch()) {
           while (iterator.hasNext() && isRunning()) {
             RawMessage input = iterator.next();
             try {
-              payloadInput.reset(input.getPayload());
-              MetricValues metricValues = recordReader.read(decoder, recordSchema);
-              records.add(metricValues);
-              currentMessageId = input.getId();
+              byte[] payload = input.getPayload();
+              payloadInput.reset(payload);
+              // Payloads published by older versions have no version and are encoded without histogram buckets
+              Schema sourceSchema = unversionedRecordSchema;
+              if (payload.length > 0 && MetricValuesPayloads.isVersioned(payload[0])) {
+                payloadInput.skip(1);
+                sourceSchema = recordSchema;
+              }
+              MetricValues metricValues = recordReader.read(decoder, sourceSchema);
+              // Blocks if the aggregator falls behind
+              records.put(new FetchedRecord(topicIdMetaKey, input.getId(), metricValues));
               if (LOG.isTraceEnabled()) {
-                LOG.trace("Received message {} with metrics: {}", Bytes.toStringBinary(currentMessageId), metricValues);
+                LOG.trace("Received message {} with metrics: {}", Bytes.toStringBinary(input.getId()), metricValues);
               }
             } catch (IOException e) {
               LOG.warn("Failed to decode message to MetricValue. Skipped. {}", e.getMessage());
+              // Still hand over the message id, so that the message is not fetched again
+              records.put(new FetchedRecord(topicIdMetaKey, input.getId(), null));
             }
+            lastMessageId = input.getId();
           }
         }
-
-        if (currentMessageId != null) {
-          topicMessageIds.put(topicIdMetaKey, currentMessageId);
-        }
-
-        // Skip persisting if the records is empty
-        if (records.isEmpty()) {
-          return;
-        }
-
-        // Ensure there's only one thread can persist records and messageId's when the persistingFlag is false.
-        // The thread set persistingFlag to true when it starts to persist.
-        if (!persistingFlag.compareAndSet(false, true)) {
-          LOG.trace("Cannot persist because persistingFlag is taken by another thread.");
-          return;
-        }
-        try {
-          Deque<MetricValues> recordsCopy = new LinkedList<>();
-          Map<TopicIdMetaKey, byte[]> topicMessageIdsCopy = new HashMap<>(topicMessageIds);
-          // TODO: (CDAP-8327) there is a risk of running out-of-memory if other threads keep writing to records
-          Iterator<MetricValues> iterator = records.iterator();
-          while (iterator.hasNext()) {
-            recordsCopy.add(iterator.next());
-            iterator.remove();
-          }
-          persistRecordsMessageIds(recordsCopy, topicMessageIdsCopy);
-        } catch (Exception e) {
-          LOG.error("Failed to persist consumed messages.", e);
-        } finally {
-          // Set persistingFlag back to false after persisting completes.
-          persistingFlag.set(false);
-        }
+      } catch (InterruptedException e) {
+        throw e;
       } catch (Exception e) {
         LOG.warn("Failed to process metrics. Will be retried in next iteration.", e);
       }
     }
   }
 
-  private final class TopicIdMetaKey implements MetricsMetaKey {
+  /**
+   * A decoded record together with the id of the message it was decoded from.
+   */
+  private static final class FetchedRecord {
+    private final TopicIdMetaKey topicIdMetaKey;
+    private final byte[] messageId;
+    @Nullable
+    private final MetricValues metricValues;
+
+    FetchedRecord(TopicIdMetaKey topicIdMetaKey, byte[] messageId, @Nullable MetricValues metricValues) {
+      this.topicIdMetaKey = topicIdMetaKey;
+      this.messageId = messageId;
+      this.metricValues = metricValues;
+    }
+  }
+
+  /**
+   * Aggregated records to write to the {@link MetricStore}, and the ids of the last messages they include.
+   */
+  private static final class PersistBatch {
+    private final List<MetricValues> metricValues;
+    private final Map<TopicIdMetaKey, byte[]> messageIds;
+    private final int recordsCount;
+
+    PersistBatch(List<MetricValues> metricValues, Map<TopicIdMetaKey, byte[]> messageIds, int recordsCount) {
+      this.metricValues = metricValues;
+      this.messageIds = messageIds;
+      this.recordsCount = recordsCount;
+    }
+  }
+
+  private static final class TopicIdMetaKey implements MetricsMetaKey {
 
     private final TopicId topicId;
     private final byte[] key;
@@ -0,0 +1,162 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.metrics.process;
+
+import co.cask.cdap.api.metrics.MetricType;
+import co.cask.cdap.api.metrics.MetricValue;
+import co.cask.cdap.api.metrics.MetricValues;
+import com.google.common.base.Objects;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pre-aggregates {@link MetricValues} that have the same tags and timestamp before they are written to the
+ * metric store, so that many small records emitted by different containers for the same context and second
+ * turn into a single fact. Counters and histogram buckets are summed up, the last gauge value wins.
+ * This class is not thread safe.
+ */
+final class MetricValuesAggregator {
+
+  private final Map<ContextKey, Map<MetricKey, MetricValue>> aggregated = new LinkedHashMap<>();
+  private int recordsAdded;
+
+  /**
+   * Adds the given {@link MetricValues} to the aggregation.
+   */
+  void add(MetricValues metricValues) {
+    recordsAdded++;
+    ContextKey contextKey = new ContextKey(metricValues.getTags(), metricValues.getTimestamp());
+    Map<MetricKey, MetricValue> metrics = aggregated.get(contextKey);
+    if (metrics == null) {
+      metrics = new LinkedHashMap<>();
+      aggregated.put(contextKey, metrics);
+    }
+    for (MetricValue metricValue : metricValues.getMetrics()) {
+      MetricKey metricKey = new MetricKey(metricValue.getName(), metricValue.getType());
+      MetricValue existing = metrics.get(metricKey);
+      metrics.put(metricKey, existing == null ? metricValue : merge(existing, metricValue));
+    }
+  }
+
+  /**
+   * Returns the number of {@link MetricValues} added since the last {@link #drain()}.
+   */
+  int getRecordsAdded() {
+    return recordsAdded;
+  }
+
+  /**
+   * Returns the aggregated {@link MetricValues} and resets this aggregator.
+   */
+  List<MetricValues> drain() {
+    List<MetricValues> result = new ArrayList<>(aggregated.size());
+    for (Map.Entry<ContextKey, Map<MetricKey, MetricValue>> entry : aggregated.entrySet()) {
+      result.add(new MetricValues(entry.getKey().tags, entry.getKey().timestamp,
+                                  new ArrayList<>(entry.getValue().values())));
+    }
+    aggregated.clear();
+    recordsAdded = 0;
+    return result;
+  }
+
+  private MetricValue merge(MetricValue first, MetricValue second) {
+    switch (second.getType()) {
+      case COUNTER:
+        return new MetricValue(second.getName(), MetricType.COUNTER, first.getValue() + second.getValue());
+      case HISTOGRAM:
+        Map<Integer, Long> buckets = new TreeMap<>();
+        addBuckets(buckets, first.getBuckets());
+        addBuckets(buckets, second.getBuckets());
+        return new MetricValue(second.getName(), buckets);
+      default:
+        return second;
+    }
+  }
+
+  private void addBuckets(Map<Integer, Long> result, Map<Integer, Long> buckets) {
+    if (buckets == null) {
+      return;
+    }
+    for (Map.Entry<Integer, Long> bucket : buckets.entrySet()) {
+      Long count = result.get(bucket.getKey());
+      result.put(bucket.getKey(), count == null ? bucket.getValue() : count + bucket.getValue());
+    }
+  }
+
+  /**
+   * Key of the aggregated {@link MetricValues}.
+   */
+  private static final class ContextKey {
+    private final Map<String, String> tags;
+    private final long timestamp;
+
+    private ContextKey(Map<String, String> tags, long timestamp) {
+      this.tags = tags;
+      this.timestamp = timestamp;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      ContextKey that = (ContextKey) o;
+      return timestamp == that.timestamp && tags.equals(that.tags);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(tags, timestamp);
+    }
+  }
+
+  /**
+   * Key of an aggregated {@link MetricValue} within the same context.
+   */
+  private static final class MetricKey {
+    private final String name;
+    private final MetricType type;
+
+    private MetricKey(String name, MetricType type) {
+      this.name = name;
+      this.type = type;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      MetricKey that = (MetricKey) o;
+      return name.equals(that.name) && type == that.type;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(name, type);
+    }
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -24,6 +24,7 @@ import co.cask.cdap.api.metrics.MetricValues;
 import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.common.io.BinaryDecoder;
 import co.cask.cdap.internal.io.DatumReader;
+import co.cask.cdap.metrics.collect.MetricValuesPayloads;
 import co.cask.common.io.ByteBufferInputStream;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
@@ -33,6 +34,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -50,6 +52,7 @@ public final class MetricsMessageCallback implements KafkaConsumer.MessageCallba
 
   private final DatumReader<MetricValues> recordReader;
   private final Schema recordSchema;
+  private final Schema unversionedRecordSchema;
   private final MetricStore metricStore;
   private final Map<String, String> metricsContext;
 
@@ -62,6 +65,7 @@ public final class MetricsMessageCallback implements KafkaConsumer.MessageCallba
                                 @Nullable MetricsContext metricsContext) {
     this.recordReader = recordReader;
     this.recordSchema = recordSchema;
+    this.unversionedRecordSchema = MetricValuesPayloads.getUnversionedSchema(recordSchema);
     this.metricStore = metricStore;
     this.metricsContext = metricsContext == null ? Collections.<String, String>emptyMap() : metricsContext.getTags();
   }
@@ -77,7 +81,15 @@ public final class MetricsMessageCallback implements KafkaConsumer.MessageCallba
       FetchedMessage input = messages.next();
       nextOffset = input.getNextOffset();
       try {
-        MetricValues metricValues = recordReader.read(new BinaryDecoder(is.reset(input.getPayload())), recordSchema);
+        ByteBuffer payload = input.getPayload();
+        // Payloads published by older versions have no version and are encoded without histogram buckets
+        Schema sourceSchema = unversionedRecordSchema;
+        if (payload.hasRemaining() && MetricValuesPayloads.isVersioned(payload.get(payload.position()))) {
+          payload = payload.duplicate();
+          payload.get();
+          sourceSchema = recordSchema;
+        }
+        MetricValues metricValues = recordReader.read(new BinaryDecoder(is.reset(payload)), sourceSchema);
         records.add(metricValues);
       } catch (IOException e) {
         LOG.warn("Failed to decode message to MetricValue. Skipped. {}", e.getMessage());
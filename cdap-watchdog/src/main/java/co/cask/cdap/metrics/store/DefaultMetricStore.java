@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 Cask Data, Inc.
+ * Copyright 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,15 +16,19 @@
 
 package co.cask.cdap.metrics.store;
 
+import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
 import co.cask.cdap.api.dataset.lib.cube.Cube;
 import co.cask.cdap.api.dataset.lib.cube.CubeDeleteQuery;
 import co.cask.cdap.api.dataset.lib.cube.CubeExploreQuery;
 import co.cask.cdap.api.dataset.lib.cube.CubeFact;
 import co.cask.cdap.api.dataset.lib.cube.CubeQuery;
 import co.cask.cdap.api.dataset.lib.cube.DimensionValue;
+import co.cask.cdap.api.dataset.lib.cube.Interpolator;
 import co.cask.cdap.api.dataset.lib.cube.MeasureType;
 import co.cask.cdap.api.dataset.lib.cube.Measurement;
 import co.cask.cdap.api.dataset.lib.cube.TimeSeries;
+import co.cask.cdap.api.dataset.lib.cube.TimeValue;
+import co.cask.cdap.api.metrics.HistogramBuckets;
 import co.cask.cdap.api.metrics.MetricDataQuery;
 import co.cask.cdap.api.metrics.MetricDeleteQuery;
 import co.cask.cdap.api.metrics.MetricSearchQuery;
@@ -48,8 +52,11 @@ import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 
 import java.util.Collection;
@@ -57,13 +64,21 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 import javax.annotation.Nullable;
 
 /**
  * Default implementation of {@link MetricStore}.
+ * <p>
+ * {@link MetricType#HISTOGRAM} metrics are stored in the {@link Cube} as one counter measure per
+ * {@link HistogramBuckets} bucket, so that histograms are merged across time and tags by the regular aggregation.
+ * Percentiles are queried with metric names of the form {@code <metric>:p<percentile>}.
+ * </p>
  */
 public class DefaultMetricStore implements MetricStore {
   public static final int TOTALS_RESOLUTION = Integer.MAX_VALUE;
+  // maximum number of bucket measures written for a histogram data point, each being a row in every aggregation
+  private static final int MAX_HISTOGRAM_BUCKETS = 32;
   static final Map<String, Aggregation> AGGREGATIONS;
 
   private static final String BY_NAMESPACE = "namespace";
@@ -241,6 +256,10 @@ public class DefaultMetricStore implements MetricStore {
       // todo improve this logic?
       for (MetricValue metric : metricValue.getMetrics()) {
         String measureName = (scope == null ? "system." : scope + ".") + metric.getName();
+        if (metric.getType() == MetricType.HISTOGRAM) {
+          addHistogramMeasurements(measureName, metric, metrics);
+          continue;
+        }
         MeasureType type = metric.getType() == MetricType.COUNTER ? MeasureType.COUNTER : MeasureType.GAUGE;
         metrics.add(new Measurement(measureName, type, metric.getValue()));
       }
@@ -253,23 +272,125 @@ public class DefaultMetricStore implements MetricStore {
     cube.get().add(facts);
   }
 
+  private void addHistogramMeasurements(String measureName, MetricValue metric, List<Measurement> measurements) {
+    Map<Integer, Long> buckets = metric.getBuckets();
+    if (buckets == null) {
+      return;
+    }
+    for (Map.Entry<Integer, Long> bucket : HistogramBuckets.merge(buckets, MAX_HISTOGRAM_BUCKETS).entrySet()) {
+      measurements.add(new Measurement(HistogramBuckets.getBucketMeasureName(measureName, bucket.getKey()),
+                                       MeasureType.COUNTER, bucket.getValue()));
+    }
+  }
+
   @Override
   public Collection<MetricTimeSeries> query(MetricDataQuery query) {
-    Collection<TimeSeries> cubeResult = cube.get().query(buildCubeQuery(query));
+    Map<String, AggregationFunction> metrics = Maps.newHashMap();
+    // histogram metric name -> queried percentile metric names
+    Multimap<String, String> percentileMetrics = LinkedHashMultimap.create();
+    for (Map.Entry<String, AggregationFunction> metric : query.getMetrics().entrySet()) {
+      if (HistogramBuckets.getQueriedPercentile(metric.getKey()) == null) {
+        metrics.put(metric.getKey(), metric.getValue());
+      } else {
+        percentileMetrics.put(HistogramBuckets.getQueriedMetricName(metric.getKey()), metric.getKey());
+      }
+    }
+
     List<MetricTimeSeries> result = Lists.newArrayList();
-    for (TimeSeries timeSeries : cubeResult) {
-      result.add(new MetricTimeSeries(timeSeries.getMeasureName(),
-                                      timeSeries.getDimensionValues(),
-                                      timeSeries.getTimeValues()));
+    if (!metrics.isEmpty()) {
+      Collection<TimeSeries> cubeResult = cube.get().query(buildCubeQuery(query, metrics, query.getInterpolator()));
+      for (TimeSeries timeSeries : cubeResult) {
+        result.add(new MetricTimeSeries(timeSeries.getMeasureName(),
+                                        timeSeries.getDimensionValues(),
+                                        timeSeries.getTimeValues()));
+      }
+    }
+    if (!percentileMetrics.isEmpty()) {
+      result.addAll(queryPercentiles(query, percentileMetrics));
     }
     return result;
   }
 
-  private CubeQuery buildCubeQuery(MetricDataQuery query) {
+  /**
+   * Queries the bucket measures of the given histogram metrics and computes the requested percentiles
+   * for every time point of every group.
+   */
+  private Collection<MetricTimeSeries> queryPercentiles(MetricDataQuery query,
+                                                        Multimap<String, String> percentileMetrics) {
+    // Only query buckets that were ever written, to avoid scanning for every possible bucket measure
+    Map<String, AggregationFunction> bucketMeasures = Maps.newHashMap();
+    for (String measureName : cube.get().findMeasureNames(buildCubeSearchQuery(query))) {
+      String histogramName = HistogramBuckets.getMetricName(measureName);
+      if (histogramName != null && percentileMetrics.containsKey(histogramName)) {
+        bucketMeasures.put(measureName, AggregationFunction.SUM);
+      }
+    }
+    if (bucketMeasures.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    // (histogram name, tags) -> timestamp -> bucket -> count
+    Map<String, Map<Map<String, String>, SortedMap<Long, SortedMap<Integer, Long>>>> histograms = Maps.newHashMap();
+    // interpolating bucket counts would distort the distribution
+    for (TimeSeries timeSeries : cube.get().query(buildCubeQuery(query, bucketMeasures, null))) {
+      String histogramName = HistogramBuckets.getMetricName(timeSeries.getMeasureName());
+      int bucket = HistogramBuckets.getMeasureBucket(timeSeries.getMeasureName());
+
+      Map<Map<String, String>, SortedMap<Long, SortedMap<Integer, Long>>> groups = histograms.get(histogramName);
+      if (groups == null) {
+        groups = Maps.newHashMap();
+        histograms.put(histogramName, groups);
+      }
+      SortedMap<Long, SortedMap<Integer, Long>> timeBuckets = groups.get(timeSeries.getDimensionValues());
+      if (timeBuckets == null) {
+        timeBuckets = Maps.newTreeMap();
+        groups.put(timeSeries.getDimensionValues(), timeBuckets);
+      }
+      for (TimeValue timeValue : timeSeries.getTimeValues()) {
+        SortedMap<Integer, Long> buckets = timeBuckets.get(timeValue.getTimestamp());
+        if (buckets == null) {
+          buckets = Maps.newTreeMap();
+          timeBuckets.put(timeValue.getTimestamp(), buckets);
+        }
+        buckets.put(bucket, timeValue.getValue());
+      }
+    }
+
+    List<MetricTimeSeries> result = Lists.newArrayList();
+    for (Map.Entry<String, Map<Map<String, String>, SortedMap<Long, SortedMap<Integer, Long>>>> histogram
+      : histograms.entrySet()) {
+      for (String percentileMetric : percentileMetrics.get(histogram.getKey())) {
+        double percentile = HistogramBuckets.getQueriedPercentile(percentileMetric);
+        for (Map.Entry<Map<String, String>, SortedMap<Long, SortedMap<Integer, Long>>> group
+          : histogram.getValue().entrySet()) {
+          List<TimeValue> timeValues = Lists.newArrayList();
+          for (Map.Entry<Long, SortedMap<Integer, Long>> timeBuckets : group.getValue().entrySet()) {
+            long value = HistogramBuckets.getPercentile(timeBuckets.getValue(), percentile);
+            if (value >= 0) {
+              timeValues.add(new TimeValue(timeBuckets.getKey(), value));
+            }
+          }
+          result.add(new MetricTimeSeries(percentileMetric, group.getKey(), timeValues));
+        }
+      }
+    }
+    return result;
+  }
+
+  private CubeQuery buildCubeQuery(MetricDataQuery query, Map<String, AggregationFunction> metrics,
+                                   @Nullable Interpolator interpolator) {
     String aggregation = getAggregation(query);
     return new CubeQuery(aggregation, query.getStartTs(), query.getEndTs(),
-                         query.getResolution(), query.getLimit(), query.getMetrics(),
-                         query.getSliceByTags(), query.getGroupByTags(), query.getInterpolator());
+                         query.getResolution(), query.getLimit(), metrics,
+                         query.getSliceByTags(), query.getGroupByTags(), interpolator);
+  }
+
+  private CubeExploreQuery buildCubeSearchQuery(MetricDataQuery query) {
+    List<DimensionValue> dimensionValues = Lists.newArrayList();
+    for (Map.Entry<String, String> tag : query.getSliceByTags().entrySet()) {
+      dimensionValues.add(new DimensionValue(tag.getKey(), tag.getValue()));
+    }
+    return new CubeExploreQuery(query.getStartTs(), query.getEndTs(), query.getResolution(), -1, dimensionValues);
   }
 
   @Nullable
@@ -339,7 +460,14 @@ public class DefaultMetricStore implements MetricStore {
 
   @Override
   public Collection<String> findMetricNames(MetricSearchQuery query) throws Exception {
-    return cube.get().findMeasureNames(buildCubeSearchQuery(query));
+    Collection<String> measureNames = cube.get().findMeasureNames(buildCubeSearchQuery(query));
+    // report histogram metrics once instead of their bucket measures
+    Set<String> result = Sets.newTreeSet();
+    for (String measureName : measureNames) {
+      String histogramName = HistogramBuckets.getMetricName(measureName);
+      result.add(histogramName == null ? measureName : histogramName);
+    }
+    return result;
   }
 
   private List<DimensionValue> toTagValues(List<co.cask.cdap.api.metrics.TagValue> input) {
@@ -31,6 +31,7 @@ import co.cask.cdap.internal.io.DatumWriter;
 import co.cask.cdap.internal.io.ReflectionSchemaGenerator;
 import co.cask.cdap.messaging.MessagingService;
 import co.cask.cdap.messaging.guice.MessagingServerRuntimeModule;
+import co.cask.cdap.metrics.collect.MetricValuesPayloads;
 import com.google.common.reflect.TypeToken;
 import com.google.common.util.concurrent.Service;
 import com.google.inject.AbstractModule;
@@ -63,6 +64,8 @@ public abstract class MetricsTestBase {
   protected static TypeToken<MetricValues> metricValueType;
   protected static Schema schema;
   protected static DatumWriter<MetricValues> recordWriter;
+  // writer of payloads without version, as published by older versions
+  protected static DatumWriter<MetricValues> unversionedRecordWriter;
 
   @Before
   public void init() throws IOException, UnsupportedTypeException {
@@ -77,6 +80,8 @@ public abstract class MetricsTestBase {
     schema = new ReflectionSchemaGenerator().generate(metricValueType.getType());
     recordWriter = new ASMDatumWriterFactory(new ASMFieldAccessorFactory())
       .create(metricValueType, schema);
+    unversionedRecordWriter = new ASMDatumWriterFactory(new ASMFieldAccessorFactory())
+      .create(metricValueType, MetricValuesPayloads.getUnversionedSchema(schema));
   }
 
   @After
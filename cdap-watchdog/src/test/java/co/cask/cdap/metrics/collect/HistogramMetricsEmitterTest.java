@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.metrics.collect;
+
+import co.cask.cdap.api.metrics.HistogramBuckets;
+import co.cask.cdap.api.metrics.MetricType;
+import co.cask.cdap.api.metrics.MetricValue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Tests for {@link HistogramMetricsEmitter} and {@link HistogramBuckets}.
+ */
+public class HistogramMetricsEmitterTest {
+
+  @Test
+  public void testBuckets() {
+    long previousUpperBound = -1;
+    for (int bucket = 0; bucket < HistogramBuckets.NUM_BUCKETS; bucket++) {
+      long lowerBound = HistogramBuckets.getLowerBound(bucket);
+      long upperBound = HistogramBuckets.getUpperBound(bucket);
+      // buckets are contiguous
+      Assert.assertEquals(previousUpperBound + 1, lowerBound);
+      Assert.assertEquals(bucket, HistogramBuckets.getBucket(lowerBound));
+      Assert.assertEquals(bucket, HistogramBuckets.getBucket(upperBound));
+      // relative error is bounded
+      Assert.assertTrue((double) (upperBound - lowerBound) / Math.max(1, lowerBound) <= 0.125);
+      previousUpperBound = upperBound;
+    }
+    Assert.assertEquals(Long.MAX_VALUE, previousUpperBound);
+    Assert.assertEquals(0, HistogramBuckets.getBucket(-5L));
+  }
+
+  @Test
+  public void testEmit() {
+    HistogramMetricsEmitter emitter = new HistogramMetricsEmitter("latency");
+    for (int i = 1; i <= 1000; i++) {
+      emitter.record(i);
+    }
+
+    MetricValue value = emitter.emit();
+    Assert.assertEquals(MetricType.HISTOGRAM, value.getType());
+    Assert.assertEquals(1000L, value.getValue());
+
+    SortedMap<Integer, Long> buckets = new TreeMap<>(value.getBuckets());
+    assertWithinBucket(500, HistogramBuckets.getPercentile(buckets, 50));
+    assertWithinBucket(990, HistogramBuckets.getPercentile(buckets, 99));
+    assertWithinBucket(1000, HistogramBuckets.getPercentile(buckets, 100));
+
+    // emit resets the histogram
+    Assert.assertEquals(0L, emitter.emit().getValue());
+  }
+
+  @Test
+  public void testMerge() {
+    HistogramMetricsEmitter first = new HistogramMetricsEmitter("latency");
+    HistogramMetricsEmitter second = new HistogramMetricsEmitter("latency");
+    for (int i = 0; i < 90; i++) {
+      first.record(10);
+    }
+    for (int i = 0; i < 10; i++) {
+      second.record(10000);
+    }
+
+    // merging is summing up bucket counts, as done by the metrics store
+    SortedMap<Integer, Long> merged = new TreeMap<>();
+    for (MetricValue value : new MetricValue[] { first.emit(), second.emit() }) {
+      for (Map.Entry<Integer, Long> entry : value.getBuckets().entrySet()) {
+        Long count = merged.get(entry.getKey());
+        merged.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+      }
+    }
+    assertWithinBucket(10, HistogramBuckets.getPercentile(merged, 50));
+    assertWithinBucket(10000, HistogramBuckets.getPercentile(merged, 95));
+  }
+
+  @Test
+  public void testMergeBuckets() {
+    HistogramMetricsEmitter emitter = new HistogramMetricsEmitter("latency");
+    for (int i = 1; i <= 100000; i++) {
+      emitter.record(i);
+    }
+    Map<Integer, Long> buckets = emitter.emit().getBuckets();
+    Assert.assertTrue(buckets.size() > 32);
+
+    // merging keeps the total count and never under-reports a percentile
+    SortedMap<Integer, Long> merged = HistogramBuckets.merge(buckets, 32);
+    Assert.assertTrue(merged.size() <= 32);
+    long count = 0;
+    for (long bucketCount : merged.values()) {
+      count += bucketCount;
+    }
+    Assert.assertEquals(100000L, count);
+    SortedMap<Integer, Long> sorted = new TreeMap<>(buckets);
+    for (double percentile : new double[] { 50, 90, 99, 100 }) {
+      Assert.assertTrue(HistogramBuckets.getPercentile(merged, percentile)
+                          >= HistogramBuckets.getPercentile(sorted, percentile));
+    }
+    Assert.assertEquals(HistogramBuckets.getPercentile(sorted, 100), HistogramBuckets.getPercentile(merged, 100));
+
+    // no merging if there are few enough buckets
+    Assert.assertEquals(sorted, HistogramBuckets.merge(buckets, buckets.size()));
+  }
+
+  @Test
+  public void testMeasureNames() {
+    String measureName = HistogramBuckets.getBucketMeasureName("system.request.latency", 42);
+    Assert.assertEquals("system.request.latency", HistogramBuckets.getMetricName(measureName));
+    Assert.assertEquals(42, HistogramBuckets.getMeasureBucket(measureName));
+    Assert.assertNull(HistogramBuckets.getMetricName("system.request.received"));
+
+    Assert.assertEquals(99.9d, HistogramBuckets.getQueriedPercentile("system.request.latency:p99.9"), 0.0d);
+    Assert.assertEquals("system.request.latency",
+                        HistogramBuckets.getQueriedMetricName("system.request.latency:p99.9"));
+    Assert.assertNull(HistogramBuckets.getQueriedPercentile("system.request.latency"));
+  }
+
+  private void assertWithinBucket(long expected, long actual) {
+    int bucket = HistogramBuckets.getBucket(expected);
+    Assert.assertEquals(HistogramBuckets.getUpperBound(bucket), actual);
+  }
+}
@@ -96,8 +96,10 @@ public class MessagingMetricsCollectionServiceTest extends MetricsTestBase {
       try (CloseableIterator<RawMessage> iterator = messagingService.prepareFetch(topicId).fetch()) {
         while (iterator.hasNext()) {
           RawMessage message = iterator.next();
+          byte[] payload = message.getPayload();
+          Assert.assertTrue(MetricValuesPayloads.isVersioned(payload[0]));
           MetricValues metricsRecord = (MetricValues) recordReader.read(
-            new BinaryDecoder(is.reset(ByteBuffer.wrap(message.getPayload()))), schema);
+            new BinaryDecoder(is.reset(ByteBuffer.wrap(payload, 1, payload.length - 1))), schema);
           StringBuilder flattenContext = new StringBuilder();
           // for verifying expected results, sorting tags
           Map<String, String> tags = Maps.newTreeMap();
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.metrics.collect;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.metrics.MetricType;
+import co.cask.cdap.api.metrics.MetricValue;
+import co.cask.cdap.api.metrics.MetricValues;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.internal.io.ReflectionDatumReader;
+import co.cask.cdap.internal.io.ReflectionDatumWriter;
+import co.cask.cdap.internal.io.ReflectionSchemaGenerator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.reflect.TypeToken;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Tests for {@link MetricValuesPayloads}.
+ */
+public class MetricValuesPayloadsTest {
+
+  @Test
+  public void testUnversionedPayload() throws Exception {
+    Schema schema = new ReflectionSchemaGenerator().generate(MetricValues.class);
+    Schema unversionedSchema = MetricValuesPayloads.getUnversionedSchema(schema);
+    ReflectionDatumReader<MetricValues> reader = new ReflectionDatumReader<>(schema, TypeToken.of(MetricValues.class));
+
+    // A payload published by an older version, encoded without histogram buckets
+    MetricValues metricValues = new MetricValues(ImmutableMap.of("ns", "default"), 1234L, ImmutableList.of(
+      new MetricValue("processed", MetricType.COUNTER, 10L), new MetricValue("size", MetricType.GAUGE, 20L)));
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new ReflectionDatumWriter<MetricValues>(unversionedSchema).encode(metricValues, new BinaryEncoder(os));
+    byte[] payload = os.toByteArray();
+
+    Assert.assertFalse(MetricValuesPayloads.isVersioned(payload[0]));
+    MetricValues decoded = reader.read(new BinaryDecoder(new ByteArrayInputStream(payload)), unversionedSchema);
+    Assert.assertEquals(metricValues.getTags(), decoded.getTags());
+    Assert.assertEquals(metricValues.getTimestamp(), decoded.getTimestamp());
+    Assert.assertEquals(2, decoded.getMetrics().size());
+    MetricValue counter = Iterables.get(decoded.getMetrics(), 0);
+    Assert.assertEquals("processed", counter.getName());
+    Assert.assertEquals(MetricType.COUNTER, counter.getType());
+    Assert.assertEquals(10L, counter.getValue());
+    Assert.assertNull(counter.getBuckets());
+    MetricValue gauge = Iterables.get(decoded.getMetrics(), 1);
+    Assert.assertEquals("size", gauge.getName());
+    Assert.assertEquals(MetricType.GAUGE, gauge.getType());
+    Assert.assertEquals(20L, gauge.getValue());
+  }
+
+  @Test
+  public void testVersionedPayload() throws Exception {
+    Schema schema = new ReflectionSchemaGenerator().generate(MetricValues.class);
+    ReflectionDatumReader<MetricValues> reader = new ReflectionDatumReader<>(schema, TypeToken.of(MetricValues.class));
+
+    MetricValues metricValues = new MetricValues(ImmutableMap.of("ns", "default"), 1234L, ImmutableList.of(
+      new MetricValue("latency", ImmutableMap.of(3, 5L, 40, 1L))));
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    os.write(MetricValuesPayloads.VERSION);
+    new ReflectionDatumWriter<MetricValues>(schema).encode(metricValues, new BinaryEncoder(os));
+    byte[] payload = os.toByteArray();
+
+    Assert.assertTrue(MetricValuesPayloads.isVersioned(payload[0]));
+    MetricValues decoded = reader.read(new BinaryDecoder(new ByteArrayInputStream(payload, 1, payload.length - 1)),
+                                       schema);
+    MetricValue histogram = Iterables.getOnlyElement(decoded.getMetrics());
+    Assert.assertEquals(MetricType.HISTOGRAM, histogram.getType());
+    Assert.assertEquals(6L, histogram.getValue());
+    Assert.assertEquals(ImmutableMap.of(3, 5L, 40, 1L), histogram.getBuckets());
+  }
+}
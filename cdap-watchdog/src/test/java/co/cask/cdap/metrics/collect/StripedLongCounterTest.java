@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.metrics.collect;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link StripedLongCounter}.
+ */
+public class StripedLongCounterTest {
+
+  @Test
+  public void testSumThenReset() {
+    StripedLongCounter counter = new StripedLongCounter();
+    counter.add(Integer.MAX_VALUE);
+    counter.add(3);
+    counter.add(-1);
+    Assert.assertEquals((long) Integer.MAX_VALUE + 2L, counter.sumThenReset());
+    Assert.assertEquals(0L, counter.sumThenReset());
+  }
+
+  @Test
+  public void testConcurrentAdd() throws Exception {
+    final StripedLongCounter counter = new StripedLongCounter();
+    final int threads = 8;
+    final int increments = 100000;
+    final CyclicBarrier barrier = new CyclicBarrier(threads);
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      for (int i = 0; i < threads; i++) {
+        executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              barrier.await();
+            } catch (Exception e) {
+              throw new RuntimeException(e);
+            }
+            for (int j = 0; j < increments; j++) {
+              counter.add(1);
+            }
+          }
+        });
+      }
+
+      // Drain concurrently with the updates, no update should be lost
+      long sum = 0;
+      executor.shutdown();
+      while (!executor.awaitTermination(10, TimeUnit.MILLISECONDS)) {
+        sum += counter.sumThenReset();
+      }
+      sum += counter.sumThenReset();
+      Assert.assertEquals((long) threads * increments, sum);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -73,8 +73,9 @@ public class MessagingMetricsProcessorServiceTest extends MetricsProcessorServic
         publishMessagingMetrics(i, METRICS_CONTEXT, expected, "", MetricType.COUNTER);
       }
       for (int i = 50; i < 100; i++) {
-        // TOPIC_PREFIX + (i % PARTITION_SIZE) decides which topic the metric is published to
-        publishMessagingMetrics(i, METRICS_CONTEXT, expected, "", MetricType.GAUGE);
+        // TOPIC_PREFIX + (i % PARTITION_SIZE) decides which topic the metric is published to.
+        // Some of the metrics are published without payload version, as done by older versions
+        publishMessagingMetrics(i, METRICS_CONTEXT, expected, "", MetricType.GAUGE, i % 3 != 0);
       }
 
       final MockMetricStore metricStore = new MockMetricStore();
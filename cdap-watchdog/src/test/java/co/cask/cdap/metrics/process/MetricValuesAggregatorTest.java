@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.metrics.process;
+
+import co.cask.cdap.api.metrics.MetricType;
+import co.cask.cdap.api.metrics.MetricValue;
+import co.cask.cdap.api.metrics.MetricValues;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link MetricValuesAggregator}.
+ */
+public class MetricValuesAggregatorTest {
+
+  @Test
+  public void testAggregate() {
+    Map<String, String> tags = ImmutableMap.of("ns", "default");
+    Map<String, String> otherTags = ImmutableMap.of("ns", "system");
+
+    MetricValuesAggregator aggregator = new MetricValuesAggregator();
+    aggregator.add(new MetricValues(tags, 1L, ImmutableList.of(
+      new MetricValue("count", MetricType.COUNTER, 2L),
+      new MetricValue("gauge", MetricType.GAUGE, 10L),
+      new MetricValue("latency", ImmutableMap.of(1, 3L)))));
+    aggregator.add(new MetricValues(tags, 1L, ImmutableList.of(
+      new MetricValue("count", MetricType.COUNTER, 3L),
+      new MetricValue("gauge", MetricType.GAUGE, 7L),
+      new MetricValue("latency", ImmutableMap.of(1, 1L, 5, 2L)))));
+    // different timestamp and different tags are not aggregated
+    aggregator.add(new MetricValues(tags, 2L, ImmutableList.of(new MetricValue("count", MetricType.COUNTER, 1L))));
+    aggregator.add(new MetricValues(otherTags, 1L,
+                                    ImmutableList.of(new MetricValue("count", MetricType.COUNTER, 1L))));
+    Assert.assertEquals(4, aggregator.getRecordsAdded());
+
+    List<MetricValues> result = aggregator.drain();
+    Assert.assertEquals(3, result.size());
+    Assert.assertEquals(0, aggregator.getRecordsAdded());
+
+    MetricValues first = result.get(0);
+    Assert.assertEquals(tags, first.getTags());
+    Assert.assertEquals(1L, first.getTimestamp());
+    Map<String, MetricValue> metrics = new HashMap<>();
+    for (MetricValue value : first.getMetrics()) {
+      metrics.put(value.getName(), value);
+    }
+    Assert.assertEquals(5L, metrics.get("count").getValue());
+    Assert.assertEquals(7L, metrics.get("gauge").getValue());
+    Assert.assertEquals(6L, metrics.get("latency").getValue());
+    Assert.assertEquals(ImmutableMap.of(1, 4L, 5, 2L), metrics.get("latency").getBuckets());
+
+    Assert.assertEquals(2L, result.get(1).getTimestamp());
+    Assert.assertEquals(otherTags, result.get(2).getTags());
+    Assert.assertTrue(aggregator.drain().isEmpty());
+  }
+}
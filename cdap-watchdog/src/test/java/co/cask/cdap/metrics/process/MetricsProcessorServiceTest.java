@@ -219,8 +219,9 @@ public class MetricsProcessorServiceTest extends MetricsProcessorServiceTestBase
   private void addKafkaMetrics(int metricIndex, Map<String, String> metricsContext, Map<String, Long> expected,
                                KafkaPublisher.Preparer preparer, MetricType metricType)
     throws IOException, TopicNotFoundException {
+    // metrics in Kafka are published by older versions, without payload version
     MetricValues metric = getMetricValuesAddToExpected(metricIndex, metricsContext, expected,
-                                                       SYSTEM_METRIC_PREFIX, metricType);
+                                                       SYSTEM_METRIC_PREFIX, metricType, false);
     // partitioning by the context
     preparer.add(ByteBuffer.wrap(encoderOutputStream.toByteArray()), metric.getTags().hashCode());
     encoderOutputStream.reset();
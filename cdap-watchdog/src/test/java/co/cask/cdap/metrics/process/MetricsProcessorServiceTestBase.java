@@ -32,6 +32,7 @@ import co.cask.cdap.data.runtime.DataSetsModules;
 import co.cask.cdap.explore.guice.ExploreClientModule;
 import co.cask.cdap.messaging.client.StoreRequestBuilder;
 import co.cask.cdap.metrics.MetricsTestBase;
+import co.cask.cdap.metrics.collect.MetricValuesPayloads;
 import co.cask.cdap.metrics.store.DefaultMetricDatasetFactory;
 import co.cask.cdap.metrics.store.DefaultMetricStore;
 import co.cask.cdap.metrics.store.MetricDatasetFactory;
@@ -79,9 +80,22 @@ abstract class MetricsProcessorServiceTestBase extends MetricsTestBase {
   protected void publishMessagingMetrics(int metricIndex, Map<String, String> metricsContext,
                                          Map<String, Long> expected, String expectedMetricPrefix,
                                          MetricType metricType) {
+    publishMessagingMetrics(metricIndex, metricsContext, expected, expectedMetricPrefix, metricType, true);
+  }
+
+  /**
+   * Publishes a metric to the messaging service.
+   *
+   * @param versioned {@code true} to publish the payload with version, {@code false} to publish it in the format
+   *                  of older versions, without version and histogram buckets
+   */
+  protected void publishMessagingMetrics(int metricIndex, Map<String, String> metricsContext,
+                                         Map<String, Long> expected, String expectedMetricPrefix,
+                                         MetricType metricType, boolean versioned) {
 
     try {
-      getMetricValuesAddToExpected(metricIndex, metricsContext, expected, expectedMetricPrefix, metricType);
+      getMetricValuesAddToExpected(metricIndex, metricsContext, expected, expectedMetricPrefix, metricType,
+                                   versioned);
       messagingService.publish(
         StoreRequestBuilder.of(NamespaceId.SYSTEM.topic(TOPIC_PREFIX + (metricIndex % PARTITION_SIZE)))
           .addPayloads(encoderOutputStream.toByteArray()).build());
@@ -103,6 +117,18 @@ abstract class MetricsProcessorServiceTestBase extends MetricsTestBase {
                                                       Map<String, Long> expected, String expectedMetricPrefix,
                                                       MetricType metricType)
     throws TopicNotFoundException, IOException {
+    return getMetricValuesAddToExpected(i, metricsContext, expected, expectedMetricPrefix, metricType, true);
+  }
+
+  /**
+   * Same as {@link #getMetricValuesAddToExpected(int, Map, Map, String, MetricType)}, encoding the
+   * {@link MetricValues} with version if {@code versioned} is {@code true}, or in the format of older versions
+   * otherwise.
+   */
+  protected MetricValues getMetricValuesAddToExpected(int i, Map<String, String> metricsContext,
+                                                      Map<String, Long> expected, String expectedMetricPrefix,
+                                                      MetricType metricType, boolean versioned)
+    throws TopicNotFoundException, IOException {
     MetricValues metric;
     if (MetricType.GAUGE.equals(metricType)) {
       String metricName = GAUGE_METRIC_NAME_PREFIX + i;
@@ -121,7 +147,12 @@ abstract class MetricsProcessorServiceTestBase extends MetricsTestBase {
       }
     }
 
-    recordWriter.encode(metric, encoder);
+    if (versioned) {
+      encoderOutputStream.write(MetricValuesPayloads.VERSION);
+      recordWriter.encode(metric, encoder);
+    } else {
+      unversionedRecordWriter.encode(metric, encoder);
+    }
     return metric;
   }
 